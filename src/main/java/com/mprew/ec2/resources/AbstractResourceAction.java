@@ -2,35 +2,46 @@ package com.mprew.ec2.resources;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
+import com.mprew.ec2.resources.event.FilteredResourceListener;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
 import com.mprew.ec2.resources.startup.DependencyConditionException;
-import com.mprew.ec2.resources.startup.DependencyException;
+import com.mprew.ec2.resources.startup.DependencyElement;
 import com.mprew.ec2.resources.validation.Validatable;
 import com.mprew.ec2.resources.validation.ValidationException;
 
 /**
  * The abstract superclass for all actions that apply to a collection of resources. This class provides a good deal of utility methods for dealing
- * with such resource collections, as well as logic that can help determine which resources become startable/stoppable after others have finished
- * performing the same action. This class is designed to organize resource actions into stages so that they can be done concurrently using an underlying
- * Executor.
+ * with such resource collections, as well as the scheduling logic that determines which resources become startable/stoppable after others have
+ * finished performing the same action. Every resource keeps the set of blocking resources (dependencies or references, depending on the action) that
+ * have not yet reached the required state; a synchronous ResourceListener removes blockers as they transition, and the job for a resource is
+ * submitted to the underlying Executor the moment its last blocker is satisfied.
  * 
  * @author dgarson
  */
@@ -40,6 +51,21 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	private static final int STATE_RUNNING = 1;
 	private static final int STATE_FINISHED = 2;
 	
+	/** The number of condition failures for a single resource after which the action is aborted */
+	private static final int FAILURE_THRESHOLD = 5;
+	/** How long to wait without any completions or transitions before re-checking blocked resources */
+	private static final long IDLE_RECHECK_MILLIS = 30000;
+	/** How often the blockers of resources whose conditions have failed are re-checked, as their failures are not announced by events */
+	private static final long FAILURE_RECHECK_MILLIS = 250;
+	
+	/** Placeholder that is put on the completion queue to wake up the action thread without a completed job */
+	private static final Future<Boolean> WAKE_UP = new FutureTask<Boolean>(new Callable<Boolean>() {
+		@Override
+		public Boolean call() {
+			return Boolean.FALSE;
+		}
+	});
+	
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	
 	private final Collection<? extends ResourceInfo> initialResources;
@@ -47,12 +73,31 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	protected final Map<ResourceInfo, ResourceFailureTracker> resourceFailures = new HashMap<ResourceInfo, ResourceFailureTracker>();
 	private final LinkedBlockingQueue<Future<Boolean>> completionQueue;
 	private final ExecutorCompletionService<Boolean> startupService;
-	private int started = 0;
+	private final AtomicInteger started = new AtomicInteger(0);
 	private int finished = 0;
 	protected final String noun;
 	protected final String verb;
 	protected final String ptVerb;
-	private final Map<Future<Boolean>, ResourceInfo> jobMap = new HashMap<Future<Boolean>, ResourceInfo>();
+	private final Map<Future<Boolean>, ResourceInfo> jobMap = new ConcurrentHashMap<Future<Boolean>, ResourceInfo>();
+	
+	/** Lock guarding the blocker bookkeeping, which is updated from both the action thread and transitioning threads */
+	private final Object scheduleLock = new Object();
+	/** Resources that have not been submitted yet, mapped to their blockers that are not yet satisfied */
+	private final Map<ResourceInfo, Set<ResourceInfo>> pendingBlockers = new HashMap<ResourceInfo, Set<ResourceInfo>>();
+	/** Blocking resources mapped to the pending resources that are waiting on them */
+	private final Map<ResourceInfo, List<ResourceInfo>> waiters = new HashMap<ResourceInfo, List<ResourceInfo>>();
+	/** Resources whose blockers are satisfied, waiting for a free job thread; only used if there is a submission order */
+	private PriorityQueue<ResourceInfo> readyQueue;
+	private int maxRunningJobs = Integer.MAX_VALUE;
+	private int runningJobs = 0;
+	/** The number of jobs of each resource that were superseded and scheduled again, which the action thread has not seen yet */
+	private final Map<ResourceInfo, Integer> superseded = new HashMap<ResourceInfo, Integer>();
+	/** Resources that were abandoned since the action thread last reported failed resources */
+	private final List<ResourceInfo> abandoned = new ArrayList<ResourceInfo>();
+	/** Every resource that was abandoned, which can never satisfy the resources that are waiting on it */
+	private final Set<ResourceInfo> abandonedResources = new HashSet<ResourceInfo>();
+	private final ReadinessListener readinessListener = new ReadinessListener();
+	private volatile ResourceException failure;
 	
 	protected final ResourceManager resourceManager;
 	protected final boolean isPhase;
@@ -69,8 +114,8 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 		this.resourceManager = manager;
 		this.isPhase = isPhase;
 		this.initialResources = resources;
-		this.resources = new LinkedList<ResourceInfo>();
-		completionQueue = new LinkedBlockingQueue<Future<Boolean>>(resources.size());
+		this.resources = new ArrayList<ResourceInfo>(resources.size());
+		completionQueue = new LinkedBlockingQueue<Future<Boolean>>();
 		startupService = new ExecutorCompletionService<Boolean>(manager.getJobExecutor(), completionQueue);
 		
 		noun = getActionName(true);
@@ -157,12 +202,48 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	}
 	
 	/**
-	 * Checks if we are allowed to submit the subtask for the given resource.
-	 * @param metadata the resource to check against
-	 * @return true if submittable, false otherwise
-	 * @throws DependencyException any exceptions while checking submitability
+	 * Callback that is invoked on the action thread whenever a resource will not be acted upon any further, because its job failed
+	 * or it was abandoned since one of its blockers can no longer satisfy it.
+	 * @param failed the failed resource
 	 */
-	protected abstract boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException;
+	protected void failedResource(ResourceInfo failed) {
+		// Default is no-op
+	}
+	
+	/**
+	 * Gets the elements that must satisfy {@link #isSatisfied(ResourceInfo, ResourceInfo)} before the job for the given resource
+	 * can be submitted. By default these are the dependencies of the resource.
+	 * @param resource the resource
+	 * @return the blocking elements
+	 */
+	protected Collection<DependencyElement> getBlockingElements(ResourceInfo resource) {
+		DependencyElement element = resource.getElement();
+		if (element == null) {
+			return Collections.emptySet();
+		}
+		return element.getDependencies();
+	}
+	
+	/**
+	 * Checks if a blocking resource no longer prevents the job for the given resource from being submitted. This is evaluated again
+	 * every time the blocking resource transitions.
+	 * @param resource the resource waiting to be submitted
+	 * @param blocker one of its blocking resources
+	 * @return true if the blocker is satisfied, false otherwise
+	 * @throws DependencyConditionException if the blocker is in a state that the action cannot proceed from
+	 */
+	protected abstract boolean isSatisfied(ResourceInfo resource, ResourceInfo blocker) throws DependencyConditionException;
+	
+	/**
+	 * Checks if a resource should be scheduled again after its job has completed successfully, for actions that move each
+	 * resource through several states. The blockers of the resource are evaluated again for its new state. By default every
+	 * resource is only submitted once.
+	 * @param resource the resource whose job completed
+	 * @return true to schedule the resource again
+	 */
+	protected boolean hasNextStage(ResourceInfo resource) {
+		return false;
+	}
 	
 	/**
 	 * Creates the job to invoke on the resource that is allowed to be submitted.
@@ -171,6 +252,41 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	 */
 	protected abstract Callable<Boolean> createJob(ResourceInfo resource);
 	
+	/**
+	 * Gets the order in which resources that are ready at the same time should be submitted. If an order is provided, no more jobs
+	 * are submitted than the job executor can run at once, so that the remaining ready resources can still be reordered as others
+	 * become ready. By default there is no order and jobs are submitted as soon as they are ready.
+	 * @return the submission order, or <code>null</code> to submit jobs right away
+	 */
+	protected Comparator<ResourceInfo> getSubmissionOrder() {
+		return null;
+	}
+	
+	/**
+	 * Gets the expected duration of the start method of a resource, based on the durations observed during this and previous runs.
+	 * @param resource the resource
+	 * @return the expected start duration in milliseconds, or <code>-1</code> if unknown
+	 */
+	protected long getExpectedStartDuration(ResourceInfo resource) {
+		return resourceManager.getStartupTimings().getDuration(resource.getResourceName());
+	}
+	
+	/**
+	 * Checks if the resource is in any of the provided states.
+	 * @param resource the resource
+	 * @param states the expected states
+	 * @return true if the state of the resource is equivalent to any provided state
+	 */
+	protected static boolean isInState(ResourceInfo resource, ResourceState ... states) {
+		ResourceState current = resource.getState();
+		for (int i = 0; i < states.length; i++) {
+			if (current.isEquivalent(states[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Submits an out-of-band job for a resource. This can be used to submit jobs that will still be monitored for completion, but are not
 	 * applying the standard action for this task.
@@ -184,64 +300,342 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 		}
 		else {
 			jobMap.put(future, resource);
-			started++;
+			started.incrementAndGet();
 		}
 	}
 	
 	/**
-	 * Waits until we are allowed to submit the next job.
-	 * @param jobMap a mapping from Future to ResourceMetadata
-	 * @throws InterruptedException if interrupted while waiting
-	 * @return false if we should stop submitting jobs, true if we should continue
+	 * Registers the blockers of a resource and submits its job right away if none of them block it.
+	 * @param resource the resource
+	 * @throws ResourceException if a blocker does not have any resource metadata
 	 */
-	protected abstract boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException;
+	private void schedule(ResourceInfo resource) throws ResourceException {
+		Set<ResourceInfo> blockers = new HashSet<ResourceInfo>();
+		for (DependencyElement el : getBlockingElements(resource)) {
+			if (el.getResource() == null) {
+				throw new ResourceException("Unable to " + verb + " " + resource + " because the ResourceMetadata for " + el + " could not be located");
+			}
+			blockers.add(el.getResource());
+		}
+		synchronized (scheduleLock) {
+			pendingBlockers.put(resource, blockers);
+			for (ResourceInfo blocker : blockers) {
+				List<ResourceInfo> dependents = waiters.get(blocker);
+				if (dependents == null) {
+					dependents = new ArrayList<ResourceInfo>(2);
+					waiters.put(blocker, dependents);
+				}
+				dependents.add(resource);
+			}
+			for (Iterator<ResourceInfo> iter = blockers.iterator(); iter.hasNext();) {
+				ResourceInfo blocker = iter.next();
+				if (evaluate(resource, blocker)) {
+					iter.remove();
+				}
+			}
+			if (blockers.isEmpty()) {
+				submit(resource);
+			}
+		}
+	}
 	
 	/**
-	 * Waits until at least one job has been successfully completed before returning.
-	 * @param jobMap the job mapping
-	 * @throws InterruptedException if interrupted while waiting
+	 * Re-evaluates every resource that is waiting on the given blocker after it has transitioned, submitting the jobs
+	 * of those that are no longer blocked.
+	 * @param blocker the blocking resource
 	 */
-	protected boolean waitForFirstCompletion(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		// Wait until at least one of the jobs finished or all failed
-		Future<Boolean> future;
+	private void blockerChanged(ResourceInfo blocker) {
+		synchronized (scheduleLock) {
+			List<ResourceInfo> dependents = waiters.get(blocker);
+			if (dependents == null) {
+				return;
+			}
+			for (Iterator<ResourceInfo> iter = dependents.iterator(); iter.hasNext();) {
+				ResourceInfo resource = iter.next();
+				Set<ResourceInfo> blockers = pendingBlockers.get(resource);
+				if (blockers == null) {
+					// Already submitted or abandoned
+					iter.remove();
+				}
+				else if (evaluate(resource, blocker)) {
+					iter.remove();
+					blockers.remove(blocker);
+					if (blockers.isEmpty()) {
+						submit(resource);
+					}
+				}
+			}
+			if (dependents.isEmpty()) {
+				waiters.remove(blocker);
+			}
+		}
+	}
+	
+	/**
+	 * Evaluates a single blocker of a resource, recording any condition failures. If the blocker has reached a shutdown or failure
+	 * state without satisfying the resource, or was itself abandoned before the resource was scheduled, then the resource can never be
+	 * submitted and is abandoned.
+	 * @param resource the pending resource
+	 * @param blocker the blocker
+	 * @return true if the blocker is satisfied
+	 */
+	private boolean evaluate(ResourceInfo resource, ResourceInfo blocker) {
+		if (abandonedResources.contains(blocker)) {
+			abandon(resource, new DependencyConditionException(blocker, null, "Unable to " + verb + " " + resource + " because " + blocker + " was abandoned"));
+			return false;
+		}
 		try {
-			while (hasMoreJobs() && ((future = takeJob()) != null)) {
-				Boolean result;
-				try {
-					result = future.get();
-				} catch (ExecutionException ee) {
-					log.error("Unable to " + verb + " Resource[" + jobMap.get(future).getResourceName() + "]", ee.getCause());
-					result = Boolean.FALSE;
-				} catch (InterruptedException ie) {
-					// ignored - should never occur because Future must already be done!
-					log.warn("Interrupted while waiting for future to complete!");
-					result = Boolean.FALSE;
+			if (isSatisfied(resource, blocker)) {
+				return true;
+			}
+			if (isInState(blocker, ResourceState.SHUTDOWN_FORCEFULLY, ResourceState.SHUTDOWN_GRACEFULLY, ResourceState.FAILURE)) {
+				abandon(resource, new DependencyConditionException(blocker, null, "Unable to " + verb + " " + resource + " because " + blocker + " is no longer available"));
+			}
+		} catch (DependencyConditionException dce) {
+			if (dce.getResource() == null || !resourceManager.isWorkingOn(dce.getResource())) {
+				ResourceFailureTracker tracker = resourceFailures.get(resource);
+				if (tracker == null) {
+					tracker = new ResourceFailureTracker(resource);
+					resourceFailures.put(resource, tracker);
 				}
-				
-				if (result.booleanValue()) {
-					log.trace("Found a successfully " + ptVerb + " resource: " + jobMap.get(future) + "; continuing " + noun + " job submission");
-					return true;
+				tracker.failure(dce);
+				if (tracker.getFailureCount() == 1) {
+					// Wake up the action thread to start re-checking the blockers of the resource
+					completionQueue.offer(WAKE_UP);
 				}
-				else {
-					log.warn("Found a resource that failed to " + verb + ": " + jobMap.get(future));
+				if (tracker.getFailureCount() > FAILURE_THRESHOLD && failure == null) {
+					failure = new ResourceException("Unable to complete action " + getActionName(false) + " for " + resource, tracker.getFailureException());
+					completionQueue.offer(WAKE_UP);
 				}
 			}
-			log.warn("Did not find any more jobs completed; returning true after sleeping 250ms");
-			Thread.sleep(250);
+			else {
+				log.warn("Ignoring to determine submission of Resource [" + resource.getResourceName() + "] for Resource [" + dce.getResource().getResourceName() + "] due to it being worked");
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Submits the job for a resource whose blockers are all satisfied. If there is a submission order, then the resource is queued
+	 * until a job thread is available instead.
+	 * @param resource the resource
+	 */
+	private void submit(ResourceInfo resource) {
+		pendingBlockers.remove(resource);
+		if (readyQueue == null) {
+			submitScheduled(resource);
+		}
+		else {
+			readyQueue.add(resource);
+			submitReady();
+		}
+	}
+	
+	/**
+	 * Submits the queued ready resources in the submission order for as long as there are job threads available.
+	 */
+	private void submitReady() {
+		while (runningJobs < maxRunningJobs && !readyQueue.isEmpty()) {
+			submitScheduled(readyQueue.poll());
+		}
+	}
+	
+	/**
+	 * Submits the job for a scheduled resource. Once the job has completed successfully, the resource is scheduled again if it
+	 * has another stage to go through, and the next ready resource is submitted in its place. If another thread changed the state
+	 * of the resource before the job could, the resource is not done: it is scheduled again from its new state if this action still
+	 * applies to it, and fails otherwise.
+	 * @param resource the resource
+	 */
+	private void submitScheduled(final ResourceInfo resource) {
+		final Callable<Boolean> job = createJob(resource);
+		runningJobs++;
+		log.info("Submitting job to " + verb + " Resource [" + resource.getResourceName() + "]");
+		submitJob(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				try {
+					Boolean result = job.call();
+					if (result.booleanValue() && hasNextStage(resource)) {
+						schedule(resource);
+					}
+					return result;
+				} catch (ResourceSupersededException rse) {
+					if (!isApplicable(resource)) {
+						throw rse;
+					}
+					log.info(rse.getMessage() + ", scheduling it again to " + verb + " it from " + resource.getState());
+					synchronized (scheduleLock) {
+						Integer count = superseded.get(resource);
+						superseded.put(resource, (count == null ? 1 : count.intValue() + 1));
+					}
+					schedule(resource);
+					return Boolean.FALSE;
+				} finally {
+					synchronized (scheduleLock) {
+						runningJobs--;
+						if (readyQueue != null) {
+							submitReady();
+						}
+					}
+				}
+			}
+		}, resource);
+	}
+	
+	/**
+	 * Checks if the job of a resource that did not succeed was superseded by another state change and scheduled again, rather than
+	 * having failed, counting off one such job.
+	 * @param resource the resource
+	 * @return true if the job was superseded
+	 */
+	private boolean wasSuperseded(ResourceInfo resource) {
+		synchronized (scheduleLock) {
+			Integer count = superseded.get(resource);
+			if (count == null) {
+				return false;
+			}
+			if (count.intValue() == 1) {
+				superseded.remove(resource);
+			}
+			else {
+				superseded.put(resource, count.intValue() - 1);
+			}
 			return true;
-		} catch (InterruptedException ie) {
-			Thread.currentThread().interrupt();
-			log.warn("Interrupted while waiting for future(s) to finish for " + noun + " tasks", ie);
-			throw ie;
 		}
 	}
 	
 	/**
-	 * Gets the name of the thread for this action.
-	 * @return the thread name
+	 * Checks if a resource is waiting on its blockers or for a free job thread.
+	 * @param resource the resource
+	 * @return true if the resource is still scheduled
 	 */
-	public String getThreadName() {
-		return "Resource" + getActionName(false) + "Thread";
+	private boolean isScheduled(ResourceInfo resource) {
+		synchronized (scheduleLock) {
+			return pendingBlockers.containsKey(resource) || (readyQueue != null && readyQueue.contains(resource));
+		}
+	}
+	
+	/**
+	 * Gets the blockers of a resource that are not yet satisfied.
+	 * @param resource the resource
+	 * @return a copy of the blockers, which is empty once the resource has been submitted
+	 */
+	Set<ResourceInfo> getPendingBlockers(ResourceInfo resource) {
+		synchronized (scheduleLock) {
+			Set<ResourceInfo> blockers = pendingBlockers.get(resource);
+			return (blockers != null ? new HashSet<ResourceInfo>(blockers) : Collections.<ResourceInfo>emptySet());
+		}
+	}
+	
+	/**
+	 * Gets the number of jobs that the job executor can run at once.
+	 * @return the job concurrency
+	 */
+	private int getJobConcurrency() {
+		ExecutorService executor = resourceManager.getJobExecutor();
+		if (executor instanceof ThreadPoolExecutor) {
+			return Math.max(1, ((ThreadPoolExecutor)executor).getMaximumPoolSize());
+		}
+		return Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Gives up on a pending resource, along with every pending resource that is transitively waiting on it.
+	 * @param resource the resource
+	 * @param cause the reason the resource cannot be submitted
+	 */
+	private void abandon(ResourceInfo resource, DependencyConditionException cause) {
+		if (pendingBlockers.remove(resource) == null) {
+			return;
+		}
+		log.warn("Abandoning " + noun + " of " + resource + ": " + cause.getMessage());
+		ResourceFailureTracker tracker = resourceFailures.get(resource);
+		if (tracker == null) {
+			tracker = new ResourceFailureTracker(resource);
+			resourceFailures.put(resource, tracker);
+		}
+		tracker.failure(cause);
+		abandoned.add(resource);
+		abandonedResources.add(resource);
+		List<ResourceInfo> dependents = waiters.get(resource);
+		if (dependents != null) {
+			for (ResourceInfo dependent : new ArrayList<ResourceInfo>(dependents)) {
+				abandon(dependent, new DependencyConditionException(resource, null, "Unable to " + verb + " " + dependent + " because " + resource + " was abandoned"));
+			}
+		}
+		completionQueue.offer(WAKE_UP);
+	}
+	
+	/**
+	 * Re-evaluates the blockers of every pending resource that has recorded condition failures, which are counted towards the
+	 * failure threshold on every re-check rather than only on transitions.
+	 * @return true if any pending resource has recorded condition failures
+	 */
+	private boolean recheckFailing() {
+		synchronized (scheduleLock) {
+			boolean failing = false;
+			for (ResourceInfo resource : new ArrayList<ResourceInfo>(resourceFailures.keySet())) {
+				Set<ResourceInfo> blockers = pendingBlockers.get(resource);
+				if (blockers == null) {
+					continue;
+				}
+				failing = true;
+				for (Iterator<ResourceInfo> iter = blockers.iterator(); iter.hasNext();) {
+					if (evaluate(resource, iter.next())) {
+						iter.remove();
+					}
+				}
+				if (blockers.isEmpty()) {
+					submit(resource);
+				}
+			}
+			return failing;
+		}
+	}
+	
+	/**
+	 * Re-evaluates all blockers of every pending resource. This is only a safety net in case a transition was not observed.
+	 */
+	private void recheckPending() {
+		synchronized (scheduleLock) {
+			for (ResourceInfo blocker : new ArrayList<ResourceInfo>(waiters.keySet())) {
+				blockerChanged(blocker);
+			}
+		}
+	}
+	
+	/**
+	 * Reports the resources that were abandoned since the last call, outside of the schedule lock, since the callback may change
+	 * the system state.
+	 */
+	private void reportAbandoned() {
+		List<ResourceInfo> failed;
+		synchronized (scheduleLock) {
+			if (abandoned.isEmpty()) {
+				return;
+			}
+			failed = new ArrayList<ResourceInfo>(abandoned);
+			abandoned.clear();
+		}
+		for (ResourceInfo resource : failed) {
+			failedResource(resource);
+		}
+	}
+	
+	/**
+	 * Checks if any pending resource has recorded condition failures.
+	 * @return true if the blockers of a pending resource have failed their conditions
+	 */
+	private boolean hasFailingBlockers() {
+		synchronized (scheduleLock) {
+			for (ResourceInfo resource : resourceFailures.keySet()) {
+				if (pendingBlockers.containsKey(resource)) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 	
 	/**
@@ -249,7 +643,17 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	 * @return true if more jobs have yet to be submitted
 	 */
 	public boolean moreToSubmit() {
-		return !resources.isEmpty();
+		synchronized (scheduleLock) {
+			return !pendingBlockers.isEmpty() || (readyQueue != null && !readyQueue.isEmpty());
+		}
+	}
+	
+	/**
+	 * Gets the name of the thread for this action.
+	 * @return the thread name
+	 */
+	public String getThreadName() {
+		return "Resource" + getActionName(false) + "Thread";
 	}
 	
 	/**
@@ -257,50 +661,90 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	 * @return true if more unfinished jobs exist, false otherwise
 	 */
 	public boolean hasMoreJobs() {
-		return (finished < started);
+		return (finished < started.get());
 	}
 	
 	/**
 	 * Gets the next job Future from the completion queue. If there is not one yet completed, then this will block until
-	 * another one has finished.
-	 * @return the next completed job Future
+	 * another one has finished or the timeout elapses.
+	 * @param timeout the maximum time to wait
+	 * @param unit the time unit
+	 * @return the next completed job Future, or <code>null</code> if none completed
 	 * @throws InterruptedException if interrupted while waiting
 	 */
-	protected Future<Boolean> takeJob() throws InterruptedException {
-		Future<Boolean> job = completionQueue.take();
+	protected Future<Boolean> pollJob(long timeout, TimeUnit unit) throws InterruptedException {
+		Future<Boolean> job = completionQueue.poll(timeout, unit);
+		if (job == null || job == WAKE_UP) {
+			return null;
+		}
 		finished++;
 		ResourceInfo resource = jobMap.get(job);
-		if (resource != null) {
+		if (resource != null && !isScheduled(resource)) {
 			resourceManager.finishedWith(resource);
 		}
 		return job;
 	}
 	
 	/**
-	 * Waits for all jobs to complete, successfully or in error.
+	 * Waits for jobs to complete, successfully or in error, until every applicable resource has either been acted upon or abandoned.
+	 * @throws ResourceException if the action has failed
 	 * @throws InterruptedException if interrupted while waiting
 	 */
-	protected void waitUntilFinished(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		Future<Boolean> future;
-		while (hasMoreJobs() && ((future = takeJob()) != null)) {
+	protected void waitUntilFinished() throws ResourceException, InterruptedException {
+		// Condition failures are not announced by events, so the blockers of resources that have any are re-checked on a short timer
+		boolean failing = hasFailingBlockers();
+		long nextFailureRecheck = System.currentTimeMillis() + FAILURE_RECHECK_MILLIS;
+		while (moreToSubmit() || hasMoreJobs()) {
+			reportAbandoned();
+			if (failure != null) {
+				throw failure;
+			}
+			if (failing && System.currentTimeMillis() >= nextFailureRecheck) {
+				failing = recheckFailing();
+				nextFailureRecheck = System.currentTimeMillis() + FAILURE_RECHECK_MILLIS;
+				continue;
+			}
+			Future<Boolean> future = pollJob((failing ? Math.max(1, nextFailureRecheck - System.currentTimeMillis()) : IDLE_RECHECK_MILLIS), TimeUnit.MILLISECONDS);
+			if (!failing && hasFailingBlockers()) {
+				failing = true;
+				nextFailureRecheck = System.currentTimeMillis() + FAILURE_RECHECK_MILLIS;
+			}
+			if (future == null) {
+				if (failing) {
+					continue;
+				}
+				if (!hasMoreJobs() && moreToSubmit()) {
+					synchronized (scheduleLock) {
+						log.info("Waiting for blockers of the remaining " + pendingBlockers.size() + " resources: " + pendingBlockers);
+					}
+					recheckPending();
+				}
+				continue;
+			}
+			
 			Boolean result;
 			try {
 				result = future.get();
 			} catch (ExecutionException ee) {
-				log.error("Unable to " + verb + " " + jobMap.get(future), ee);
-				result = Boolean.FALSE;
-			} catch (InterruptedException ie) {
-				// ignored - should never occur because Future must already be done!
+				log.error("Unable to " + verb + " " + jobMap.get(future), ee.getCause());
 				result = Boolean.FALSE;
 			}
 			
 			if (result.booleanValue()) {
-				log.trace("Found a successfully " + ptVerb + " resource: " + jobMap.get(future) + "; continuing " + noun + " job submission");
+				log.trace("Found a successfully " + ptVerb + " resource: " + jobMap.get(future));
+			}
+			else if (wasSuperseded(jobMap.get(future)) || isScheduled(jobMap.get(future))) {
+				log.debug("Found a resource that was scheduled again to " + verb + ": " + jobMap.get(future));
 			}
 			else {
 				log.warn("Found a resource that failed to " + verb + ": " + jobMap.get(future));
+				failedResource(jobMap.get(future));
 			}
 		}
+		reportAbandoned();
+		if (failure != null) {
+			throw failure;
+		}
 	}
 	
 	@Override
@@ -310,7 +754,7 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 			populateResources();
 			
 			for (ResourceInfo resource : resources) {
-				resourceManager.workingOn(resource);
+				resourceManager.workingOn(resource, this);
 			}
 			
 			try {
@@ -325,78 +769,28 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 			// Invoke callback if overridden
 			beginningAction();
 			
-			// 1) We want to submit all of the resources that are presently stoppable
-			// 2) We want to wait for one or more of those futures to finish successfully
-			// 2a) Next, we want to filter through the list again for resources that can NOW be shut down
-			// 3) Continue this loop until all resources are shut down
-			Set<ResourceInfo> continuableResources = new HashSet<ResourceInfo>();
-			
-			while (!resources.isEmpty()) {
-				for (ListIterator<ResourceInfo> iter = resources.listIterator(); iter.hasNext();) {
-					ResourceInfo resource = iter.next();
-					try {
-						if (canSubmit(resource)) {
-							continuableResources.add(resource);
-							iter.remove();
-						}
-					} catch (DependencyConditionException dce) {
-						if (!resourceManager.isWorkingOn(dce.getResource())) {
-							ResourceFailureTracker tracker = resourceFailures.get(resource);
-							if (tracker == null) {
-								tracker = new ResourceFailureTracker(resource);
-								resourceFailures.put(resource, tracker);
-							}
-							tracker.failure(dce);
-						}
-						else {
-							log.warn("Ignoring to determine submission of Resource [" + resource.getResourceName() + "] for Resource [" + dce.getResource().getResourceName() + "] due to it being worked");
-						}
-					}
-				}
-				
-				// Accumulate a list of resources that we can continue to perform our action on
-				List<String> resourceNames = new ArrayList<String>();
-				for (final ResourceInfo resource : continuableResources) {
-					// Submit a job for that resource and map its Future to the resource
-					jobMap.put(startupService.submit(createJob(resource)), resource);
-					resourceNames.add(resource.getResourceName());
-					
-					started++;
-				}
-				if (!resourceNames.isEmpty()) {
-					log.info("Submitting job to " + verb + " resources: " + resourceNames);
-				}
-				else {
-					log.info("Waiting another cycle to submit the remaining " + resources.size() + " resources");
-				}
-				
-				// Clear the startable resources as we have already tried to stop them
-				continuableResources.clear();
-				
-				// Check if we have more jobs to submit
-				if (moreToSubmit()) {
-					try {
-						// Wait until we can submit another job
-						waitToSubmit(jobMap);
-						
-						// Check if we have failed
-						ResourceFailureTracker tracker = getIfFailuresExceededThreshold(5);
-						if (tracker != null) {
-							throw new ResourceException("Unable to complete action " + getActionName(false) + " for " + resources, tracker.getFailureException());
-						}
-					} catch (InterruptedException ie) {
-						Thread.currentThread().interrupt();
-						log.warn("Interrupted while waiting to submit next job!", ie);
-						break;
-					}
+			Comparator<ResourceInfo> order = getSubmissionOrder();
+			if (order != null) {
+				Collections.sort(resources, order);
+				synchronized (scheduleLock) {
+					readyQueue = new PriorityQueue<ResourceInfo>(Math.max(1, resources.size()), order);
+					maxRunningJobs = getJobConcurrency();
 				}
 			}
 			
+			// Listen for transitions before evaluating blockers so that none can be missed; every resource whose blockers are
+			// already satisfied is submitted right away and the rest are submitted by the listener as their last blocker transitions
+			resourceManager.addResourceListener(readinessListener, readinessListener);
 			try {
-				waitUntilFinished(jobMap);
+				for (ResourceInfo resource : resources) {
+					schedule(resource);
+				}
+				waitUntilFinished();
 			} catch (InterruptedException ie) {
 				Thread.currentThread().interrupt();
 				log.warn("Interrupted while waiting for future(s) to finish for " + noun + " tasks", ie);
+			} finally {
+				resourceManager.removeResourceListener(readinessListener, readinessListener);
 			}
 			
 			return null;
@@ -415,10 +809,12 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 	 * @return true if exceeded by any resource
 	 */
 	public ResourceFailureTracker getIfFailuresExceededThreshold(int threshold) {
-		for (Map.Entry<ResourceInfo, ResourceFailureTracker> entry : resourceFailures.entrySet()) {
-			if (entry.getValue().getFailureCount() > threshold) {
-				log.info("Resource [" + entry.getKey() + "] has failed to perform a state change " + entry.getValue().getFailureCount() + " times");
-				return entry.getValue();
+		synchronized (scheduleLock) {
+			for (Map.Entry<ResourceInfo, ResourceFailureTracker> entry : resourceFailures.entrySet()) {
+				if (entry.getValue().getFailureCount() > threshold) {
+					log.info("Resource [" + entry.getKey() + "] has failed to perform a state change " + entry.getValue().getFailureCount() + " times");
+					return entry.getValue();
+				}
 			}
 		}
 		return null;
@@ -451,6 +847,32 @@ public abstract class AbstractResourceAction implements Callable<Void>, Validata
 		return latch.await(timeout, unit);
 	}
 	
+	/**
+	 * Synchronous listener that re-evaluates the resources waiting on a blocker whenever the blocker transitions, so that
+	 * jobs are submitted on the transitioning thread itself.
+	 * 
+	 * @author dgarson
+	 */
+	@SynchronousInvocation
+	private class ReadinessListener implements FilteredResourceListener {
+		@Override
+		public boolean accepts(ResourceInfo info) {
+			synchronized (scheduleLock) {
+				return waiters.containsKey(info);
+			}
+		}
+		
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			blockerChanged(event.getInfo());
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			// The state change that follows a failure is handled by onResourceEvent
+		}
+	}
+	
 	/**
 	 * Static inner class that encapsulates tracking information for resource failures that have occurred within 
 	 * this action.
@@ -1,7 +1,9 @@
 package com.mprew.ec2.resources;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,25 +16,26 @@ import org.slf4j.LoggerFactory;
 
 import com.mprew.ec2.resources.startup.DependencyElement;
 import com.mprew.ec2.resources.startup.DependencyException;
-import com.mprew.ec2.resources.startup.DependencySatisfaction;
 
 /**
- * Rudimentary implementation of a dependency calculator that dynamically orders dependencies for startup
- * and shutdown, as well as constructing a dependency graph in the meantime which is used for moving resources
- * into different states together.
- * 
+ * Dependency calculator that maintains an indexed dependency graph (DAG) of all registered resources and orders them
+ * for startup and shutdown using a Kahn-style topological sort. The ordering is computed lazily in O(V+E) whenever the
+ * graph has changed, and every element is assigned its startup rank and level (the length of the longest dependency chain
+ * beneath it), which is used for moving resources into different states together.
+ *
  * @author dgarson
  */
 class DependencyCalculator implements Iterable<DependencyElement> {
 	
 	private static final Logger log = LoggerFactory.getLogger(DependencyCalculator.class);
 	
-	private Map<String, List<String>> dependencies;
-	private Map<String, DependencyElement> elements;
-	private DependencyElement first;
-	private DependencyElement last;
-	
-	private Set<String> constructingElements = new HashSet<String>();
+	private final Map<String, DependencyElement> elements;
+	/** All elements in the order they were first declared or referenced, so that the computed order is deterministic */
+	private final List<DependencyElement> elementList;
+	/** Names of resources whose dependencies have already been declared */
+	private final Set<String> declaredElements;
+	/** The last computed startup order */
+	private List<DependencyElement> order = Collections.emptyList();
 	private boolean startupComputed = false;
 	
 	/**
@@ -52,59 +55,67 @@ class DependencyCalculator implements Iterable<DependencyElement> {
 	 * @see #addDependency(String, Collection)
 	 */
 	public DependencyCalculator() {
-		dependencies = new HashMap<String, List<String>>();
 		elements = new HashMap<String, DependencyElement>();
+		elementList = new ArrayList<DependencyElement>();
+		declaredElements = new HashSet<String>();
 	}
 	
-	private void addDependency(String name, Collection<String> deps, ResourceInfo metadata) throws DependencyException {
-		if (constructingElements.contains(name)) {
-			throw new DependencyException("Circular dependency on " + name);
+	private synchronized void addDependency(String name, Collection<String> deps, ResourceInfo metadata) throws DependencyException {
+		if (declaredElements.contains(name)) {
+			throw new DependencyException("Dependencies of " + name + " have already been declared");
 		}
-		constructingElements.add(name);
 		
-		// This will return the existing element if it already was created
+		// This will return the existing element if it was already referenced by another element
 		DependencyElement el = forElement(name);
-		if (metadata != null) {
-			el.setResource(metadata);
-			((ResourceMetadata)metadata).setElement(el);
-		}
-		dependencies.put(name, new ArrayList<String>(deps));
+		List<DependencyElement> added = new ArrayList<DependencyElement>(deps.size());
 		for (String depName : deps) {
-			/*
-			if (constructingElements.contains(depName)) {
-				throw new DependencyException("Circular dependency on " + name);
-			}
-			else */
-			if (elements.containsKey(depName)) {
-				DependencyElement depEl = elements.get(depName);
-				el.addDependency(depEl);
-				log.info("Added existing element as dependency for [" + name + "]: " + depEl);
+			DependencyElement depEl = forElement(depName);
+			if (depEl == el) {
+				throw new DependencyException("Cyclic dependency on " + name);
 			}
-			else {
-				DependencyElement depEl = forElement(depName);
+			if (!el.getDependencies().contains(depEl)) {
 				el.addDependency(depEl);
-				log.info("Added created element as dependency for [" + name + "]: " + depEl);
+				added.add(depEl);
+				log.debug("Added element as dependency for [" + name + "]: " + depEl);
 			}
 		}
 		
-		// Keep shifting this element up until all of its dependencies are met
-		while (true) {
-			DependencySatisfaction ds = el.satisfied();
-			if (ds.isSatisfied()) {
-				break;
+		// A cycle can only have been introduced if something already depends on this element and one of the new dependencies
+		// transitively depends on it in turn
+		if (!el.getReferences().isEmpty() && !added.isEmpty() && isReachable(added, el)) {
+			for (DependencyElement depEl : added) {
+				el.removeDependency(depEl);
 			}
-			else if (!ds.isSatisfied() && ds.getException() != null) {
-				throw ds.getException();
+			throw new DependencyException("Cyclic dependency on " + name);
+		}
+		
+		if (metadata != null) {
+			el.setResource(metadata);
+			((ResourceMetadata)metadata).setElement(el);
+		}
+		declaredElements.add(name);
+		startupComputed = false;
+	}
+	
+	/**
+	 * Checks whether the target element can be reached by following the dependencies of any of the starting elements.
+	 * @param start the starting elements
+	 * @param target the element to search for
+	 * @return true if the target is a transitive dependency of any starting element
+	 */
+	private boolean isReachable(Collection<DependencyElement> start, DependencyElement target) {
+		Set<DependencyElement> visited = new HashSet<DependencyElement>();
+		ArrayDeque<DependencyElement> stack = new ArrayDeque<DependencyElement>(start);
+		while (!stack.isEmpty()) {
+			DependencyElement el = stack.pop();
+			if (el == target) {
+				return true;
 			}
-			DependencyElement missingDep = ds.getMissingDependency();
-			while (el.before(missingDep)) {
-				shiftUp(el);
-				
-				if (!el.satisfyingReferences()) {
-					throw new DependencyException("Unable to shift dependencies to accomodate dependency specifications; fix dependencies for resource: " + el.getName());
-				}
+			if (visited.add(el)) {
+				stack.addAll(el.getDependencies());
 			}
 		}
+		return false;
 	}
 	
 	/**
@@ -126,66 +137,64 @@ class DependencyCalculator implements Iterable<DependencyElement> {
 		addDependency(resource.getResourceName(), resource.getDependencyNames(), resource);
 	}
 	
-	private void shiftUp(DependencyElement el) {
-		if (el.isLast()) {
-			return;
-		}
-		el.shiftUp();
-		if (el.isLast()) {
-			last = el;
-		}
-	}
-	
-	private void shiftDown(DependencyElement el) {
-		if (el.isFirst()) {
-			return;
-		}
-		el.shiftDown();
-		if (el.isFirst()) {
-			first = el;
-		}
-	}
-	
 	private DependencyElement forElement(String name) {
-		if (elements.containsKey(name)) {
-			return elements.get(name);
+		DependencyElement el = elements.get(name);
+		if (el == null) {
+			el = new DependencyElement(name, elementList.size());
+			log.debug("Created new element: " + el);
+			elements.put(name, el);
+			elementList.add(el);
 		}
-		DependencyElement el = new DependencyElement(name, last);
-		log.info("Created new element: " + el);
-		if (last == null) {
-			last = el;
-			first = el;
-		}
-		else {
-			last.setNext(el);
-			last = el;
-		}
-		elements.put(name, el);
 		return el;
 	}
 	
 	/**
-	 * Computes the final startup order of all of the registered resources and dependencies.
-	 * @throws DependencyException on any exceptions
+	 * Computes the final startup order of all of the registered resources and dependencies, assigning the startup rank and
+	 * level of every element. This is a no-op if the graph has not changed since the last computation.
+	 * @throws DependencyException if the dependency graph contains a cycle
 	 */
-	public void computeStartup() throws DependencyException {
+	public synchronized void computeStartup() throws DependencyException {
 		if (startupComputed) {
 			return;
 		}
-		DependencyElement el = last;
-		while (el != null) {
-			DependencyElement next = el.previous();
-			DependencySatisfaction ds = el.satisfied();
-			while (!ds.isSatisfied()) {
-				if (el.isFirst()) {
-					throw new DependencyException("Unable to satisfy dependencies of Resource [" + el.getName() + "]", ds.getException());
+		int count = elementList.size();
+		int[] pending = new int[count];
+		int[] levels = new int[count];
+		ArrayDeque<DependencyElement> ready = new ArrayDeque<DependencyElement>();
+		for (DependencyElement el : elementList) {
+			pending[el.getIndex()] = el.getDependencies().size();
+			if (pending[el.getIndex()] == 0) {
+				ready.add(el);
+			}
+		}
+		
+		List<DependencyElement> newOrder = new ArrayList<DependencyElement>(count);
+		while (!ready.isEmpty()) {
+			DependencyElement el = ready.poll();
+			int level = levels[el.getIndex()];
+			el.setOrder(newOrder.size(), level);
+			newOrder.add(el);
+			for (DependencyElement refEl : el.getReferences()) {
+				int refIndex = refEl.getIndex();
+				if (levels[refIndex] <= level) {
+					levels[refIndex] = level + 1;
+				}
+				if (--pending[refIndex] == 0) {
+					ready.add(refEl);
+				}
+			}
+		}
+		
+		if (newOrder.size() < count) {
+			List<String> cyclic = new ArrayList<String>();
+			for (DependencyElement el : elementList) {
+				if (pending[el.getIndex()] > 0) {
+					cyclic.add(el.getName());
 				}
-				shiftDown(el);
-				ds = el.satisfied();
 			}
-			
-			el = next;
+			throw new DependencyException("Unable to satisfy dependencies of Resources " + cyclic + " due to a dependency cycle");
 		}
+		order = Collections.unmodifiableList(newOrder);
 		startupComputed = true;
 	}
 	
@@ -195,29 +204,29 @@ class DependencyCalculator implements Iterable<DependencyElement> {
 	 * @param includeConcurrent if true, include resources that can be concurrently started, otherwise exclude them
 	 * @return the startup order of resource names
 	 */
-	public List<ResourceMetadata> getStartupOrder(boolean includeConcurrent) throws DependencyException {
+	public synchronized List<ResourceMetadata> getStartupOrder(boolean includeConcurrent) throws DependencyException {
 		computeStartup();
-		List<ResourceMetadata> order = new ArrayList<ResourceMetadata>();
-		for (DependencyElement el = last; el != null; el = el.previous()) {
+		List<ResourceMetadata> startupOrder = new ArrayList<ResourceMetadata>(order.size());
+		for (DependencyElement el : order) {
 			if (el.getResource() == null) {
 				throw new DependencyException("Could not locate ResourceMetadata for " + el);
 			}
 			if (el.getDependencies().isEmpty() && !includeConcurrent) {
 				continue;
 			}
-			order.add(0, (ResourceMetadata)el.getResource());
+			startupOrder.add((ResourceMetadata)el.getResource());
 		}
-		return order;
+		return startupOrder;
 	}
 	
 	/**
 	 * Gets a set of resources without their own dependencies.
-	 * @return dependency-less resources 
+	 * @return dependency-less resources
 	 * @throws DependencyException if a DependencyElement does not have any resource metadata
 	 */
-	public Set<ResourceMetadata> getResourcesWithoutDependencies() throws DependencyException {
+	public synchronized Set<ResourceMetadata> getResourcesWithoutDependencies() throws DependencyException {
 		Set<ResourceMetadata> rwd = new HashSet<ResourceMetadata>();
-		for (DependencyElement el : elements.values()) {
+		for (DependencyElement el : elementList) {
 			if (el.getDependencies().isEmpty()) {
 				if (el.getResource() == null) {
 					throw new DependencyException("Could not locate ResourceMetadata for " + el);
@@ -233,9 +242,9 @@ class DependencyCalculator implements Iterable<DependencyElement> {
 	 * @return unreferenced resources
 	 * @throws DependencyException if a DependencyElement does not have any resource metadata
 	 */
-	public Set<ResourceMetadata> getUnreferencedResources() throws DependencyException {
+	public synchronized Set<ResourceMetadata> getUnreferencedResources() throws DependencyException {
 		Set<ResourceMetadata> unref = new HashSet<ResourceMetadata>();
-		for (DependencyElement el : elements.values()) {
+		for (DependencyElement el : elementList) {
 			if (el.getReferences().isEmpty()) {
 				if (el.getResource() == null) {
 					throw new DependencyException("Could not locate ResourceMetadata for " + el);
@@ -246,34 +255,17 @@ class DependencyCalculator implements Iterable<DependencyElement> {
 		return unref;
 	}
 	
+	/**
+	 * Iterates over the elements in their computed startup order.
+	 * @throws IllegalStateException if the startup order cannot be computed
+	 */
 	@Override
-	public Iterator<DependencyElement> iterator() {
-		return new DependencyIterator(first);
-	}
-	
-	private static class DependencyIterator implements Iterator<DependencyElement> {
-		private DependencyElement current = null;
-		private DependencyElement next;
-		
-		public DependencyIterator(DependencyElement first) {
-			next = first;
-		}
-		
-		@Override
-		public boolean hasNext() {
-			return (next != null);
-		}
-		
-		@Override
-		public DependencyElement next() {
-			current = next;
-			next = next.next();
-			return current;
-		}
-		
-		@Override
-		public void remove() {
-			throw new UnsupportedOperationException("Unable to remove DependencyElement(s)");
+	public synchronized Iterator<DependencyElement> iterator() {
+		try {
+			computeStartup();
+		} catch (DependencyException de) {
+			throw new IllegalStateException("Unable to compute startup order", de);
 		}
+		return order.iterator();
 	}
-}
\ No newline at end of file
+}
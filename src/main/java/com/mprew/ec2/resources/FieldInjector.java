@@ -0,0 +1,89 @@
+package com.mprew.ec2.resources;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes an injected field of a resource through a VarHandle that is created once from the Field, instead of using
+ * reflection every time the resource is injected. Final fields, and fields that a VarHandle can not be created for, are accessed
+ * reflectively instead.
+ *
+ * @author dgarson
+ */
+final class FieldInjector {
+	
+	private final Field field;
+	private final VarHandle handle;
+	
+	private FieldInjector(Field field, VarHandle handle) {
+		this.field = field;
+		this.handle = handle;
+	}
+	
+	/**
+	 * Creates an injector for a field that has already been made accessible.
+	 * @param field the field
+	 * @return the injector
+	 */
+	static FieldInjector compile(Field field) {
+		VarHandle handle = null;
+		if (!Modifier.isFinal(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+			try {
+				handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectVarHandle(field);
+			} catch (IllegalAccessException iae) {
+				handle = null;
+			} catch (SecurityException se) {
+				handle = null;
+			}
+		}
+		return new FieldInjector(field, handle);
+	}
+	
+	Field getField() {
+		return field;
+	}
+	
+	String getName() {
+		return field.getName();
+	}
+	
+	Class<?> getType() {
+		return field.getType();
+	}
+	
+	/**
+	 * Gets the value of the field.
+	 * @param bean the bean
+	 * @return the value
+	 * @throws IllegalAccessException if the field is accessed reflectively and is not accessible
+	 */
+	Object get(Object bean) throws IllegalAccessException {
+		if (handle == null) {
+			return field.get(bean);
+		}
+		return handle.get(bean);
+	}
+	
+	/**
+	 * Sets the value of the field.
+	 * @param bean the bean
+	 * @param value the value
+	 * @throws IllegalAccessException if the field is accessed reflectively and is not accessible
+	 * @throws IllegalArgumentException if the value is not of the type of the field
+	 */
+	void set(Object bean, Object value) throws IllegalAccessException, IllegalArgumentException {
+		if (handle == null) {
+			field.set(bean, value);
+			return;
+		}
+		try {
+			handle.set(bean, value);
+		} catch (ClassCastException cce) {
+			throw new IllegalArgumentException("Can not set " + field + " to " + (value != null ? value.getClass().getName() : "null"), cce);
+		} catch (NullPointerException npe) {
+			throw new IllegalArgumentException("Can not set primitive " + field + " to null", npe);
+		}
+	}
+}
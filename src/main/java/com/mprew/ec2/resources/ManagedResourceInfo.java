@@ -3,6 +3,7 @@ package com.mprew.ec2.resources;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import com.mprew.ec2.resources.action.ResourceAction;
 import com.mprew.ec2.resources.startup.DependencyElement;
@@ -49,6 +50,11 @@ public class ManagedResourceInfo implements ResourceInfo {
 		return true;
 	}
 	
+	@Override
+	public boolean waitForState(ResourceState state, long timeout, TimeUnit unit) throws InterruptedException {
+		return true;
+	}
+	
 	@Override
 	public Collection<String> getDependencyNames() {
 		return Collections.emptyList();
@@ -0,0 +1,117 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The resource fields that could not be injected because no resource of their type was registered yet, indexed by the type of the
+ * field. A newly registered resource satisfies the injections for each of the classes and interfaces its bean is an instance of, so
+ * resolving them only looks up those types instead of checking every pending type against the bean.
+ *
+ * @author dgarson
+ */
+final class PendingInjections {
+	
+	private final Map<Class<?>, Injections> injectionsByType = new HashMap<Class<?>, Injections>();
+	
+	/**
+	 * Records a resource field that is waiting for a resource of its type to be registered.
+	 * @param resourceType the type of resource the field is injected with
+	 * @param referer the resource that declares the field
+	 * @param field the field
+	 */
+	synchronized void add(Class<?> resourceType, ResourceMetadata referer, Field field) {
+		Injections injs = injectionsByType.get(resourceType);
+		if (injs == null) {
+			injs = new Injections(resourceType);
+			injectionsByType.put(resourceType, injs);
+		}
+		injs.addInjection(referer, field);
+	}
+	
+	/**
+	 * Removes the injections that a newly registered resource satisfies.
+	 * @param beanClass the bean class of the registered resource
+	 * @return the injections for every type the bean is an instance of
+	 */
+	synchronized List<Injections> resolve(Class<?> beanClass) {
+		if (injectionsByType.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Injections> resolved = null;
+		for (Class<?> type : ResourceTypeIndex.getAssignableTypes(beanClass)) {
+			Injections injs = injectionsByType.remove(type);
+			if (injs != null) {
+				if (resolved == null) {
+					resolved = new ArrayList<Injections>(1);
+				}
+				resolved.add(injs);
+			}
+		}
+		return (resolved != null ? resolved : Collections.<Injections>emptyList());
+	}
+	
+	/**
+	 * Gets all of the injections that are still waiting for a resource.
+	 * @return a copy of the pending injections
+	 */
+	synchronized List<Injections> getAll() {
+		return new ArrayList<Injections>(injectionsByType.values());
+	}
+	
+	synchronized boolean isEmpty() {
+		return injectionsByType.isEmpty();
+	}
+	
+	/**
+	 * Class that encapsulates future injections that should be performed for a particular resource type.
+	 * 
+	 * @author dgarson
+	 */
+	static class Injections
+	{
+		private final Class<?> resourceType;
+		private final Map<ResourceMetadata, Set<Field>> fieldsByReferer = new LinkedHashMap<ResourceMetadata, Set<Field>>();
+		
+		Injections(Class<?> resourceType) {
+			this.resourceType = resourceType;
+		}
+		
+		public Class<?> getResourceType() {
+			return resourceType;
+		}
+		
+		void addInjection(ResourceMetadata referer, Field field) {
+			Set<Field> fields = fieldsByReferer.get(referer);
+			if (fields == null) {
+				fields = new LinkedHashSet<Field>();
+				fieldsByReferer.put(referer, fields);
+			}
+			fields.add(field);
+		}
+		
+		/**
+		 * Gets the resources with fields waiting for this type.
+		 * @return the referring resources
+		 */
+		public Set<ResourceMetadata> getReferers() {
+			return fieldsByReferer.keySet();
+		}
+		
+		/**
+		 * Gets the fields of a resource that are waiting for this type.
+		 * @param referer the referring resource
+		 * @return the fields
+		 */
+		public Set<Field> getFields(ResourceMetadata referer) {
+			return fieldsByReferer.get(referer);
+		}
+	}
+}
@@ -0,0 +1,436 @@
+package com.mprew.ec2.resources;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import com.mprew.ec2.resources.annotation.ContextProperty;
+import com.mprew.ec2.resources.annotation.ContextResource;
+import com.mprew.ec2.resources.annotation.Dependencies;
+import com.mprew.ec2.resources.annotation.Dependency;
+import com.mprew.ec2.resources.annotation.Initialize;
+import com.mprew.ec2.resources.annotation.Kill;
+import com.mprew.ec2.resources.annotation.Pause;
+import com.mprew.ec2.resources.annotation.Publish;
+import com.mprew.ec2.resources.annotation.Resume;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.ResourceContext;
+import com.mprew.ec2.resources.context.ResourceContextAware;
+import com.mprew.ec2.resources.processor.GeneratedResourceDescriptor;
+
+/**
+ * Immutable description of a resource class: its lifecycle methods and their compiled invokers, the fields that are injected and the
+ * dependencies it declares. These are read from the GeneratedResourceDescriptor of the class when the ResourceTypeProcessor generated
+ * one at compile time, and otherwise the class hierarchy is scanned. Either way this only happens the first time a class is described,
+ * after which the descriptor is cached in a ClassValue and shared by every ResourceMetadata for that class.
+ *
+ * @author dgarson
+ */
+final class ResourceDescriptor {
+	
+	private static final Logger log = LoggerFactory.getLogger(ResourceDescriptor.class);
+	
+	/** Descriptors including the annotated lifecycle methods */
+	private static final ClassValue<ResourceDescriptor> descriptors = new ClassValue<ResourceDescriptor>(){
+		@Override
+		protected ResourceDescriptor computeValue(Class<?> beanClass) {
+			return new ResourceDescriptor(beanClass, true);
+		}
+	};
+	/** Descriptors without any lifecycle methods, for resources whose start and stop methods are given by name */
+	private static final ClassValue<ResourceDescriptor> fieldDescriptors = new ClassValue<ResourceDescriptor>(){
+		@Override
+		protected ResourceDescriptor computeValue(Class<?> beanClass) {
+			return new ResourceDescriptor(beanClass, false);
+		}
+	};
+	
+	final Class<?> beanClass;
+	final Method initMethod;
+	final Method startMethod;
+	final Method stopMethod;
+	final Method killMethod;
+	final Method publishMethod;
+	final Method pauseMethod;
+	final Method resumeMethod;
+	final Method resourceContextMethod;
+	final ResourceMethodInvoker initInvoker;
+	final ResourceMethodInvoker startInvoker;
+	final ResourceMethodInvoker stopInvoker;
+	final ResourceMethodInvoker killInvoker;
+	final ResourceMethodInvoker publishInvoker;
+	final ResourceMethodInvoker pauseInvoker;
+	final ResourceMethodInvoker resumeInvoker;
+	final ResourceMethodInvoker resourceContextInvoker;
+	/** The fields injected with context properties that are due in each resource state, by state ordinal */
+	private final PropertyInjection[][] propertyInjections;
+	/** The fields injected with other resources */
+	final ResourceInjection[] resourceInjections;
+	final List<String> declaredDependencies;
+	
+	/**
+	 * Gets the descriptor of a resource class, with its annotated lifecycle methods.
+	 * @param beanClass the resource class
+	 * @return the shared descriptor
+	 * @throws IllegalArgumentException if a lifecycle method is invalid
+	 */
+	static ResourceDescriptor forClass(Class<?> beanClass) throws IllegalArgumentException {
+		return descriptors.get(beanClass);
+	}
+	
+	/**
+	 * Gets a descriptor of a resource class that uses the given start and stop methods instead of its annotated lifecycle methods.
+	 * @param beanClass the resource class
+	 * @param startMethod the start method
+	 * @param stopMethod the stop method
+	 * @return the descriptor
+	 */
+	static ResourceDescriptor forMethods(Class<?> beanClass, Method startMethod, Method stopMethod) {
+		return new ResourceDescriptor(fieldDescriptors.get(beanClass), startMethod, stopMethod);
+	}
+	
+	private ResourceDescriptor(Class<?> beanClass, boolean withMethods) {
+		this.beanClass = beanClass;
+		Method[] methods = new Method[ResourceMethod.values().length];
+		Map<Field, ContextProperty> injectable = new HashMap<Field, ContextProperty>();
+		Set<Field> resources = new HashSet<Field>();
+		String[] dependencies = null;
+		try {
+			GeneratedResourceDescriptor generated = GeneratedResourceDescriptor.forClass(beanClass);
+			if (generated != null) {
+				if (withMethods) {
+					readMethods(generated, methods);
+				}
+				readFields(generated, injectable, resources);
+				dependencies = generated.getDependencyNames();
+			}
+		} catch (ReflectiveOperationException roe) {
+			log.warn("Generated descriptor does not match " + beanClass + ", scanning the class instead", roe);
+			Arrays.fill(methods, null);
+			injectable.clear();
+			resources.clear();
+			dependencies = null;
+		}
+		if (dependencies == null) {
+			if (withMethods) {
+				scanMethods(methods);
+			}
+			scanFields(injectable, resources);
+			dependencies = findDependencies(beanClass);
+		}
+		
+		if (methods[ResourceMethod.STOP.ordinal()] == null && methods[ResourceMethod.KILL.ordinal()] != null) {
+			log.warn("Using @Kill method [" + methods[ResourceMethod.KILL.ordinal()].getName() + "] to substitute for undeclared @Stop for " + beanClass);
+			methods[ResourceMethod.STOP.ordinal()] = methods[ResourceMethod.KILL.ordinal()];
+		}
+		initMethod = methods[ResourceMethod.INITIALIZE.ordinal()];
+		startMethod = methods[ResourceMethod.START.ordinal()];
+		stopMethod = methods[ResourceMethod.STOP.ordinal()];
+		killMethod = methods[ResourceMethod.KILL.ordinal()];
+		publishMethod = methods[ResourceMethod.PUBLISH.ordinal()];
+		pauseMethod = methods[ResourceMethod.PAUSE.ordinal()];
+		resumeMethod = methods[ResourceMethod.RESUME.ordinal()];
+		resourceContextMethod = methods[ResourceMethod.RESOURCE_CONTEXT.ordinal()];
+		initInvoker = ResourceMethodInvoker.compile(initMethod);
+		startInvoker = ResourceMethodInvoker.compile(startMethod);
+		stopInvoker = ResourceMethodInvoker.compile(stopMethod);
+		killInvoker = ResourceMethodInvoker.compile(killMethod);
+		publishInvoker = ResourceMethodInvoker.compile(publishMethod);
+		pauseInvoker = ResourceMethodInvoker.compile(pauseMethod);
+		resumeInvoker = ResourceMethodInvoker.compile(resumeMethod);
+		resourceContextInvoker = ResourceMethodInvoker.compile(resourceContextMethod);
+		propertyInjections = planPropertyInjections(injectable);
+		resourceInjections = planResourceInjections(resources);
+		declaredDependencies = Collections.unmodifiableList(Arrays.asList(dependencies));
+	}
+	
+	private ResourceDescriptor(ResourceDescriptor fields, Method startMethod, Method stopMethod) {
+		this.beanClass = fields.beanClass;
+		this.initMethod = null;
+		this.startMethod = startMethod;
+		this.stopMethod = stopMethod;
+		this.killMethod = null;
+		this.publishMethod = null;
+		this.pauseMethod = null;
+		this.resumeMethod = null;
+		this.resourceContextMethod = null;
+		this.initInvoker = null;
+		this.startInvoker = ResourceMethodInvoker.compile(startMethod);
+		this.stopInvoker = ResourceMethodInvoker.compile(stopMethod);
+		this.killInvoker = null;
+		this.publishInvoker = null;
+		this.pauseInvoker = null;
+		this.resumeInvoker = null;
+		this.resourceContextInvoker = null;
+		this.propertyInjections = fields.propertyInjections;
+		this.resourceInjections = fields.resourceInjections;
+		this.declaredDependencies = fields.declaredDependencies;
+	}
+	
+	/**
+	 * Gets the fields injected with context properties that are due when a resource is in a state, which are the properties for the state
+	 * itself and for the state it stabilizes to.
+	 * @param state the resource state
+	 * @return the property injections
+	 */
+	PropertyInjection[] getPropertyInjections(ResourceState state) {
+		return propertyInjections[state.ordinal()];
+	}
+	
+	private static PropertyInjection[][] planPropertyInjections(Map<Field, ContextProperty> injectable) {
+		ResourceState[] states = ResourceState.values();
+		PropertyInjection[][] plans = new PropertyInjection[states.length][];
+		List<PropertyInjection> due = new ArrayList<PropertyInjection>();
+		Map<Field, FieldInjector> injectors = new HashMap<Field, FieldInjector>();
+		for (ResourceState state : states) {
+			due.clear();
+			for (Map.Entry<Field, ContextProperty> entry : injectable.entrySet()) {
+				ContextProperty spec = entry.getValue();
+				if (spec.state() == state || state.getStabilizeState() == spec.state()) {
+					FieldInjector injector = injectors.get(entry.getKey());
+					if (injector == null) {
+						injector = FieldInjector.compile(entry.getKey());
+						injectors.put(entry.getKey(), injector);
+					}
+					due.add(new PropertyInjection(injector, spec));
+				}
+			}
+			plans[state.ordinal()] = due.toArray(new PropertyInjection[due.size()]);
+		}
+		return plans;
+	}
+	
+	private static ResourceInjection[] planResourceInjections(Set<Field> resources) {
+		ResourceInjection[] plan = new ResourceInjection[resources.size()];
+		int i = 0;
+		for (Field field : resources) {
+			plan[i++] = new ResourceInjection(FieldInjector.compile(field), field.getAnnotation(ContextResource.class).name());
+		}
+		return plan;
+	}
+	
+	/**
+	 * Scans the class hierarchy for the lifecycle methods of the resource class.
+	 * @param methods the methods found, by ResourceMethod ordinal
+	 */
+	private void scanMethods(final Method[] methods) {
+		ReflectionUtils.doWithMethods(beanClass, new ReflectionUtils.MethodCallback(){
+			@Override
+			public void doWith(Method method) throws IllegalArgumentException {
+				processMethod(method, methods);
+			}
+		});
+	}
+	
+	/**
+	 * Scans the class hierarchy for the injected fields of the resource class.
+	 * @param injectable the fields injected with context properties
+	 * @param resources the fields injected with other resources
+	 */
+	private void scanFields(final Map<Field, ContextProperty> injectable, final Set<Field> resources) {
+		ReflectionUtils.doWithFields(beanClass, new ReflectionUtils.FieldCallback(){
+			@Override
+			public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+				if (field.isAnnotationPresent(ContextResource.class)) {
+					addResourceField(field, resources);
+				}
+				if (field.isAnnotationPresent(ContextProperty.class)) {
+					makeAccessible(field);
+					injectable.put(field, field.getAnnotation(ContextProperty.class));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Reads the lifecycle methods of the resource class from its generated descriptor.
+	 * @param generated the generated descriptor
+	 * @param methods the methods found, by ResourceMethod ordinal
+	 * @throws NoSuchMethodException if a method in the descriptor no longer exists
+	 */
+	private void readMethods(GeneratedResourceDescriptor generated, Method[] methods) throws NoSuchMethodException {
+		for (ResourceMethod type : ResourceMethod.values()) {
+			Method method = (type.annotation != null ? generated.getLifecycleMethod(type.annotation) : generated.getResourceContextMethod());
+			if (method != null) {
+				verifyMethodParameters(method);
+				methods[type.ordinal()] = method;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the injected fields of the resource class from its generated descriptor.
+	 * @param generated the generated descriptor
+	 * @param injectable the fields injected with context properties
+	 * @param resources the fields injected with other resources
+	 * @throws ReflectiveOperationException if a field in the descriptor no longer exists or can not be made accessible
+	 */
+	private void readFields(GeneratedResourceDescriptor generated, Map<Field, ContextProperty> injectable, Set<Field> resources) throws ReflectiveOperationException {
+		for (Field field : generated.getResourceFields()) {
+			addResourceField(field, resources);
+		}
+		for (Field field : generated.getPropertyFields()) {
+			makeAccessible(field);
+			injectable.put(field, field.getAnnotation(ContextProperty.class));
+		}
+	}
+	
+	private static void addResourceField(Field field, Set<Field> resources) throws IllegalAccessException {
+		if (ResourceUtils.isResource(field.getType())) {
+			makeAccessible(field);
+			resources.add(field);
+		}
+	}
+	
+	private static void makeAccessible(Field field) throws IllegalAccessException {
+		try {
+			field.setAccessible(true);
+		} catch (InaccessibleObjectException ioe) {
+			throw (IllegalAccessException)new IllegalAccessException("Unable to make field accessible: " + field).initCause(ioe);
+		} catch (SecurityException se) {
+			throw (IllegalAccessException)new IllegalAccessException("Unable to make field accessible: " + field).initCause(se);
+		}
+	}
+	
+	/**
+	 * Discovers the dependencies that are declared on a resource class.
+	 * @param beanClass the resource class
+	 * @return the names of the dependencies
+	 */
+	private static String[] findDependencies(Class<?> beanClass) {
+		Set<String> deps = new LinkedHashSet<String>();
+		Dependencies depsAnnot = beanClass.getAnnotation(Dependencies.class);
+		if (depsAnnot != null) {
+			deps.addAll(Arrays.asList(depsAnnot.value()));
+		}
+		Annotation[] depAnnots = beanClass.getAnnotations();
+		for (Annotation a : depAnnots) {
+			if (a.annotationType() == Dependency.class) {
+				Dependency dep = (Dependency)a;
+				deps.add(dep.value());
+			}
+		}
+		return deps.toArray(new String[deps.size()]);
+	}
+	
+	/**
+	 * Process a Reflective Method and depending on its annotations, record it and validate it as a resource action method.
+	 * @param method the method
+	 * @param methods the methods found so far, by ResourceMethod ordinal
+	 */
+	private void processMethod(Method method, Method[] methods) {
+		if (method.getName().equals("setResourceContext") && ResourceContextAware.class.isAssignableFrom(beanClass) &&
+			method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == ResourceContext.class) {
+			methods[ResourceMethod.RESOURCE_CONTEXT.ordinal()] = method;
+			log.trace("Found setResourceContext method for " + beanClass + " [ResourceContextAware]");
+		}
+		for (ResourceMethod type : ResourceMethod.values()) {
+			if (type.annotation != null && method.isAnnotationPresent(type.annotation) && methods[type.ordinal()] == null) {
+				verifyMethodParameters(method);
+				methods[type.ordinal()] = method;
+				log.trace("Found @" + type.annotation.getSimpleName() + " method for " + beanClass + ": " + method.getName());
+				break;
+			}
+		}
+	}
+	
+	private void verifyParameterType(Method method, Class<?> paramType) throws IllegalArgumentException {
+		if (!ResourceInfo.class.isAssignableFrom(paramType) &&
+			!ResourceContext.class.isAssignableFrom(paramType)) {
+			throw new IllegalArgumentException("Invalid parameter type: " + paramType + " for resource method [" + method.getName() + "]");
+		}
+	}
+	
+	/**
+	 * Verifies that the method provided only has either:<br>
+	 * <ul>
+	 * <li>a) one argument that is of type ResourceContext <b>or</b></li>
+	 * <li>b) no arguments</li>
+	 * </ul>
+	 * Also, the method can throw the following types of exceptions: {@link ResourceException}, {@link RuntimeException}.
+	 * Lastly, this also attempts to make the method <i>accessible</b> for manipulation through reflection.
+	 * @param method the method to verify
+	 */
+	private void verifyMethodParameters(Method method) {
+		Class<?>[] paramTypes = method.getParameterTypes();
+		for (Class<?> paramType : paramTypes) {
+			verifyParameterType(method, paramType);
+		}
+		if (paramTypes.length > 2) {
+			throw new IllegalArgumentException("Invalid number of arguments for a resource action method: " + paramTypes.length + "; expected zero, one, or two");
+		}
+		Class<?>[] excTypes = method.getExceptionTypes();
+		for (int i = 0; i < excTypes.length; i++) {
+			if (!ResourceException.class.isAssignableFrom(excTypes[i]) &&
+				!RuntimeException.class.isAssignableFrom(excTypes[i])) {
+				throw new IllegalArgumentException("Invalid Exception declared for Resource Method [" + method.getName() + "]; only allows Runtime and ResourceException types for " + beanClass);
+			}
+		}
+		try {
+			method.setAccessible(true);
+		} catch (SecurityException se) {
+			throw new IllegalArgumentException("Invalid visibility modifiers on method: " + method.getName() + " for " + beanClass, se);
+		}
+	}
+	
+	/**
+	 * A field that is injected with a context property.
+	 */
+	static final class PropertyInjection {
+		final FieldInjector field;
+		final ContextProperty spec;
+		
+		PropertyInjection(FieldInjector field, ContextProperty spec) {
+			this.field = field;
+			this.spec = spec;
+		}
+	}
+	
+	/**
+	 * A field that is injected with another resource, either by its resource name or by its type when no name is given.
+	 */
+	static final class ResourceInjection {
+		final FieldInjector field;
+		final String resourceName;
+		
+		ResourceInjection(FieldInjector field, String resourceName) {
+			this.field = field;
+			this.resourceName = resourceName;
+		}
+	}
+	
+	/**
+	 * The lifecycle methods of a resource, in the order their annotations are checked.
+	 */
+	private static enum ResourceMethod {
+		INITIALIZE(Initialize.class),
+		KILL(Kill.class),
+		PAUSE(Pause.class),
+		RESUME(Resume.class),
+		START(Start.class),
+		STOP(Stop.class),
+		PUBLISH(Publish.class),
+		RESOURCE_CONTEXT(null);
+		
+		final Class<? extends Annotation> annotation;
+		
+		private ResourceMethod(Class<? extends Annotation> annotation) {
+			this.annotation = annotation;
+		}
+	}
+}
@@ -0,0 +1,601 @@
+package com.mprew.ec2.resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mprew.ec2.resources.action.ResourceAction;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceEventHandler;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+import com.mprew.ec2.resources.startup.DependencyElement;
+
+/**
+ * Append-only journal of the resource events, failures and system state changes of a ResourceManager, kept for post-mortems. The
+ * journal is a directory of numbered segments, each made up of a memory-mapped file of fixed-size binary records and a memory-mapped
+ * side file of the text the records refer to, being the resource names and the failure causes. Appending a record only writes a few
+ * fields into mapped memory, which the operating system writes out to the file on its own, so journaling stays off the slow path of
+ * text logging. When either file of a segment is full, the journal rolls over to the next segment, which is created ahead of time on a
+ * background thread, so that rolling over only swaps the mapped files. The same thread then forces the full segment out to its files and
+ * deletes the oldest segments beyond the maximum number to keep. Resource names and failure causes are cut off to fit half a side file.
+ * <p>
+ * Each record holds its sequence number within the run, the time in milliseconds, the offset of the resource name in the side file,
+ * the offset of the failure cause in the side file, the event type, the old and new state, and lastly its kind, which is written last
+ * so a record that was only partly written before a crash reads as the end of the segment. Enumerations are stored by ordinal, so a
+ * journal should be read with the same version of the classes it was written with. The static <code>read</code> and
+ * <code>replay</code> methods rebuild the timeline from a journal directory, or feed it to handlers and listeners offline.
+ *
+ * @author dgarson
+ */
+public final class ResourceEventJournal {
+	
+	private static final Logger log = LoggerFactory.getLogger(ResourceEventJournal.class);
+	
+	/** The default number of records per segment, which makes segments of 16MB */
+	static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 19;
+	/** The default size of the side file of a segment */
+	static final int DEFAULT_TEXT_BYTES_PER_SEGMENT = 4 << 20;
+	/** The default number of segments to keep */
+	static final int DEFAULT_MAX_SEGMENTS = 16;
+	/** The smallest side file of a segment */
+	static final int MIN_TEXT_BYTES_PER_SEGMENT = 256;
+	
+	private static final String SEGMENT_PREFIX = "events-";
+	private static final String RECORD_SUFFIX = ".journal";
+	private static final String TEXT_SUFFIX = ".text";
+	private static final int RECORD_MAGIC = 0x524A524E;
+	private static final int TEXT_MAGIC = 0x524A5458;
+	private static final int VERSION = 1;
+	/** The length of the header of the side file */
+	private static final int TEXT_HEADER = 8;
+	/** Failure causes are cut off after this many characters */
+	private static final int MAX_CAUSE_LENGTH = 4096;
+	
+	/** The size of a record, which is also the size of the header of a record file */
+	static final int RECORD_SIZE = 32;
+	private static final int SEQUENCE = 0;
+	private static final int TIMESTAMP = 8;
+	private static final int RESOURCE = 16;
+	private static final int CAUSE = 20;
+	private static final int TYPE = 24;
+	private static final int OLD_STATE = 25;
+	private static final int NEW_STATE = 26;
+	private static final int KIND = 28;
+	
+	private static final EventType[] eventTypes = EventType.values();
+	private static final ResourceState[] states = ResourceState.values();
+	
+	private final File directory;
+	private final int recordsPerSegment;
+	private final int textBytesPerSegment;
+	private final int maxSegments;
+	/** The most bytes of a single resource name or failure cause, so that both always fit in an empty side file */
+	private final int maxTextBytes;
+	/** Creates the next segment and cleans up after the previous one, off the threads that append */
+	private final ThreadPoolExecutor roller;
+	/** The current segment; everything below is guarded by this journal */
+	private int segment;
+	/** The mapped files of the current segment, or <code>null</code> once closed */
+	private MappedByteBuffer records;
+	private MappedByteBuffer text;
+	private int recordPosition;
+	private int textPosition;
+	/** The offset in the side file of each resource name written to the current segment */
+	private final Map<String, Integer> resourceIds = new HashMap<String, Integer>();
+	private long sequence;
+	/** The next segment, which is being created in the background */
+	private Future<Segment> nextSegment;
+	
+	/**
+	 * Opens a journal in the given directory, starting a new segment after any existing ones.
+	 * @param directory the journal directory, which is created if necessary
+	 * @param recordsPerSegment the number of records per segment
+	 * @param textBytesPerSegment the size of the side file of each segment, at least {@value #MIN_TEXT_BYTES_PER_SEGMENT}
+	 * @param maxSegments the number of segments to keep, including the current one
+	 * @throws IOException if the directory or the first segment could not be created
+	 * @throws IllegalArgumentException if there are no records per segment or the side file is too small
+	 */
+	ResourceEventJournal(File directory, int recordsPerSegment, int textBytesPerSegment, int maxSegments) throws IOException {
+		if (recordsPerSegment < 1) {
+			throw new IllegalArgumentException("A segment must hold at least one record, not " + recordsPerSegment);
+		}
+		if (textBytesPerSegment < MIN_TEXT_BYTES_PER_SEGMENT) {
+			throw new IllegalArgumentException("The side file of a segment must be at least " + MIN_TEXT_BYTES_PER_SEGMENT + " bytes, not " + textBytesPerSegment);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		this.directory = directory;
+		this.recordsPerSegment = recordsPerSegment;
+		this.textBytesPerSegment = textBytesPerSegment;
+		this.maxSegments = Math.max(1, maxSegments);
+		this.maxTextBytes = (textBytesPerSegment - TEXT_HEADER) / 2 - 4;
+		this.roller = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				ResourceExecutors.newThreadFactory("EventJournal-"));
+		roller.allowCoreThreadTimeOut(true);
+		TreeMap<Integer, File> existing = listSegments(directory);
+		int last = (existing.isEmpty() ? 0 : existing.lastKey().intValue());
+		synchronized (this) {
+			start(createSegment(last + 1));
+		}
+	}
+	
+	/**
+	 * Gets the directory of this journal.
+	 * @return the journal directory
+	 */
+	File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Appends an event of a resource.
+	 * @param resource the resource
+	 * @param oldState the state of the resource before the event
+	 * @param newState the state of the resource after the event
+	 * @param type the event type
+	 */
+	void appendEvent(ResourceInfo resource, ResourceState oldState, ResourceState newState, EventType type) {
+		append(ResourceJournalEntry.Kind.EVENT, resource.getResourceName(), type, oldState, newState, null);
+	}
+	
+	/**
+	 * Appends a failure of a resource.
+	 * @param resource the resource
+	 * @param attemptedType the attempted event type
+	 * @param cause the cause of the failure, or <code>null</code>
+	 */
+	void appendFailure(ResourceInfo resource, EventType attemptedType, Throwable cause) {
+		ResourceState state = resource.getState();
+		String causeText = (cause == null ? null : cause.toString());
+		append(ResourceJournalEntry.Kind.FAILURE, resource.getResourceName(), attemptedType, state, state, causeText);
+	}
+	
+	/**
+	 * Appends a change of the system state.
+	 * @param oldState the previous system state
+	 * @param newState the new system state
+	 */
+	void appendPhaseChange(ResourceState oldState, ResourceState newState) {
+		append(ResourceJournalEntry.Kind.PHASE_CHANGE, null, null, oldState, newState, null);
+	}
+	
+	private synchronized void append(ResourceJournalEntry.Kind kind, String resourceName, EventType type, ResourceState oldState,
+			ResourceState newState, String cause) {
+		if (records == null) {
+			return;
+		}
+		try {
+			byte[] causeBytes = null;
+			if (cause != null) {
+				causeBytes = encode(cause.length() > MAX_CAUSE_LENGTH ? cause.substring(0, MAX_CAUSE_LENGTH) : cause);
+			}
+			byte[] nameBytes = newName(resourceName);
+			int textNeeded = (nameBytes == null ? 0 : 4 + nameBytes.length) + (causeBytes == null ? 0 : 4 + causeBytes.length);
+			if (recordPosition == records.capacity() || textPosition + textNeeded > text.capacity()) {
+				roll();
+				nameBytes = newName(resourceName);
+			}
+			int resourceId = -1;
+			if (nameBytes != null) {
+				resourceId = writeText(nameBytes);
+				resourceIds.put(resourceName, Integer.valueOf(resourceId));
+			}
+			else if (resourceName != null) {
+				resourceId = resourceIds.get(resourceName).intValue();
+			}
+			int at = recordPosition;
+			records.putLong(at + SEQUENCE, sequence++);
+			records.putLong(at + TIMESTAMP, System.currentTimeMillis());
+			records.putInt(at + RESOURCE, resourceId);
+			records.putInt(at + CAUSE, (causeBytes == null ? -1 : writeText(causeBytes)));
+			records.put(at + TYPE, (byte)(type == null ? -1 : type.ordinal()));
+			records.put(at + OLD_STATE, (byte)(oldState == null ? -1 : oldState.ordinal()));
+			records.put(at + NEW_STATE, (byte)(newState == null ? -1 : newState.ordinal()));
+			records.putInt(at + KIND, kind.ordinal() + 1);
+			recordPosition += RECORD_SIZE;
+		} catch (IOException ioe) {
+			log.error("Unable to roll over the event journal in " + directory + ", no further events will be journaled", ioe);
+			records = null;
+			text = null;
+		} catch (RuntimeException re) {
+			// Journaling must never fail the state change that is being journaled
+			log.error("Unable to append to the event journal in " + directory + ", no further events will be journaled", re);
+			records = null;
+			text = null;
+		}
+	}
+	
+	/**
+	 * Gets the bytes of a resource name that has not been written to the current segment yet.
+	 * @param resourceName the resource name, or <code>null</code>
+	 * @return the bytes, or <code>null</code> if there is no name or it has already been written
+	 */
+	private byte[] newName(String resourceName) {
+		if (resourceName == null || resourceIds.containsKey(resourceName)) {
+			return null;
+		}
+		return encode(resourceName);
+	}
+	
+	/**
+	 * Encodes text for the side file, cutting it off at a character boundary if it is longer than the most bytes of a single text.
+	 * @param value the text
+	 * @return the bytes
+	 */
+	private byte[] encode(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= maxTextBytes) {
+			return bytes;
+		}
+		int length = maxTextBytes;
+		// Never split a multi-byte character, whose continuation bytes all start with the bits 10
+		while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+			length--;
+		}
+		return Arrays.copyOf(bytes, length);
+	}
+	
+	private int writeText(byte[] bytes) {
+		int at = textPosition;
+		text.putInt(at, bytes.length);
+		text.put(at + 4, bytes);
+		textPosition += 4 + bytes.length;
+		return at;
+	}
+	
+	/**
+	 * Starts appending to the next segment. This only waits for the next segment to be created if the current one filled up before
+	 * the background thread got to it.
+	 * @throws IOException if the next segment could not be created
+	 */
+	private void roll() throws IOException {
+		Segment next;
+		try {
+			next = nextSegment.get();
+		} catch (ExecutionException ee) {
+			throw new IOException("Unable to create segment " + (segment + 1), ee.getCause());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for segment " + (segment + 1) + " to be created", ie);
+		}
+		start(next);
+	}
+	
+	/**
+	 * Makes a segment the current one, and has the background thread force the previous segment out to its files, delete the segments
+	 * that are no longer kept and create the segment after this one.
+	 * @param next the segment to append to
+	 */
+	private void start(Segment next) {
+		final MappedByteBuffer previousRecords = records;
+		final MappedByteBuffer previousText = text;
+		final int number = next.number;
+		segment = number;
+		records = next.records;
+		text = next.text;
+		records.putLong(16, System.currentTimeMillis());
+		recordPosition = RECORD_SIZE;
+		textPosition = TEXT_HEADER;
+		resourceIds.clear();
+		
+		nextSegment = roller.submit(new Callable<Segment>(){
+			@Override
+			public Segment call() throws IOException {
+				if (previousRecords != null) {
+					previousRecords.force();
+					previousText.force();
+				}
+				for (Map.Entry<Integer, File> entry : listSegments(directory).entrySet()) {
+					if (entry.getKey().intValue() <= number - maxSegments) {
+						entry.getValue().delete();
+						segmentFile(directory, entry.getKey().intValue(), TEXT_SUFFIX).delete();
+					}
+				}
+				return createSegment(number + 1);
+			}
+		});
+	}
+	
+	/**
+	 * Creates and maps the files of a segment, with their headers.
+	 * @param number the segment number
+	 * @return the segment
+	 * @throws IOException if either file could not be created
+	 */
+	private Segment createSegment(int number) throws IOException {
+		MappedByteBuffer records = map(segmentFile(directory, number, RECORD_SUFFIX), (recordsPerSegment + 1) * RECORD_SIZE);
+		MappedByteBuffer text = map(segmentFile(directory, number, TEXT_SUFFIX), textBytesPerSegment);
+		records.putInt(0, RECORD_MAGIC);
+		records.putInt(4, VERSION);
+		records.putInt(8, RECORD_SIZE);
+		text.putInt(0, TEXT_MAGIC);
+		text.putInt(4, VERSION);
+		return new Segment(number, records, text);
+	}
+	
+	/**
+	 * Forces the records appended so far out to the files, which the operating system otherwise does on its own schedule.
+	 */
+	synchronized void flush() {
+		if (records != null) {
+			records.force();
+			text.force();
+		}
+	}
+	
+	/**
+	 * Flushes and closes the journal, after which nothing more is appended. The next segment, which was never appended to, is deleted.
+	 */
+	synchronized void close() {
+		flush();
+		records = null;
+		text = null;
+		roller.shutdown();
+		try {
+			Segment unused = nextSegment.get();
+			segmentFile(directory, unused.number, RECORD_SUFFIX).delete();
+			segmentFile(directory, unused.number, TEXT_SUFFIX).delete();
+		} catch (ExecutionException ee) {
+			log.warn("Unable to create the next segment of the event journal in " + directory, ee.getCause());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			// The mapping stays valid once the channel is closed
+			return channel.map(MapMode.READ_WRITE, 0, size);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static MappedByteBuffer mapReadOnly(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static File segmentFile(File directory, int segment, String suffix) {
+		return new File(directory, SEGMENT_PREFIX + String.format("%08d", segment) + suffix);
+	}
+	
+	/**
+	 * Lists the record files of the segments in a journal directory.
+	 * @param directory the journal directory
+	 * @return the record files by segment number, in order
+	 */
+	private static TreeMap<Integer, File> listSegments(File directory) {
+		TreeMap<Integer, File> segments = new TreeMap<Integer, File>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return segments;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(RECORD_SUFFIX)) {
+				try {
+					segments.put(Integer.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - RECORD_SUFFIX.length())), file);
+				} catch (NumberFormatException nfe) {
+					log.warn("Ignoring unexpected file in the event journal: " + file);
+				}
+			}
+		}
+		return segments;
+	}
+	
+	/**
+	 * Reads every entry of a journal, oldest first, to rebuild the timeline of the resources.
+	 * @param directory the journal directory
+	 * @return the entries, in the order they were appended
+	 * @throws IOException if a segment could not be read or is not a journal segment
+	 */
+	public static List<ResourceJournalEntry> read(File directory) throws IOException {
+		List<ResourceJournalEntry> entries = new ArrayList<ResourceJournalEntry>();
+		for (Map.Entry<Integer, File> entry : listSegments(directory).entrySet()) {
+			readSegment(entry.getValue(), segmentFile(directory, entry.getKey().intValue(), TEXT_SUFFIX), entries);
+		}
+		return entries;
+	}
+	
+	private static void readSegment(File recordFile, File textFile, List<ResourceJournalEntry> entries) throws IOException {
+		MappedByteBuffer records = mapReadOnly(recordFile);
+		MappedByteBuffer text = mapReadOnly(textFile);
+		if (records.capacity() < RECORD_SIZE || records.getInt(0) != RECORD_MAGIC || records.getInt(8) != RECORD_SIZE
+				|| text.capacity() < TEXT_HEADER || text.getInt(0) != TEXT_MAGIC) {
+			throw new IOException(recordFile + " is not an event journal segment");
+		}
+		ResourceJournalEntry.Kind[] kinds = ResourceJournalEntry.Kind.values();
+		Map<Integer, String> names = new HashMap<Integer, String>();
+		for (int at = RECORD_SIZE; at + RECORD_SIZE <= records.capacity(); at += RECORD_SIZE) {
+			int kind = records.getInt(at + KIND);
+			if (kind <= 0 || kind > kinds.length) {
+				// Never written, or only partly written when the process died
+				break;
+			}
+			String resourceName = null;
+			int resourceId = records.getInt(at + RESOURCE);
+			if (resourceId >= 0) {
+				Integer id = Integer.valueOf(resourceId);
+				resourceName = names.get(id);
+				if (resourceName == null) {
+					resourceName = readText(text, resourceId);
+					names.put(id, resourceName);
+				}
+			}
+			int causeId = records.getInt(at + CAUSE);
+			entries.add(new ResourceJournalEntry(kinds[kind - 1], records.getLong(at + SEQUENCE), records.getLong(at + TIMESTAMP), resourceName,
+					(EventType)ordinal(eventTypes, records.get(at + TYPE)), (ResourceState)ordinal(states, records.get(at + OLD_STATE)),
+					(ResourceState)ordinal(states, records.get(at + NEW_STATE)), (causeId < 0 ? null : readText(text, causeId))));
+		}
+	}
+	
+	private static String readText(MappedByteBuffer text, int at) {
+		int length = text.getInt(at);
+		byte[] bytes = new byte[length];
+		text.get(at + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static Object ordinal(Object[] values, byte ordinal) {
+		return (ordinal < 0 || ordinal >= values.length ? null : values[ordinal]);
+	}
+	
+	/**
+	 * Replays a journal to a ResourceEventHandler, as if its events were published on the event ring again. The sequence numbers are
+	 * the ones the entries were appended with.
+	 * @param directory the journal directory
+	 * @param handler the handler
+	 * @throws IOException if a segment could not be read
+	 */
+	public static void replay(File directory, ResourceEventHandler handler) throws IOException {
+		for (ResourceJournalEntry entry : read(directory)) {
+			switch (entry.getKind()) {
+				case EVENT:
+					handler.onResourceEvent(new JournaledResource(entry), entry.getType(), entry.getSequence());
+					break;
+				case FAILURE:
+					handler.onResourceFailure(new JournaledResource(entry), entry.getType(), failureCause(entry), entry.getSequence());
+					break;
+				case PHASE_CHANGE:
+					handler.onPhaseChange(entry.getOldState(), entry.getNewState(), entry.getSequence());
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * Replays the resource events and failures of a journal to a ResourceListener, on the calling thread. System state changes are
+	 * skipped, since a PhaseChangeEvent can not exist without its ResourceManager.
+	 * @param directory the journal directory
+	 * @param listener the listener
+	 * @throws IOException if a segment could not be read
+	 */
+	public static void replay(File directory, ResourceListener listener) throws IOException {
+		for (ResourceJournalEntry entry : read(directory)) {
+			switch (entry.getKind()) {
+				case EVENT:
+					listener.onResourceEvent(new ResourceEvent(new JournaledResource(entry), entry.getType()));
+					break;
+				case FAILURE:
+					listener.onResourceFailure(new ResourceFailedEvent(new JournaledResource(entry), entry.getType(), failureCause(entry)));
+					break;
+				default:
+					break;
+			}
+		}
+	}
+	
+	private static Throwable failureCause(ResourceJournalEntry entry) {
+		return (entry.getCause() == null ? null : new ResourceException(entry.getCause()));
+	}
+	
+	/**
+	 * The mapped files of a segment.
+	 */
+	private static final class Segment {
+		final int number;
+		final MappedByteBuffer records;
+		final MappedByteBuffer text;
+		
+		Segment(int number, MappedByteBuffer records, MappedByteBuffer text) {
+			this.number = number;
+			this.records = records;
+			this.text = text;
+		}
+	}
+	
+	/**
+	 * Stand-in for a resource that is being replayed from a journal, which only knows its name and its state after the event.
+	 */
+	private static final class JournaledResource implements ResourceInfo {
+		private final String name;
+		private final ResourceState state;
+		
+		JournaledResource(ResourceJournalEntry entry) {
+			this.name = entry.getResourceName();
+			this.state = entry.getNewState();
+		}
+		
+		@Override
+		public String getResourceName() {
+			return name;
+		}
+		
+		@Override
+		public String getBeanName() {
+			return null;
+		}
+		
+		@Override
+		public Object getInstance() {
+			return null;
+		}
+		
+		@Override
+		public ResourceState getState() {
+			return state;
+		}
+		
+		@Override
+		public DependencyElement getElement() {
+			return null;
+		}
+		
+		@Override
+		public Collection<String> getDependencyNames() {
+			return Collections.emptyList();
+		}
+		
+		@Override
+		public boolean waitForState(ResourceState state) {
+			return (this.state == state);
+		}
+		
+		@Override
+		public boolean waitForState(ResourceState state, long timeout, TimeUnit unit) {
+			return (this.state == state);
+		}
+		
+		@Override
+		public Method getResourceMethod(ResourceAction action) {
+			return null;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
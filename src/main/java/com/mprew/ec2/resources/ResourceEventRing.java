@@ -0,0 +1,420 @@
+package com.mprew.ec2.resources;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceEventHandler;
+
+/**
+ * Event bus built on a ring of preallocated slots. Publishers claim the next sequence number, wait until every handler has moved past
+ * the slot that sequence wraps onto, fill in the slot and publish it by writing its sequence. Every handler has a consumer thread of its
+ * own that follows the ring with its own sequence, so handlers never hold each other up unless the ring fills up. Nothing is allocated
+ * per event, as opposed to the event objects, de-duplication sets and Runnables of the ResourceListener dispatch.
+ * <p>
+ * A publisher only waits so long for the slowest handler. A handler that is still a full ring behind after that is marked as lagging
+ * and no longer waited for, so that a stuck handler can not hold up every resource transition; once it catches up with the slot it was
+ * on, it skips ahead to the latest published event and sees a gap in the sequence numbers for the events it missed. Since a lagging
+ * handler may be reading a slot while it is overwritten, a publisher invalidates the sequence of a slot before filling it in, and a
+ * consumer copies the event out of the slot and checks that its sequence is unchanged before passing it to the handler.
+ *
+ * @author dgarson
+ */
+final class ResourceEventRing {
+	
+	private static final Logger log = LoggerFactory.getLogger(ResourceEventRing.class);
+	
+	private static final int KIND_EVENT = 0;
+	private static final int KIND_FAILURE = 1;
+	private static final int KIND_PHASE = 2;
+	
+	/** The sequence of a slot while a publisher fills it in */
+	private static final long WRITING = -2;
+	
+	/** How many times a consumer checks for the next event before parking */
+	private static final int SPIN_LIMIT = 100;
+	/** The longest a consumer parks before checking again, in case a wake-up is missed */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	/** The default longest a publisher waits for the slowest handler before no longer waiting for it */
+	static final long DEFAULT_MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+	
+	private static final Consumer[] NO_CONSUMERS = new Consumer[0];
+	
+	private final Slot[] slots;
+	private final int mask;
+	/** The last sequence number claimed by a publisher */
+	private final AtomicLong claimed = new AtomicLong(-1);
+	private volatile Consumer[] consumers = NO_CONSUMERS;
+	private final ThreadFactory threadFactory;
+	private final long maxWaitNanos;
+	
+	/**
+	 * Creates a ring whose publishers wait up to {@link #DEFAULT_MAX_WAIT_NANOS} for the slowest handler.
+	 * @param capacity the minimum number of slots, which is rounded up to a power of two
+	 * @param threadFactory the factory of the consumer threads
+	 */
+	ResourceEventRing(int capacity, ThreadFactory threadFactory) {
+		this(capacity, threadFactory, DEFAULT_MAX_WAIT_NANOS);
+	}
+	
+	/**
+	 * Creates a ring.
+	 * @param capacity the minimum number of slots, which is rounded up to a power of two
+	 * @param threadFactory the factory of the consumer threads
+	 * @param maxWaitNanos the longest a publisher waits for the slowest handler before marking it as lagging
+	 */
+	ResourceEventRing(int capacity, ThreadFactory threadFactory, long maxWaitNanos) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Slot[size];
+		this.mask = size - 1;
+		this.threadFactory = threadFactory;
+		this.maxWaitNanos = maxWaitNanos;
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+		}
+	}
+	
+	/**
+	 * Adds a handler, which receives the events published from now on.
+	 * @param handler the handler
+	 */
+	synchronized void addHandler(ResourceEventHandler handler) {
+		Consumer consumer = new Consumer(handler, claimed.get());
+		Thread thread = threadFactory.newThread(consumer);
+		thread.setDaemon(true);
+		consumer.thread = thread;
+		Consumer[] current = consumers;
+		Consumer[] added = Arrays.copyOf(current, current.length + 1);
+		added[current.length] = consumer;
+		consumers = added;
+		thread.start();
+	}
+	
+	/**
+	 * Removes a handler, once it has handled the events that were already published.
+	 * @param handler the handler
+	 * @return true if the handler was removed
+	 */
+	synchronized boolean removeHandler(ResourceEventHandler handler) {
+		Consumer[] current = consumers;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].handler == handler) {
+				Consumer[] removed = new Consumer[current.length - 1];
+				System.arraycopy(current, 0, removed, 0, i);
+				System.arraycopy(current, i + 1, removed, i, removed.length - i);
+				consumers = (removed.length == 0 ? NO_CONSUMERS : removed);
+				current[i].stop(claimed.get());
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if any handlers are added, so publishers can skip the ring altogether otherwise.
+	 * @return true if there are handlers
+	 */
+	boolean hasHandlers() {
+		return (consumers.length > 0);
+	}
+	
+	/**
+	 * Removes every handler, once they have handled the events that were already published.
+	 */
+	synchronized void shutdown() {
+		Consumer[] current = consumers;
+		consumers = NO_CONSUMERS;
+		long last = claimed.get();
+		for (Consumer consumer : current) {
+			consumer.stop(last);
+		}
+	}
+	
+	/**
+	 * Publishes an event of a resource.
+	 * @param resource the resource
+	 * @param type the event type
+	 */
+	void publishEvent(ResourceInfo resource, EventType type) {
+		long sequence = claim();
+		Slot slot = beginWrite(sequence);
+		slot.kind = KIND_EVENT;
+		slot.resource = resource;
+		slot.type = type;
+		slot.cause = null;
+		publish(slot, sequence);
+	}
+	
+	/**
+	 * Publishes a failure of a resource.
+	 * @param resource the resource
+	 * @param attemptedType the attempted event type
+	 * @param cause the cause of the failure
+	 */
+	void publishFailure(ResourceInfo resource, EventType attemptedType, Throwable cause) {
+		long sequence = claim();
+		Slot slot = beginWrite(sequence);
+		slot.kind = KIND_FAILURE;
+		slot.resource = resource;
+		slot.type = attemptedType;
+		slot.cause = cause;
+		publish(slot, sequence);
+	}
+	
+	/**
+	 * Publishes a change of the system state.
+	 * @param oldState the previous system state
+	 * @param newState the new system state
+	 */
+	void publishPhaseChange(ResourceState oldState, ResourceState newState) {
+		publishPhaseChange(claimed.incrementAndGet(), oldState, newState);
+	}
+	
+	/**
+	 * Reserves the sequence number of the next event without waiting for its slot, so that the order of events can be decided while
+	 * holding a lock and the event published once it has been released. The sequence must always be published.
+	 * @return the sequence number
+	 * @see #publishPhaseChange(long, ResourceState, ResourceState)
+	 */
+	long reserve() {
+		return claimed.incrementAndGet();
+	}
+	
+	/**
+	 * Publishes a change of the system state with a reserved sequence number.
+	 * @param sequence the sequence number
+	 * @param oldState the previous system state
+	 * @param newState the new system state
+	 */
+	void publishPhaseChange(long sequence, ResourceState oldState, ResourceState newState) {
+		awaitSlot(sequence);
+		Slot slot = beginWrite(sequence);
+		slot.kind = KIND_PHASE;
+		slot.resource = null;
+		slot.cause = null;
+		slot.oldState = oldState;
+		slot.newState = newState;
+		publish(slot, sequence);
+	}
+	
+	/**
+	 * Claims the next sequence number, waiting until its slot has been handled by every handler.
+	 * @return the sequence number
+	 */
+	private long claim() {
+		long sequence = claimed.incrementAndGet();
+		awaitSlot(sequence);
+		return sequence;
+	}
+	
+	/**
+	 * Waits until the slot of a sequence number has been handled by every handler that is not lagging. Handlers that have not handled
+	 * it within the longest wait are marked as lagging.
+	 * @param sequence the sequence number
+	 */
+	private void awaitSlot(long sequence) {
+		long wrapPoint = sequence - slots.length;
+		if (wrapPoint <= minimumSequence()) {
+			return;
+		}
+		long deadline = System.nanoTime() + maxWaitNanos;
+		while (wrapPoint > minimumSequence()) {
+			if (System.nanoTime() - deadline >= 0) {
+				markLagging(wrapPoint);
+			}
+			else {
+				LockSupport.parkNanos(1000);
+			}
+		}
+	}
+	
+	private long minimumSequence() {
+		Consumer[] current = consumers;
+		long minimum = Long.MAX_VALUE;
+		for (int i = 0; i < current.length; i++) {
+			long sequence = current[i].sequence;
+			if (sequence < minimum && !current[i].lagging) {
+				minimum = sequence;
+			}
+		}
+		return minimum;
+	}
+	
+	/**
+	 * Stops waiting for every handler that has not handled the event at a sequence number yet.
+	 * @param sequence the sequence number
+	 */
+	private void markLagging(long sequence) {
+		Consumer[] current = consumers;
+		for (int i = 0; i < current.length; i++) {
+			Consumer consumer = current[i];
+			if (consumer.sequence < sequence && !consumer.lagging) {
+				consumer.lagging = true;
+				log.warn("ResourceEventHandler " + consumer.handler + " is " + slots.length + " events behind for longer than " +
+						TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + "ms, events are published without waiting for it");
+			}
+		}
+	}
+	
+	/**
+	 * Invalidates the slot of a claimed sequence number before it is filled in, so that a lagging consumer that is still reading the
+	 * previous event in the slot notices that it was overwritten.
+	 * @param sequence the sequence number
+	 * @return the slot
+	 */
+	private Slot beginWrite(long sequence) {
+		Slot slot = slots[(int)sequence & mask];
+		slot.sequence = WRITING;
+		// The event may not be written before the slot is invalidated
+		VarHandle.storeStoreFence();
+		return slot;
+	}
+	
+	private void publish(Slot slot, long sequence) {
+		slot.sequence = sequence;
+		Consumer[] current = consumers;
+		for (int i = 0; i < current.length; i++) {
+			// Only the first publisher to see a parked consumer wakes it up, the rest find it already woken
+			if (current[i].waiting.get() && current[i].waiting.compareAndSet(true, false)) {
+				LockSupport.unpark(current[i].thread);
+			}
+		}
+	}
+	
+	/**
+	 * Reusable event, which is published once its sequence is written.
+	 */
+	private static final class Slot {
+		int kind;
+		ResourceInfo resource;
+		EventType type;
+		Throwable cause;
+		ResourceState oldState;
+		ResourceState newState;
+		volatile long sequence = -1;
+	}
+	
+	/**
+	 * Follows the ring on a thread of its own and passes every published event to a handler.
+	 */
+	private final class Consumer implements Runnable {
+		final ResourceEventHandler handler;
+		/** The last sequence number that was handled */
+		volatile long sequence;
+		/** The last sequence number to handle before stopping, if stopped */
+		volatile long stopAt = Long.MAX_VALUE;
+		/** Set once publishers no longer wait for this consumer, until it skips ahead to the latest event */
+		volatile boolean lagging;
+		/** Set while the consumer is about to park, until a publisher or the consumer itself clears it */
+		final AtomicBoolean waiting = new AtomicBoolean();
+		volatile Thread thread;
+		
+		Consumer(ResourceEventHandler handler, long sequence) {
+			this.handler = handler;
+			this.sequence = sequence;
+		}
+		
+		void stop(long last) {
+			stopAt = last;
+			LockSupport.unpark(thread);
+		}
+		
+		@Override
+		public void run() {
+			long next = sequence + 1;
+			int spins = 0;
+			while (next <= stopAt) {
+				Slot slot = slots[(int)next & mask];
+				long published = slot.sequence;
+				if (published == next && !lagging) {
+					int kind = slot.kind;
+					ResourceInfo resource = slot.resource;
+					EventType type = slot.type;
+					Throwable cause = slot.cause;
+					ResourceState oldState = slot.oldState;
+					ResourceState newState = slot.newState;
+					// The copy may not be read after checking that the slot still holds the event
+					VarHandle.loadLoadFence();
+					if (slot.sequence == next) {
+						handle(kind, resource, type, cause, oldState, newState, next);
+						sequence = next++;
+					}
+					else if (stopAt != Long.MAX_VALUE) {
+						break;
+					}
+					else {
+						// Overwritten while this consumer was lagging
+						next = skipAhead(next);
+					}
+					spins = 0;
+				}
+				else if (published > next || lagging) {
+					// Once removed the ring no longer waits for this consumer, so the rest of the events may already be overwritten
+					if (stopAt != Long.MAX_VALUE) {
+						break;
+					}
+					next = skipAhead(next);
+					spins = 0;
+				}
+				else if (spins < SPIN_LIMIT) {
+					spins++;
+					Thread.onSpinWait();
+				}
+				else {
+					waiting.set(true);
+					// Check again after announcing that we wait, so that a publisher either sees us waiting or we see its event
+					if (slot.sequence != next && next <= stopAt) {
+						LockSupport.parkNanos(this, PARK_NANOS);
+					}
+					waiting.set(false);
+					spins = 0;
+				}
+			}
+		}
+		
+		/**
+		 * Skips the events that may have been overwritten while publishers were not waiting for this consumer, continuing with the
+		 * latest claimed event, which may not have been published yet.
+		 * @param next the next sequence number that was not handled
+		 * @return the next sequence number to handle
+		 */
+		private long skipAhead(long next) {
+			long latest = Math.max(claimed.get(), next);
+			// Publishers wait for this consumer again from here on
+			sequence = latest - 1;
+			lagging = false;
+			log.warn("ResourceEventHandler " + handler + " skipped " + (latest - next) + " events it fell behind on");
+			return latest;
+		}
+		
+		private void handle(int kind, ResourceInfo resource, EventType type, Throwable cause, ResourceState oldState, ResourceState newState,
+				long seq) {
+			try {
+				switch (kind) {
+					case KIND_EVENT:
+						handler.onResourceEvent(resource, type, seq);
+						break;
+					case KIND_FAILURE:
+						handler.onResourceFailure(resource, type, cause, seq);
+						break;
+					case KIND_PHASE:
+						handler.onPhaseChange(oldState, newState, seq);
+						break;
+				}
+			} catch (RuntimeException re) {
+				log.error("Unexpected exception in ResourceEventHandler " + handler + " for event " + seq, re);
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the ExecutorServices used by the ResourceManager for resource jobs, phase jobs and event dispatch. Executors are either
+ * fixed pools of platform threads, or create a new virtual thread for every task if virtual threads are enabled and the JVM supports
+ * them (Java 21 or later). This library itself requires Java 17, so virtual threads are looked up reflectively, and on Java 17 to 20
+ * the fixed pools are used instead. Either way threads are named with the given prefix and log any uncaught exceptions.
+ *
+ * @author dgarson
+ */
+final class ResourceExecutors {
+	
+	private static final Logger log = LoggerFactory.getLogger(ResourceExecutors.class);
+	
+	private static final Thread.UncaughtExceptionHandler loggingHandler = new Thread.UncaughtExceptionHandler(){
+		@Override
+		public void uncaughtException(Thread th, Throwable err) {
+			log.error("Unexpected exception in thread [" + th.getName() + "]", err);
+		}
+	};
+	
+	private ResourceExecutors() {
+		// Static utility class
+	}
+	
+	/**
+	 * Creates a new ExecutorService.
+	 * @param namePrefix the prefix of the thread names, followed by a sequence number
+	 * @param poolSize the number of threads if platform threads are used
+	 * @param virtualThreads if a virtual thread should be created for every task instead, if supported
+	 * @return the executor
+	 */
+	static ExecutorService newExecutor(String namePrefix, int poolSize, boolean virtualThreads) {
+		if (virtualThreads) {
+			ExecutorService executor = newVirtualThreadExecutor(namePrefix);
+			if (executor != null) {
+				return executor;
+			}
+		}
+		return Executors.newFixedThreadPool(poolSize, new NamedThreadFactory(namePrefix));
+	}
+	
+	/**
+	 * Creates a ThreadFactory for platform threads that are named with a prefix and log any uncaught exceptions.
+	 * @param namePrefix the prefix of the thread names, followed by a sequence number
+	 * @return the thread factory
+	 */
+	static ThreadFactory newThreadFactory(String namePrefix) {
+		return new NamedThreadFactory(namePrefix);
+	}
+	
+	/**
+	 * Creates a new single-threaded ScheduledExecutorService for short timer tasks, which drops cancelled tasks right away.
+	 * @param namePrefix the prefix of the thread name
+	 * @return the scheduler
+	 */
+	static ScheduledExecutorService newScheduler(String namePrefix) {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(namePrefix));
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+	
+	/**
+	 * Checks if this JVM supports virtual threads.
+	 * @return true if virtual thread executors can be created
+	 */
+	static boolean isVirtualThreadSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return true;
+		} catch (NoSuchMethodException nsme) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates an executor that starts a new virtual thread for every task, i.e.
+	 * <code>Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).uncaughtExceptionHandler(handler).factory())</code>.
+	 * @param namePrefix the prefix of the thread names
+	 * @return the executor, or <code>null</code> if virtual threads are not available
+	 */
+	private static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, Long.valueOf(1));
+			builder = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, loggingHandler);
+			ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService)newExecutor.invoke(null, factory);
+		} catch (NoSuchMethodException nsme) {
+			log.warn("Virtual threads are not available on Java " + System.getProperty("java.version") + ", using a fixed pool for " + namePrefix + " threads");
+			return null;
+		} catch (Exception e) {
+			// Virtual threads may still be a preview feature that is not enabled
+			log.warn("Unable to create virtual threads, using a fixed pool for " + namePrefix + " threads", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * ThreadFactory for platform threads with a common name prefix.
+	 *
+	 * @author dgarson
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String namePrefix;
+		private AtomicInteger threadCounter = new AtomicInteger(0);
+		
+		NamedThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable job) {
+			Thread thread = new Thread(job, namePrefix + threadCounter.incrementAndGet());
+			thread.setUncaughtExceptionHandler(loggingHandler);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.mprew.ec2.resources;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Live number of registered resources at each ResourceHealth level, along with the resources that are not healthy, so that the system
+ * health is known without scanning every resource. The ResourceManager synchronizes on this object around registering, unregistering
+ * and reporting the health of resources, so the counts always match the registered resources.
+ *
+ * @author dgarson
+ */
+final class ResourceHealthCounts {
+	
+	private static final ResourceHealth.Level[] levels = ResourceHealth.Level.values();
+	
+	private final int[] counts = new int[levels.length];
+	/** The resources that are not OK and their health for each level, by ordinal, in the order they became unhealthy */
+	private final Map<String, ResourceHealth>[] offenders;
+	
+	@SuppressWarnings("unchecked")
+	ResourceHealthCounts() {
+		offenders = new Map[levels.length];
+		for (int i = 0; i < levels.length; i++) {
+			offenders[i] = new LinkedHashMap<String, ResourceHealth>();
+		}
+	}
+	
+	/**
+	 * Counts the health of a newly registered resource.
+	 * @param resourceName the resource name
+	 * @param health the health of the resource
+	 */
+	synchronized void added(String resourceName, ResourceHealth health) {
+		counts[health.getLevel().ordinal()]++;
+		if (!health.isOk()) {
+			offenders[health.getLevel().ordinal()].put(resourceName, health);
+		}
+	}
+	
+	/**
+	 * Stops counting the health of an unregistered resource.
+	 * @param resourceName the resource name
+	 * @param health the health of the resource
+	 */
+	synchronized void removed(String resourceName, ResourceHealth health) {
+		counts[health.getLevel().ordinal()]--;
+		offenders[health.getLevel().ordinal()].remove(resourceName);
+	}
+	
+	/**
+	 * Changes the health of a registered resource.
+	 * @param resourceName the resource name
+	 * @param oldHealth the previous health
+	 * @param newHealth the new health
+	 */
+	synchronized void changed(String resourceName, ResourceHealth oldHealth, ResourceHealth newHealth) {
+		removed(resourceName, oldHealth);
+		added(resourceName, newHealth);
+	}
+	
+	/**
+	 * Gets the number of registered resources at a health level.
+	 * @param level the health level
+	 * @return the number of resources
+	 */
+	synchronized int getCount(ResourceHealth.Level level) {
+		return counts[level.ordinal()];
+	}
+	
+	/**
+	 * Gets the health of the system, which is the health of the first resource to reach the worst level of any resource.
+	 * @return the worst health, or OK if every resource is healthy
+	 */
+	synchronized ResourceHealth getWorstHealth() {
+		for (int i = levels.length - 1; i >= 0; i--) {
+			if (!offenders[i].isEmpty()) {
+				return offenders[i].values().iterator().next();
+			}
+		}
+		return ResourceHealth.okHealth;
+	}
+	
+	/**
+	 * Gets the resources that are not healthy, worst first.
+	 * @return the health of each unhealthy resource
+	 */
+	synchronized Map<String, ResourceHealth> getOffenders() {
+		Map<String, ResourceHealth> worst = new LinkedHashMap<String, ResourceHealth>();
+		for (int i = levels.length - 1; i >= 0; i--) {
+			worst.putAll(offenders[i]);
+		}
+		return worst;
+	}
+}
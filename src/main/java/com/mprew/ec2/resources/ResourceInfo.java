@@ -2,6 +2,7 @@ package com.mprew.ec2.resources;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import com.mprew.ec2.resources.action.ResourceAction;
 import com.mprew.ec2.resources.startup.DependencyElement;
@@ -57,6 +58,16 @@ public interface ResourceInfo {
 	 */
 	public boolean waitForState(ResourceState state) throws InterruptedException;
 	
+	/**
+	 * Waits for a specified state, giving up once the timeout has elapsed.
+	 * @param state the state to wait for
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the state was entered, false if it couldn't be or the timeout elapsed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean waitForState(ResourceState state, long timeout, TimeUnit unit) throws InterruptedException;
+	
 	/**
 	 * Gets the resource method for the specified action, if one exists.
 	 * @param action the action type
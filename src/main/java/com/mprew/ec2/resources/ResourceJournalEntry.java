@@ -0,0 +1,121 @@
+package com.mprew.ec2.resources;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+
+/**
+ * Entry read back from a ResourceEventJournal, being a resource event, a resource failure or a change of the system state.
+ *
+ * @author dgarson
+ */
+public final class ResourceJournalEntry {
+	
+	/**
+	 * What a journal entry records.
+	 */
+	public static enum Kind {
+		/** A resource event, with its event type and the state of the resource before and after */
+		EVENT,
+		/** A resource failure, with the attempted event type and the failure cause */
+		FAILURE,
+		/** A change of the system state, without a resource or event type */
+		PHASE_CHANGE;
+	}
+	
+	private final Kind kind;
+	private final long sequence;
+	private final long timestamp;
+	private final String resourceName;
+	private final EventType type;
+	private final ResourceState oldState;
+	private final ResourceState newState;
+	private final String cause;
+	
+	ResourceJournalEntry(Kind kind, long sequence, long timestamp, String resourceName, EventType type, ResourceState oldState,
+			ResourceState newState, String cause) {
+		this.kind = kind;
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.resourceName = resourceName;
+		this.type = type;
+		this.oldState = oldState;
+		this.newState = newState;
+		this.cause = cause;
+	}
+	
+	/**
+	 * @return what the entry records
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * @return the sequence number of the entry, which starts over every time a journal is opened
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * @return the time the entry was appended, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * @return the resource name, or <code>null</code> for a change of the system state
+	 */
+	public String getResourceName() {
+		return resourceName;
+	}
+	
+	/**
+	 * @return the event type, or the attempted event type of a failure, or <code>null</code> for a change of the system state
+	 */
+	public EventType getType() {
+		return type;
+	}
+	
+	/**
+	 * @return the state of the resource, or of the system, before the entry
+	 */
+	public ResourceState getOldState() {
+		return oldState;
+	}
+	
+	/**
+	 * @return the state of the resource, or of the system, after the entry
+	 */
+	public ResourceState getNewState() {
+		return newState;
+	}
+	
+	/**
+	 * @return the text of the failure cause, or <code>null</code>
+	 */
+	public String getCause() {
+		return cause;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp))).append(" #").append(sequence).append(' ');
+		switch (kind) {
+			case PHASE_CHANGE:
+				sb.append("System ").append(oldState).append(" -> ").append(newState);
+				break;
+			case FAILURE:
+				sb.append(resourceName).append(" FAILED ").append(type).append(" in ").append(newState).append(": ").append(cause);
+				break;
+			default:
+				sb.append(resourceName).append(' ').append(type).append(' ').append(oldState).append(" -> ").append(newState);
+				break;
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,376 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mprew.ec2.resources.annotation.EventQueue;
+import com.mprew.ec2.resources.annotation.EventQueue.OverflowPolicy;
+import com.mprew.ec2.resources.event.BatchResourceListener;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+/**
+ * Bounded queue of the events for an asynchronous ResourceListener. The queue is split into stripes by resource name, and each stripe
+ * is drained by at most one task at a time that is only scheduled when the stripe goes from empty to non-empty. The listener therefore
+ * receives the events of each resource in the order they were fired, while the events of resources in different stripes are still
+ * delivered in parallel, and a phase that moves thousands of resources schedules one task per drain rather than one per event. A
+ * BatchResourceListener has a single stripe, so its batches are never delivered concurrently, and is handed everything drained at once
+ * as a list. The capacity bounds the events queued in all stripes together; when the listener falls behind and the queue is full, its
+ * {@link EventQueue} overflow policy decides which event is dropped, or whether the firing thread waits. Failures, registrations and
+ * unregistrations are never dropped in favor of state changes, so the firing thread may still wait for them.
+ *
+ * @author dgarson
+ */
+final class ResourceListenerQueue {
+	
+	private static final Logger log = LoggerFactory.getLogger(ResourceListenerQueue.class);
+	/** The configuration of listeners without an {@link EventQueue} annotation, which is the default of every attribute */
+	private static final EventQueue DEFAULTS = Defaults.class.getAnnotation(EventQueue.class);
+	
+	/** The most events taken off a stripe per drain, so a busy resource does not starve the others in its stripe */
+	private static final int MAX_BATCH = 1024;
+	/** The number of stripes of the queue of a listener that is not a BatchResourceListener */
+	static final int STRIPES = 16;
+	
+	private final ResourceListener listener;
+	private final int capacity;
+	private final OverflowPolicy overflow;
+	private final Stripe[] stripes;
+	/** The number of queued events in all stripes; everything below and in the stripes is guarded by this queue */
+	private int size;
+	private int waiting;
+	private int maxDepth;
+	private long delivered;
+	private long dropped;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+	
+	ResourceListenerQueue(ResourceListener listener) {
+		this.listener = listener;
+		EventQueue config = listener.getClass().getAnnotation(EventQueue.class);
+		if (config == null) {
+			config = DEFAULTS;
+		}
+		this.capacity = Math.max(1, config.capacity());
+		this.overflow = config.overflow();
+		this.stripes = new Stripe[(listener instanceof BatchResourceListener ? 1 : STRIPES)];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	/**
+	 * Queues an event, applying the overflow policy if the queue is full.
+	 * @param event the event, which is a ResourceFailedEvent for failures
+	 * @param executor the executor that drains the queue
+	 * @throws RejectedExecutionException if the executor has been shut down
+	 */
+	void add(ResourceEvent event, Executor executor) {
+		Stripe stripe = stripeOf(event.getResourceName());
+		synchronized (this) {
+			if (size >= capacity && !makeRoom(event, stripe)) {
+				return;
+			}
+			stripe.entries.addLast(new Entry(event, System.nanoTime()));
+			size++;
+			if (size > maxDepth) {
+				maxDepth = size;
+			}
+			if (stripe.scheduled) {
+				return;
+			}
+			stripe.scheduled = true;
+		}
+		schedule(stripe, executor);
+	}
+	
+	private Stripe stripeOf(String resourceName) {
+		if (stripes.length == 1) {
+			return stripes[0];
+		}
+		int hash = (resourceName != null ? resourceName.hashCode() : 0);
+		return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+	}
+	
+	/**
+	 * Applies the overflow policy to a full queue.
+	 * @param event the event being added
+	 * @param stripe the stripe of the event
+	 * @return true if the event should still be queued
+	 */
+	private boolean makeRoom(ResourceEvent event, Stripe stripe) {
+		switch (overflow) {
+			case BLOCK:
+				return awaitRoom();
+			case DROP_NEWEST:
+				dropped++;
+				return false;
+			case COALESCE:
+				if (event.getType().isStateChange()) {
+					for (Iterator<Entry> iter = stripe.entries.descendingIterator(); iter.hasNext();) {
+						ResourceEvent queued = iter.next().event;
+						if (queued.getType().isStateChange() && queued.getResourceName().equals(event.getResourceName())) {
+							iter.remove();
+							size--;
+							dropped++;
+							return true;
+						}
+					}
+				}
+				return dropOldest(event);
+			case DROP_OLDEST:
+			default:
+				return dropOldest(event);
+		}
+	}
+	
+	/**
+	 * Drops the oldest queued state change to make room for an event, or the event itself if it is a state change and no state
+	 * changes are queued. Otherwise the event is never dropped, so the firing thread waits for room.
+	 * @param event the event being added
+	 * @return true if the event should still be queued
+	 */
+	private boolean dropOldest(ResourceEvent event) {
+		if (dropOldestStateChange()) {
+			return true;
+		}
+		if (event.getType().isStateChange()) {
+			dropped++;
+			return false;
+		}
+		// Only failures, registrations and unregistrations are queued, none of which are dropped
+		return awaitRoom();
+	}
+	
+	/**
+	 * Waits until the queue is no longer full.
+	 * @return true if the event should still be queued
+	 */
+	private boolean awaitRoom() {
+		// A listener that fires events from its own callback would otherwise wait for itself
+		if (isDrainer(Thread.currentThread())) {
+			return true;
+		}
+		waiting++;
+		try {
+			while (size >= capacity) {
+				wait();
+			}
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			dropped++;
+			return false;
+		} finally {
+			waiting--;
+		}
+	}
+	
+	/**
+	 * Drops the state change that has been queued the longest in any stripe.
+	 * @return true if a state change was dropped
+	 */
+	private boolean dropOldestStateChange() {
+		Stripe oldestStripe = null;
+		Entry oldest = null;
+		for (int i = 0; i < stripes.length; i++) {
+			for (Entry entry : stripes[i].entries) {
+				if (entry.event.getType().isStateChange()) {
+					if (oldest == null || entry.queuedNanos - oldest.queuedNanos < 0) {
+						oldestStripe = stripes[i];
+						oldest = entry;
+					}
+					break;
+				}
+			}
+		}
+		if (oldest == null) {
+			return false;
+		}
+		oldestStripe.entries.removeFirstOccurrence(oldest);
+		size--;
+		dropped++;
+		return true;
+	}
+	
+	private boolean isDrainer(Thread thread) {
+		for (int i = 0; i < stripes.length; i++) {
+			if (stripes[i].drainer == thread) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void schedule(final Stripe stripe, final Executor executor) {
+		try {
+			executor.execute(new Runnable(){
+				@Override
+				public void run() {
+					drain(stripe, executor);
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			synchronized (this) {
+				stripe.scheduled = false;
+			}
+			throw ree;
+		}
+	}
+	
+	private void drain(Stripe stripe, Executor executor) {
+		List<Entry> batch = new ArrayList<Entry>();
+		synchronized (this) {
+			stripe.drainer = Thread.currentThread();
+			Entry entry;
+			while (batch.size() < MAX_BATCH && (entry = stripe.entries.pollFirst()) != null) {
+				batch.add(entry);
+			}
+			size -= batch.size();
+			if (waiting > 0) {
+				notifyAll();
+			}
+		}
+		long latency = 0;
+		long maxLatency = 0;
+		try {
+			long now = System.nanoTime();
+			for (int i = 0; i < batch.size(); i++) {
+				long wait = now - batch.get(i).queuedNanos;
+				latency += wait;
+				if (wait > maxLatency) {
+					maxLatency = wait;
+				}
+			}
+			deliver(batch);
+		} finally {
+			boolean reschedule;
+			synchronized (this) {
+				stripe.drainer = null;
+				delivered += batch.size();
+				totalLatencyNanos += latency;
+				if (maxLatency > maxLatencyNanos) {
+					maxLatencyNanos = maxLatency;
+				}
+				reschedule = !stripe.entries.isEmpty();
+				stripe.scheduled = reschedule;
+			}
+			if (reschedule) {
+				try {
+					schedule(stripe, executor);
+				} catch (RejectedExecutionException ree) {
+					synchronized (this) {
+						log.warn("Dropping " + stripe.entries.size() + " resource events because the event dispatcher has shut down");
+						dropped += stripe.entries.size();
+						size -= stripe.entries.size();
+						stripe.entries.clear();
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+	
+	private void deliver(List<Entry> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (listener instanceof BatchResourceListener) {
+			BatchResourceListener batchListener = (BatchResourceListener)listener;
+			List<ResourceEvent> events = new ArrayList<ResourceEvent>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				events.add(batch.get(i).event);
+			}
+			if (batchListener.isCoalescing()) {
+				events = coalesce(events);
+			}
+			try {
+				batchListener.onResourceEvents(events);
+			} catch (RuntimeException re) {
+				log.error("Unexpected exception while delivering " + events.size() + " resource events", re);
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			ResourceEvent event = batch.get(i).event;
+			try {
+				if (event instanceof ResourceFailedEvent) {
+					listener.onResourceFailure((ResourceFailedEvent)event);
+				}
+				else {
+					listener.onResourceEvent(event);
+				}
+			} catch (RuntimeException re) {
+				log.error("Unexpected exception while delivering a resource event", re);
+			}
+		}
+	}
+	
+	/**
+	 * Gets a snapshot of the counters of this queue.
+	 * @return the counters
+	 */
+	synchronized ResourceListenerStats getStats() {
+		return new ResourceListenerStats(listener, capacity, overflow, size, maxDepth, delivered, dropped, totalLatencyNanos,
+				maxLatencyNanos);
+	}
+	
+	/**
+	 * Leaves out every state change that is followed by a later state change of the same resource.
+	 * @param batch the events in the order they were fired
+	 * @return the remaining events, still in order
+	 */
+	static List<ResourceEvent> coalesce(List<ResourceEvent> batch) {
+		Set<String> changed = new HashSet<String>();
+		List<ResourceEvent> coalesced = new ArrayList<ResourceEvent>(batch.size());
+		for (int i = batch.size() - 1; i >= 0; i--) {
+			ResourceEvent event = batch.get(i);
+			if (!event.getType().isStateChange() || changed.add(event.getResourceName())) {
+				coalesced.add(event);
+			}
+		}
+		Collections.reverse(coalesced);
+		return coalesced;
+	}
+	
+	/**
+	 * Carries the defaults of the {@link EventQueue} annotation.
+	 */
+	@EventQueue
+	private static final class Defaults {
+	}
+	
+	/**
+	 * The queued events of the resources whose names hash to the same stripe, which are drained by one task at a time.
+	 */
+	private static final class Stripe {
+		final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+		boolean scheduled;
+		/** The thread delivering the current drain, which must never wait for the queue it is draining */
+		Thread drainer;
+	}
+	
+	/**
+	 * Queued event along with when it was queued.
+	 */
+	private static final class Entry {
+		final ResourceEvent event;
+		final long queuedNanos;
+		
+		Entry(ResourceEvent event, long queuedNanos) {
+			this.event = event;
+			this.queuedNanos = queuedNanos;
+		}
+	}
+}
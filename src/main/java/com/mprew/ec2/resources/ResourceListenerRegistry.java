@@ -0,0 +1,509 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+/**
+ * Copy-on-write registry of ResourceListeners mapped to the ResourceFilters they were registered with. Every registration or removal
+ * builds a new immutable snapshot that precomputes, per filter, the listeners along with whether they are invoked synchronously.
+ * Events are dispatched from the current snapshot without taking any lock, so transitions on different threads never contend with
+ * each other, and only listeners that are registered more than once need to be de-duplicated.
+ * <p>
+ * Listeners that are only interested in a single resource and/or a set of event types can instead be registered as routes, which are
+ * indexed by resource name and event type. An event only reaches the routes for its resource and type, without evaluating any filter,
+ * and failures reach every route for the resource regardless of its event types. The routes of each resource name are an immutable
+ * table that is replaced independently of the others, so registering many routes does not copy all of them every time.
+ * <p>
+ * Listeners that are not invoked synchronously each have a bounded queue of their own, shared by all of their registrations, so each
+ * of them receives the events of a resource in the order they were fired and a slow listener only holds up itself. The events of
+ * different resources may still be delivered to the same listener in parallel. Asynchronous BatchResourceListeners are delivered one
+ * batch at a time and are handed all of the events drained from their queue at once.
+ *
+ * @author dgarson
+ */
+class ResourceListenerRegistry {
+	
+	/** The registered listeners per filter, only used to build new snapshots; guarded by this registry */
+	private final Map<ResourceFilter, List<ResourceListener>> listenerMap = new LinkedHashMap<ResourceFilter, List<ResourceListener>>();
+	private volatile FilterEntry[] snapshot = new FilterEntry[0];
+	/** The routes registered for specific resource names */
+	private final Map<String, RouteTable> routesByName = new ConcurrentHashMap<String, RouteTable>();
+	/** The routes registered for every resource name */
+	private volatile RouteTable anyNameRoutes = RouteTable.EMPTY;
+	/** The number of times each listener has been registered, as a filter or route; guarded by this registry */
+	private final Map<ResourceListener, Integer> registrations = new HashMap<ResourceListener, Integer>();
+	/** Listeners that are registered more than once and must be de-duplicated during dispatch */
+	private volatile Set<ResourceListener> sharedListeners = Collections.emptySet();
+	/** The event queue of each registered asynchronous listener; guarded by this registry */
+	private final Map<ResourceListener, ResourceListenerQueue> queues = new LinkedHashMap<ResourceListener, ResourceListenerQueue>();
+	
+	/**
+	 * Adds a listener mapped to the given filter.
+	 * @param filter the resource filter
+	 * @param listener the listener
+	 */
+	public synchronized void add(ResourceFilter filter, ResourceListener listener) {
+		List<ResourceListener> listeners = listenerMap.get(filter);
+		if (listeners == null) {
+			listeners = new ArrayList<ResourceListener>();
+			listenerMap.put(filter, listeners);
+		}
+		listeners.add(listener);
+		registered(listener);
+		rebuild();
+	}
+	
+	/**
+	 * Adds a listener that is routed the events of a single resource, or of every resource, of the given event types.
+	 * @param resourceName the resource name, or <code>null</code> for every resource
+	 * @param eventTypes the event types, or <code>null</code> for every event type
+	 * @param listener the listener
+	 */
+	public synchronized void add(String resourceName, EnumSet<EventType> eventTypes, ResourceListener listener) {
+		Route route = new Route(listener, queueFor(listener), (eventTypes == null ? null : EnumSet.copyOf(eventTypes)));
+		if (resourceName == null) {
+			anyNameRoutes = anyNameRoutes.with(route);
+		}
+		else {
+			RouteTable table = routesByName.get(resourceName);
+			routesByName.put(resourceName, (table == null ? RouteTable.EMPTY : table).with(route));
+		}
+		registered(listener);
+	}
+	
+	/**
+	 * Removes a listener that was routed the events of the given resource name and event types.
+	 * @param resourceName the resource name, or <code>null</code> for every resource
+	 * @param eventTypes the event types, or <code>null</code> for every event type
+	 * @param listener the listener
+	 */
+	public synchronized void remove(String resourceName, EnumSet<EventType> eventTypes, ResourceListener listener) {
+		if (resourceName == null) {
+			RouteTable table = anyNameRoutes.without(listener, eventTypes, false);
+			if (table != anyNameRoutes) {
+				anyNameRoutes = table;
+				unregistered(listener);
+			}
+		}
+		else {
+			RouteTable table = routesByName.get(resourceName);
+			if (table != null) {
+				RouteTable newTable = table.without(listener, eventTypes, false);
+				if (newTable != table) {
+					if (newTable.isEmpty()) {
+						routesByName.remove(resourceName);
+					}
+					else {
+						routesByName.put(resourceName, newTable);
+					}
+					unregistered(listener);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes every route of a listener, regardless of its resource name and event types.
+	 * @param listener the listener
+	 */
+	private void removeRoutes(ResourceListener listener) {
+		while (registrations.containsKey(listener)) {
+			RouteTable table = anyNameRoutes.without(listener, null, true);
+			if (table != anyNameRoutes) {
+				anyNameRoutes = table;
+				unregistered(listener);
+				continue;
+			}
+			boolean removed = false;
+			for (Map.Entry<String, RouteTable> entry : routesByName.entrySet()) {
+				table = entry.getValue().without(listener, null, true);
+				if (table != entry.getValue()) {
+					if (table.isEmpty()) {
+						routesByName.remove(entry.getKey());
+					}
+					else {
+						routesByName.put(entry.getKey(), table);
+					}
+					unregistered(listener);
+					removed = true;
+					break;
+				}
+			}
+			if (!removed) {
+				break;
+			}
+		}
+	}
+	
+	private void registered(ResourceListener listener) {
+		Integer count = registrations.get(listener);
+		registrations.put(listener, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+		if (count != null && count.intValue() == 1) {
+			Set<ResourceListener> shared = new HashSet<ResourceListener>(sharedListeners);
+			shared.add(listener);
+			sharedListeners = shared;
+		}
+	}
+	
+	private void unregistered(ResourceListener listener) {
+		Integer count = registrations.get(listener);
+		if (count == null) {
+			return;
+		}
+		if (count.intValue() == 1) {
+			registrations.remove(listener);
+			queues.remove(listener);
+		}
+		else {
+			registrations.put(listener, Integer.valueOf(count.intValue() - 1));
+			if (count.intValue() == 2) {
+				Set<ResourceListener> shared = new HashSet<ResourceListener>(sharedListeners);
+				shared.remove(listener);
+				sharedListeners = (shared.isEmpty() ? Collections.<ResourceListener>emptySet() : shared);
+			}
+		}
+	}
+	
+	/**
+	 * Removes a listener from the given filter, or from every filter and route it is registered with if the filter is <code>null</code>.
+	 * @param filter the resource filter, or <code>null</code>
+	 * @param listener the listener
+	 */
+	public synchronized void remove(ResourceFilter filter, ResourceListener listener) {
+		boolean removed = false;
+		if (filter != null) {
+			List<ResourceListener> listeners = listenerMap.get(filter);
+			if (listeners != null) {
+				removed = listeners.remove(listener);
+				if (listeners.isEmpty()) {
+					listenerMap.remove(filter);
+				}
+				if (removed) {
+					unregistered(listener);
+				}
+			}
+		}
+		else {
+			for (Iterator<List<ResourceListener>> iter = listenerMap.values().iterator(); iter.hasNext();) {
+				List<ResourceListener> listeners = iter.next();
+				while (listeners.remove(listener)) {
+					removed = true;
+					unregistered(listener);
+				}
+				if (listeners.isEmpty()) {
+					iter.remove();
+				}
+			}
+			removeRoutes(listener);
+		}
+		if (removed) {
+			rebuild();
+		}
+	}
+	
+	private void rebuild() {
+		FilterEntry[] entries = new FilterEntry[listenerMap.size()];
+		int i = 0;
+		for (Map.Entry<ResourceFilter, List<ResourceListener>> entry : listenerMap.entrySet()) {
+			List<ResourceListener> listeners = entry.getValue();
+			ListenerEntry[] listenerEntries = new ListenerEntry[listeners.size()];
+			for (int j = 0; j < listenerEntries.length; j++) {
+				ResourceListener listener = listeners.get(j);
+				listenerEntries[j] = new ListenerEntry(listener, queueFor(listener));
+			}
+			entries[i++] = new FilterEntry(entry.getKey(), listenerEntries);
+		}
+		snapshot = entries;
+	}
+	
+	/**
+	 * Gets the event queue shared by every registration of an asynchronous listener.
+	 * @param listener the listener
+	 * @return the queue, or <code>null</code> if the listener is invoked synchronously
+	 */
+	private ResourceListenerQueue queueFor(ResourceListener listener) {
+		if (ResourceUtils.isSynchronous(listener)) {
+			return null;
+		}
+		ResourceListenerQueue queue = queues.get(listener);
+		if (queue == null) {
+			queue = new ResourceListenerQueue(listener);
+			queues.put(listener, queue);
+		}
+		return queue;
+	}
+	
+	/**
+	 * Gets the counters of the event queue of every registered asynchronous listener.
+	 * @return the counters, in the order the listeners were registered
+	 */
+	public synchronized List<ResourceListenerStats> getListenerStats() {
+		List<ResourceListenerStats> stats = new ArrayList<ResourceListenerStats>(queues.size());
+		for (ResourceListenerQueue queue : queues.values()) {
+			stats.add(queue.getStats());
+		}
+		return stats;
+	}
+	
+	/**
+	 * Dispatches an event to every listener whose filter accepts the resource, once per listener.
+	 * @param event the event
+	 * @param dispatcher the executor that drains the queues of listeners that are not invoked synchronously
+	 */
+	public void fireResourceEvent(ResourceEvent event, Executor dispatcher) {
+		dispatch(event.getInfo(), event.getType(), event, null, dispatcher);
+	}
+	
+	/**
+	 * Dispatches a failure to every listener whose filter accepts the resource, once per listener.
+	 * @param event the failure event
+	 * @param dispatcher the executor that drains the queues of listeners that are not invoked synchronously
+	 */
+	public void fireResourceFailure(ResourceFailedEvent event, Executor dispatcher) {
+		dispatch(event.getInfo(), null, null, event, dispatcher);
+	}
+	
+	/**
+	 * Dispatches an event or failure to the accepting filters and the matching routes.
+	 * @param resource the resource
+	 * @param type the type of the event, or <code>null</code> for a failure
+	 * @param event the event, or <code>null</code>
+	 * @param failure the failure event, or <code>null</code>
+	 * @param dispatcher the executor that drains the queues of listeners that are not invoked synchronously
+	 */
+	private void dispatch(ResourceInfo resource, EventType type, ResourceEvent event, ResourceFailedEvent failure, Executor dispatcher) {
+		String resourceName = resource.getResourceName();
+		Set<ResourceListener> shared = sharedListeners;
+		// Keep track of the invoked listeners that are registered several times and may match the same event
+		Set<ResourceListener> invoked = (shared.isEmpty() ? null : new HashSet<ResourceListener>());
+		FilterEntry[] entries = snapshot;
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].filter.accepts(resource)) {
+				dispatch(entries[i].listeners, entries[i].listeners.length, shared, invoked, event, failure, dispatcher);
+			}
+		}
+		RouteTable table = routesByName.get(resourceName);
+		if (table != null) {
+			dispatch(table.getRoutes(type), table.getRouteCount(type), shared, invoked, event, failure, dispatcher);
+		}
+		table = anyNameRoutes;
+		dispatch(table.getRoutes(type), table.getRouteCount(type), shared, invoked, event, failure, dispatcher);
+	}
+	
+	private void dispatch(ListenerEntry[] listeners, int count, Set<ResourceListener> shared, Set<ResourceListener> invoked,
+			ResourceEvent event, ResourceFailedEvent failure, Executor dispatcher) {
+		for (int j = 0; j < count; j++) {
+			ResourceListener listener = listeners[j].listener;
+			if (invoked != null && shared.contains(listener) && !invoked.add(listener)) {
+				continue;
+			}
+			if (listeners[j].synchronous) {
+				// Pass off the event to the listener
+				deliver(listener, event, failure);
+			}
+			else {
+				listeners[j].queue.add((failure != null ? failure : event), dispatcher);
+			}
+		}
+	}
+	
+	private static void deliver(ResourceListener listener, ResourceEvent event, ResourceFailedEvent failure) {
+		if (failure != null) {
+			listener.onResourceFailure(failure);
+		}
+		else {
+			listener.onResourceEvent(event);
+		}
+	}
+	
+	/**
+	 * Immutable mapping of a filter to its listeners within a snapshot.
+	 */
+	private static class FilterEntry {
+		private final ResourceFilter filter;
+		private final ListenerEntry[] listeners;
+		
+		FilterEntry(ResourceFilter filter, ListenerEntry[] listeners) {
+			this.filter = filter;
+			this.listeners = listeners;
+		}
+	}
+	
+	/**
+	 * Immutable listener within a snapshot, along with how it is invoked.
+	 */
+	private static class ListenerEntry {
+		final ResourceListener listener;
+		final boolean synchronous;
+		/** The event queue if the listener is invoked asynchronously, otherwise <code>null</code> */
+		final ResourceListenerQueue queue;
+		
+		ListenerEntry(ResourceListener listener, ResourceListenerQueue queue) {
+			this.listener = listener;
+			this.synchronous = (queue == null);
+			this.queue = queue;
+		}
+	}
+	
+	/**
+	 * Listener that is only routed events of the given types.
+	 */
+	private static class Route extends ListenerEntry {
+		/** The event types, or <code>null</code> for every type */
+		final EnumSet<EventType> eventTypes;
+		
+		Route(ResourceListener listener, ResourceListenerQueue queue, EnumSet<EventType> eventTypes) {
+			super(listener, queue);
+			this.eventTypes = eventTypes;
+		}
+		
+		boolean matches(ResourceListener listener, EnumSet<EventType> eventTypes) {
+			return this.listener.equals(listener) && (eventTypes == null ? this.eventTypes == null : eventTypes.equals(this.eventTypes));
+		}
+	}
+	
+	/**
+	 * Immutable table of the routes for a resource name, indexed by event type. Tables share the arrays of their routes with the table
+	 * they were extended from, which has fewer routes and never looks past them, so that adding a route to a table only appends it to
+	 * the arrays of its event types, growing them by doubling, instead of copying every route.
+	 */
+	private static class RouteTable {
+		private static final EventType[] eventTypes = EventType.values();
+		static final RouteTable EMPTY = new RouteTable(new Route[0]);
+		
+		/** All routes, which also receive every failure */
+		private final RouteArray routes;
+		private final int count;
+		/** The routes for each event type, by ordinal */
+		private final RouteArray[] routesByType;
+		private final int[] typeCounts;
+		
+		RouteTable(Route[] routes) {
+			this.routes = new RouteArray(routes, routes.length);
+			this.count = routes.length;
+			routesByType = new RouteArray[eventTypes.length];
+			typeCounts = new int[eventTypes.length];
+			List<Route> typeRoutes = new ArrayList<Route>(routes.length);
+			for (EventType type : eventTypes) {
+				typeRoutes.clear();
+				for (Route route : routes) {
+					if (route.eventTypes == null || route.eventTypes.contains(type)) {
+						typeRoutes.add(route);
+					}
+				}
+				routesByType[type.ordinal()] = new RouteArray(typeRoutes.toArray(new Route[typeRoutes.size()]), typeRoutes.size());
+				typeCounts[type.ordinal()] = typeRoutes.size();
+			}
+		}
+		
+		private RouteTable(RouteArray routes, int count, RouteArray[] routesByType, int[] typeCounts) {
+			this.routes = routes;
+			this.count = count;
+			this.routesByType = routesByType;
+			this.typeCounts = typeCounts;
+		}
+		
+		boolean isEmpty() {
+			return (count == 0);
+		}
+		
+		/**
+		 * Gets the routes for an event type, of which only the first {@link #getRouteCount(EventType)} belong to this table.
+		 * @param type the event type, or <code>null</code> for all routes
+		 * @return the routes
+		 */
+		Route[] getRoutes(EventType type) {
+			return (type == null ? routes.routes : routesByType[type.ordinal()].routes);
+		}
+		
+		/**
+		 * Gets the number of routes for an event type.
+		 * @param type the event type, or <code>null</code> for all routes
+		 * @return the number of routes
+		 */
+		int getRouteCount(EventType type) {
+			return (type == null ? count : typeCounts[type.ordinal()]);
+		}
+		
+		RouteTable with(Route route) {
+			RouteArray[] newByType = routesByType.clone();
+			int[] newTypeCounts = typeCounts.clone();
+			for (EventType type : eventTypes) {
+				if (route.eventTypes == null || route.eventTypes.contains(type)) {
+					int i = type.ordinal();
+					newByType[i] = routesByType[i].append(typeCounts[i], route);
+					newTypeCounts[i]++;
+				}
+			}
+			return new RouteTable(routes.append(count, route), count + 1, newByType, newTypeCounts);
+		}
+		
+		/**
+		 * Gets a table without the first matching route.
+		 * @param listener the listener
+		 * @param eventTypes the event types of the route
+		 * @param anyTypes if the event types of the route should be ignored
+		 * @return the new table, or this table if there was no matching route
+		 */
+		RouteTable without(ResourceListener listener, EnumSet<EventType> eventTypes, boolean anyTypes) {
+			Route[] current = routes.routes;
+			for (int i = 0; i < count; i++) {
+				if (anyTypes ? current[i].listener.equals(listener) : current[i].matches(listener, eventTypes)) {
+					Route[] newRoutes = new Route[count - 1];
+					System.arraycopy(current, 0, newRoutes, 0, i);
+					System.arraycopy(current, i + 1, newRoutes, i, count - i - 1);
+					return (newRoutes.length == 0 ? EMPTY : new RouteTable(newRoutes));
+				}
+			}
+			return this;
+		}
+	}
+	
+	/**
+	 * Array of routes that is shared by the tables extended from one another. Each table only uses the routes up to its own count, and
+	 * a route is only appended in place if no other table has been extended into the next slot yet.
+	 */
+	private static class RouteArray {
+		final Route[] routes;
+		/** The number of slots in use by the newest table sharing this array; guarded by the registry */
+		private int used;
+		
+		RouteArray(Route[] routes, int used) {
+			this.routes = routes;
+			this.used = used;
+		}
+		
+		/**
+		 * Appends a route after the routes of a table.
+		 * @param count the number of routes of the table
+		 * @param route the route
+		 * @return this array if the route was appended in place, otherwise a new array
+		 */
+		RouteArray append(int count, Route route) {
+			if (count == used && count < routes.length) {
+				routes[count] = route;
+				used++;
+				return this;
+			}
+			Route[] grown = new Route[Math.max(4, count * 2)];
+			System.arraycopy(routes, 0, grown, 0, count);
+			grown[count] = route;
+			return new RouteArray(grown, count + 1);
+		}
+	}
+}
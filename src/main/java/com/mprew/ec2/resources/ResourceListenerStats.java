@@ -0,0 +1,105 @@
+package com.mprew.ec2.resources;
+
+import com.mprew.ec2.resources.annotation.EventQueue.OverflowPolicy;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+/**
+ * Snapshot of the counters of the event queue of an asynchronous ResourceListener. The dispatch latency of an event is the time from
+ * when it was queued until it was handed to the listener.
+ *
+ * @author dgarson
+ */
+public final class ResourceListenerStats {
+	
+	private final ResourceListener listener;
+	private final int capacity;
+	private final OverflowPolicy overflow;
+	private final int depth;
+	private final int maxDepth;
+	private final long delivered;
+	private final long dropped;
+	private final long totalLatencyNanos;
+	private final long maxLatencyNanos;
+	
+	ResourceListenerStats(ResourceListener listener, int capacity, OverflowPolicy overflow, int depth, int maxDepth, long delivered,
+			long dropped, long totalLatencyNanos, long maxLatencyNanos) {
+		this.listener = listener;
+		this.capacity = capacity;
+		this.overflow = overflow;
+		this.depth = depth;
+		this.maxDepth = maxDepth;
+		this.delivered = delivered;
+		this.dropped = dropped;
+		this.totalLatencyNanos = totalLatencyNanos;
+		this.maxLatencyNanos = maxLatencyNanos;
+	}
+	
+	/**
+	 * @return the listener
+	 */
+	public ResourceListener getListener() {
+		return listener;
+	}
+	
+	/**
+	 * @return the number of events the queue holds
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * @return what happens to events fired while the queue is full
+	 */
+	public OverflowPolicy getOverflow() {
+		return overflow;
+	}
+	
+	/**
+	 * @return the number of events that were queued when the snapshot was taken
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the largest number of events that have been queued at once
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * @return the number of events handed to the listener
+	 */
+	public long getDelivered() {
+		return delivered;
+	}
+	
+	/**
+	 * @return the number of events dropped or coalesced away because the queue was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * @return the average dispatch latency of the delivered events, in nanoseconds
+	 */
+	public long getAverageLatencyNanos() {
+		return (delivered == 0 ? 0 : totalLatencyNanos / delivered);
+	}
+	
+	/**
+	 * @return the longest dispatch latency of a delivered event, in nanoseconds
+	 */
+	public long getMaxLatencyNanos() {
+		return maxLatencyNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return listener + ": depth=" + depth + "/" + capacity + " (max " + maxDepth + "), delivered=" + delivered + ", dropped=" + dropped
+				+ " (" + overflow + "), latency avg=" + getAverageLatencyNanos() + "ns max=" + maxLatencyNanos + "ns";
+	}
+}
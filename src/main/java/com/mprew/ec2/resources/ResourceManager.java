@@ -1,25 +1,29 @@
 package com.mprew.ec2.resources;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,13 +37,17 @@ import org.springframework.context.ApplicationContextAware;
 import com.mprew.ec2.resources.action.ResourceAction;
 import com.mprew.ec2.resources.action.ResourceActions;
 import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
 import com.mprew.ec2.resources.context.MutableApplicationContext;
 import com.mprew.ec2.resources.context.ResourceContext;
+import com.mprew.ec2.resources.event.HealthChangeEvent;
+import com.mprew.ec2.resources.event.HealthChangeListener;
 import com.mprew.ec2.resources.event.PhaseChangeEvent;
 import com.mprew.ec2.resources.event.PhaseChangeListener;
 import com.mprew.ec2.resources.event.ResourceEvent;
 import com.mprew.ec2.resources.event.ResourceRegisteredEvent;
 import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceEventHandler;
 import com.mprew.ec2.resources.event.ResourceFailedEvent;
 import com.mprew.ec2.resources.event.ResourceListener;
 import com.mprew.ec2.resources.event.ResourceUnregisteredEvent;
@@ -55,6 +63,16 @@ import com.mprew.ec2.resources.validation.ValidationException;
 public class ResourceManager implements ResourceContext, InitializingBean, DisposableBean, ApplicationContextAware, ResourceManagerOperations {
 	
 	public static final ResourceHealth.Level TEST_UNSTABLE_LEVEL = ResourceHealth.Level.WARNING;
+	/** System property that enables virtual threads by default, see {@link #setVirtualThreads(boolean)} */
+	public static final String VIRTUAL_THREADS_PROPERTY = "com.mprew.ec2.resources.virtualThreads";
+	/** System property with the default startup timings file, see {@link #setStartupTimingsFile(File)} */
+	public static final String STARTUP_TIMINGS_PROPERTY = "com.mprew.ec2.resources.startupTimings";
+	/** System property with the default event journal directory, see {@link #setEventJournalDirectory(File)} */
+	public static final String EVENT_JOURNAL_PROPERTY = "com.mprew.ec2.resources.eventJournal";
+	
+	private static final int POOL_SIZE = 6;
+	/** The number of events the event ring holds before publishers wait for the slowest ResourceEventHandler */
+	private static final int EVENT_RING_SIZE = 4096;
 	
 	private static final Logger log = LoggerFactory.getLogger(ResourceManager.class);
 	static final ThreadLocal<ResourceManager> tlManager = new ThreadLocal<ResourceManager>();
@@ -63,21 +81,39 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	private volatile ResourceHealth systemHealth;
 	// private boolean shutdownAllOnError = false;
 	
-	private final ExecutorService executor = Executors.newFixedThreadPool(6, new ResourceJobThreadFactory());
-	private final ExecutorService eventDispatcher = Executors.newFixedThreadPool(6, new EventDispatchThreadFactory());
-	private final ExecutorService phaseExecutor = Executors.newFixedThreadPool(6, new PhaseJobThreadFactory());
+	private boolean virtualThreads = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+	private ExecutorService executor;
+	private ExecutorService eventDispatcher;
+	private final ResourceEventRing eventRing = new ResourceEventRing(EVENT_RING_SIZE, ResourceExecutors.newThreadFactory("EventRing-"));
+	private ExecutorService phaseExecutor;
+	private ScheduledExecutorService timeoutScheduler;
 	private final Object resourceLock = new Object();
 	private Map<String, ResourceMetadata> resourceMap = new ConcurrentHashMap<String, ResourceMetadata>();
+	/** The number of registered resources in each state, changed together with resourceMap and the resource states */
+	private final ResourceStateCounts stateCounts = new ResourceStateCounts();
+	/** The number of registered resources at each health level, changed together with resourceMap and the resource health */
+	private final ResourceHealthCounts healthCounts = new ResourceHealthCounts();
+	/** The registered resources by the types of their beans, changed together with resourceMap */
+	private final ResourceTypeIndex typeIndex = new ResourceTypeIndex();
 	private Map<String, ManagedResourceInfo> managedObjects = new ConcurrentHashMap<String, ManagedResourceInfo>();
 	private Map<String, ResourceMetadata> beanMap = new ConcurrentHashMap<String, ResourceMetadata>();
-	private Map<ResourceMetadata, Set<Thread>> workingOnResources = new ConcurrentHashMap<ResourceMetadata, Set<Thread>>();
 	private Map<String, Object> properties = new ConcurrentHashMap<String, Object>();
 	
-	private final Map<ResourceFilter, List<ResourceListener>> listenerMap = new HashMap<ResourceFilter, List<ResourceListener>>();
+	private final ResourceListenerRegistry listenerRegistry = new ResourceListenerRegistry();
+	/** The transitions between resource states, by current state and then by requested state, which is replaced when a transition is set */
+	private volatile EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>> transitions = ResourceTransition.defaults();
+	private final Object transitionLock = new Object();
 	private final List<PhaseChangeListener> phaseListeners = new ArrayList<PhaseChangeListener>();
-	private final Map<Class<?>, Injections> pendingInjections = new ConcurrentHashMap<Class<?>, Injections>();
+	private final List<HealthChangeListener> healthListeners = new ArrayList<HealthChangeListener>();
+	private final PendingInjections pendingInjections = new PendingInjections();
+	private final Set<ResourceFuture<?>> pendingFutures = Collections.newSetFromMap(new ConcurrentHashMap<ResourceFuture<?>, Boolean>());
 	
 	private DependencyCalculator calculator;
+	private File startupTimingsFile = (System.getProperty(STARTUP_TIMINGS_PROPERTY) == null ? null : new File(System.getProperty(STARTUP_TIMINGS_PROPERTY)));
+	private StartupTimings startupTimings;
+	private File eventJournalDirectory = (System.getProperty(EVENT_JOURNAL_PROPERTY) == null ? null : new File(System.getProperty(EVENT_JOURNAL_PROPERTY)));
+	/** The journal of every resource event, failure and system state change, or <code>null</code> if not journaling */
+	private ResourceEventJournal eventJournal;
 	
 	private ApplicationContext appContext;
 	private boolean startingUp = false;
@@ -130,6 +166,11 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		// Set external references
 		tlManager.set(this);
 		
+		executor = ResourceExecutors.newExecutor("ResourceJob-", POOL_SIZE, virtualThreads);
+		eventDispatcher = ResourceExecutors.newExecutor("EventDispatch-", POOL_SIZE, virtualThreads);
+		phaseExecutor = ResourceExecutors.newExecutor("PhaseJob-", POOL_SIZE, virtualThreads);
+		timeoutScheduler = ResourceExecutors.newScheduler("FutureTimeout-");
+		
 		// Set the resource manager for action and object construction
 		ResourceActions.setResourceManager(this);
 		ObjectFactory.resourceManager = this;
@@ -137,6 +178,20 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		systemState = ResourceState.INITIALIZING;
 		systemHealth = ResourceHealth.okHealth;
 		
+		// Load the start durations observed during previous runs
+		startupTimings = new StartupTimings(startupTimingsFile);
+		startupTimings.load();
+		
+		// Journal the events of this run next to those of previous runs
+		if (eventJournalDirectory != null) {
+			try {
+				eventJournal = new ResourceEventJournal(eventJournalDirectory, ResourceEventJournal.DEFAULT_RECORDS_PER_SEGMENT,
+						ResourceEventJournal.DEFAULT_TEXT_BYTES_PER_SEGMENT, ResourceEventJournal.DEFAULT_MAX_SEGMENTS);
+			} catch (IOException ioe) {
+				log.warn("Unable to open the event journal in " + eventJournalDirectory + ", events will not be journaled", ioe);
+			}
+		}
+		
 		// Automatically discover managed beans
 		Map<String, Object> managedBeans = appContext.getBeansWithAnnotation(ResourceType.class);
 		for (Map.Entry<String, Object> entry : managedBeans.entrySet()) {
@@ -183,6 +238,15 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 				throw new DependencyDeclarationException(msg, de);
 			}
 		}
+		
+		// Precompute the startup order and levels of the dependency graph
+		try {
+			calculator.computeStartup();
+		} catch (DependencyException de) {
+			String msg = "Unable to compute startup order of resources!";
+			log.error(msg, de);
+			throw new DependencyDeclarationException(msg, de);
+		}
 	}
 	
 	@Override
@@ -190,6 +254,48 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		this.appContext = applicationContext;
 	}
 	
+	/**
+	 * Sets whether resource jobs, phase jobs and events are run on a new virtual thread each instead of on fixed pools of
+	 * {@value #POOL_SIZE} threads. This lets any number of resources block in their start methods, e.g. on sockets or other
+	 * resources, without holding back the startup of the rest. Virtual threads require Java 21; on older JVMs the fixed pools are
+	 * used regardless. Defaults to the {@value #VIRTUAL_THREADS_PROPERTY} system property, and must be set before the properties
+	 * of this ResourceManager have been set.
+	 * @param virtualThreads true to use virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * Sets the file that the observed start durations of resources are persisted to, which are used to start the resources on
+	 * the longest dependency chains first. Each application should have a file of its own, as the durations are kept by resource name.
+	 * Start durations are only kept in memory for the current run by default, unless the {@value #STARTUP_TIMINGS_PROPERTY} system
+	 * property is set.
+	 * @param startupTimingsFile the timings file, or <code>null</code> to not persist the start durations
+	 */
+	public void setStartupTimingsFile(File startupTimingsFile) {
+		this.startupTimingsFile = startupTimingsFile;
+	}
+	
+	/**
+	 * Sets the directory of the binary journal that every resource event, failure and system state change is appended to, for
+	 * post-mortems. The journal keeps the most recent segments of 16MB each, which can be read back with
+	 * {@link ResourceEventJournal#read(File)} and replayed with {@link ResourceEventJournal#replay(File, ResourceListener)}. Events are
+	 * only journaled by default if the {@value #EVENT_JOURNAL_PROPERTY} system property is set.
+	 * @param eventJournalDirectory the journal directory, or <code>null</code> to not journal events
+	 */
+	public void setEventJournalDirectory(File eventJournalDirectory) {
+		this.eventJournalDirectory = eventJournalDirectory;
+	}
+	
+	/**
+	 * Gets the start durations of resources observed during this and previous runs.
+	 * @return the startup timings
+	 */
+	StartupTimings getStartupTimings() {
+		return startupTimings;
+	}
+	
 	/**
 	 * Adds a PhaseListener to listen to system state changes.
 	 * @param listener the listener
@@ -212,6 +318,47 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		}
 	}
 	
+	/**
+	 * Adds a ResourceEventHandler to the event ring, which is published every resource event, failure and system state change without
+	 * allocating any event objects. Each handler runs on a thread of its own, and resource transitions wait for the slowest handler
+	 * once it is {@value #EVENT_RING_SIZE} events behind, for up to a second. A handler that is still that far behind is no longer
+	 * waited for and skips the events it missed, which shows as a gap in the sequence numbers it is passed.
+	 * @param handler the handler
+	 */
+	public void addResourceEventHandler(ResourceEventHandler handler) {
+		eventRing.addHandler(handler);
+	}
+	
+	/**
+	 * Removes a ResourceEventHandler from the event ring, once it has handled the events that were already published.
+	 * @param handler the handler
+	 */
+	public void removeResourceEventHandler(ResourceEventHandler handler) {
+		eventRing.removeHandler(handler);
+	}
+	
+	/**
+	 * Adds a HealthChangeListener to listen to changes in the level of the system health.
+	 * @param listener the listener
+	 */
+	public void addHealthListener(HealthChangeListener listener) {
+		synchronized (healthListeners) {
+			if (!healthListeners.contains(listener)) {
+				healthListeners.add(listener);
+			}
+		}
+	}
+	
+	/**
+	 * Removes a HealthChangeListener from listening to changes in the system health.
+	 * @param listener the listener
+	 */
+	public void removeHealthListener(HealthChangeListener listener) {
+		synchronized (healthListeners) {
+			healthListeners.remove(listener);
+		}
+	}
+	
 	/**
 	 * Adds a new ResourceListener that applies to all ResourceEvents.
 	 * @param listener the listener
@@ -233,21 +380,26 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 * @param listener the listener
 	 */
 	public void addResourceListener(ResourceFilter filter, ResourceListener listener) {
-		synchronized (listenerMap) {
-			if (filter == null) {
-				filter = ResourceFilter.ACCEPT_EVERYTHING;
-			}
-			List<ResourceListener> listeners = listenerMap.get(filter);
-			if (listeners == null) {
-				listeners = new ArrayList<ResourceListener>();
-				listenerMap.put(filter, listeners);
-			}
-			listeners.add(listener);
+		if (filter == null) {
+			filter = ResourceFilter.ACCEPT_EVERYTHING;
 		}
+		listenerRegistry.add(filter, listener);
+	}
+	
+	/**
+	 * Adds a new ResourceListener that only receives the events of the given types for the resource with the given name, along with
+	 * its failures. Unlike filtered listeners, these are routed directly by resource name and event type, so no matter how many are
+	 * registered an event only reaches the listeners that are interested in it.
+	 * @param resourceName the resource name, or <code>null</code> for all resources
+	 * @param eventTypes the event types, or <code>null</code> for all event types
+	 * @param listener the listener
+	 */
+	public void addResourceListener(String resourceName, EnumSet<EventType> eventTypes, ResourceListener listener) {
+		listenerRegistry.add(resourceName, eventTypes, listener);
 	}
 	
 	/**
-	 * Removes a ResourceListener from all filters that it is registered with.
+	 * Removes a ResourceListener from all filters, resource names and event types that it is registered with.
 	 * @param listener the listener instance
 	 */
 	public void removeResourceListener(ResourceListener listener) {
@@ -265,28 +417,27 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 * @param listener the listener instance
 	 */
 	public void removeResourceListener(ResourceFilter filter, ResourceListener listener) {
-		synchronized (listenerMap) {
-			if (filter != null) {
-				List<ResourceListener> listeners = listenerMap.get(filter);
-				if (listeners != null) {
-					listeners.remove(listener);
-				}
-				if (listeners != null && listeners.isEmpty()) {
-					listenerMap.remove(filter);
-				}
-			}
-			else {
-				for (Iterator<ResourceFilter> keyIter = listenerMap.keySet().iterator(); keyIter.hasNext();) {
-					filter = keyIter.next();
-					List<ResourceListener> listeners = listenerMap.get(filter);
-					if (listeners.remove(listener)) {
-						if (listeners.isEmpty()) {
-							keyIter.remove();
-						}
-					}
-				}
-			}
-		}
+		listenerRegistry.remove(filter, listener);
+	}
+	
+	/**
+	 * Removes a ResourceListener that was added for the given resource name and event types.
+	 * @param resourceName the resource name (may be null)
+	 * @param eventTypes the event types (may be null)
+	 * @param listener the listener instance
+	 */
+	public void removeResourceListener(String resourceName, EnumSet<EventType> eventTypes, ResourceListener listener) {
+		listenerRegistry.remove(resourceName, eventTypes, listener);
+	}
+	
+	/**
+	 * Gets the counters of the event queue of every asynchronous ResourceListener, such as how many events are queued, how many were
+	 * dropped because the listener fell behind and how long events waited before being delivered.
+	 * @return the counters of each listener
+	 * @see com.mprew.ec2.resources.annotation.EventQueue
+	 */
+	public List<ResourceListenerStats> getListenerStats() {
+		return listenerRegistry.getListenerStats();
 	}
 	
 	/**
@@ -300,30 +451,65 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		}
 		try {
 			future.get();
-			if (!pendingInjections.isEmpty()) {
-				for (Map.Entry<Class<?>, Injections> entry : pendingInjections.entrySet()) {
-					Class<?> resourceType = entry.getKey();
-					ResourceInfo resource = getResource(resourceType); 
-					if (resource == null) {
-						StringBuilder resNames = new StringBuilder();
-						for (Field field : entry.getValue().getFields()) {
-							ResourceMetadata res = entry.getValue().getInjectee(field);
-							if (resNames.length() > 0) {
-								resNames.append(", ");
-							}
-							resNames.append(res.getResourceName());
+			checkPendingInjections();
+			log.info("Finished running Initialization action.");
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof ResourceException)
+				throw (ResourceException)ee.getCause();
+			throw new ResourceException("Unable to invoke initialization action", ee.getCause());
+		} catch (InterruptedException ie) {
+			throw new ResourceException("Interrupted waiting for initialization to complete", ie);
+		}
+	}
+	
+	/**
+	 * Verifies that a resource exists for the type of every resource reference that has not been injected yet.
+	 * @throws ResourceException if a referenced resource type could not be found
+	 */
+	private void checkPendingInjections() throws ResourceException {
+		if (!pendingInjections.isEmpty()) {
+			for (PendingInjections.Injections injs : pendingInjections.getAll()) {
+				Class<?> resourceType = injs.getResourceType();
+				ResourceInfo resource = getResource(resourceType); 
+				if (resource == null) {
+					StringBuilder resNames = new StringBuilder();
+					for (ResourceMetadata res : injs.getReferers()) {
+						if (resNames.length() > 0) {
+							resNames.append(", ");
 						}
-						throw new ResourceNotFoundException("Unable to find Dependency Resource [" + resourceType.getAnnotation(ResourceType.class).name() + "] of Type [" + resourceType + "] for Resource References [" + resNames + "]");
+						resNames.append(res.getResourceName());
 					}
+					throw new ResourceNotFoundException("Unable to find Dependency Resource [" + resourceType.getAnnotation(ResourceType.class).name() + "] of Type [" + resourceType + "] for Resource References [" + resNames + "]");
 				}
 			}
-			log.info("Finished running Initialization action.");
+		}
+	}
+	
+	/**
+	 * Brings all of the registered resources to RUNNING in a single pipelined action, as an alternative to calling {@link #initialize()},
+	 * {@link #start()} and {@link #publish()} in turn. Every resource is initialized, started and published as soon as its own
+	 * dependencies allow, rather than waiting for all resources to finish each phase, and the system state still passes through every
+	 * phase once all resources have.
+	 * @throws ResourceException if there are exceptions while launching the resources
+	 */
+	public synchronized void launch() throws ResourceException {
+		startingUp = true;
+		Future<?> future;
+		synchronized (resourceMap) {
+			future = phaseExecutor.submit(ResourceActions.launch(resourceMap.values(), true));
+		}
+		try {
+			future.get();
+			startingUp = false;
+			startupTimings.save();
+			checkPendingInjections();
+			log.info("Finished running Launch action.");
 		} catch (ExecutionException ee) {
 			if (ee.getCause() instanceof ResourceException)
 				throw (ResourceException)ee.getCause();
-			throw new ResourceException("Unable to invoke initialization action", ee.getCause());
+			throw new ResourceException("Unable to invoke launch action", ee.getCause());
 		} catch (InterruptedException ie) {
-			throw new ResourceException("Interrupted waiting for initialization to complete", ie);
+			throw new ResourceException("Interrupted waiting for launch to complete", ie);
 		}
 	}
 	
@@ -340,6 +526,7 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		try {
 			future.get();
 			startingUp = false;
+			startupTimings.save();
 			log.info("Finished running Start action.");
 		} catch (ExecutionException ee) {
 			if (ee.getCause() instanceof ResourceException)
@@ -625,6 +812,11 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 			
 			phaseExecutor.shutdown();
 			eventDispatcher.shutdown();
+			eventRing.shutdown();
+			if (eventJournal != null) {
+				eventJournal.close();
+			}
+			timeoutScheduler.shutdownNow();
 			
 			logWorkingOn(log);
 		} catch (Exception e) {
@@ -633,6 +825,17 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		}
 	}
 	
+	/**
+	 * Starts a resource, recording how long its start method took.
+	 * @param resource the resource
+	 * @throws ResourceException on any exception while starting the resource
+	 */
+	private void startResource(ResourceMetadata resource) throws ResourceException {
+		long begin = System.nanoTime();
+		resource.start(this);
+		startupTimings.record(resource.getResourceName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+	}
+	
 	/**
 	 * Gets the job ExecutorService.
 	 * @return the job executor
@@ -647,90 +850,78 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 * @return true if working on resource, false otherwise
 	 */
 	public boolean isWorkingOn(ResourceInfo resource) {
-		synchronized (workingOnResources) {
-			Set<Thread> threads = workingOnResources.get(resource);
-			if (threads == null) {
-				return false;
-			}
-			Set<Thread> otherThreads = new HashSet<Thread>(threads);
-			otherThreads.remove(Thread.currentThread());
-			return !otherThreads.isEmpty();
+		if (!(resource instanceof ResourceMetadata)) {
+			return false;
 		}
+		return ((ResourceMetadata)resource).getOwnership().isOwnedByOtherThread();
 	}
 	
 	/**
-	 * Marks a resource as being acted upon.
+	 * Marks a resource as being acted upon by the current thread.
 	 * @param resource the resource to mark as being worked on
+	 * @param action the action working on the resource
 	 */
-	void workingOn(ResourceInfo resource) {
-		synchronized (workingOnResources) {
-			Set<Thread> threads = workingOnResources.get(resource);
-			if (threads == null) {
-				threads = new HashSet<Thread>();
-				workingOnResources.put((ResourceMetadata)resource, threads);
-			}
-			if (threads.add(Thread.currentThread())) {
-				// log.info("Working On Resource [" + resource.getResourceName() + "]: " + toString(threads));
-			}
-		}
+	void workingOn(ResourceInfo resource, AbstractResourceAction action) {
+		((ResourceMetadata)resource).getOwnership().acquire(action);
 	}
 	
 	/**
-	 * Marks a resource as no longer being acted upon.
+	 * Marks a resource as no longer being acted upon by the current thread.
 	 * @param resource the resource to unmark as being worked on
 	 */
 	void finishedWith(ResourceInfo resource) {
-		synchronized (workingOnResources) {
-			Set<Thread> threads = workingOnResources.get(resource);
-			if (threads != null) {
-				if (threads.remove(Thread.currentThread())) {
-					// log.info("Working On Resource[" + resource.getResourceName() + "]: " + toString(threads));
-				}
-				if (threads.isEmpty()) {
-					workingOnResources.remove(resource);
-				}
+		((ResourceMetadata)resource).getOwnership().release();
+	}
+	
+	/**
+	 * Takes a snapshot of the registered resources that are being worked on, without blocking the threads that work on them.
+	 * @return the owners of each resource that has any
+	 */
+	Map<ResourceMetadata, ResourceOwnership.Owner[]> getWorkingOn() {
+		Map<ResourceMetadata, ResourceOwnership.Owner[]> workingOn = new LinkedHashMap<ResourceMetadata, ResourceOwnership.Owner[]>();
+		for (ResourceMetadata resource : resourceMap.values()) {
+			ResourceOwnership.Owner[] owners = resource.getOwnership().getOwners();
+			if (owners.length > 0) {
+				workingOn.put(resource, owners);
 			}
 		}
+		return workingOn;
 	}
 	
+	/**
+	 * Logs the resources that are being worked on, the threads and actions working on them, and the resources each action is still
+	 * waiting for before it can act on them, to diagnose phases that do not finish.
+	 * @param log the logger
+	 */
 	public void logWorkingOn(Logger log) {
-		synchronized (workingOnResources) {
-			StringBuilder buf = new StringBuilder("Working on Resources:");
-			if (workingOnResources.isEmpty()) {
-				buf.append(" None");
-			}
-			else {
-				for (Map.Entry<ResourceMetadata, Set<Thread>> entry : workingOnResources.entrySet()) {
-					ResourceMetadata resource = entry.getKey();
-					Set<Thread> threads = entry.getValue();
-					buf.append("\n\t").append(resource.getResourceName() + " [" + resource.getState() + "] Bean [" + resource.getBeanName() + "]:");
-					for (Thread t : threads) {
-						buf.append("\n\t\tThread: ").append(t.getName() + " [" + t.getId() + "]");
+		Map<ResourceMetadata, ResourceOwnership.Owner[]> workingOn = getWorkingOn();
+		StringBuilder buf = new StringBuilder("Working on Resources:");
+		if (workingOn.isEmpty()) {
+			buf.append(" None");
+		}
+		for (Map.Entry<ResourceMetadata, ResourceOwnership.Owner[]> entry : workingOn.entrySet()) {
+			ResourceMetadata resource = entry.getKey();
+			buf.append("\n\t").append(resource.getResourceName() + " [" + resource.getState() + "] Bean [" + resource.getBeanName() + "]:");
+			for (ResourceOwnership.Owner owner : entry.getValue()) {
+				buf.append("\n\t\t").append(owner);
+				if (owner.action != null) {
+					Set<ResourceInfo> blockers = owner.action.getPendingBlockers(resource);
+					if (!blockers.isEmpty()) {
+						buf.append(" Blocked By: ").append(blockers);
 					}
 				}
 			}
-			log.info(buf.toString());
 		}
+		log.info(buf.toString());
 	}
 	
 	/**
 	 * Check to see if we need to change to a new system state.
 	 */
 	void checkForNewSystemState() {
-		boolean updateState = true;
-		ResourceState newSystemState;
-		synchronized (resourceMap) {
-			// We are trying to move to the stable form of our state
-			newSystemState = systemState.getStabilizeState();
-			for (ResourceMetadata resource : resourceMap.values()) {
-				// If there is any different then we won't update the system state
-				if (!resource.getState().isEquivalent(newSystemState)) {
-					updateState = false;
-					break;
-				}
-			}
-		}
-		if (updateState) {
+		// We are trying to move to the stable form of our state, once every resource is in an equivalent state
+		ResourceState newSystemState = systemState.getStabilizeState();
+		if (stateCounts.isAllEquivalent(newSystemState)) {
 			changeSystemState(newSystemState);
 			
 			// If we are updating the system state then see if we need to correct the system health
@@ -745,76 +936,89 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 * @param newState the new system state
 	 */
 	void changeSystemState(final ResourceState newState) {
-		synchronized (resourceLock) {
-			if (systemState == newState) {
-				return;
-			}
-			String msg = "System state changed from " + systemState + " to " + newState;
-			final ResourceState oldState = systemState;
-			systemState = newState;
-			log.info(msg);
-			
-			synchronized (phaseListeners) {
-				final PhaseChangeEvent event = new PhaseChangeEvent(this, oldState, newState);
-				for (final PhaseChangeListener listener : phaseListeners) {
-					if (ResourceUtils.isSynchronous(listener)) {
-						listener.phaseChanged(event);
+		ResourceState oldState = null;
+		// The phase change is ordered on the event ring while holding the lock, but published after releasing it, since publishing
+		// waits for the event handlers, which may themselves wait on the lock. A reserved sequence is published even if a phase
+		// listener throws, since the ring handlers wait for every sequence in order.
+		long ringSequence = -1;
+		try {
+			synchronized (resourceLock) {
+				if (systemState == newState) {
+					return;
+				}
+				String msg = "System state changed from " + systemState + " to " + newState;
+				oldState = systemState;
+				systemState = newState;
+				log.info(msg);
+				
+				if (eventRing.hasHandlers()) {
+					ringSequence = eventRing.reserve();
+				}
+				try {
+					if (eventJournal != null) {
+						eventJournal.appendPhaseChange(oldState, newState);
 					}
-					else {
-						// This shouldn't take a long time, but just in case
-						eventDispatcher.submit(new Runnable(){
-							@Override
-							public void run() {
+					synchronized (phaseListeners) {
+						final PhaseChangeEvent event = new PhaseChangeEvent(this, oldState, newState);
+						for (final PhaseChangeListener listener : phaseListeners) {
+							if (ResourceUtils.isSynchronous(listener)) {
 								listener.phaseChanged(event);
 							}
-						});
+							else {
+								// This shouldn't take a long time, but just in case
+								eventDispatcher.submit(new Runnable(){
+									@Override
+									public void run() {
+										listener.phaseChanged(event);
+									}
+								});
+							}
+						}
 					}
+					
+					// Fail any futures still waiting on resources, since they will not get there anymore
+					if (newState == ResourceState.SHUTDOWN_FORCEFULLY || newState == ResourceState.SHUTDOWN_GRACEFULLY) {
+						for (ResourceFuture<?> future : pendingFutures) {
+							future.systemShutdown();
+						}
+					}
+				}
+				finally {
+					resourceLock.notifyAll();
 				}
 			}
-			
-			resourceLock.notifyAll();
+		}
+		finally {
+			if (ringSequence != -1) {
+				eventRing.publishPhaseChange(ringSequence, oldState, newState);
+			}
 		}
 	}
 	
 	/**
 	 * Fires a resource event for the specified resource.
 	 * @param resource the resource
+	 * @param oldState the state of the resource before the event
+	 * @param newState the state of the resource after the event
 	 * @param eventType the event type
 	 */
-	void fireResourceEvent(ResourceMetadata resource, ResourceState oldState, EventType eventType) {
+	void fireResourceEvent(ResourceMetadata resource, ResourceState oldState, ResourceState newState, EventType eventType) {
 		// Construct a new ResourceEvent from the source and type
-		final ResourceEvent evt;
+		ResourceEvent evt;
 		if (eventType == EventType.REGISTERED)
 			evt = new ResourceRegisteredEvent(resource);
 		else if (eventType == EventType.UNREGISTERED)
 			evt = new ResourceUnregisteredEvent(resource);
 		else
 			evt = new ResourceEvent(resource, eventType);
-		synchronized (listenerMap) {
-			// Keep track of the invoked ResourceListeners in case there are overlapping listeners registered w/ResourceFilters that match the same resource
-			Set<ResourceListener> invoked = new HashSet<ResourceListener>();
-			for (Map.Entry<ResourceFilter, List<ResourceListener>> entry : listenerMap.entrySet()) {
-				if (entry.getKey().accepts(resource)) {
-					for (final ResourceListener listener : entry.getValue()) {
-						if (invoked.add(listener)) {
-							if (ResourceUtils.isSynchronous(listener)) {
-								// Pass off the event to the listener
-								listener.onResourceEvent(evt);
-							}
-							else {
-								eventDispatcher.submit(new Runnable(){
-									@Override
-									public void run() {
-										// Pass off the event to the listener
-										listener.onResourceEvent(evt);
-									}
-								});
-							}
-						}
-					}
-				}
-			}
+		resource.getStateWaiters().eventFired(eventType);
+		if (eventRing.hasHandlers()) {
+			eventRing.publishEvent(resource, eventType);
+		}
+		if (eventJournal != null) {
+			eventJournal.appendEvent(resource, oldState, newState, eventType);
 		}
+		listenerRegistry.fireResourceEvent(evt, eventDispatcher);
 	}
 	
 	/**
@@ -824,250 +1028,58 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 * @param cause the Throwable cause
 	 */
 	void fireResourceFailure(ResourceMetadata resource, EventType attemptedEventType, Throwable cause) {
-		final ResourceFailedEvent evt = new ResourceFailedEvent(resource, attemptedEventType, cause);
-		synchronized (listenerMap) {
-			// Keep track of the invoked ResourceListeners in case there are overlapping listeners registered w/ResourceFilters that match the same resource
-			Set<ResourceListener> invoked = new HashSet<ResourceListener>();
-			for (Map.Entry<ResourceFilter, List<ResourceListener>> entry : listenerMap.entrySet()) {
-				if (entry.getKey().accepts(resource)) {
-					for (final ResourceListener listener : entry.getValue()) {
-						if (invoked.add(listener)) {
-							if (ResourceUtils.isSynchronous(listener)) {
-								// Pass off the event to the listener
-								listener.onResourceFailure(evt);
-							}
-							else {
-								eventDispatcher.submit(new Runnable(){
-									@Override
-									public void run() {
-										// Pass off the event to the listener
-										listener.onResourceFailure(evt);									
-									}
-								});
-							}
-						}
-					}
-				}
-			}
+		ResourceFailedEvent evt = new ResourceFailedEvent(resource, attemptedEventType, cause);
+		resource.getStateWaiters().failureFired();
+		if (eventRing.hasHandlers()) {
+			eventRing.publishFailure(resource, attemptedEventType, cause);
+		}
+		if (eventJournal != null) {
+			eventJournal.appendFailure(resource, attemptedEventType, cause);
 		}
+		listenerRegistry.fireResourceFailure(evt, eventDispatcher);
 	}
 	
 	/**
-	 * Changes the state of one of the running resources.
+	 * Changes the state of one of the running resources, by executing the steps of the transition from its current state to the new
+	 * state. If there is no transition between the states, nothing is done. Each state the transition enters is compared and set against
+	 * the state and version the resource had before, so if another thread changes the state of the resource in the meantime, the rest of
+	 * the transition is abandoned instead of overwriting that change, and a {@link ResourceSupersededException} is returned.
 	 * @param resource the resource
 	 * @param currentState the current state
 	 * @param newState the new state of the resource
-	 * @return any ResourceException that will be thrown after everything else has changed
+	 * @return any ResourceException that will be thrown after everything else has changed, or a ResourceSupersededException if another
+	 * thread changed the state of the resource first
 	 */
 	ResourceException changeResourceState(ResourceInfo ri, ResourceState currentState, ResourceState newState, boolean updateSystemHealth) {
 		if(currentState == newState) {
 			return null;
 		}
 		ResourceMetadata resource = (ResourceMetadata)ri;
+		long stamp = resource.getStateStamp();
+		if (ResourceMetadata.stateOf(stamp) != currentState) {
+			log.debug(resource + " is no longer " + currentState + " so it is not being changed to " + newState);
+			return new ResourceSupersededException(resource, newState, resource + " is no longer " + currentState + " so it was not changed to " + newState);
+		}
 		EventType eventType = EventType.UNKNOWN;
 		try {
-			resource.semaphore.acquire();
-			switch (currentState) {
-				case INITIALIZING:
-					switch (newState) {
-						case INITIALIZED:
-							eventType = EventType.INITIALIZING;
-							resource.setContextIfAware(this);
-							try {
-								resource.injectProperties(this, pendingInjections);
-							} catch (ResourceException re) {
-								log.warn("Unable to inject properties into " + resource, re);
-							}
-							if (resource.hasInitialize()) {
-								resource.initialize(this);
-							}
-							eventType = EventType.INITIALIZED;
-							setResourceState(resource, currentState, ResourceState.INITIALIZED, updateSystemHealth);
-							break;
+			ResourceTransition transition = transitions.get(currentState).get(newState);
+			if (transition != null) {
+				for (ResourceTransition.Step step : transition.steps()) {
+					if (!step.appliesTo(resource)) {
+						continue;
 					}
-					break;
-					
-				case RESUMING:
-				case STARTING:
-				case PUBLISHING:
-				case PAUSING:
-				case SHUTTING_DOWN_FORCEFULLY:
-				case SHUTTING_DOWN_GRACEFULLY:
-				case SHUTDOWN_FORCEFULLY:
-				case SHUTDOWN_GRACEFULLY:
-					// no-op
-					break;
-				
-				// The resource is currently in the INITIALIZED state
-				case INITIALIZED:
-					switch (newState) {
-						case INITIALIZING:
-						case INITIALIZED:
-							// no-op
-							break;
-						case STARTING:
-						case STARTED:
-							eventType = EventType.STARTING;
-							setResourceState(resource, currentState, ResourceState.STARTING, updateSystemHealth);
-							try {
-								resource.injectProperties(this, pendingInjections);
-							} catch (ResourceException re) {
-								log.warn("Unable to inject properties into " + resource, re);
-							}
-							resource.start(this);
-							eventType = EventType.STARTED;
-							setResourceState(resource, currentState, ResourceState.STARTED, updateSystemHealth);
-							break;
-						case PUBLISHING:
-						case RUNNING:
-							// If we are resuming then we should start an initialized resource
-						case RESUMING:
-							eventType = EventType.STARTING;
-							setResourceState(resource, currentState, ResourceState.STARTING, updateSystemHealth);
-							try {
-								resource.injectProperties(this, pendingInjections);
-							} catch (ResourceException re) {
-								log.warn("Unable to inject properties into " + resource, re);
-							}
-							resource.start(this);
-							eventType = EventType.STARTED;
-							setResourceState(resource, currentState, ResourceState.STARTED, updateSystemHealth);
-							if (resource.hasPublish()) {
-								eventType = EventType.PUBLISHING;
-								setResourceState(resource, currentState, ResourceState.PUBLISHING, updateSystemHealth);
-								try {
-									resource.injectProperties(this, pendingInjections);
-								} catch (ResourceException re) {
-									log.warn("Unable to inject properties into " + resource, re);
-								}
-								resource.publish(this);
-							}
-							eventType = EventType.RUNNING;
-							setResourceState(resource, currentState, ResourceState.RUNNING, updateSystemHealth);
-							break;
-						case PAUSING:
-						case PAUSED:
-							// do nothing; we should hold at INITIALIZED
-							break;
-						case SHUTTING_DOWN_FORCEFULLY:
-						case SHUTDOWN_FORCEFULLY:
-							eventType = EventType.STOPPING;
-							forcefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-						case SHUTTING_DOWN_GRACEFULLY:
-						case SHUTDOWN_GRACEFULLY:
-							eventType = EventType.STOPPING;
-							gracefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-					}
-					break;
-					
-				// The resource is currently in the STARTED state
-				case STARTED:
-					switch (newState) {
-						case INITIALIZING:
-						case INITIALIZED:
-						case STARTING:
-						case STARTED:
-							// no-op
-							break;
-						case PUBLISHING:
-						case RUNNING:
-						case RESUMING:
-							if (resource.hasPublish()) {
-								eventType = EventType.PUBLISHING;
-								setResourceState(resource, currentState, ResourceState.PUBLISHING, updateSystemHealth);
-								resource.publish(this);
-							}
-							eventType = EventType.RUNNING;
-							setResourceState(resource, currentState, ResourceState.RUNNING, updateSystemHealth);
-							break;
-						case PAUSING:
-						case PAUSED:
-							// nothing to do, we should hold at STARTED
-							break;
-						case SHUTTING_DOWN_FORCEFULLY:
-						case SHUTDOWN_FORCEFULLY:
-							eventType = EventType.STOPPING;
-							forcefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-						case SHUTTING_DOWN_GRACEFULLY:
-						case SHUTDOWN_GRACEFULLY:
-							eventType = EventType.STOPPING;
-							gracefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-					}
-					break;
-				
-				// The resource is currently in the RUNNING state
-				case RUNNING:
-					switch (newState) {
-						case INITIALIZING:
-						case INITIALIZED:
-						case STARTING:
-						case STARTED:
-						case PUBLISHING:
-						case RUNNING:
-						case RESUMING:
-							// no-op
-							break;
-						case PAUSING:
-						case PAUSED:
-							if (resource.getResourceMethod(ResourceAction.PAUSING) != null) {
-								eventType = EventType.PAUSING;
-								setResourceState(resource, currentState, ResourceState.PAUSING, updateSystemHealth);
-								resource.pause(this);
-								eventType = EventType.PAUSED;
-								setResourceState(resource, currentState, ResourceState.PAUSED, updateSystemHealth);
-							}
-							break;
-						case SHUTTING_DOWN_FORCEFULLY:
-						case SHUTDOWN_FORCEFULLY:
-							eventType = EventType.STOPPING;
-							forcefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-						case SHUTTING_DOWN_GRACEFULLY:
-						case SHUTDOWN_GRACEFULLY:
-							eventType = EventType.STOPPING;
-							gracefulShutdown(resource, currentState, updateSystemHealth);
-							break;
+					eventType = step.eventType;
+					if (step.type == ResourceTransition.StepType.ENTER) {
+						stamp = setResourceState(resource, stamp, currentState, step.state, updateSystemHealth);
+						if (stamp == -1) {
+							log.warn(resource + " changed state while moving from " + currentState + " to " + newState + ", abandoning the transition");
+							return new ResourceSupersededException(resource, newState, resource + " changed state while moving from " + currentState + " to " + newState);
+						}
 					}
-					break;
-				
-				// The resource is currently in the PAUSED state
-				case PAUSED:
-					switch (newState) {
-						case INITIALIZING:
-						case INITIALIZED:
-						case STARTING:
-						case STARTED:
-						case PAUSING:
-						case PAUSED:
-						case PUBLISHING:
-							// no-op
-							break;
-						case RESUMING:
-						case RUNNING:
-							if (resource.getResourceMethod(ResourceAction.PAUSING) != null) {
-								eventType = EventType.RESUMING;
-								setResourceState(resource, currentState, ResourceState.RESUMING, updateSystemHealth);
-								resource.resume(this);
-								eventType = EventType.RESUMED;
-								setResourceState(resource, currentState, ResourceState.RUNNING, updateSystemHealth);
-							}
-							break;
-						case SHUTTING_DOWN_FORCEFULLY:
-						case SHUTDOWN_FORCEFULLY:
-							eventType = EventType.STOPPING;
-							forcefulShutdown(resource, currentState, updateSystemHealth);
-							break;
-						case SHUTTING_DOWN_GRACEFULLY:
-						case SHUTDOWN_GRACEFULLY:
-							eventType = EventType.STOPPING;
-							gracefulShutdown(resource, currentState, updateSystemHealth);
-							break;
+					else {
+						executeStep(step, resource);
 					}
-					break;
+				}
 			}
 		} catch (Exception e) {
 			
@@ -1091,12 +1103,7 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 					try {
 						// Tell someone about it here since we've seen the following shutdown hang
 						log.error(resource + " moving to state " + newState + " threw exception", e);
-						if (((ResourceMetadata)resource).hasKill()) {
-							resource.kill(this);
-						}
-						else {
-							resource.stop(this);
-						}
+						invokeResourceMethod(resource, (resource.hasKill() ? ResourceAction.KILLING : ResourceAction.STOPPING));
 					} catch (Exception e2) {
 						// Fire a second failure event in case we want to log it?
 						fireResourceFailure(resource, EventType.STOPPING, e2);
@@ -1113,31 +1120,102 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 			else {
 				return new ResourceException("Failed to change state of Resource[" + resource.getResourceName() + "] to " + newState, e);
 			}
-		} finally {
-			resource.semaphore.release();
 		}
 		return null;
 	}
 	
-	private void forcefulShutdown(ResourceMetadata resource, ResourceState currentState, boolean updateSystemState) throws ResourceException {
-		if (resource.hasKill()) {
-			setResourceState(resource, currentState, ResourceState.SHUTTING_DOWN_FORCEFULLY, updateSystemState);
-			resource.kill(this);
-			setResourceState(resource, currentState, ResourceState.SHUTDOWN_FORCEFULLY, updateSystemState);
+	/**
+	 * Executes one step of a resource transition, other than entering a state.
+	 * @param step the step
+	 * @param resource the resource
+	 * @throws ResourceException if the resource method of the step fails
+	 * @throws InterruptedException if interrupted while waiting for another resource method to finish
+	 */
+	private void executeStep(ResourceTransition.Step step, ResourceMetadata resource) throws ResourceException, InterruptedException {
+		switch (step.type) {
+			case SET_CONTEXT:
+				resource.setContextIfAware(this);
+				break;
+			case INJECT:
+				try {
+					resource.injectProperties(this, pendingInjections);
+				} catch (ResourceException re) {
+					log.warn("Unable to inject properties into " + resource, re);
+				}
+				break;
+			case INVOKE:
+				invokeResourceMethod(resource, step.action);
+				break;
+			case UNREGISTER:
+				unregisterResource(resource);
+				break;
+			default:
+				throw new ImpossibleActionException("Unable to execute " + step + " for " + resource);
 		}
-		else {
-			setResourceState(resource, currentState, ResourceState.SHUTTING_DOWN_GRACEFULLY, updateSystemState);
-			resource.stop(this);
-			setResourceState(resource, currentState, ResourceState.SHUTDOWN_GRACEFULLY, updateSystemState);
+	}
+	
+	/**
+	 * Invokes the resource method for an action, holding the semaphore of the resource so that no other resource method runs on it at
+	 * the same time.
+	 * @param resource the resource
+	 * @param action the resource action
+	 * @throws ResourceException if the resource method fails
+	 * @throws InterruptedException if interrupted while waiting for another resource method to finish
+	 */
+	private void invokeResourceMethod(ResourceMetadata resource, ResourceAction action) throws ResourceException, InterruptedException {
+		resource.semaphore.acquire();
+		try {
+			switch (action) {
+				case INITIALIZING:
+					resource.initialize(this);
+					break;
+				case STARTING:
+					startResource(resource);
+					break;
+				case PUBLISHING:
+					resource.publish(this);
+					break;
+				case PAUSING:
+					resource.pause(this);
+					break;
+				case RESUMING:
+					resource.resume(this);
+					break;
+				case KILLING:
+					resource.kill(this);
+					break;
+				case STOPPING:
+				case SHUTTING_DOWN:
+					resource.stop(this);
+					break;
+				default:
+					throw new ImpossibleActionException("Unable to " + action.getVerb() + " " + resource);
+			}
+		} finally {
+			resource.semaphore.release();
 		}
-		unregisterResource(resource);
 	}
 	
-	private void gracefulShutdown(ResourceMetadata resource, ResourceState currentState, boolean updateSystemState) throws ResourceException {
-		setResourceState(resource, currentState, ResourceState.SHUTTING_DOWN_GRACEFULLY, updateSystemState);
-		resource.stop(this);
-		setResourceState(resource, currentState, ResourceState.SHUTDOWN_GRACEFULLY, updateSystemState);
-		unregisterResource(resource);
+	/**
+	 * Replaces the transition that moves resources from one state to another. Passing <code>null</code> removes the transition, so that
+	 * requesting the new state for a resource in the current state does nothing.
+	 * @param currentState the current state of the resource
+	 * @param newState the requested state
+	 * @param transition the transition, or <code>null</code>
+	 */
+	public void setResourceTransition(ResourceState currentState, ResourceState newState, ResourceTransition transition) {
+		synchronized (transitionLock) {
+			EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>> table = new EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>>(transitions);
+			EnumMap<ResourceState, ResourceTransition> row = new EnumMap<ResourceState, ResourceTransition>(table.get(currentState));
+			if (transition != null) {
+				row.put(newState, transition);
+			}
+			else {
+				row.remove(newState);
+			}
+			table.put(currentState, row);
+			transitions = table;
+		}
 	}
 	
 	public void updateResourceState(String resourceName, ResourceState newState) throws ResourceException {
@@ -1156,35 +1234,165 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		setResourceState(resource, currentState, newState, false);
 	}
 	
+	/**
+	 * Sets the state of a resource regardless of the state it is in.
+	 * @param resource the resource
+	 * @param currentState the state the change is reported from
+	 * @param newState the new state
+	 * @param updateSystemState if the system state should be checked when the resource reaches a stable state
+	 */
 	void setResourceState(ResourceMetadata resource, ResourceState currentState, ResourceState newState, boolean updateSystemState) {
 		log.debug(resource + " is being changed from " + currentState + " to " + newState);
+		long oldStamp;
+		synchronized (stateCounts) {
+			oldStamp = resource.setState(newState);
+			// Only resources that are still registered are counted
+			if (oldStamp != -1 && resourceMap.get(resource.getResourceName()) == resource) {
+				stateCounts.changed(ResourceMetadata.stateOf(oldStamp), newState);
+			}
+		}
+		stateChanged(resource, currentState, (oldStamp == -1 ? newState : ResourceMetadata.stateOf(oldStamp)), newState, updateSystemState);
+	}
+	
+	/**
+	 * Sets the state of a resource if its state and version still match a stamp that was read before.
+	 * @param resource the resource
+	 * @param expectedStamp the state stamp of the resource that was read
+	 * @param currentState the state the change is reported from
+	 * @param newState the new state
+	 * @param updateSystemState if the system state should be checked when the resource reaches a stable state
+	 * @return the new state stamp, or <code>-1</code> if the resource changed state since the stamp was read
+	 */
+	private long setResourceState(ResourceMetadata resource, long expectedStamp, ResourceState currentState, ResourceState newState,
+		boolean updateSystemState)
+	{
+		log.debug(resource + " is being changed from " + currentState + " to " + newState);
+		if (ResourceMetadata.stateOf(expectedStamp) == newState) {
+			stateChanged(resource, currentState, newState, newState, updateSystemState);
+			return expectedStamp;
+		}
+		long newStamp;
+		synchronized (stateCounts) {
+			newStamp = resource.compareAndSetState(expectedStamp, newState);
+			if (newStamp != -1 && resourceMap.get(resource.getResourceName()) == resource) {
+				stateCounts.changed(ResourceMetadata.stateOf(expectedStamp), newState);
+			}
+		}
+		if (newStamp != -1) {
+			stateChanged(resource, currentState, ResourceMetadata.stateOf(expectedStamp), newState, updateSystemState);
+		}
+		return newStamp;
+	}
+	
+	/**
+	 * Fires the event of a state change and updates the system state.
+	 * @param resource the resource
+	 * @param currentState the state the change is reported from, which decides the event type
+	 * @param oldState the state the resource was actually in before this step
+	 * @param newState the new state
+	 * @param updateSystemState if the system state should be checked when the resource reaches a stable state
+	 */
+	private void stateChanged(ResourceMetadata resource, ResourceState currentState, ResourceState oldState, ResourceState newState,
+		boolean updateSystemState)
+	{
 		EventType eventType = EventType.fromState(currentState, newState);
-		resource.setState(newState);
 		if (eventType != EventType.UNKNOWN) {
-			fireResourceEvent(resource, currentState, eventType);
+			fireResourceEvent(resource, oldState, newState, eventType);
 		}
 		if (newState.isStableState() && updateSystemState) {
 			checkForNewSystemState();
 		}
 		if (newState == ResourceState.SHUTDOWN_FORCEFULLY || newState == ResourceState.SHUTDOWN_GRACEFULLY) {
-			workingOnResources.remove(resource);
+			resource.getOwnership().clear();
 		}
 	}
 	
+	/**
+	 * Reports the current health of a resource, which immediately updates the system health.
+	 * @param resourceName the resource name
+	 * @param health the health of the resource
+	 * @throws ResourceNotFoundException if the resource does not exist
+	 */
+	@Override
+	public void reportResourceHealth(String resourceName, ResourceHealth health) throws ResourceNotFoundException {
+		if (health == null) {
+			throw new IllegalArgumentException("Unable to report a NULL health for Resource[" + resourceName + "]");
+		}
+		ResourceMetadata resource = resourceMap.get(resourceName);
+		if (resource == null) {
+			throw new ResourceNotFoundException("Unable to locate resource with name [" + resourceName + "]");
+		}
+		synchronized (healthCounts) {
+			ResourceHealth oldHealth = resource.getHealth();
+			resource.setHealth(health);
+			// Only resources that are still registered are counted
+			if (resourceMap.get(resourceName) == resource) {
+				healthCounts.changed(resourceName, oldHealth, health);
+			}
+		}
+		updateSystemHealth();
+	}
+	
+	/**
+	 * Gets the number of resources at the given health level.
+	 * @param level the health level
+	 * @return the number of resources
+	 */
+	public int getResourceCount(ResourceHealth.Level level) {
+		return healthCounts.getCount(level);
+	}
+	
+	/**
+	 * Gets the resources that are not healthy, starting with the worst.
+	 * @return the health of each unhealthy resource by resource name
+	 */
+	public Map<String, ResourceHealth> getUnhealthyResources() {
+		return healthCounts.getOffenders();
+	}
+	
 	private void updateSystemHealth() {
-		ResourceHealth newHealth = ResourceHealth.okHealth;
-		synchronized (resourceMap) {
-			for (ResourceMetadata resource : resourceMap.values()) {
-				ResourceHealth health = resource.getHealth();
-				if (health.isWorse(newHealth)) {
-					newHealth = health;
-				}
+		// Apply the worst health under the lock, so that concurrent reports can not apply stale health out of order, but notify the
+		// listeners outside of it so that a synchronous listener can not hold up other reports or deadlock with them
+		HealthChangeEvent event;
+		HealthChangeListener[] listeners;
+		synchronized (healthListeners) {
+			event = applySystemHealth(healthCounts.getWorstHealth());
+			if (event == null) {
+				return;
+			}
+			listeners = healthListeners.toArray(new HealthChangeListener[healthListeners.size()]);
+		}
+		fireHealthChanged(event, listeners);
+	}
+	
+	/**
+	 * Applies a new system health, which must be done while holding the lock on the health listeners.
+	 * @param newHealth the new system health
+	 * @return the event to notify the health listeners of, or <code>null</code> if the level of the system health did not change
+	 */
+	private HealthChangeEvent applySystemHealth(ResourceHealth newHealth) {
+		ResourceHealth oldHealth = systemHealth;
+		logSystemHealth(newHealth);
+		return (newHealth.getLevel() != oldHealth.getLevel() ? new HealthChangeEvent(this, oldHealth, newHealth) : null);
+	}
+	
+	private void fireHealthChanged(final HealthChangeEvent event, HealthChangeListener[] listeners) {
+		for (final HealthChangeListener listener : listeners) {
+			if (ResourceUtils.isSynchronous(listener)) {
+				listener.healthChanged(event);
+			}
+			else {
+				eventDispatcher.submit(new Runnable(){
+					@Override
+					public void run() {
+						listener.healthChanged(event);
+					}
+				});
 			}
 		}
-		updateSystemHealth(newHealth);
 	}
 	
-	private void updateSystemHealth(ResourceHealth newHealth) {
+	private void logSystemHealth(ResourceHealth newHealth) {
 		String msg = null;
 		if (newHealth.getLevel() == systemHealth.getLevel()) {
 			switch (systemHealth.getLevel()) {
@@ -1299,7 +1507,21 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	private void registerResource(ResourceMetadata metadata, boolean autowire, boolean validateWithDeps) {
 		String resName = metadata.getResourceName();
 		String beanName = metadata.getBeanName();
-		if (resourceMap.put(resName, metadata) != null) {
+		ResourceMetadata previous;
+		synchronized (stateCounts) {
+			synchronized (healthCounts) {
+				previous = resourceMap.put(resName, metadata);
+				if (previous != null) {
+					stateCounts.removed(previous.getState());
+					healthCounts.removed(resName, previous.getHealth());
+					typeIndex.removed(previous);
+				}
+				stateCounts.added(metadata.getState());
+				healthCounts.added(resName, metadata.getHealth());
+				typeIndex.added(metadata);
+			}
+		}
+		if (previous != null) {
 			throw new IllegalStateException("Duplicate resource declaration [" + resName + "]");
 		}
 		else if (beanName != null) {
@@ -1325,7 +1547,7 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		}
 		
 		// Fire registration event
-		fireResourceEvent(metadata, ResourceState.INITIALIZING, EventType.REGISTERED);
+		fireResourceEvent(metadata, ResourceState.INITIALIZING, ResourceState.INITIALIZING, EventType.REGISTERED);
 		
 		// Check if we should autowire properties already
 		if (autowire) {
@@ -1336,23 +1558,17 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 			}
 		}
 		
-		synchronized (pendingInjections) {
-			for (Iterator<Map.Entry<Class<?>, Injections>> iter = pendingInjections.entrySet().iterator(); iter.hasNext();) {
-				Map.Entry<Class<?>, Injections> entry = iter.next();
-				Class<?> resourceType = entry.getKey();
-				if (resourceType.isInstance(metadata.getInstance())) {
-					log.info("Performing injections of " + resourceType + " in references!");
-					Injections injs = entry.getValue();
-					iter.remove();
-					for (Field field : injs.getFields()) {
-						ResourceMetadata refRes = injs.getInjectee(field);
-						try {
-							field.set(refRes.getInstance(), metadata.getInstance());
-						} catch (IllegalAccessException iae) {
-							log.error("Unable to inject Field [" + field.getName() + "] on Resource [" + refRes.getResourceName() + "] of Type [" + resourceType + "]", iae);
-						} catch (IllegalArgumentException iae) {
-							log.error("Unable to inject Field [" + field.getName() + "] on Resource [" + refRes.getResourceName() + "] of Type [" + resourceType + "]", iae);
-						}
+		for (PendingInjections.Injections injs : pendingInjections.resolve(metadata.getBeanClass())) {
+			Class<?> resourceType = injs.getResourceType();
+			log.info("Performing injections of " + resourceType + " in references!");
+			for (ResourceMetadata refRes : injs.getReferers()) {
+				for (Field field : injs.getFields(refRes)) {
+					try {
+						field.set(refRes.getInstance(), metadata.getInstance());
+					} catch (IllegalAccessException iae) {
+						log.error("Unable to inject Field [" + field.getName() + "] on Resource [" + refRes.getResourceName() + "] of Type [" + resourceType + "]", iae);
+					} catch (IllegalArgumentException iae) {
+						log.error("Unable to inject Field [" + field.getName() + "] on Resource [" + refRes.getResourceName() + "] of Type [" + resourceType + "]", iae);
 					}
 				}
 			}
@@ -1394,8 +1610,18 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		}
 		
 		synchronized (resourceMap) {
-			boolean removed = (resourceMap.remove(resource.getResourceName()) != null);
-			if (!removed) {
+			ResourceMetadata removed;
+			synchronized (stateCounts) {
+				synchronized (healthCounts) {
+					removed = resourceMap.remove(resource.getResourceName());
+					if (removed != null) {
+						stateCounts.removed(removed.getState());
+						healthCounts.removed(removed.getResourceName(), removed.getHealth());
+						typeIndex.removed(removed);
+					}
+				}
+			}
+			if (removed == null) {
 				throw new IllegalStateException("Unable to unregister non-existent resource: " + resource.getResourceName());
 			}
 			if (resource.getBeanName() != null) {
@@ -1403,7 +1629,8 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 			}
 			
 			// Fire unregistration event
-			fireResourceEvent(resource, resource.getState(), EventType.UNREGISTERED);
+			ResourceState state = resource.getState();
+			fireResourceEvent(resource, state, state, EventType.UNREGISTERED);
 		}
 		checkForNewSystemState();
 	}
@@ -1434,13 +1661,18 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	}
 	
 	@Override
-	public <T> Future<T> futureForResource(String resourceName, ResourceState state) {
-		return executor.submit(new WaitForResourceTask<T>(resourceName, state));
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state) {
+		return new ResourceFuture<T>(resourceName, state).register(-1, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state, long timeout, TimeUnit unit) {
+		return new ResourceFuture<T>(resourceName, state).register(Math.max(0, timeout), unit);
 	}
 	
 	@Override
-	public <T> Future<T> futureForResource(String resourceName) {
-		return executor.submit(new WaitForResourceTask<T>(resourceName, ResourceState.INITIALIZING));
+	public <T> CompletableFuture<T> futureForResource(String resourceName) {
+		return new ResourceFuture<T>(resourceName, ResourceState.INITIALIZING).register(-1, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -1485,6 +1717,34 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	 */
 	@Override
 	public boolean waitForResourceState(String resourceName, ResourceState resourceState) throws InterruptedException, ResourceNotFoundException {
+		return getWaitResource(resourceName).waitForState(resourceState);
+	}
+	
+	/**
+	 * Waits for a particular resource to enter into the specified state, giving up once the timeout has elapsed.
+	 * @param resourceName the resource name
+	 * @param resourceState the resource state to check for
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ResourceNotFoundException if the resource does not exist
+	 * @return true if the resource entered the given state, false otherwise
+	 */
+	@Override
+	public boolean waitForResourceState(String resourceName, ResourceState resourceState, long timeout, TimeUnit unit) throws InterruptedException,
+			ResourceNotFoundException {
+		return getWaitResource(resourceName).waitForState(resourceState, timeout, unit);
+	}
+	
+	/**
+	 * Gets the number of futures that are still waiting on resources.
+	 * @return the pending future count
+	 */
+	int getPendingFutureCount() {
+		return pendingFutures.size();
+	}
+	
+	private ResourceMetadata getWaitResource(String resourceName) throws ResourceNotFoundException {
 		ResourceMetadata resource;
 		synchronized (resourceMap) {
 			resource = resourceMap.get(resourceName);
@@ -1492,8 +1752,7 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 		if (resource == null) {
 			throw new ResourceNotFoundException("Unable to locate resource with name [" + resourceName + "]");
 		}
-		tlManager.set(this);
-		return resource.waitForState(resourceState);
+		return resource;
 	}
 	
 	/**
@@ -1516,19 +1775,11 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	
 	@Override
 	public ResourceInfo getResource(Class<?> resourceClass) throws ResourceNotFoundException, ResourceUniquenessException {
-		ResourceMetadata match = null;
-		synchronized (resourceMap) { 
-			for (ResourceMetadata resource : resourceMap.values()) {
-				if (resourceClass.isAssignableFrom(resource.getBeanClass())) {
-					if (match != null) {
-						throw new ResourceUniquenessException("Expected one resource of type [" + resourceClass + "] but found more than one!");
-					}
-					else {
-						match = resource;
-					}
-				}
-			}
+		List<ResourceMetadata> matches = typeIndex.get(resourceClass);
+		if (matches.size() > 1) {
+			throw new ResourceUniquenessException("Expected one resource of type [" + resourceClass + "] but found more than one!");
 		}
+		ResourceMetadata match = (matches.size() == 1 ? matches.get(0) : null);
 		if (match == null) {
 			throw new ResourceNotFoundException("Unable to locate resource of type [" + resourceClass + "]");
 		}
@@ -1561,202 +1812,113 @@ public class ResourceManager implements ResourceContext, InitializingBean, Dispo
 	}
 	
 	/**
-	 * ThreadFactory for building ResourceJob threads.
+	 * A future for a resource that is completed directly by the resource events of the resource, or failed by its failure or by the
+	 * system shutting down. Since it is completed on the thread that changed the state of the resource, dependent stages that do any
+	 * real work should use the asynchronous variants. Its listener is removed as soon as it is completed, cancelled or times out.
 	 * 
 	 * @author dgarson
 	 */
-	private static class ResourceJobThreadFactory implements ThreadFactory {
-		private AtomicInteger threadCounter = new AtomicInteger(0);
-		
-		@Override
-		public Thread newThread(Runnable job) {
-			Thread thread = new Thread(job, "ResourceJob-" + threadCounter.incrementAndGet());
-			thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler(){
-				@Override
-				public void uncaughtException(Thread th, Throwable err) {
-					log.error("Unexpected exception in thread [" + th.getName() + "]", err);
-				}
-			});
-			return thread;
-		}
-	}
-	
-	/**
-	 * ThreadFactory for phase jobs.
-	 * 
-	 * @author dgarson
-	 */
-	private static class PhaseJobThreadFactory implements ThreadFactory {
-		private AtomicInteger threadCounter = new AtomicInteger(0);
-		
-		@Override
-		public Thread newThread(Runnable job) {
-			Thread thread = new Thread(job, "PhaseJob-" + threadCounter.incrementAndGet());
-			thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler(){
-				@Override
-				public void uncaughtException(Thread th, Throwable err) {
-					log.error("Unexpected exception in thread [" + th.getName() + "]", err);
-				}
-			});
-			return thread;
-		}
-	}
-	
-	/**
-	 * ThreadFactory for event dispatch threads.
-	 * 
-	 * @author dgarson
-	 */
-	private static class EventDispatchThreadFactory implements ThreadFactory {
-		private AtomicInteger threadCounter = new AtomicInteger(0);
-		
-		@Override
-		public Thread newThread(Runnable job) {
-			Thread thread = new Thread(job, "EventDispatch-" + threadCounter.incrementAndGet());
-			thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler(){
-				@Override
-				public void uncaughtException(Thread th, Throwable err) {
-					log.error("Unexpected exception in thread [" + th.getName() + "]", err);
-				}
-			});
-			return thread;
-		}
-	}
-	
-	/**
-	 * Class that encapsulates future injections that should be performed for a particular resource type.
-	 * 
-	 * @author dgarson
-	 */
-	static class Injections
-	{
-		private final Class<?> resourceType;
-		private final Map<Field, ResourceMetadata> resourceFields;
-		
-		public Injections(Class<?> resourceType) {
-			this.resourceFields = new HashMap<Field, ResourceMetadata>();
-			this.resourceType = resourceType;
-		}
-		
-		public Class<?> getResourceType() {
-			return resourceType;
-		}
-		
-		public void addInjection(ResourceMetadata referer, Field field) {
-			resourceFields.put(field, referer);
-		}
-		
-		public ResourceMetadata getInjectee(Field field) {
-			return resourceFields.get(field);
-		}
-		
-		public Set<Field> getFields() {
-			return resourceFields.keySet();
-		}
-	}
-	
-	/**
-	 * Encapsulates a task that is designed to wait for a resource with the given name to be registered, or for a phase change
-	 * entering the shutdown states, in which failure is automatically detected.
-	 * 
-	 * @author dgarson
-	 */
-	private class WaitForResourceTask<T> implements Callable<T>, ResourceListener, PhaseChangeListener {
+	@SynchronousInvocation
+	private class ResourceFuture<T> extends CompletableFuture<T> implements ResourceListener {
 		private final String resourceName;
 		private final ResourceState state;
-		private final CountDownLatch latch = new CountDownLatch(1);
-		private boolean failed = false;
+		/** The types of events that complete this future */
+		private final EnumSet<EventType> eventTypes;
+		private volatile ScheduledFuture<?> timeoutTask;
 		
-		WaitForResourceTask(String resourceName, ResourceState state) {
+		ResourceFuture(String resourceName, ResourceState state) {
 			this.resourceName = resourceName;
 			this.state = state;
+			if (state == ResourceState.INITIALIZING) {
+				eventTypes = EnumSet.of(EventType.REGISTERED);
+			}
+			else {
+				eventTypes = EnumSet.noneOf(EventType.class);
+				for (EventType type : EventType.values()) {
+					if (type.isEquivalent(state)) {
+						eventTypes.add(type);
+					}
+				}
+			}
 		}
 		
-		@SuppressWarnings("unchecked")
-		@Override
-		public T call() throws ResourceNotFoundException, InterruptedException {
-			boolean addedListener = false;
-			synchronized (resourceMap) {
-				// Check if we already have a resource with the given name
-				if (resourceMap.containsKey(resourceName) && state == ResourceState.INITIALIZING) {
-					log.info("Woke up due to resource already existing: " + resourceName);
-					latch.countDown();
+		/**
+		 * Registers this future for the events of its resource, and completes it right away if the resource is already in the state.
+		 * @param timeout the maximum time to wait, or a negative value to wait forever
+		 * @param unit the unit of the timeout
+		 * @return this future
+		 */
+		ResourceFuture<T> register(long timeout, TimeUnit unit) {
+			addResourceListener(resourceName, eventTypes, this);
+			pendingFutures.add(this);
+			whenComplete(new BiConsumer<T, Throwable>(){
+				@Override
+				public void accept(T instance, Throwable err) {
+					removeResourceListener(resourceName, eventTypes, ResourceFuture.this);
+					pendingFutures.remove(ResourceFuture.this);
+					ScheduledFuture<?> task = timeoutTask;
+					if (task != null) {
+						task.cancel(false);
+					}
 				}
-				// Otherwise, add listeners to wake us up when we are ready for the resource
-				else {
-					addResourceListener(this);
-					addPhaseListener(this);
-					addedListener = true;
+			});
+			if (timeout >= 0) {
+				timeoutTask = timeoutScheduler.schedule(new Runnable(){
+					@Override
+					public void run() {
+						completeExceptionally(new TimeoutException("Timed out waiting for Resource[" + resourceName + "] to enter " + state));
+					}
+				}, timeout, unit);
+				if (isDone()) {
+					timeoutTask.cancel(false);
 				}
 			}
-			// Await the countdown - which may proceed immediately depending on whether the resource already exists
-			try {
-				latch.await();
-			} finally {
-				// Only if we added the listeners, remove them now
-				if (addedListener) {
-					removeResourceListener(this);
-					removePhaseListener(this);
+			// Check the current state after registering, so that a concurrent transition can not be missed
+			ResourceMetadata resource = resourceMap.get(resourceName);
+			if (resource != null) {
+				if (state == ResourceState.INITIALIZING || eventTypes.contains(EventType.forState(resource.getState()))) {
+					log.info("Completed future due to resource already being " + state + ": " + resourceName);
+					completeWithResource();
 				}
 			}
-			// If we failed to find the resource but ended up here, we should still throw an exception
-			if (failed) {
-				throw new ResourceNotFoundException("Failed to initialize or start resource: " + resourceName);
+			ResourceState currentSystemState = getSystemState();
+			if (currentSystemState == ResourceState.SHUTDOWN_FORCEFULLY || currentSystemState == ResourceState.SHUTDOWN_GRACEFULLY) {
+				systemShutdown();
 			}
-			// Attempt to retrieve the resource from the manager and return its instance
+			return this;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private void completeWithResource() {
 			try {
-				return (T)getResource(resourceName).getInstance();
-			} catch (ClassCastException cce) {
-				// Just in case the requested type is not the type of the resource, we should catch this exception
-				throw new ResourceNotFoundException("Resource [" + resourceName + "] is not of the requested type");
+				complete((T)getResource(resourceName).getInstance());
+			} catch (ResourceNotFoundException rnfe) {
+				completeExceptionally(rnfe);
 			}
 		}
 		
 		@Override
 		public void onResourceEvent(ResourceEvent event) {
-			// Check if we were waiting for a registration event
-			if (state == ResourceState.INITIALIZING && event.getType() == ResourceEvent.EventType.REGISTERED) {
-				// Next make sure that it applies to the same resource
-				if (event.getResourceName().equalsIgnoreCase(resourceName)) {
-					log.trace("Woke up due to " + resourceName + " being registered!");
-					latch.countDown();
-				}
-			}
-			// Check if the state is equivalent to the event that was received
-			else if (event.getType().isEquivalent(state)) {
-				// Next make sure that it applies to the same resource
-				if (event.getResourceName().equalsIgnoreCase(resourceName)) {
-					log.trace("Woke up due to " + resourceName + " entering " + state);
-					latch.countDown();
-				} 
-			}
+			log.trace("Completed future due to " + resourceName + " entering " + state);
+			completeWithResource();
 		}
 		
 		@Override
 		public void onResourceFailure(ResourceFailedEvent event) {
 			// If this is the resource we are waiting for, we have failed since the resource could not enter a new state
-			if (event.getResourceName().equalsIgnoreCase(resourceName)) {
-				log.trace("Woke up due to " + resourceName + " failing to perform an action");
-				failed = true;
-				latch.countDown();
-			}
+			log.trace("Failed future due to " + resourceName + " failing to perform an action");
+			completeExceptionally(new ResourceNotFoundException("Failed to initialize or start resource: " + resourceName));
 		}
 		
-		@Override
-		public void phaseChanged(PhaseChangeEvent event) {
-			// We know we have to be done with our countdown now, but the question is if we ended in error
-			if (event.getNewState() == ResourceState.SHUTDOWN_FORCEFULLY ||
-				event.getNewState() == ResourceState.SHUTDOWN_GRACEFULLY) {
-				// If we are entering a shutdown state and we weren't waiting for the shutdown state, then we have failed!
-				if (state != ResourceState.SHUTDOWN_FORCEFULLY &&
-					state != ResourceState.SHUTDOWN_GRACEFULLY) {
-					failed = true;
-					latch.countDown();
-				}
-				// Otherwise, we were waiting for shutdown so we can leave failed as false
-				else {
-					latch.countDown();
-				}
+		/**
+		 * Completes this future once the system has shut down, which is a failure unless a shutdown state was awaited.
+		 */
+		void systemShutdown() {
+			if (state != ResourceState.SHUTDOWN_FORCEFULLY && state != ResourceState.SHUTDOWN_GRACEFULLY) {
+				completeExceptionally(new ResourceNotFoundException("Failed to initialize or start resource: " + resourceName));
+			}
+			else {
+				completeWithResource();
 			}
 		}
 	}
@@ -1,7 +1,8 @@
 package com.mprew.ec2.resources;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface that defines the contract for the basic resource manager operations.
@@ -121,6 +122,26 @@ public interface ResourceManagerOperations {
 	 */
 	public boolean waitForResourceState(String resourceName, ResourceState state) throws ResourceNotFoundException, InterruptedException;
 	
+	/**
+	 * Reports the current health of a resource, which is reflected in the system health right away.
+	 * @param resourceName the resource name
+	 * @param health the health of the resource
+	 * @throws ResourceNotFoundException if the resource is not registered
+	 */
+	public void reportResourceHealth(String resourceName, ResourceHealth health) throws ResourceNotFoundException;
+	
+	/**
+	 * Waits until the specified resource is in the given state, giving up once the timeout has elapsed.
+	 * @param resourceName the resource name
+	 * @param state the resource state
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the resource entered the given state, false if it failed to or the timeout elapsed first
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ResourceNotFoundException if the resource is not registered
+	 */
+	public boolean waitForResourceState(String resourceName, ResourceState state, long timeout, TimeUnit unit) throws ResourceNotFoundException, InterruptedException;
+	
 	/**
 	 * Waits for the resource manager to shut down.
 	 * @throws InterruptedException if interrupted while waiting
@@ -136,25 +157,39 @@ public interface ResourceManagerOperations {
 	public ResourceState waitForStates(ResourceState ... states) throws InterruptedException;
 	
 	/**
-	 * Returns a future that will wait until a resource with the given
-	 * name exists and will then return. If the resource manager is shutdown before the future
-	 * terminates, then an InterruptedException will be thrown.
+	 * Returns a future that will complete once a resource with the given
+	 * name exists. If the resource manager is shutdown before the future
+	 * completes, then it completes exceptionally with a ResourceNotFoundException.
+	 * @param resourceName the resource name
+	 * @return a future for the specified resource
+	 * 
+	 * @param <T> the type of the resource
+	 */
+	public <T> CompletableFuture<T> futureForResource(String resourceName);
+	
+	/**
+	 * Returns a future that will complete once a resource with the given
+	 * name exists and is in the specified state. If the resource fails or the resource manager
+	 * is shutdown before the future completes, then it completes exceptionally with a ResourceNotFoundException.
 	 * @param resourceName the resource name
+	 * @param state the state to wait for
 	 * @return a future for the specified resource
 	 * 
 	 * @param <T> the type of the resource
 	 */
-	public <T> Future<T> futureForResource(String resourceName);
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state);
 	
 	/**
-	 * Returns a future that will wait until a resource with the given
-	 * name exists and is in the specified state. If the resource manager is
-	 * shutdown before the future terminates, then an InterruptedException will be thrown.
+	 * Returns a future that will complete once a resource with the given
+	 * name exists and is in the specified state, or complete exceptionally with a TimeoutException
+	 * once the timeout has elapsed.
 	 * @param resourceName the resource name
 	 * @param state the state to wait for
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
 	 * @return a future for the specified resource
 	 * 
 	 * @param <T> the type of the resource
 	 */
-	public <T> Future<T> futureForResource(String resourceName, ResourceState state);
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state, long timeout, TimeUnit unit);
 }
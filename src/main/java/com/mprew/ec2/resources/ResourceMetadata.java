@@ -1,45 +1,23 @@
 package com.mprew.ec2.resources;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedActionException;
-import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
-import com.mprew.ec2.resources.ResourceManager.Injections;
 import com.mprew.ec2.resources.action.ResourceAction;
 import com.mprew.ec2.resources.annotation.ContextProperty;
-import com.mprew.ec2.resources.annotation.ContextResource;
-import com.mprew.ec2.resources.annotation.Dependencies;
-import com.mprew.ec2.resources.annotation.Dependency;
-import com.mprew.ec2.resources.annotation.Initialize;
-import com.mprew.ec2.resources.annotation.Kill;
-import com.mprew.ec2.resources.annotation.Pause;
-import com.mprew.ec2.resources.annotation.Publish;
-import com.mprew.ec2.resources.annotation.Resume;
-import com.mprew.ec2.resources.annotation.Start;
-import com.mprew.ec2.resources.annotation.Stop;
 import com.mprew.ec2.resources.context.ResourceContext;
-import com.mprew.ec2.resources.context.ResourceContextAware;
-import com.mprew.ec2.resources.event.AwaitStateListener;
-import com.mprew.ec2.resources.event.FilteredResourceListener;
 import com.mprew.ec2.resources.event.ResourceActionListener;
 import com.mprew.ec2.resources.event.ResourceEvent.EventType;
 import com.mprew.ec2.resources.startup.DependencyElement;
@@ -55,84 +33,42 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	
 	private static final Logger log = LoggerFactory.getLogger(ResourceMetadata.class);
 	
+	private static final ResourceState[] states = ResourceState.values();
+	private static final int STATE_BITS = 8;
+	private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+	
 	private String resourceName;
 	private String beanName;
-	private String[] declaredDependencies;
 	private Object bean;
-	private Class<?> beanClass;
-	private Method initMethod;
-	private Method startMethod;
-	private Method stopMethod;
-	private Method killMethod;
-	private Method publishMethod;
-	private Method pauseMethod;
-	private Method resumeMethod;
-	private Method resourceContextMethod;
-	private AtomicReference<ResourceState> state = new AtomicReference<ResourceState>(ResourceState.INITIALIZING);
+	private final ResourceDescriptor descriptor;
+	/** The ordinal of the state in the low bits and the number of times the state has changed above them, so both change together */
+	private final AtomicLong stateStamp = new AtomicLong(stamp(ResourceState.INITIALIZING, 0));
 	private AtomicReference<ResourceHealth> health = new AtomicReference<ResourceHealth>(ResourceHealth.okHealth);
 	private List<ResourceActionListener> actionListeners = new ArrayList<ResourceActionListener>();
+	private final ResourceStateWaiters stateWaiters = new ResourceStateWaiters();
+	private final ResourceOwnership ownership = new ResourceOwnership();
 	
-	private Map<Field, ContextProperty> injectableFields = new HashMap<Field, ContextProperty>();
-	private Set<Field> resourceFields = new HashSet<Field>();
-
+	/** The resource fields of the descriptor that have not been injected yet */
+	private final List<ResourceDescriptor.ResourceInjection> resourceFields;
+	
+	/** Guards the invocation of the lifecycle methods, so that only one of them runs on the bean at a time */
 	final Semaphore semaphore = new Semaphore(1);
 	private DependencyElement element;
 	
 	ResourceMetadata(String resourceName, String beanName, Object bean, Method startMethod, Method stopMethod) {
-		this.resourceName = resourceName;
-		this.beanName = beanName;
-		this.beanClass = bean.getClass();
-		this.bean = bean;
-		this.startMethod = startMethod;
-		this.stopMethod = stopMethod;
-		initialize();
+		this(resourceName, beanName, bean, ResourceDescriptor.forMethods(bean.getClass(), startMethod, stopMethod));
 	}
 	
 	public ResourceMetadata(String resourceName, String beanName, Object bean) {
+		this(resourceName, beanName, bean, ResourceDescriptor.forClass(bean.getClass()));
+	}
+	
+	private ResourceMetadata(String resourceName, String beanName, Object bean, ResourceDescriptor descriptor) {
 		this.resourceName = resourceName;
 		this.beanName = beanName;
 		this.bean = bean;
-		this.beanClass = bean.getClass();
-		
-		ReflectionUtils.doWithMethods(beanClass, new ReflectionUtils.MethodCallback(){
-			@Override
-			public void doWith(Method method) throws IllegalArgumentException {
-				processMethod(method);
-			}
-		});
-		initialize();
-	}
-	
-	private void initialize() {
-		ReflectionUtils.doWithFields(beanClass, new ReflectionUtils.FieldCallback(){
-			@Override
-			public void doWith(final Field field) throws IllegalArgumentException, IllegalAccessException {
-				if (ResourceUtils.isResource(field.getType()) && field.isAnnotationPresent(ContextResource.class)) {
-					resourceFields.add(field);
-				}
-				if (field.isAnnotationPresent(ContextProperty.class)) {
-					try {
-						ContextProperty annotation = field.getAnnotation(ContextProperty.class);
-						AccessController.doPrivileged(new PrivilegedExceptionAction<Field>(){
-							@Override
-							public Field run() throws Exception {
-								field.setAccessible(true);
-								return field;
-							}
-						});
-						injectableFields.put(field, annotation);
-					} catch (PrivilegedActionException pae) {
-						if (pae.getCause() instanceof IllegalAccessException) {
-							throw (IllegalAccessException)pae.getCause();
-						} else if (pae.getCause() instanceof IllegalArgumentException) {
-							throw (IllegalArgumentException)pae.getCause();
-						}
-						throw new RuntimeException("Unable to make field accessible: " + field);
-					}
-				}
-			}
-		});
-		preprocess();
+		this.descriptor = descriptor;
+		this.resourceFields = new ArrayList<ResourceDescriptor.ResourceInjection>(Arrays.asList(descriptor.resourceInjections));
 	}
 	
 	public void addActionListener(ResourceActionListener listener) {
@@ -155,12 +91,12 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	}
 	
 	public Class<?> getBeanClass() {
-		return beanClass;
+		return descriptor.beanClass;
 	}
 	
 	@Override
 	public List<String> getDependencyNames() {
-		return Arrays.asList(declaredDependencies);
+		return descriptor.declaredDependencies;
 	}
 	
 	@Override
@@ -183,24 +119,83 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	
 	@Override
 	public ResourceState getState() {
-		return state.get();
+		return stateOf(stateStamp.get());
 	}
 	
 	/**
-	 * Sets the state of this resource if it is not already in that state.
+	 * Gets the number of times the state of this resource has changed. Comparing the versions of two reads of the state tells whether
+	 * any transitions were missed between them, even if the resource ended up in the same state.
+	 * @return the state version
+	 */
+	public long getStateVersion() {
+		return versionOf(stateStamp.get());
+	}
+	
+	/**
+	 * Gets the state of this resource together with its version, which can be taken apart with {@link #stateOf(long)} and
+	 * {@link #versionOf(long)} and passed to {@link #compareAndSetState(long, ResourceState)}.
+	 * @return the state stamp
+	 */
+	long getStateStamp() {
+		return stateStamp.get();
+	}
+	
+	static ResourceState stateOf(long stamp) {
+		return states[(int)(stamp & STATE_MASK)];
+	}
+	
+	static long versionOf(long stamp) {
+		return (stamp >>> STATE_BITS);
+	}
+	
+	private static long stamp(ResourceState state, long version) {
+		return ((version << STATE_BITS) | state.ordinal());
+	}
+	
+	/**
+	 * Changes the state of this resource only if neither its state nor its version have changed since the stamp was read.
+	 * @param expectedStamp the stamp that was read
 	 * @param newState the new state
-	 * @return true if the state changed
+	 * @return the new stamp, or <code>-1</code> if the resource changed state in the meantime
 	 */
-	boolean setState(ResourceState newState) {
-		if (state.get() == newState) {
-			return false;
-		}
-		else {
-			state.set(newState);
-			return true;
+	long compareAndSetState(long expectedStamp, ResourceState newState) {
+		long newStamp = stamp(newState, versionOf(expectedStamp) + 1);
+		return (stateStamp.compareAndSet(expectedStamp, newStamp) ? newStamp : -1);
+	}
+	
+	/**
+	 * Sets the state of this resource if it is not already in that state, regardless of any concurrent changes.
+	 * @param newState the new state
+	 * @return the stamp before the change, or <code>-1</code> if the resource was already in the state
+	 */
+	long setState(ResourceState newState) {
+		while (true) {
+			long current = stateStamp.get();
+			if (stateOf(current) == newState) {
+				return -1;
+			}
+			if (compareAndSetState(current, newState) != -1) {
+				return current;
+			}
 		}
 	}
 	
+	/**
+	 * Gets the threads waiting for this resource to enter a state.
+	 * @return the state waiters
+	 */
+	ResourceStateWaiters getStateWaiters() {
+		return stateWaiters;
+	}
+	
+	/**
+	 * Gets the actions that are working on this resource.
+	 * @return the resource ownership
+	 */
+	ResourceOwnership getOwnership() {
+		return ownership;
+	}
+	
 	@Override
 	public DependencyElement getElement() {
 		return element;
@@ -214,43 +209,17 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 		this.element = element;
 	}
 	
-	/**
-	 * Preprocess the methods that we have discovered for this Resource. Also, discover dependencies that are declared on the Resource.
-	 */
-	private void preprocess() {
-		if (stopMethod == null) {
-			if (killMethod != null) {
-				log.warn("Using @Kill method [" + killMethod.getName() + "] to substitute for undeclared @Stop for " + this);
-				stopMethod = killMethod;
-			}
-		}
-		
-		Set<String> deps = new HashSet<String>();
-		Dependencies depsAnnot = bean.getClass().getAnnotation(Dependencies.class);
-		if (depsAnnot != null) {
-			deps.addAll(Arrays.asList(depsAnnot.value()));
-		}
-		Annotation[] depAnnots = bean.getClass().getAnnotations();
-		for (Annotation a : depAnnots) {
-			if (a.annotationType() == Dependency.class) {
-				Dependency dep = (Dependency)a;
-				deps.add(dep.value());
-			}
-		}
-		declaredDependencies = deps.toArray(new String[deps.size()]);
-	}
-	
 	@Override
 	public void validate() throws ValidationException {
-		verifyMethod(startMethod, "Start");
-		verifyMethod(stopMethod, "Stop");
+		verifyMethod(descriptor.startMethod, "Start");
+		verifyMethod(descriptor.stopMethod, "Stop");
 		
-		if (pauseMethod != null) {
-			if (resumeMethod == null) {
+		if (descriptor.pauseMethod != null) {
+			if (descriptor.resumeMethod == null) {
 				throw new ValidationException("Resume method is required if Pause method is specified for " + this);
 			}
 		}
-		else if (resumeMethod != null) {
+		else if (descriptor.resumeMethod != null) {
 			throw new ValidationException("Resume method specified without the presence of a Pause method for " + this);
 		}
 	}
@@ -267,98 +236,12 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 		}
 	}
 	
-	/**
-	 * Process a Reflective Method and depending on its annotations, record it and validate it as a resource action method.
-	 * @param method the method
-	 */
-	private void processMethod(Method method) {
-		if (method.getName().equals("setResourceContext") && ResourceContextAware.class.isInstance(bean) &&
-			method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == ResourceContext.class) {
-			resourceContextMethod = method;
-			log.trace("Found setResourceContext method for " + this + " [ResourceContextAware]");
-		}
-		if (method.isAnnotationPresent(Initialize.class) && initMethod == null) {
-			verifyMethodParameters(method);
-			initMethod = method;
-			log.trace("Found @Initialize method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Kill.class) && killMethod == null) {
-			verifyMethodParameters(method);
-			killMethod = method;
-			log.trace("Found @Kill method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Pause.class) && pauseMethod == null) {
-			verifyMethodParameters(method);
-			pauseMethod = method;
-			log.trace("Found @Pause method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Resume.class) && resumeMethod == null) {
-			verifyMethodParameters(method);
-			resumeMethod = method;
-			log.trace("Found @Resume method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Start.class) && startMethod == null) {
-			verifyMethodParameters(method);
-			startMethod = method;
-			log.trace("Found @Start method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Stop.class) && stopMethod == null) {
-			verifyMethodParameters(method);
-			stopMethod = method;
-			log.trace("Found @Stop method for " + this + ": " + method.getName());
-		}
-		else if (method.isAnnotationPresent(Publish.class) && publishMethod == null) {
-			verifyMethodParameters(method);
-			publishMethod = method;
-			log.trace("Found @Publish method for " + this + ": " + method.getName());
-		}
-	}
-	
-	private void verifyParameterType(Method method, Class<?> paramType) throws IllegalArgumentException {
-		if (!ResourceInfo.class.isAssignableFrom(paramType) &&
-			!ResourceContext.class.isAssignableFrom(paramType)) {
-			throw new IllegalArgumentException("Invalid parameter type: " + paramType + " for resource method [" + method.getName() + "]");
-		}
-	}
-	
-	/**
-	 * Verifies that the method provided only has either:<br>
-	 * <ul>
-	 * <li>a) one argument that is of type ResourceContext <b>or</b></li>
-	 * <li>b) no arguments</li>
-	 * </ul>
-	 * Also, the method can throw the following types of exceptions: {@link ResourceException}, {@link RuntimeException}.
-	 * Lastly, this also attempts to make the method <i>accessible</b> for manipulation through reflection.
-	 * @param method the method to verify
-	 */
-	private void verifyMethodParameters(Method method) {
-		Class<?>[] paramTypes = method.getParameterTypes();
-		for (Class<?> paramType : paramTypes) {
-			verifyParameterType(method, paramType);
-		}
-		if (paramTypes.length > 2) {
-			throw new IllegalArgumentException("Invalid number of arguments for a resource action method: " + paramTypes.length + "; expected zero, one, or two");
-		}
-		Class<?>[] excTypes = method.getExceptionTypes();
-		for (int i = 0; i < excTypes.length; i++) {
-			if (!ResourceException.class.isAssignableFrom(excTypes[i]) &&
-				!RuntimeException.class.isAssignableFrom(excTypes[i])) {
-				throw new IllegalArgumentException("Invalid Exception declared for Resource Method [" + method.getName() + "]; only allows Runtime and ResourceException types for " + this);
-			}
-		}
-		try {
-			method.setAccessible(true);
-		} catch (SecurityException se) {
-			throw new IllegalArgumentException("Invalid visibility modifiers on method: " + method.getName() + " for " + this, se);
-		}
-	}
-	
 	/**
 	 * Checks if this resource is context aware.
 	 * @return true if context aware method has been discovered
 	 */
 	public boolean isContextAware() {
-		return (resourceContextMethod != null);
+		return (descriptor.resourceContextMethod != null);
 	}
 	
 	/**
@@ -366,7 +249,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @return true if there is a publish method
 	 */
 	public boolean hasPublish() {
-		return (publishMethod != null);
+		return (descriptor.publishMethod != null);
 	}
 	
 	/**
@@ -374,7 +257,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @return true if there is a pause method
 	 */
 	public boolean hasPause() {
-		return (pauseMethod != null);
+		return (descriptor.pauseMethod != null);
 	}
 	
 	/**
@@ -382,15 +265,15 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @return true if there is a kill method
 	 */
 	public boolean hasKill() {
-		return (killMethod != null);
+		return (descriptor.killMethod != null);
 	}
-
+	
 	/**
 	 * Checks if this resource has an initialization method.
 	 * @return true if there is an init. method
 	 */
 	public boolean hasInitialize() {
-		return (initMethod != null);
+		return (descriptor.initMethod != null);
 	}
 	
 	/**
@@ -400,8 +283,8 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any injection failure
 	 */
 	public void setContextIfAware(ResourceContext ctx) throws ResourceException {
-		if (resourceContextMethod != null) {
-			invokeMethod(resourceContextMethod, ResourceAction.UNSPECIFIED, ctx);
+		if (descriptor.resourceContextInvoker != null) {
+			invokeMethod(descriptor.resourceContextInvoker, ResourceAction.UNSPECIFIED, ctx);
 		}
 	}
 	
@@ -414,20 +297,20 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	public Method getResourceMethod(ResourceAction action) {
 		switch (action) {
 			case INITIALIZING:
-				return initMethod;
+				return descriptor.initMethod;
 			case PAUSING:
-				return pauseMethod;
+				return descriptor.pauseMethod;
 			case RESUMING:
-				return resumeMethod;
+				return descriptor.resumeMethod;
 			case PUBLISHING:
-				return publishMethod;
+				return descriptor.publishMethod;
 			case SHUTTING_DOWN:
 			case STOPPING:
-				return stopMethod;
+				return descriptor.stopMethod;
 			case STARTING:
-				return startMethod;
+				return descriptor.startMethod;
 			case KILLING:
-				return killMethod;
+				return descriptor.killMethod;
 			default:
 				throw new IllegalArgumentException("Invalid resource action type: " + action);
 		}
@@ -439,7 +322,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception or if there is no initialization method
 	 */
 	public void initialize(ResourceContext ctx) throws ResourceException {
-		invokeMethod(initMethod, ResourceAction.INITIALIZING, ctx);
+		invokeMethod(descriptor.initInvoker, ResourceAction.INITIALIZING, ctx);
 	}
 	
 	/**
@@ -448,7 +331,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception or if there is no kill method
 	 */
 	public void kill(ResourceContext ctx) throws ResourceException {
-		invokeMethod(killMethod, ResourceAction.SHUTTING_DOWN, ctx);
+		invokeMethod(descriptor.killInvoker, ResourceAction.SHUTTING_DOWN, ctx);
 	}
 	
 	/**
@@ -457,7 +340,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception
 	 */
 	public void start(ResourceContext ctx) throws ResourceException {
-		invokeMethod(startMethod, ResourceAction.STARTING, ctx);
+		invokeMethod(descriptor.startInvoker, ResourceAction.STARTING, ctx);
 	}
 	
 	/**
@@ -466,7 +349,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception
 	 */
 	public void stop(ResourceContext ctx) throws ResourceException {
-		invokeMethod(stopMethod, ResourceAction.STOPPING, ctx);
+		invokeMethod(descriptor.stopInvoker, ResourceAction.STOPPING, ctx);
 	}
 	
 	/**
@@ -475,16 +358,16 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception or if there is no publish method
 	 */
 	public void publish(ResourceContext ctx) throws ResourceException {
-		invokeMethod(publishMethod, ResourceAction.PUBLISHING, ctx);
+		invokeMethod(descriptor.publishInvoker, ResourceAction.PUBLISHING, ctx);
 	}
-
+	
 	/**
 	 * Pauses this resource by invoking its pause method. If it does not have one, an exception is thrown.
 	 * @param ctx the resource context
 	 * @throws ResourceException on any exception or if there is no pause method
 	 */
 	public void pause(ResourceContext ctx) throws ResourceException {
-		invokeMethod(pauseMethod, ResourceAction.PAUSING, ctx);
+		invokeMethod(descriptor.pauseInvoker, ResourceAction.PAUSING, ctx);
 	}
 	
 	/**
@@ -493,35 +376,18 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * @throws ResourceException on any exception or if there is no resume method
 	 */
 	public void resume(ResourceContext ctx) throws ResourceException {
-		invokeMethod(resumeMethod, ResourceAction.RESUMING, ctx);
-	}
-	
-	private Object[] getParameters(Method method, ResourceContext ctx) {
-		Object[] params = new Object[method.getParameterTypes().length];
-		int i = 0;
-		for (Class<?> paramType : method.getParameterTypes()) {
-			if (ResourceContext.class.isAssignableFrom(paramType)) {
-				params[i++] = ctx;
-			}
-			else if (ResourceInfo.class.isAssignableFrom(paramType)) {
-				params[i++] = this;
-			}
-			else {
-				throw new IllegalArgumentException("Invalid parameter type: " + paramType + " for method [" + method.getName() + "]");
-			}
-		}
-		return params;
+		invokeMethod(descriptor.resumeInvoker, ResourceAction.RESUMING, ctx);
 	}
 	
 	/**
-	 * Invokes the specified resource Method thru Reflection for the specified ResourceAction type.
-	 * @param method the reflective Method object
+	 * Invokes the specified resource method thru its compiled invoker for the specified ResourceAction type.
+	 * @param invoker the invoker of the resource method
 	 * @param action the resource action type
 	 * @param ctx the resource context
 	 * @throws ResourceException if any exceptions occur while invoking the method, or the method is <code>null</code>
 	 */
-	private void invokeMethod(Method method, ResourceAction action, ResourceContext ctx) throws ResourceException {
-		if (method == null) {
+	private void invokeMethod(ResourceMethodInvoker invoker, ResourceAction action, ResourceContext ctx) throws ResourceException {
+		if (invoker == null) {
 			throw new ResourceException("Unable to invoke " + action.getVerb() + " on " + this + " because it has no " + action.getVerb() + " method");
 		}
 		
@@ -533,7 +399,7 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 		}
 		
 		try {
-			method.invoke(bean, getParameters(method, ctx));
+			invoker.invoke(bean, ctx, this);
 		} catch (InvocationTargetException ite) {
 			if (ite.getTargetException() instanceof RuntimeException) {
 				throw (RuntimeException)ite.getTargetException();
@@ -560,50 +426,48 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 	 * Injects properties from the ResourceContext into this managed resource.
 	 * @throws Exception if any exceptions occur injecting properties
 	 */
-	public void injectProperties(ResourceContext ctx, Map<Class<?>, Injections> injections) throws ResourceException {
-		for (Map.Entry<Field, ContextProperty> entry : injectableFields.entrySet()) {
-			Field field = entry.getKey();
-			ContextProperty spec = entry.getValue();
-			if (spec.state() == getState() || getState().getStabilizeState() == spec.state()) {
-				Object value = null;
-				if (!ctx.hasProperty(spec.name())) {
-					try {
-						value = ctx.getResource(spec.name()).getInstance();
-					} catch (ResourceNotFoundException rnfe) {
-						if (spec.required()) {
-							throw new ResourceException("Missing injected property [" + spec.name() + "] for " + this, rnfe);
-						}
-						
-						log.warn("Skipping injection of Property [" + spec.name() + "] because it is not in the Context");
-						continue;
+	public void injectProperties(ResourceContext ctx, PendingInjections injections) throws ResourceException {
+		for (ResourceDescriptor.PropertyInjection injection : descriptor.getPropertyInjections(getState())) {
+			FieldInjector field = injection.field;
+			ContextProperty spec = injection.spec;
+			Object value = null;
+			if (!ctx.hasProperty(spec.name())) {
+				try {
+					value = ctx.getResource(spec.name()).getInstance();
+				} catch (ResourceNotFoundException rnfe) {
+					if (spec.required()) {
+						throw new ResourceException("Missing injected property [" + spec.name() + "] for " + this, rnfe);
 					}
+					
+					log.warn("Skipping injection of Property [" + spec.name() + "] because it is not in the Context");
+					continue;
 				}
-				else {
-					value = ctx.getProperty(spec.name());
-				}
-				
-				if (value != null) {
-					try {
-						Object currentValue = field.get(bean);
-						if (currentValue == null) {
-							field.set(bean, value);
-							log.info("Successfully injected Property [" + spec.name() + "] into Bean [" + beanName + "] Field [" + field.getName() + "]");
-						}
-					} catch (IllegalAccessException iae) {
-						throw new ResourceException("Unable to inject Bean [" + beanName + "] Field [" + field.getName() + "] with Property [" + spec.name() + "]", iae);
-					} catch (IllegalArgumentException iae) {
-						throw new ResourceException("Unable to inject Bean [" + beanName + "] Field [" + field.getName() + "] with Property [" + spec.name() + "]", iae);
+			}
+			else {
+				value = ctx.getProperty(spec.name());
+			}
+			
+			if (value != null) {
+				try {
+					Object currentValue = field.get(bean);
+					if (currentValue == null) {
+						field.set(bean, value);
+						log.info("Successfully injected Property [" + spec.name() + "] into Bean [" + beanName + "] Field [" + field.getName() + "]");
 					}
+				} catch (IllegalAccessException iae) {
+					throw new ResourceException("Unable to inject Bean [" + beanName + "] Field [" + field.getName() + "] with Property [" + spec.name() + "]", iae);
+				} catch (IllegalArgumentException iae) {
+					throw new ResourceException("Unable to inject Bean [" + beanName + "] Field [" + field.getName() + "] with Property [" + spec.name() + "]", iae);
 				}
 			}
 		}
 		
-		for (Iterator<Field> iter = resourceFields.iterator(); iter.hasNext();) {
-			Field field = iter.next();
-			String resName = field.getAnnotation(ContextResource.class).name();
+		for (Iterator<ResourceDescriptor.ResourceInjection> iter = resourceFields.iterator(); iter.hasNext();) {
+			ResourceDescriptor.ResourceInjection injection = iter.next();
+			FieldInjector field = injection.field;
+			String resName = injection.resourceName;
 			Class<?> resourceType = field.getType();
 			try {
-				field.setAccessible(true);
 				Object currentValue = field.get(bean);
 				if (currentValue == null) {
 					ResourceInfo resource;
@@ -624,50 +488,31 @@ class ResourceMetadata implements Validatable, ResourceInfo {
 			} catch (ResourceUniquenessException rue) {
 				throw new ResourceException("Unable to inject Field [" + field.getName() + "] for Resource [" + resourceName + "] for Resource Type [" + resourceType + "]", rue);
 			} catch (ResourceNotFoundException rnfe) {
-				Injections injs;
-				synchronized (injections) {
-					injs = injections.get(resourceType);
-					if (injs == null) {
-						injs = new Injections(resourceType);
-						injections.put(resourceType, injs);
-					}
-				}
-				injs.addInjection(this, field);
+				injections.add(resourceType, this, field.getField());
 			}
 		}
 	}
 	
 	@Override
 	public boolean waitForState(ResourceState state) throws InterruptedException {
+		return stateWaiters.await(this, getWaitEventType(state), -1);
+	}
+	
+	@Override
+	public boolean waitForState(ResourceState state, long timeout, TimeUnit unit) throws InterruptedException {
+		return stateWaiters.await(this, getWaitEventType(state), Math.max(0, unit.toNanos(timeout)));
+	}
+	
+	private EventType getWaitEventType(ResourceState state) {
 		EventType newState = EventType.forState(state);
 		if (newState == EventType.UNKNOWN) {
 			throw new IllegalArgumentException("Invalid target resource state: " + state);
 		}
-		final ResourceManager manager = ResourceManager.tlManager.get();
-		final AwaitStateListener listener = new AwaitStateListener(this, newState) {
-			@Override
-			protected void done() {
-				final FilteredResourceListener l = this;
-				Thread t = new Thread(){
-					@Override
-					public void run() {
-						try {
-							Thread.sleep(100);
-						} catch (InterruptedException ie) {
-						} finally {
-							manager.removeResourceListener(l, l);
-						}
-					}
-				};
-				t.start();
-			}
-		};
-		manager.addResourceListener(listener, listener);
-		return listener.awaitState();
+		return newState;
 	}
 	
 	@Override
 	public String toString() {
-		return "Resource[" + resourceName + "] State(" + state.get() + ")";
+		return "Resource[" + resourceName + "] State(" + getState() + ")";
 	}
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.mprew.ec2.resources;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import com.mprew.ec2.resources.context.ResourceContext;
+
+/**
+ * Invokes a resource action method through a MethodHandle that is compiled once from the Method, instead of using reflection for every
+ * call. Resource methods take any combination of up to two ResourceContext and ResourceInfo parameters, so every handle is adapted to
+ * the same <code>(Object bean, ResourceContext ctx, ResourceInfo info)</code> shape when it is compiled, and invoking it allocates no
+ * argument array and checks no parameter types. If a handle can not be created for the method, it is invoked reflectively instead.
+ *
+ * @author dgarson
+ */
+final class ResourceMethodInvoker {
+	
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, ResourceContext.class, ResourceInfo.class);
+	
+	private final Method method;
+	private final MethodHandle handle;
+	
+	private ResourceMethodInvoker(Method method, MethodHandle handle) {
+		this.method = method;
+		this.handle = handle;
+	}
+	
+	/**
+	 * Compiles an invoker for a resource action method.
+	 * @param method the method, which may be <code>null</code>
+	 * @return the invoker, or <code>null</code> if the method is <code>null</code>
+	 * @throws IllegalArgumentException if the method has a parameter that is not a ResourceContext or ResourceInfo
+	 */
+	static ResourceMethodInvoker compile(Method method) throws IllegalArgumentException {
+		if (method == null) {
+			return null;
+		}
+		Class<?>[] paramTypes = method.getParameterTypes();
+		// The position of each parameter in the invoker shape, after the bean
+		int[] reorder = new int[paramTypes.length + 1];
+		Class<?>[] shape = new Class<?>[paramTypes.length + 1];
+		shape[0] = Object.class;
+		for (int i = 0; i < paramTypes.length; i++) {
+			if (ResourceContext.class.isAssignableFrom(paramTypes[i])) {
+				reorder[i + 1] = 1;
+				shape[i + 1] = ResourceContext.class;
+			}
+			else if (ResourceInfo.class.isAssignableFrom(paramTypes[i])) {
+				reorder[i + 1] = 2;
+				shape[i + 1] = ResourceInfo.class;
+			}
+			else {
+				throw new IllegalArgumentException("Invalid parameter type: " + paramTypes[i] + " for method [" + method.getName() + "]");
+			}
+		}
+		MethodHandle handle;
+		try {
+			method.setAccessible(true);
+			handle = MethodHandles.lookup().unreflect(method);
+			if (Modifier.isStatic(method.getModifiers())) {
+				handle = MethodHandles.dropArguments(handle, 0, Object.class);
+			}
+			handle = handle.asType(MethodType.methodType(void.class, shape));
+			handle = MethodHandles.permuteArguments(handle, INVOKER_TYPE, reorder);
+		} catch (IllegalAccessException iae) {
+			handle = null;
+		} catch (SecurityException se) {
+			handle = null;
+		} catch (InaccessibleObjectException ioe) {
+			handle = null;
+		}
+		return new ResourceMethodInvoker(method, handle);
+	}
+	
+	/**
+	 * Invokes the method on a bean.
+	 * @param bean the bean
+	 * @param ctx the resource context, passed to ResourceContext parameters
+	 * @param info the resource, passed to ResourceInfo parameters
+	 * @throws InvocationTargetException if the method throws an exception
+	 * @throws IllegalAccessException if the method is invoked reflectively and is not accessible
+	 */
+	void invoke(Object bean, ResourceContext ctx, ResourceInfo info) throws InvocationTargetException, IllegalAccessException {
+		if (handle == null) {
+			method.invoke(bean, getParameters(ctx, info));
+			return;
+		}
+		try {
+			handle.invokeExact(bean, ctx, info);
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+	
+	private Object[] getParameters(ResourceContext ctx, ResourceInfo info) {
+		Class<?>[] paramTypes = method.getParameterTypes();
+		Object[] params = new Object[paramTypes.length];
+		for (int i = 0; i < paramTypes.length; i++) {
+			params[i] = (ResourceContext.class.isAssignableFrom(paramTypes[i]) ? ctx : info);
+		}
+		return params;
+	}
+}
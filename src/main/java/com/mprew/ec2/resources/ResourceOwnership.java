@@ -0,0 +1,116 @@
+package com.mprew.ec2.resources;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The actions that are currently working on a single resource, along with the threads running them. The owners are kept in an array
+ * that is replaced by compare-and-set whenever an owner is added or removed, so checking whether another thread owns the resource, and
+ * taking a snapshot of the owners for diagnostics, never takes a lock or copies anything.
+ *
+ * @author dgarson
+ */
+final class ResourceOwnership {
+	
+	private static final Owner[] NONE = new Owner[0];
+	
+	private final AtomicReference<Owner[]> owners = new AtomicReference<Owner[]>(NONE);
+	
+	/**
+	 * Marks the current thread as working on the resource for an action. A thread owns a resource at most once.
+	 * @param action the action, or <code>null</code> if unknown
+	 * @return true if the current thread did not already own the resource
+	 */
+	boolean acquire(AbstractResourceAction action) {
+		Thread thread = Thread.currentThread();
+		while (true) {
+			Owner[] current = owners.get();
+			if (indexOf(current, thread) >= 0) {
+				return false;
+			}
+			Owner[] added = Arrays.copyOf(current, current.length + 1);
+			added[current.length] = new Owner(thread, action);
+			if (owners.compareAndSet(current, added)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Marks the current thread as no longer working on the resource.
+	 * @return true if the current thread owned the resource
+	 */
+	boolean release() {
+		Thread thread = Thread.currentThread();
+		while (true) {
+			Owner[] current = owners.get();
+			int index = indexOf(current, thread);
+			if (index < 0) {
+				return false;
+			}
+			Owner[] removed;
+			if (current.length == 1) {
+				removed = NONE;
+			}
+			else {
+				removed = new Owner[current.length - 1];
+				System.arraycopy(current, 0, removed, 0, index);
+				System.arraycopy(current, index + 1, removed, index, removed.length - index);
+			}
+			if (owners.compareAndSet(current, removed)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Removes every owner, once the resource has shut down.
+	 */
+	void clear() {
+		owners.set(NONE);
+	}
+	
+	/**
+	 * Checks if any thread other than the current one is working on the resource.
+	 * @return true if owned by another thread
+	 */
+	boolean isOwnedByOtherThread() {
+		Owner[] current = owners.get();
+		return (current.length > 1 || (current.length == 1 && current[0].thread != Thread.currentThread()));
+	}
+	
+	/**
+	 * Gets the current owners.
+	 * @return the owners, which must not be modified
+	 */
+	Owner[] getOwners() {
+		return owners.get();
+	}
+	
+	private static int indexOf(Owner[] owners, Thread thread) {
+		for (int i = 0; i < owners.length; i++) {
+			if (owners[i].thread == thread) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * A thread working on a resource along with the action it is running.
+	 */
+	static final class Owner {
+		final Thread thread;
+		final AbstractResourceAction action;
+		
+		Owner(Thread thread, AbstractResourceAction action) {
+			this.thread = thread;
+			this.action = action;
+		}
+		
+		@Override
+		public String toString() {
+			return "Thread: " + thread.getName() + " [" + thread.getId() + "]" + (action != null ? " Action: " + action.getActionName(true) : "");
+		}
+	}
+}
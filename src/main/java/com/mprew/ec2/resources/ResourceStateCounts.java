@@ -0,0 +1,75 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Live number of registered resources in each ResourceState, so that the ResourceManager can tell whether every resource has reached
+ * a state without scanning all of them. The ResourceManager synchronizes on this object around registering, unregistering and changing
+ * the state of resources, so the counts always match the resources that are registered and the states they are in.
+ *
+ * @author dgarson
+ */
+final class ResourceStateCounts {
+	
+	private static final ResourceState[] states = ResourceState.values();
+	/** The states that are equivalent to each state, by ordinal */
+	private static final ResourceState[][] equivalentStates = new ResourceState[states.length][];
+	
+	static {
+		List<ResourceState> equivalent = new ArrayList<ResourceState>();
+		for (ResourceState target : states) {
+			equivalent.clear();
+			for (ResourceState state : states) {
+				if (state.isEquivalent(target)) {
+					equivalent.add(state);
+				}
+			}
+			equivalentStates[target.ordinal()] = equivalent.toArray(new ResourceState[equivalent.size()]);
+		}
+	}
+	
+	private final int[] counts = new int[states.length];
+	private int total = 0;
+	
+	/**
+	 * Counts a newly registered resource.
+	 * @param state the state of the resource
+	 */
+	synchronized void added(ResourceState state) {
+		counts[state.ordinal()]++;
+		total++;
+	}
+	
+	/**
+	 * Stops counting an unregistered resource.
+	 * @param state the state of the resource
+	 */
+	synchronized void removed(ResourceState state) {
+		counts[state.ordinal()]--;
+		total--;
+	}
+	
+	/**
+	 * Moves a registered resource from one state to another.
+	 * @param oldState the previous state
+	 * @param newState the new state
+	 */
+	synchronized void changed(ResourceState oldState, ResourceState newState) {
+		counts[oldState.ordinal()]--;
+		counts[newState.ordinal()]++;
+	}
+	
+	/**
+	 * Checks if every registered resource is in a state that is equivalent to the given state.
+	 * @param target the state
+	 * @return true if all resources are equivalent, including when there are none
+	 */
+	synchronized boolean isAllEquivalent(ResourceState target) {
+		int equivalent = 0;
+		for (ResourceState state : equivalentStates[target.ordinal()]) {
+			equivalent += counts[state.ordinal()];
+		}
+		return (equivalent == total);
+	}
+}
@@ -0,0 +1,113 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+
+/**
+ * Threads waiting for a single resource to enter a state. Waiting threads are parked until the resource manager reports the matching
+ * event or a failure for the resource, at which point they are unparked directly from the thread that changed the state, without any
+ * listener registration or helper threads.
+ *
+ * @author dgarson
+ */
+final class ResourceStateWaiters {
+	
+	private static final int PENDING = 0;
+	private static final int ENTERED = 1;
+	private static final int FAILED = 2;
+	
+	private final List<Waiter> waiters = new ArrayList<Waiter>();
+	
+	/**
+	 * Waits for an event of the given type.
+	 * @param resource the resource being waited on
+	 * @param eventType the event type to wait for
+	 * @param timeoutNanos the maximum time to wait in nanoseconds, or a negative value to wait forever
+	 * @return true if the event was received or the resource is already in an equivalent state, false if the resource failed or the
+	 * timeout elapsed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean await(ResourceInfo resource, EventType eventType, long timeoutNanos) throws InterruptedException {
+		Waiter waiter = new Waiter(Thread.currentThread(), eventType);
+		synchronized (waiters) {
+			waiters.add(waiter);
+		}
+		try {
+			// Check the current state after registering, so that a concurrent transition can not be missed
+			if (EventType.forState(resource.getState()) == eventType) {
+				return true;
+			}
+			long deadline = System.nanoTime() + timeoutNanos;
+			while (waiter.result == PENDING) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if (timeoutNanos < 0) {
+					LockSupport.park(this);
+				}
+				else {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					LockSupport.parkNanos(this, remaining);
+				}
+			}
+			return (waiter.result == ENTERED);
+		} finally {
+			synchronized (waiters) {
+				waiters.remove(waiter);
+			}
+		}
+	}
+	
+	/**
+	 * Wakes up the threads waiting for an event of the given type.
+	 * @param eventType the event type
+	 */
+	void eventFired(EventType eventType) {
+		synchronized (waiters) {
+			for (int i = 0; i < waiters.size(); i++) {
+				Waiter waiter = waiters.get(i);
+				if (waiter.eventType == eventType) {
+					waiter.wake(ENTERED);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Wakes up every waiting thread, since the resource failed to perform an action.
+	 */
+	void failureFired() {
+		synchronized (waiters) {
+			for (int i = 0; i < waiters.size(); i++) {
+				waiters.get(i).wake(FAILED);
+			}
+		}
+	}
+	
+	/**
+	 * A parked thread along with the event type it is waiting for.
+	 */
+	private static class Waiter {
+		final Thread thread;
+		final EventType eventType;
+		volatile int result = PENDING;
+		
+		Waiter(Thread thread, EventType eventType) {
+			this.thread = thread;
+			this.eventType = eventType;
+		}
+		
+		void wake(int newResult) {
+			if (result == PENDING) {
+				result = newResult;
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+}
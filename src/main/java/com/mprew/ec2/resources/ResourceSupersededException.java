@@ -0,0 +1,36 @@
+package com.mprew.ec2.resources;
+
+/**
+ * A ResourceSupersededException is returned when a resource could not be moved to a new state because another thread changed its
+ * state first, so the state change was not made. Actions treat the resource as not done and schedule it again from its new state
+ * if they still apply to it.
+ *
+ * @author dgarson
+ */
+public class ResourceSupersededException extends ResourceException {
+
+	private static final long serialVersionUID = 4520318166217904573L;
+
+	private final ResourceInfo resource;
+	private final ResourceState requestedState;
+
+	public ResourceSupersededException(ResourceInfo resource, ResourceState requestedState, String message) {
+		super(message);
+		this.resource = resource;
+		this.requestedState = requestedState;
+	}
+
+	/**
+	 * @return the resource that was not changed
+	 */
+	public ResourceInfo getResource() {
+		return resource;
+	}
+
+	/**
+	 * @return the state that the resource was not moved to
+	 */
+	public ResourceState getRequestedState() {
+		return requestedState;
+	}
+}
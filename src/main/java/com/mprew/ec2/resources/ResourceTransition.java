@@ -0,0 +1,253 @@
+package com.mprew.ec2.resources;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+import com.mprew.ec2.resources.action.ResourceAction;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+
+/**
+ * The sequence of steps that moves a resource from one state to another, such as entering STARTING, injecting properties, invoking the
+ * start method and entering STARTED. The ResourceManager looks up the transition for the current and requested state of a resource in
+ * its transition table and executes the steps in order; each step can be limited to resources that do, or do not, have the method for
+ * a ResourceAction. Custom transitions, such as restarting a running resource, can be added to the table with
+ * {@link ResourceManager#setResourceTransition(ResourceState, ResourceState, ResourceTransition)}.
+ *
+ * @author dgarson
+ */
+public final class ResourceTransition {
+	
+	private final Step[] steps;
+	
+	public ResourceTransition(Step... steps) {
+		this.steps = steps.clone();
+	}
+	
+	/**
+	 * Gets the steps of this transition.
+	 * @return the steps, in the order they are executed
+	 */
+	public List<Step> getSteps() {
+		return Arrays.asList(steps.clone());
+	}
+	
+	Step[] steps() {
+		return steps;
+	}
+	
+	/**
+	 * Creates a transition that executes the steps of several transitions in turn.
+	 * @param transitions the transitions
+	 * @return the combined transition
+	 */
+	public static ResourceTransition concat(ResourceTransition... transitions) {
+		int count = 0;
+		for (ResourceTransition transition : transitions) {
+			count += transition.steps.length;
+		}
+		Step[] steps = new Step[count];
+		int i = 0;
+		for (ResourceTransition transition : transitions) {
+			System.arraycopy(transition.steps, 0, steps, i, transition.steps.length);
+			i += transition.steps.length;
+		}
+		return new ResourceTransition(steps);
+	}
+	
+	/**
+	 * Step that changes the state of the resource.
+	 * @param state the new state
+	 * @param eventType the event type reported if the step fails
+	 * @return the step
+	 */
+	public static Step enter(ResourceState state, EventType eventType) {
+		return new Step(StepType.ENTER, state, null, eventType, null, true);
+	}
+	
+	/**
+	 * Step that gives the resource its ResourceContext if it is ResourceContextAware.
+	 * @param eventType the event type reported if the step fails
+	 * @return the step
+	 */
+	public static Step setContext(EventType eventType) {
+		return new Step(StepType.SET_CONTEXT, null, null, eventType, null, true);
+	}
+	
+	/**
+	 * Step that injects the properties and resources that are due in the current state of the resource. A failure to inject is logged
+	 * and does not fail the transition.
+	 * @param eventType the event type reported if the step fails
+	 * @return the step
+	 */
+	public static Step inject(EventType eventType) {
+		return new Step(StepType.INJECT, null, null, eventType, null, true);
+	}
+	
+	/**
+	 * Step that invokes the method of the resource for an action.
+	 * @param action the resource action
+	 * @param eventType the event type reported if the step fails
+	 * @return the step
+	 */
+	public static Step invoke(ResourceAction action, EventType eventType) {
+		return new Step(StepType.INVOKE, null, action, eventType, null, true);
+	}
+	
+	/**
+	 * Step that unregisters the resource, after it has shut down.
+	 * @param eventType the event type reported if the step fails
+	 * @return the step
+	 */
+	public static Step unregister(EventType eventType) {
+		return new Step(StepType.UNREGISTER, null, null, eventType, null, true);
+	}
+	
+	/**
+	 * The default transitions between the states of a resource.
+	 * @return the transition table, by current state and then by requested state
+	 */
+	static EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>> defaults() {
+		EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>> table = new EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>>(ResourceState.class);
+		for (ResourceState state : ResourceState.values()) {
+			table.put(state, new EnumMap<ResourceState, ResourceTransition>(ResourceState.class));
+		}
+		
+		ResourceTransition initialize = new ResourceTransition(
+			setContext(EventType.INITIALIZING),
+			inject(EventType.INITIALIZING),
+			invoke(ResourceAction.INITIALIZING, EventType.INITIALIZING).onlyIf(ResourceAction.INITIALIZING),
+			enter(ResourceState.INITIALIZED, EventType.INITIALIZED));
+		ResourceTransition start = new ResourceTransition(
+			enter(ResourceState.STARTING, EventType.STARTING),
+			inject(EventType.STARTING),
+			invoke(ResourceAction.STARTING, EventType.STARTING),
+			enter(ResourceState.STARTED, EventType.STARTED));
+		ResourceTransition injectAndPublish = new ResourceTransition(
+			enter(ResourceState.PUBLISHING, EventType.PUBLISHING).onlyIf(ResourceAction.PUBLISHING),
+			inject(EventType.PUBLISHING).onlyIf(ResourceAction.PUBLISHING),
+			invoke(ResourceAction.PUBLISHING, EventType.PUBLISHING).onlyIf(ResourceAction.PUBLISHING),
+			enter(ResourceState.RUNNING, EventType.RUNNING));
+		ResourceTransition publish = new ResourceTransition(
+			enter(ResourceState.PUBLISHING, EventType.PUBLISHING).onlyIf(ResourceAction.PUBLISHING),
+			invoke(ResourceAction.PUBLISHING, EventType.PUBLISHING).onlyIf(ResourceAction.PUBLISHING),
+			enter(ResourceState.RUNNING, EventType.RUNNING));
+		ResourceTransition pause = new ResourceTransition(
+			enter(ResourceState.PAUSING, EventType.PAUSING).onlyIf(ResourceAction.PAUSING),
+			invoke(ResourceAction.PAUSING, EventType.PAUSING).onlyIf(ResourceAction.PAUSING),
+			enter(ResourceState.PAUSED, EventType.PAUSED).onlyIf(ResourceAction.PAUSING));
+		ResourceTransition resume = new ResourceTransition(
+			enter(ResourceState.RESUMING, EventType.RESUMING).onlyIf(ResourceAction.PAUSING),
+			invoke(ResourceAction.RESUMING, EventType.RESUMING).onlyIf(ResourceAction.PAUSING),
+			enter(ResourceState.RUNNING, EventType.RESUMED).onlyIf(ResourceAction.PAUSING));
+		ResourceTransition gracefulShutdown = new ResourceTransition(
+			enter(ResourceState.SHUTTING_DOWN_GRACEFULLY, EventType.STOPPING),
+			invoke(ResourceAction.STOPPING, EventType.STOPPING),
+			enter(ResourceState.SHUTDOWN_GRACEFULLY, EventType.STOPPING),
+			unregister(EventType.STOPPING));
+		// Resources without a kill method are stopped gracefully instead
+		ResourceTransition forcefulShutdown = new ResourceTransition(
+			enter(ResourceState.SHUTTING_DOWN_FORCEFULLY, EventType.STOPPING).onlyIf(ResourceAction.KILLING),
+			invoke(ResourceAction.KILLING, EventType.STOPPING).onlyIf(ResourceAction.KILLING),
+			enter(ResourceState.SHUTDOWN_FORCEFULLY, EventType.STOPPING).onlyIf(ResourceAction.KILLING),
+			enter(ResourceState.SHUTTING_DOWN_GRACEFULLY, EventType.STOPPING).unless(ResourceAction.KILLING),
+			invoke(ResourceAction.STOPPING, EventType.STOPPING).unless(ResourceAction.KILLING),
+			enter(ResourceState.SHUTDOWN_GRACEFULLY, EventType.STOPPING).unless(ResourceAction.KILLING),
+			unregister(EventType.STOPPING));
+		
+		table.get(ResourceState.INITIALIZING).put(ResourceState.INITIALIZED, initialize);
+		
+		put(table, ResourceState.INITIALIZED, start, ResourceState.STARTING, ResourceState.STARTED);
+		// If we are resuming then we should start an initialized resource
+		put(table, ResourceState.INITIALIZED, concat(start, injectAndPublish), ResourceState.PUBLISHING, ResourceState.RUNNING, ResourceState.RESUMING);
+		put(table, ResourceState.STARTED, publish, ResourceState.PUBLISHING, ResourceState.RUNNING, ResourceState.RESUMING);
+		put(table, ResourceState.RUNNING, pause, ResourceState.PAUSING, ResourceState.PAUSED);
+		put(table, ResourceState.PAUSED, resume, ResourceState.RESUMING, ResourceState.RUNNING);
+		
+		for (ResourceState state : new ResourceState[] { ResourceState.INITIALIZED, ResourceState.STARTED, ResourceState.RUNNING, ResourceState.PAUSED }) {
+			put(table, state, forcefulShutdown, ResourceState.SHUTTING_DOWN_FORCEFULLY, ResourceState.SHUTDOWN_FORCEFULLY);
+			put(table, state, gracefulShutdown, ResourceState.SHUTTING_DOWN_GRACEFULLY, ResourceState.SHUTDOWN_GRACEFULLY);
+		}
+		return table;
+	}
+	
+	private static void put(EnumMap<ResourceState, EnumMap<ResourceState, ResourceTransition>> table, ResourceState from, ResourceTransition transition,
+		ResourceState... to)
+	{
+		for (ResourceState state : to) {
+			table.get(from).put(state, transition);
+		}
+	}
+	
+	static enum StepType {
+		ENTER,
+		SET_CONTEXT,
+		INJECT,
+		INVOKE,
+		UNREGISTER
+	}
+	
+	/**
+	 * One step of a transition.
+	 */
+	public static final class Step {
+		final StepType type;
+		final ResourceState state;
+		final ResourceAction action;
+		final EventType eventType;
+		/** The action whose method the resource must have, or must not have, for this step to run */
+		private final ResourceAction condition;
+		private final boolean conditionPresent;
+		
+		private Step(StepType type, ResourceState state, ResourceAction action, EventType eventType, ResourceAction condition, boolean conditionPresent) {
+			this.type = type;
+			this.state = state;
+			this.action = action;
+			this.eventType = eventType;
+			this.condition = condition;
+			this.conditionPresent = conditionPresent;
+		}
+		
+		/**
+		 * Limits this step to resources that have the method for an action.
+		 * @param action the resource action
+		 * @return the limited step
+		 */
+		public Step onlyIf(ResourceAction action) {
+			return new Step(type, state, this.action, eventType, action, true);
+		}
+		
+		/**
+		 * Limits this step to resources that do not have the method for an action.
+		 * @param action the resource action
+		 * @return the limited step
+		 */
+		public Step unless(ResourceAction action) {
+			return new Step(type, state, this.action, eventType, action, false);
+		}
+		
+		/**
+		 * Checks if this step runs for a resource.
+		 * @param resource the resource
+		 * @return true if the step applies to the resource
+		 */
+		boolean appliesTo(ResourceInfo resource) {
+			return (condition == null || (resource.getResourceMethod(condition) != null) == conditionPresent);
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(type.name());
+			if (state != null) {
+				sb.append(' ').append(state);
+			}
+			if (action != null) {
+				sb.append(' ').append(action);
+			}
+			if (condition != null) {
+				sb.append(conditionPresent ? " if " : " unless ").append(condition);
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.mprew.ec2.resources;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the registered resources by every class, superclass and interface of their beans, so that a resource can be found by type
+ * without checking every registered resource. Each type maps to an immutable snapshot of its resources that is replaced whenever a
+ * resource of that type is registered or unregistered, so lookups take no lock. Registering a resource appends it in place to the
+ * array behind each snapshot, which grows by doubling, so that many resources sharing a supertype, such as <code>Object</code>, do not
+ * copy the array on every registration. The ResourceManager updates the index together with its resource map.
+ *
+ * @author dgarson
+ */
+final class ResourceTypeIndex {
+	
+	/** Every class and interface that instances of a class are assignable to */
+	private static final ClassValue<Class<?>[]> assignableTypes = new ClassValue<Class<?>[]>(){
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				types.add(c);
+				addInterfaces(c, types);
+			}
+			return types.toArray(new Class<?>[types.size()]);
+		}
+	};
+	
+	private final Map<Class<?>, Snapshot> resourcesByType = new ConcurrentHashMap<Class<?>, Snapshot>();
+	
+	/**
+	 * Gets every class and interface that instances of a class are assignable to, including the class itself.
+	 * @param type the class
+	 * @return the assignable types, which must not be modified
+	 */
+	static Class<?>[] getAssignableTypes(Class<?> type) {
+		return assignableTypes.get(type);
+	}
+	
+	private static void addInterfaces(Class<?> type, Set<Class<?>> types) {
+		for (Class<?> iface : type.getInterfaces()) {
+			if (types.add(iface)) {
+				addInterfaces(iface, types);
+			}
+		}
+	}
+	
+	/**
+	 * Indexes a newly registered resource under every type of its bean.
+	 * @param resource the resource
+	 */
+	synchronized void added(ResourceMetadata resource) {
+		for (Class<?> type : assignableTypes.get(resource.getBeanClass())) {
+			Snapshot snapshot = resourcesByType.get(type);
+			resourcesByType.put(type, (snapshot == null ? new Snapshot(new ResourceMetadata[] { resource }, 1) : snapshot.with(resource)));
+		}
+	}
+	
+	/**
+	 * Removes an unregistered resource from the index.
+	 * @param resource the resource
+	 */
+	synchronized void removed(ResourceMetadata resource) {
+		for (Class<?> type : assignableTypes.get(resource.getBeanClass())) {
+			Snapshot snapshot = resourcesByType.get(type);
+			if (snapshot == null) {
+				continue;
+			}
+			Snapshot remaining = snapshot.without(resource);
+			if (remaining == null) {
+				resourcesByType.remove(type);
+			}
+			else if (remaining != snapshot) {
+				resourcesByType.put(type, remaining);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the registered resources whose beans are instances of a type.
+	 * @param type the class or interface
+	 * @return the resources, which cannot be modified
+	 */
+	List<ResourceMetadata> get(Class<?> type) {
+		Snapshot snapshot = resourcesByType.get(type);
+		return (snapshot != null ? snapshot.asList() : Collections.<ResourceMetadata>emptyList());
+	}
+	
+	/**
+	 * The resources of a type: the first <code>count</code> elements of an array that later snapshots of the same type may append to.
+	 * Only the current snapshot of a type is ever appended to, so the elements of older snapshots never change.
+	 */
+	private static class Snapshot {
+		private final ResourceMetadata[] resources;
+		private final int count;
+		
+		Snapshot(ResourceMetadata[] resources, int count) {
+			this.resources = resources;
+			this.count = count;
+		}
+		
+		Snapshot with(ResourceMetadata resource) {
+			ResourceMetadata[] array = resources;
+			if (count == array.length) {
+				array = Arrays.copyOf(array, count * 2);
+			}
+			array[count] = resource;
+			return new Snapshot(array, count + 1);
+		}
+		
+		/**
+		 * @return the snapshot without the resource, this snapshot if it does not contain the resource, or <code>null</code> if it
+		 * would be empty
+		 */
+		Snapshot without(ResourceMetadata resource) {
+			for (int i = 0; i < count; i++) {
+				if (resources[i].equals(resource)) {
+					if (count == 1) {
+						return null;
+					}
+					ResourceMetadata[] remaining = new ResourceMetadata[count - 1];
+					System.arraycopy(resources, 0, remaining, 0, i);
+					System.arraycopy(resources, i + 1, remaining, i, count - i - 1);
+					return new Snapshot(remaining, remaining.length);
+				}
+			}
+			return this;
+		}
+		
+		List<ResourceMetadata> asList() {
+			return Collections.unmodifiableList(Arrays.asList(resources).subList(0, count));
+		}
+	}
+}
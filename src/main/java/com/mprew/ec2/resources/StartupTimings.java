@@ -0,0 +1,155 @@
+package com.mprew.ec2.resources;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of how long the <code>@Start</code> method of every resource takes, and persists these durations to a properties
+ * file so that the timings observed during previous runs can be used to order the startup of resources. Each recorded duration
+ * is smoothed with the previously known duration so that a single slow or fast start does not skew the ordering.
+ *
+ * @author dgarson
+ */
+class StartupTimings {
+	
+	private static final Logger log = LoggerFactory.getLogger(StartupTimings.class);
+	
+	/** The weight of a newly observed duration relative to the previously known duration */
+	private static final double SMOOTHING_FACTOR = 0.5;
+	
+	private final Map<String, Long> durations = new ConcurrentHashMap<String, Long>();
+	private final File file;
+	private volatile boolean modified = false;
+	
+	/**
+	 * Creates new startup timings that are persisted to the provided file.
+	 * @param file the file to load and save the timings from, or <code>null</code> to keep them in memory only
+	 */
+	StartupTimings(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Gets the file that these timings are persisted to.
+	 * @return the timings file, or <code>null</code>
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Records an observed start duration for a resource.
+	 * @param resourceName the resource name
+	 * @param millis the duration of its start method in milliseconds
+	 */
+	public void record(String resourceName, long millis) {
+		Long previous = durations.get(resourceName);
+		long duration = millis;
+		if (previous != null) {
+			duration = Math.round(SMOOTHING_FACTOR * millis + (1 - SMOOTHING_FACTOR) * previous.longValue());
+		}
+		durations.put(resourceName, Long.valueOf(duration));
+		modified = true;
+		log.trace("Recorded start duration of " + millis + "ms for [" + resourceName + "], expecting " + duration + "ms");
+	}
+	
+	/**
+	 * Gets the expected start duration for a resource.
+	 * @param resourceName the resource name
+	 * @return the expected duration in milliseconds, or <code>-1</code> if the resource has never been started
+	 */
+	public long getDuration(String resourceName) {
+		Long duration = durations.get(resourceName);
+		return (duration == null ? -1 : duration.longValue());
+	}
+	
+	/**
+	 * Loads the timings from the file, if it exists. Any unreadable entries are skipped.
+	 */
+	public void load() {
+		if (file == null || !file.isFile()) {
+			return;
+		}
+		Properties props = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			props.load(in);
+		} catch (IOException ioe) {
+			log.warn("Unable to load startup timings from " + file, ioe);
+			return;
+		} finally {
+			closeQuietly(in);
+		}
+		for (String name : props.stringPropertyNames()) {
+			try {
+				durations.put(name, Long.valueOf(props.getProperty(name)));
+			} catch (NumberFormatException nfe) {
+				log.warn("Ignoring invalid startup timing for [" + name + "]: " + props.getProperty(name));
+			}
+		}
+		log.debug("Loaded startup timings of " + durations.size() + " resources from " + file);
+	}
+	
+	/**
+	 * Saves the timings to the file if any have been recorded since they were last loaded or saved. The file is replaced
+	 * atomically where possible, so that a concurrent reader never sees a partially written file.
+	 */
+	public synchronized void save() {
+		if (file == null || !modified) {
+			return;
+		}
+		modified = false;
+		Properties props = new Properties();
+		for (Map.Entry<String, Long> entry : durations.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		
+		File tmpFile = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Unable to create directory " + dir);
+			}
+			out = new FileOutputStream(tmpFile);
+			props.store(out, "Resource start durations in milliseconds");
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(file)) {
+				// Some platforms can not rename over an existing file
+				file.delete();
+				if (!tmpFile.renameTo(file)) {
+					throw new IOException("Unable to rename " + tmpFile + " to " + file);
+				}
+			}
+			log.debug("Saved startup timings of " + durations.size() + " resources to " + file);
+		} catch (IOException ioe) {
+			modified = true;
+			log.warn("Unable to save startup timings to " + file, ioe);
+		} finally {
+			closeQuietly(out);
+		}
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException ioe) {
+				// Ignored
+			}
+		}
+	}
+}
@@ -1,16 +1,14 @@
 package com.mprew.ec2.resources.action;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
+import com.mprew.ec2.resources.ResourceException;
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
-import com.mprew.ec2.resources.startup.DependencyConditionException;
-import com.mprew.ec2.resources.startup.DependencyException;
+import com.mprew.ec2.resources.ResourceSupersededException;
 
 class InitializeResourcesAction extends AbstractResourceAction
 {
@@ -36,17 +34,8 @@ class InitializeResourcesAction extends AbstractResourceAction
 	}
 	
 	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		try {
-			return metadata.getElement().dependenciesInState(ResourceState.INITIALIZED);
-		} catch (DependencyException de) {
-			throw new DependencyConditionException(metadata, null, de.getMessage());
-		}
-	}
-	
-	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo dependency) {
+		return isInState(dependency, ResourceState.INITIALIZED);
 	}
 	
 	@Override
@@ -54,7 +43,10 @@ class InitializeResourcesAction extends AbstractResourceAction
 		return new Callable<Boolean>() {
 			@Override
 			public Boolean call() throws Exception {
-				changeResourceState(resource, resource.getState(), ResourceState.INITIALIZED, false);
+				ResourceException exception = changeResourceState(resource, resource.getState(), ResourceState.INITIALIZED, false);
+				if (exception instanceof ResourceSupersededException) {
+					throw exception;
+				}
 				return Boolean.TRUE;
 			}
 		};
@@ -0,0 +1,188 @@
+package com.mprew.ec2.resources.action;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mprew.ec2.resources.AbstractResourceAction;
+import com.mprew.ec2.resources.ResourceException;
+import com.mprew.ec2.resources.ResourceInfo;
+import com.mprew.ec2.resources.ResourceManager;
+import com.mprew.ec2.resources.ResourceState;
+
+/**
+ * Brings resources all the way to RUNNING without waiting for every resource to finish a phase before the next one begins. Each
+ * resource is initialized once its dependencies are initialized, started once its dependencies are started and published right after
+ * it has started, so a slow resource only holds back the resources that depend on it. When run as a phase, the system state still
+ * moves through every phase in order as soon as all of the resources have gone through it, or failed on the way. The system state
+ * only becomes RUNNING once every resource is running.
+ *
+ * @author dgarson
+ */
+class LaunchResourcesAction extends AbstractResourceAction
+{
+	/** The system states that are passed through, in order */
+	private static final ResourceState[] PHASES = new ResourceState[] { ResourceState.INITIALIZING, ResourceState.INITIALIZED,
+		ResourceState.STARTING, ResourceState.STARTED, ResourceState.PUBLISHING, ResourceState.RUNNING };
+	
+	/** The resources that have not been initialized yet, and have not failed */
+	private final Set<ResourceInfo> pendingInitialize = ConcurrentHashMap.newKeySet();
+	/** The resources that have not been started yet, and have not failed */
+	private final Set<ResourceInfo> pendingStart = ConcurrentHashMap.newKeySet();
+	/** The resources that are not running yet, which includes those that failed */
+	private final Set<ResourceInfo> pendingPublish = ConcurrentHashMap.newKeySet();
+	private final Object phaseLock = new Object();
+	
+	public LaunchResourcesAction(ResourceManager manager, Collection<? extends ResourceInfo> resources, boolean isPhase) {
+		super(manager, resources, isPhase);
+	}
+	
+	@Override
+	public String getActionName(boolean isNoun) {
+		return (isNoun ? "launching" : "launch");
+	}
+	
+	@Override
+	protected void beginningAction() {
+		// Only the resources this action applies to are left, which are all initializing, initialized or started
+		for (ResourceInfo resource : resources) {
+			if (resource.getState() == ResourceState.INITIALIZING) {
+				pendingInitialize.add(resource);
+			}
+			if (resource.getState() != ResourceState.STARTED) {
+				pendingStart.add(resource);
+			}
+			pendingPublish.add(resource);
+		}
+		advancePhases();
+	}
+	
+	@Override
+	protected void finishedAction() {
+		// If any resource failed, checkForNewSystemState decides once the failed resources have been dealt with
+		if (pendingPublish.isEmpty()) {
+			advanceSystemState(ResourceState.RUNNING);
+		}
+	}
+	
+	@Override
+	protected void failedResource(ResourceInfo failed) {
+		pendingInitialize.remove(failed);
+		pendingStart.remove(failed);
+		advancePhases();
+	}
+	
+	/**
+	 * Records that a resource has gone through the stages before its current state, for when another thread moved it along.
+	 * @param resource the resource
+	 */
+	private void passedStages(ResourceInfo resource) {
+		if (resource.getState() != ResourceState.INITIALIZING && pendingInitialize.remove(resource)) {
+			advancePhases();
+		}
+		if (isInState(resource, ResourceState.STARTED, ResourceState.PUBLISHING, ResourceState.RUNNING) && pendingStart.remove(resource)) {
+			advancePhases();
+		}
+	}
+	
+	/**
+	 * Moves the system state to the latest phase that all of the remaining resources have gone through.
+	 */
+	private void advancePhases() {
+		if (pendingStart.isEmpty()) {
+			advanceSystemState(ResourceState.PUBLISHING);
+		}
+		else if (pendingInitialize.isEmpty()) {
+			advanceSystemState(ResourceState.STARTING);
+		}
+	}
+	
+	/**
+	 * Moves the system state through every phase up to the target phase, if this action is run as a phase.
+	 * @param target the phase to move to
+	 */
+	private void advanceSystemState(ResourceState target) {
+		if (!isPhase) {
+			return;
+		}
+		synchronized (phaseLock) {
+			boolean passed = false;
+			ResourceState current = resourceManager.getSystemState();
+			for (ResourceState phase : PHASES) {
+				if (passed) {
+					changeSystemState(phase);
+				}
+				else if (phase == current) {
+					passed = true;
+				}
+				if (phase == target) {
+					break;
+				}
+			}
+		}
+	}
+	
+	@Override
+	protected void skippedResource(ResourceInfo skipped) {
+		log.info("Skipped launching " + skipped);
+	}
+	
+	@Override
+	protected boolean isApplicable(ResourceInfo resource) {
+		return (resource.getState() == ResourceState.INITIALIZING || resource.getState() == ResourceState.INITIALIZED ||
+			resource.getState() == ResourceState.STARTED);
+	}
+	
+	@Override
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo dependency) {
+		if (resource.getState() == ResourceState.INITIALIZING) {
+			return isInState(dependency, ResourceState.INITIALIZED, ResourceState.STARTING, ResourceState.STARTED, ResourceState.PUBLISHING,
+				ResourceState.RUNNING);
+		}
+		return isInState(dependency, ResourceState.STARTED, ResourceState.PUBLISHING, ResourceState.RUNNING);
+	}
+	
+	@Override
+	protected boolean hasNextStage(ResourceInfo resource) {
+		return (resource.getState() == ResourceState.INITIALIZED || resource.getState() == ResourceState.STARTED);
+	}
+	
+	@Override
+	protected Callable<Boolean> createJob(final ResourceInfo resource) {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				ResourceException exception;
+				passedStages(resource);
+				switch (resource.getState()) {
+					case INITIALIZING:
+						exception = changeResourceState(resource, resource.getState(), ResourceState.INITIALIZED, false);
+						if (exception != null) {
+							throw exception;
+						}
+						passedStages(resource);
+						break;
+					case INITIALIZED:
+						exception = changeResourceState(resource, resource.getState(), ResourceState.STARTED, true);
+						if (exception != null) {
+							throw exception;
+						}
+						passedStages(resource);
+						break;
+					case STARTED:
+						exception = changeResourceState(resource, resource.getState(), ResourceState.RUNNING, true);
+						if (exception != null) {
+							throw exception;
+						}
+						pendingPublish.remove(resource);
+						break;
+					default:
+						log.warn("Unable to launch " + resource + " from the " + resource.getState() + " state");
+						return Boolean.FALSE;
+				}
+				return Boolean.TRUE;
+			}
+		};
+	}
+}
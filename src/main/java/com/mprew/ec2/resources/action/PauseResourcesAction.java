@@ -4,7 +4,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
 import com.mprew.ec2.resources.ImpossibleActionException;
@@ -12,6 +11,7 @@ import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
 import com.mprew.ec2.resources.startup.DependencyConditionException;
+import com.mprew.ec2.resources.startup.DependencyElement;
 import com.mprew.ec2.resources.startup.DependencyException;
 import com.mprew.ec2.resources.validation.ValidationException;
 
@@ -81,31 +81,23 @@ class PauseResourcesAction extends AbstractResourceAction {
 	}
 	
 	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
+	protected Collection<DependencyElement> getBlockingElements(ResourceInfo resource) {
+		return resource.getElement().getReferences();
 	}
 	
 	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		// Make sure all references are in a non-RUNNING state
-		 if (metadata.getElement().referencesHaveCondition(new ResourceCondition() {
-			@Override
-			public boolean evaluate(ResourceInfo resource) throws DependencyException {
-				if (resource.getResourceMethod(ResourceAction.PAUSING) != null) {
-					return (resource.getState() == ResourceState.PAUSED);
-				}
-				else if (resource.getState() == ResourceState.RUNNING) {
-					throw new DependencyConditionException(resource, this, "Unable to pause resource while reference is RUNNING: " + resource);
-				}
-				else {
-					return (resource.getState() == ResourceState.SHUTDOWN_GRACEFULLY || resource.getState() == ResourceState.SHUTDOWN_FORCEFULLY ||
-							resource.getState() == ResourceState.INITIALIZED);
-				}
-			}
-		})) {
-			 return true;
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo reference) throws DependencyConditionException {
+		// Make sure the reference is in a non-RUNNING state
+		if (reference.getResourceMethod(ResourceAction.PAUSING) != null) {
+			return (reference.getState() == ResourceState.PAUSED);
+		}
+		else if (reference.getState() == ResourceState.RUNNING) {
+			throw new DependencyConditionException(reference, null, "Unable to pause resource while reference is RUNNING: " + reference);
+		}
+		else {
+			return (reference.getState() == ResourceState.SHUTDOWN_GRACEFULLY || reference.getState() == ResourceState.SHUTDOWN_FORCEFULLY ||
+					reference.getState() == ResourceState.INITIALIZED);
 		}
-		return false;
 	}
 	
 	@Override
@@ -1,17 +1,13 @@
 package com.mprew.ec2.resources.action;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
 import com.mprew.ec2.resources.ResourceException;
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
-import com.mprew.ec2.resources.startup.DependencyConditionException;
-import com.mprew.ec2.resources.startup.DependencyException;
 
 class PublishResourcesAction extends AbstractResourceAction {
 	
@@ -68,12 +64,8 @@ class PublishResourcesAction extends AbstractResourceAction {
 	}
 	
 	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		try {
-			return metadata.getElement().dependenciesInState(ResourceState.STARTED, ResourceState.RUNNING);
-		} catch (DependencyException de) {
-			throw new DependencyConditionException(metadata, null, de.getMessage());
-		}
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo dependency) {
+		return isInState(dependency, ResourceState.STARTED, ResourceState.RUNNING);
 	}
 	
 	@Override
@@ -94,9 +86,4 @@ class PublishResourcesAction extends AbstractResourceAction {
 			}
 		};
 	}
-
-	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
-	}
 }
\ No newline at end of file
@@ -48,6 +48,16 @@ public class ResourceActions {
 		return new StartResourcesAction(resourceManager, resources, isPhase);
 	}
 	
+	/**
+	 * Returns an action that brings a collection of resources to RUNNING, moving each resource to its next state as soon as its
+	 * own dependencies allow instead of waiting for all resources to finish each phase.
+	 * @param resources the resource collection
+	 * @return the launch action
+	 */
+	public static AbstractResourceAction launch(Collection<? extends ResourceInfo> resources, boolean isPhase) {
+		return new LaunchResourcesAction(resourceManager, resources, isPhase);
+	}
+	
 	/**
 	 * Returns a pause action for a collection of non-paused resources.
 	 * @param resources the resource collection
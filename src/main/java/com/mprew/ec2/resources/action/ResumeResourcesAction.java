@@ -1,16 +1,12 @@
 package com.mprew.ec2.resources.action;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
-import com.mprew.ec2.resources.startup.DependencyConditionException;
-import com.mprew.ec2.resources.startup.DependencyException;
 
 class ResumeResourcesAction extends AbstractResourceAction {
 	
@@ -50,17 +46,8 @@ class ResumeResourcesAction extends AbstractResourceAction {
 	}
 	
 	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
-	}
-	
-	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		try {
-			return metadata.getElement().dependenciesInState(ResourceState.RUNNING, ResourceState.STARTED);
-		} catch (DependencyException de) {
-			throw new DependencyConditionException(metadata, null, de.getMessage());
-		}
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo dependency) {
+		return isInState(dependency, ResourceState.RUNNING, ResourceState.STARTED);
 	}
 	
 	@Override
@@ -1,18 +1,30 @@
 package com.mprew.ec2.resources.action;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
 import com.mprew.ec2.resources.ResourceException;
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
-import com.mprew.ec2.resources.startup.DependencyConditionException;
-import com.mprew.ec2.resources.startup.DependencyException;
+import com.mprew.ec2.resources.startup.DependencyElement;
 
+/**
+ * Starts resources once their dependencies have started. Resources that are ready at the same time are started in order of the
+ * longest remaining critical path beneath them, using the start durations observed during previous runs, so that the slowest
+ * chain of dependent resources is started first.
+ * 
+ * @author dgarson
+ */
 class StartResourcesAction extends AbstractResourceAction
 {
 	public StartResourcesAction(ResourceManager manager, Collection<? extends ResourceInfo> resources, boolean isPhase) {
@@ -49,17 +61,90 @@ class StartResourcesAction extends AbstractResourceAction
 	}
 	
 	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		try {
-			return metadata.getElement().dependenciesInState(ResourceState.STARTED, ResourceState.RUNNING);
-		} catch (DependencyException de) {
-			throw new DependencyConditionException(metadata, null, de.getMessage());
-		}
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo dependency) {
+		return isInState(dependency, ResourceState.STARTED, ResourceState.RUNNING);
 	}
 	
 	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
+	protected Comparator<ResourceInfo> getSubmissionOrder() {
+		final Map<ResourceInfo, Long> criticalPaths = getCriticalPaths();
+		return new Comparator<ResourceInfo>() {
+			@Override
+			public int compare(ResourceInfo r1, ResourceInfo r2) {
+				long path1 = getCriticalPath(criticalPaths, r1);
+				long path2 = getCriticalPath(criticalPaths, r2);
+				if (path1 != path2) {
+					return (path1 > path2 ? -1 : 1);
+				}
+				return r1.getResourceName().compareTo(r2.getResourceName());
+			}
+		};
+	}
+	
+	private static long getCriticalPath(Map<ResourceInfo, Long> criticalPaths, ResourceInfo resource) {
+		Long path = criticalPaths.get(resource);
+		return (path == null ? 0 : path.longValue());
+	}
+	
+	/**
+	 * Computes the critical path of every resource being started, which is its own expected start duration plus the longest
+	 * critical path of any resource that depends on it. Resources that have never been started count as a single millisecond so
+	 * that the length of the dependency chain still breaks ties. Resources are visited in reverse startup order, so that every
+	 * reference has been computed before the resources it depends on.
+	 * @return the critical path of each resource in milliseconds
+	 */
+	private Map<ResourceInfo, Long> getCriticalPaths() {
+		Set<ResourceInfo> starting = new HashSet<ResourceInfo>(resources);
+		Set<DependencyElement> visited = new HashSet<DependencyElement>();
+		List<DependencyElement> elements = new ArrayList<DependencyElement>();
+		for (ResourceInfo resource : resources) {
+			collectReferences(resource.getElement(), visited, elements);
+		}
+		Collections.sort(elements, new Comparator<DependencyElement>() {
+			@Override
+			public int compare(DependencyElement el1, DependencyElement el2) {
+				return (el1.getRank() > el2.getRank() ? -1 : (el1.getRank() == el2.getRank() ? 0 : 1));
+			}
+		});
+		
+		Map<DependencyElement, Long> paths = new HashMap<DependencyElement, Long>();
+		Map<ResourceInfo, Long> criticalPaths = new HashMap<ResourceInfo, Long>();
+		for (DependencyElement el : elements) {
+			long longest = 0;
+			for (DependencyElement ref : el.getReferences()) {
+				Long refPath = paths.get(ref);
+				if (refPath != null && refPath.longValue() > longest) {
+					longest = refPath.longValue();
+				}
+			}
+			ResourceInfo resource = el.getResource();
+			if (resource != null && starting.contains(resource)) {
+				longest += Math.max(getExpectedStartDuration(resource), 0) + 1;
+				criticalPaths.put(resource, Long.valueOf(longest));
+			}
+			paths.put(el, Long.valueOf(longest));
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Critical paths of resources to start: " + criticalPaths);
+		}
+		return criticalPaths;
+	}
+	
+	private static void collectReferences(DependencyElement root, Set<DependencyElement> visited, List<DependencyElement> elements) {
+		if (root == null || !visited.add(root)) {
+			return;
+		}
+		List<DependencyElement> stack = new ArrayList<DependencyElement>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			DependencyElement el = stack.remove(stack.size() - 1);
+			elements.add(el);
+			for (DependencyElement ref : el.getReferences()) {
+				if (visited.add(ref)) {
+					stack.add(ref);
+				}
+			}
+		}
 	}
 	
 	@Override
@@ -1,16 +1,14 @@
 package com.mprew.ec2.resources.action;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 import com.mprew.ec2.resources.AbstractResourceAction;
 import com.mprew.ec2.resources.ResourceException;
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
 import com.mprew.ec2.resources.ResourceState;
-import com.mprew.ec2.resources.startup.DependencyConditionException;
+import com.mprew.ec2.resources.startup.DependencyElement;
 
 class StopResourcesAction extends AbstractResourceAction {
 	
@@ -53,13 +51,13 @@ class StopResourcesAction extends AbstractResourceAction {
 	}
 	
 	@Override
-	protected boolean waitToSubmit(Map<Future<Boolean>, ResourceInfo> jobMap) throws InterruptedException {
-		return waitForFirstCompletion(jobMap);
+	protected Collection<DependencyElement> getBlockingElements(ResourceInfo resource) {
+		return resource.getElement().getReferences();
 	}
 	
 	@Override
-	protected boolean canSubmit(ResourceInfo metadata) throws DependencyConditionException {
-		return metadata.getElement().referencesStopped();
+	protected boolean isSatisfied(ResourceInfo resource, ResourceInfo reference) {
+		return isInState(reference, ResourceState.SHUTDOWN_FORCEFULLY, ResourceState.SHUTDOWN_GRACEFULLY);
 	}
 	
 	@Override
@@ -0,0 +1,60 @@
+package com.mprew.ec2.resources.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that configures the queue of events of a listener that is not synchronously invoked. Every such listener has a bounded
+ * queue of its own, and when it does not keep up with the events being fired the overflow policy decides what happens to the next one.
+ * Listeners without this annotation get the defaults of this annotation, so they coalesce their queued state changes when their queue
+ * is full, and a slow listener never holds up the threads that change resource states unless it asks to with {@link OverflowPolicy#BLOCK}.
+ * Only state changes are ever dropped by {@link OverflowPolicy#DROP_OLDEST} and {@link OverflowPolicy#COALESCE}: failures, registrations
+ * and unregistrations are always delivered.
+ *
+ * @author dgarson
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface EventQueue {
+	
+	/**
+	 * The default number of events a listener can have queued.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+	
+	/**
+	 * @return the number of events the listener can have queued
+	 */
+	int capacity() default DEFAULT_CAPACITY;
+	
+	/**
+	 * @return what happens to an event that is fired while the queue is full
+	 */
+	OverflowPolicy overflow() default OverflowPolicy.COALESCE;
+	
+	/**
+	 * What happens to an event that is fired while the queue of a listener is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * The firing thread waits until the listener has taken events off the queue. This holds up the resource transition that fired
+		 * the event, so the listener must never wait on another resource transition, or anything the firing thread holds, from its
+		 * callbacks.
+		 */
+		BLOCK,
+		/**
+		 * The oldest queued state change is dropped to make room. If only failures, registrations and unregistrations are queued, a
+		 * fired state change is dropped instead, and the thread firing any other event waits as with {@link #BLOCK}.
+		 */
+		DROP_OLDEST,
+		/** The fired event is dropped */
+		DROP_NEWEST,
+		/**
+		 * The latest queued state change of the same resource is dropped, as the fired state change supersedes it. If there is none, or
+		 * if the fired event is not a state change, room is made as with {@link #DROP_OLDEST} instead.
+		 */
+		COALESCE;
+	}
+}
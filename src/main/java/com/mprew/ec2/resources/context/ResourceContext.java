@@ -1,6 +1,7 @@
 package com.mprew.ec2.resources.context;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.mprew.ec2.resources.ResourceInfo;
 import com.mprew.ec2.resources.ResourceManager;
@@ -99,25 +100,39 @@ public interface ResourceContext {
 	public ResourceState waitForStates(ResourceState ... states) throws InterruptedException;
 	
 	/**
-	 * Returns a future that will wait until a resource with the given
-	 * name exists and will then return. If the resource manager is shutdown before the future
-	 * terminates, then an InterruptedException will be thrown.
+	 * Returns a future that will complete once a resource with the given
+	 * name exists. If the resource manager is shutdown before the future
+	 * completes, then it completes exceptionally with a ResourceNotFoundException.
 	 * @param resourceName the resource name
 	 * @return a future for the specified resource
 	 * 
 	 * @param <T> the type of the resource
 	 */
-	public <T> Future<T> futureForResource(String resourceName);
+	public <T> CompletableFuture<T> futureForResource(String resourceName);
 	
 	/**
-	 * Returns a future that will wait until a resource with the given
-	 * name exists and is in the specified state. If the resource manager is
-	 * shutdown before the future terminates, then an InterruptedException will be thrown.
+	 * Returns a future that will complete once a resource with the given
+	 * name exists and is in the specified state. If the resource fails or the resource manager
+	 * is shutdown before the future completes, then it completes exceptionally with a ResourceNotFoundException.
 	 * @param resourceName the resource name
 	 * @param state the state to wait for
 	 * @return a future for the specified resource
 	 * 
 	 * @param <T> the type of the resource
 	 */
-	public <T> Future<T> futureForResource(String resourceName, ResourceState state);
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state);
+	
+	/**
+	 * Returns a future that will complete once a resource with the given
+	 * name exists and is in the specified state, or complete exceptionally with a TimeoutException
+	 * once the timeout has elapsed.
+	 * @param resourceName the resource name
+	 * @param state the state to wait for
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return a future for the specified resource
+	 * 
+	 * @param <T> the type of the resource
+	 */
+	public <T> CompletableFuture<T> futureForResource(String resourceName, ResourceState state, long timeout, TimeUnit unit);
 }
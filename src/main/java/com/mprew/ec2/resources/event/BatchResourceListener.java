@@ -0,0 +1,28 @@
+package com.mprew.ec2.resources.event;
+
+import java.util.List;
+
+/**
+ * A ResourceListener that receives the events fired while it was busy as a single list, instead of having every event scheduled onto a
+ * dispatch thread on its own. Failures are part of the list as ResourceFailedEvents, so events are always in the order they were
+ * fired. Listeners annotated with {@link com.mprew.ec2.resources.annotation.SynchronousInvocation} are still invoked one event at a
+ * time through <code>onResourceEvent</code> and <code>onResourceFailure</code>.
+ *
+ * @author dgarson
+ */
+public interface BatchResourceListener extends ResourceListener {
+	
+	/**
+	 * Handles the events that were fired since the previous batch.
+	 * @param events the events, in the order they were fired
+	 */
+	public void onResourceEvents(List<ResourceEvent> events);
+	
+	/**
+	 * Checks if state changes of a resource that are followed by another state change of the same resource within a batch should be
+	 * left out, so that the listener only sees the latest state of each resource, e.g. STARTED instead of STARTING and STARTED.
+	 * Registration and failure events are never left out.
+	 * @return true to coalesce state changes
+	 */
+	public boolean isCoalescing();
+}
@@ -0,0 +1,32 @@
+package com.mprew.ec2.resources.event;
+
+import java.util.EventObject;
+
+import com.mprew.ec2.resources.ResourceHealth;
+import com.mprew.ec2.resources.ResourceManager;
+
+public class HealthChangeEvent extends EventObject {
+	
+	private static final long serialVersionUID = -4851209337163305921L;
+	
+	private ResourceHealth oldHealth;
+	private ResourceHealth newHealth;
+	
+	public HealthChangeEvent(ResourceManager manager, ResourceHealth oldHealth, ResourceHealth newHealth) {
+		super(manager);
+		this.oldHealth = oldHealth;
+		this.newHealth = newHealth;
+	}
+	
+	public ResourceHealth getOldHealth() {
+		return oldHealth;
+	}
+	
+	public ResourceHealth getNewHealth() {
+		return newHealth;
+	}
+	
+	public ResourceManager getResourceManager() {
+		return (ResourceManager)getSource();
+	}
+}
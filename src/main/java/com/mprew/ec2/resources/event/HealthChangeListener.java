@@ -0,0 +1,16 @@
+package com.mprew.ec2.resources.event;
+
+/**
+ * A HealthChangeListener is a listener of changes in the level of the system health.
+ * 
+ * @author dgarson
+ */
+public interface HealthChangeListener {
+	
+	/**
+	 * Callback when the system health has changed from one level to another.
+	 * 
+	 * @param event the health change event
+	 */
+	public void healthChanged(HealthChangeEvent event);
+}
@@ -11,7 +11,7 @@ import com.mprew.ec2.resources.ResourceState;
  * @author dgarson
  */
 public class ResourceEvent extends EventObject {
-
+	
 	private static final long serialVersionUID = 4032810666935190464L;
 	
 	private final EventType type;
@@ -127,6 +127,14 @@ public class ResourceEvent extends EventObject {
 			return false;
 		}
 		
+		/**
+		 * Checks if this EventType reports a resource changing state, as opposed to being registered, unregistered or failing.
+		 * @return true for state changes
+		 */
+		public boolean isStateChange() {
+			return (this != UNKNOWN && this != REGISTERED && this != UNREGISTERED && this != FAILED);
+		}
+		
 		/**
 		 * Converts a ResourceState transition into a ResourceEvent type.
 		 * @param prevState the previous resource state
@@ -0,0 +1,41 @@
+package com.mprew.ec2.resources.event;
+
+import com.mprew.ec2.resources.ResourceInfo;
+import com.mprew.ec2.resources.ResourceState;
+
+/**
+ * Handler of the events published on the event ring of the ResourceManager. Unlike a ResourceListener, a handler is passed the fields
+ * of each event rather than an event object, since the ring reuses its slots instead of allocating events. Each handler runs on a
+ * thread of its own and receives every event in the order it was published, along with its sequence number on the ring. A handler
+ * that falls a full ring behind for too long is no longer waited for and skips the events it missed, so it sees a gap in the sequence
+ * numbers instead.
+ *
+ * @author dgarson
+ */
+public interface ResourceEventHandler {
+	
+	/**
+	 * Handles an event of a resource.
+	 * @param resource the resource
+	 * @param type the event type
+	 * @param sequence the sequence number of the event
+	 */
+	public void onResourceEvent(ResourceInfo resource, ResourceEvent.EventType type, long sequence);
+	
+	/**
+	 * Handles a failure of a resource.
+	 * @param resource the resource
+	 * @param attemptedType the event type that was attempted
+	 * @param cause the cause of the failure
+	 * @param sequence the sequence number of the event
+	 */
+	public void onResourceFailure(ResourceInfo resource, ResourceEvent.EventType attemptedType, Throwable cause, long sequence);
+	
+	/**
+	 * Handles a change of the system state.
+	 * @param oldState the previous system state
+	 * @param newState the new system state
+	 * @param sequence the sequence number of the event
+	 */
+	public void onPhaseChange(ResourceState oldState, ResourceState newState, long sequence);
+}
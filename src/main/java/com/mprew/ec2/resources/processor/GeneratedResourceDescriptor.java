@@ -0,0 +1,127 @@
+package com.mprew.ec2.resources.processor;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Base class of the descriptors that the ResourceTypeProcessor generates at compile time for each ResourceType class. A generated
+ * descriptor names the lifecycle methods, injected fields and dependencies of its resource class, so that they can be looked up directly
+ * instead of scanning the class hierarchy when the resource is registered. Members are located by the class that declares them, given as
+ * a depth in the superclass chain of the resource class, so that generated code never has to refer to a superclass it can not access.
+ *
+ * @author dgarson
+ */
+public abstract class GeneratedResourceDescriptor {
+	
+	/** The suffix appended to the binary name of a resource class to get the name of its generated descriptor */
+	public static final String SUFFIX = "_ResourceDescriptor";
+	
+	private final Class<?> resourceClass;
+	
+	protected GeneratedResourceDescriptor(Class<?> resourceClass) {
+		this.resourceClass = resourceClass;
+	}
+	
+	/**
+	 * Gets the resource class that this descriptor was generated for.
+	 * @return the resource class
+	 */
+	public final Class<?> getResourceClass() {
+		return resourceClass;
+	}
+	
+	/**
+	 * Gets the lifecycle method of the resource class with an annotation.
+	 * @param annotation the lifecycle annotation, such as Start or Stop
+	 * @return the method, or <code>null</code> if the class has no method with the annotation
+	 * @throws NoSuchMethodException if the method no longer exists
+	 */
+	public abstract Method getLifecycleMethod(Class<? extends Annotation> annotation) throws NoSuchMethodException;
+	
+	/**
+	 * Gets the <tt>setResourceContext</tt> method of a ResourceContextAware resource class.
+	 * @return the method, or <code>null</code> if the class is not ResourceContextAware
+	 * @throws NoSuchMethodException if the method no longer exists
+	 */
+	public abstract Method getResourceContextMethod() throws NoSuchMethodException;
+	
+	/**
+	 * Gets the fields of the resource class annotated with ContextProperty.
+	 * @return the fields
+	 * @throws NoSuchFieldException if a field no longer exists
+	 */
+	public abstract Field[] getPropertyFields() throws NoSuchFieldException;
+	
+	/**
+	 * Gets the fields of the resource class annotated with ContextResource.
+	 * @return the fields
+	 * @throws NoSuchFieldException if a field no longer exists
+	 */
+	public abstract Field[] getResourceFields() throws NoSuchFieldException;
+	
+	/**
+	 * Gets the names of the dependencies declared by Dependency and Dependencies on the resource class.
+	 * @return the dependency names
+	 */
+	public abstract String[] getDependencyNames();
+	
+	/**
+	 * Gets a method declared by the resource class or one of its superclasses.
+	 * @param depth the number of superclasses between the resource class and the declaring class
+	 * @param name the method name
+	 * @param parameterTypes the parameter types
+	 * @return the method
+	 * @throws NoSuchMethodException if the method does not exist
+	 */
+	protected final Method method(int depth, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+		Class<?> type = getDeclaringClass(depth);
+		if (type == null) {
+			throw new NoSuchMethodException("Resource " + resourceClass + " has fewer than " + depth + " superclasses to declare method [" + name + "]");
+		}
+		return type.getDeclaredMethod(name, parameterTypes);
+	}
+	
+	/**
+	 * Gets a field declared by the resource class or one of its superclasses.
+	 * @param depth the number of superclasses between the resource class and the declaring class
+	 * @param name the field name
+	 * @return the field
+	 * @throws NoSuchFieldException if the field does not exist
+	 */
+	protected final Field field(int depth, String name) throws NoSuchFieldException {
+		Class<?> type = getDeclaringClass(depth);
+		if (type == null) {
+			throw new NoSuchFieldException("Resource " + resourceClass + " has fewer than " + depth + " superclasses to declare field [" + name + "]");
+		}
+		return type.getDeclaredField(name);
+	}
+	
+	private Class<?> getDeclaringClass(int depth) {
+		Class<?> type = resourceClass;
+		for (int i = 0; i < depth && type != null; i++) {
+			type = type.getSuperclass();
+		}
+		return type;
+	}
+	
+	/**
+	 * Finds the generated descriptor of a resource class.
+	 * @param resourceClass the resource class
+	 * @return the descriptor, or <code>null</code> if none was generated for the class
+	 * @throws ReflectiveOperationException if the generated descriptor can not be created
+	 */
+	public static GeneratedResourceDescriptor forClass(Class<?> resourceClass) throws ReflectiveOperationException {
+		Class<?> descriptorClass;
+		try {
+			descriptorClass = Class.forName(resourceClass.getName() + SUFFIX, true, resourceClass.getClassLoader());
+		} catch (ClassNotFoundException cnfe) {
+			return null;
+		}
+		if (!GeneratedResourceDescriptor.class.isAssignableFrom(descriptorClass)) {
+			return null;
+		}
+		GeneratedResourceDescriptor descriptor = (GeneratedResourceDescriptor)descriptorClass.getDeclaredConstructor().newInstance();
+		return (descriptor.getResourceClass() == resourceClass ? descriptor : null);
+	}
+}
@@ -0,0 +1,291 @@
+package com.mprew.ec2.resources.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import com.mprew.ec2.resources.ResourceException;
+import com.mprew.ec2.resources.ResourceInfo;
+import com.mprew.ec2.resources.annotation.ContextProperty;
+import com.mprew.ec2.resources.annotation.ContextResource;
+import com.mprew.ec2.resources.annotation.Dependencies;
+import com.mprew.ec2.resources.annotation.Dependency;
+import com.mprew.ec2.resources.annotation.Initialize;
+import com.mprew.ec2.resources.annotation.Kill;
+import com.mprew.ec2.resources.annotation.Pause;
+import com.mprew.ec2.resources.annotation.Publish;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Resume;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.ResourceContext;
+import com.mprew.ec2.resources.context.ResourceContextAware;
+
+/**
+ * Annotation processor that generates a GeneratedResourceDescriptor for every class annotated with ResourceType. The descriptor records
+ * the lifecycle methods, injected fields and declared dependencies that the ResourceManager would otherwise discover by scanning the class
+ * hierarchy with reflection when the resource is registered, and lifecycle methods with invalid parameters or exceptions are reported as
+ * compile errors instead of failing at startup. Classes that generated code can not refer to, such as private nested classes, are skipped
+ * and are still scanned at runtime.
+ *
+ * @author dgarson
+ */
+@SupportedAnnotationTypes("com.mprew.ec2.resources.annotation.ResourceType")
+public class ResourceTypeProcessor extends AbstractProcessor {
+	
+	/** The lifecycle annotations, in the order that the runtime scan checks them */
+	@SuppressWarnings("unchecked")
+	private static final List<Class<? extends Annotation>> lifecycleAnnotations = Arrays.asList(
+		Initialize.class, Kill.class, Pause.class, Resume.class, Start.class, Stop.class, Publish.class);
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(ResourceType.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+			TypeElement type = (TypeElement)element;
+			if (!isAccessible(type)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Not generating a resource descriptor for inaccessible class " + type, type);
+				continue;
+			}
+			ResourceModel model = new ResourceModel(type);
+			if (model.valid) {
+				try {
+					write(model);
+				} catch (IOException ioe) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write resource descriptor: " + ioe.getMessage(), type);
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if generated code in the package of a class can refer to the class.
+	 * @param type the class
+	 * @return true if neither the class nor any class it is nested in is private or local
+	 */
+	private boolean isAccessible(TypeElement type) {
+		Element element = type;
+		while (element instanceof TypeElement) {
+			TypeElement enclosing = (TypeElement)element;
+			if (enclosing.getModifiers().contains(Modifier.PRIVATE) ||
+				(enclosing.getNestingKind() != NestingKind.TOP_LEVEL && enclosing.getNestingKind() != NestingKind.MEMBER)) {
+				return false;
+			}
+			element = enclosing.getEnclosingElement();
+		}
+		return true;
+	}
+	
+	private boolean isAssignable(TypeMirror type, Class<?> target) {
+		TypeElement targetElement = processingEnv.getElementUtils().getTypeElement(target.getCanonicalName());
+		return (targetElement != null &&
+			processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type), targetElement.asType()));
+	}
+	
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+	
+	/**
+	 * Writes the generated descriptor of a resource class.
+	 * @param model the members of the resource class
+	 * @throws IOException if the source file can not be written
+	 */
+	private void write(ResourceModel model) throws IOException {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(model.type);
+		String binaryName = processingEnv.getElementUtils().getBinaryName(model.type).toString();
+		String simpleName = (pkg.isUnnamed() ? binaryName : binaryName.substring(pkg.getQualifiedName().length() + 1)) + GeneratedResourceDescriptor.SUFFIX;
+		String qualifiedName = (pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName);
+		
+		PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, model.type).openWriter());
+		try {
+			if (!pkg.isUnnamed()) {
+				out.println("package " + pkg.getQualifiedName() + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * Resource descriptor of {@link " + model.type.getQualifiedName() + "}, generated by " + getClass().getSimpleName() + ".");
+			out.println(" */");
+			out.println("public final class " + simpleName + " extends " + GeneratedResourceDescriptor.class.getName() + " {");
+			out.println();
+			out.println("\tpublic " + simpleName + "() {");
+			out.println("\t\tsuper(" + model.type.getQualifiedName() + ".class);");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.lang.reflect.Method getLifecycleMethod(java.lang.Class<? extends java.lang.annotation.Annotation> annotation) throws java.lang.NoSuchMethodException {");
+			for (int i = 0; i < lifecycleAnnotations.size(); i++) {
+				if (model.lifecycleMethods[i] != null) {
+					out.println("\t\tif (annotation == " + lifecycleAnnotations.get(i).getName() + ".class) {");
+					out.println("\t\t\treturn " + method(model.lifecycleMethods[i], model.lifecycleDepths[i]) + ";");
+					out.println("\t\t}");
+				}
+			}
+			out.println("\t\treturn null;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.lang.reflect.Method getResourceContextMethod() throws java.lang.NoSuchMethodException {");
+			out.println("\t\treturn " + (model.contextMethod != null ? method(model.contextMethod, model.contextDepth) : "null") + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.lang.reflect.Field[] getPropertyFields() throws java.lang.NoSuchFieldException {");
+			out.println("\t\treturn new java.lang.reflect.Field[] { " + join(model.propertyFields) + " };");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.lang.reflect.Field[] getResourceFields() throws java.lang.NoSuchFieldException {");
+			out.println("\t\treturn new java.lang.reflect.Field[] { " + join(model.resourceFields) + " };");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.lang.String[] getDependencyNames() {");
+			out.println("\t\treturn new java.lang.String[] { " + join(new ArrayList<String>(model.dependencies)) + " };");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+	
+	private String method(ExecutableElement method, int depth) {
+		StringBuilder sb = new StringBuilder("method(").append(depth).append(", ")
+			.append(processingEnv.getElementUtils().getConstantExpression(method.getSimpleName().toString()));
+		for (VariableElement param : method.getParameters()) {
+			sb.append(", ").append(erasure(param.asType())).append(".class");
+		}
+		return sb.append(")").toString();
+	}
+	
+	private String join(List<String> expressions) {
+		StringBuilder sb = new StringBuilder();
+		for (String expression : expressions) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(expression);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * The members of a resource class that are written to its descriptor, found the same way that the runtime scan finds them: the class
+	 * is searched before its superclasses, and the first method with each lifecycle annotation is used.
+	 */
+	private class ResourceModel {
+		
+		final TypeElement type;
+		final ExecutableElement[] lifecycleMethods = new ExecutableElement[lifecycleAnnotations.size()];
+		final int[] lifecycleDepths = new int[lifecycleAnnotations.size()];
+		ExecutableElement contextMethod;
+		int contextDepth;
+		final List<String> propertyFields = new ArrayList<String>();
+		final List<String> resourceFields = new ArrayList<String>();
+		final Set<String> dependencies = new LinkedHashSet<String>();
+		boolean valid = true;
+		
+		ResourceModel(TypeElement type) {
+			this.type = type;
+			boolean contextAware = isAssignable(type.asType(), ResourceContextAware.class);
+			TypeElement current = type;
+			int depth = 0;
+			while (current != null && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+				for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+					if (contextAware && method.getSimpleName().contentEquals("setResourceContext") && method.getParameters().size() == 1 &&
+						erasure(method.getParameters().get(0).asType()).equals(ResourceContext.class.getName())) {
+						contextMethod = method;
+						contextDepth = depth;
+					}
+					for (int i = 0; i < lifecycleAnnotations.size(); i++) {
+						if (method.getAnnotation(lifecycleAnnotations.get(i)) != null && lifecycleMethods[i] == null) {
+							verifyMethod(method);
+							lifecycleMethods[i] = method;
+							lifecycleDepths[i] = depth;
+							break;
+						}
+					}
+				}
+				for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+					String expression = "field(" + depth + ", " + processingEnv.getElementUtils().getConstantExpression(field.getSimpleName().toString()) + ")";
+					if (field.getAnnotation(ContextResource.class) != null) {
+						resourceFields.add(expression);
+					}
+					if (field.getAnnotation(ContextProperty.class) != null) {
+						propertyFields.add(expression);
+					}
+				}
+				TypeMirror superclass = current.getSuperclass();
+				current = (superclass.getKind() == TypeKind.DECLARED ? (TypeElement)processingEnv.getTypeUtils().asElement(superclass) : null);
+				depth++;
+			}
+			
+			Dependencies deps = type.getAnnotation(Dependencies.class);
+			if (deps != null) {
+				for (String dep : deps.value()) {
+					dependencies.add(processingEnv.getElementUtils().getConstantExpression(dep));
+				}
+			}
+			Dependency dep = type.getAnnotation(Dependency.class);
+			if (dep != null) {
+				dependencies.add(processingEnv.getElementUtils().getConstantExpression(dep.value()));
+			}
+		}
+		
+		/**
+		 * Verifies that a lifecycle method only takes ResourceInfo and ResourceContext parameters, and only throws ResourceException and
+		 * RuntimeException, reporting an error otherwise.
+		 * @param method the lifecycle method
+		 */
+		private void verifyMethod(ExecutableElement method) {
+			if (method.getParameters().size() > 2) {
+				error(method, "Invalid number of arguments for a resource action method: " + method.getParameters().size() + "; expected zero, one, or two");
+			}
+			for (VariableElement param : method.getParameters()) {
+				if (!isAssignable(param.asType(), ResourceInfo.class) && !isAssignable(param.asType(), ResourceContext.class)) {
+					error(param, "Invalid parameter type: " + param.asType() + " for resource method [" + method.getSimpleName() + "]");
+				}
+			}
+			for (TypeMirror thrown : method.getThrownTypes()) {
+				if (!isAssignable(thrown, ResourceException.class) && !isAssignable(thrown, RuntimeException.class)) {
+					error(method, "Invalid Exception declared for Resource Method [" + method.getSimpleName() + "]; only allows Runtime and ResourceException types");
+				}
+			}
+		}
+		
+		private void error(Element element, String message) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+			valid = false;
+		}
+	}
+}
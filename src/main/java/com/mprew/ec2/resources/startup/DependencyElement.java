@@ -18,49 +18,26 @@ public class DependencyElement {
 	
 	/** The name of this dependency element (resource name) */
 	private final String name;
-	/** The previous dependency element in the linked list */
-	DependencyElement prev;
-	/** The next dependency element in the linked list */
-	DependencyElement next;
+	/** The index of this element in the dependency graph, assigned in declaration order */
+	private final int index;
 	/** The set of dependencies that this element depends on. */
 	final Set<DependencyElement> dependencies;
 	/** The set of dependencies that refer to this element. */
 	final Set<DependencyElement> references;
 	/** The ResourceMetadata for this element */
 	ResourceInfo resource;
+	/** The position of this element in the computed startup order */
+	private volatile int rank = -1;
+	/** The length of the longest chain of dependencies beneath this element */
+	private volatile int level = -1;
 	
-	public DependencyElement(String name, DependencyElement prev) {
+	public DependencyElement(String name, int index) {
 		this.name = name;
-		this.prev = prev;
-		this.next = null;
+		this.index = index;
 		this.dependencies = new HashSet<DependencyElement>();
 		this.references = new HashSet<DependencyElement>();
 	}
 	
-	/**
-	 * Gets the previous element in the linked list.
-	 * @return the previous element
-	 */
-	public DependencyElement previous() {
-		return prev;
-	}
-	
-	/**
-	 * Gets the next element in the linked list.
-	 * @return the next element
-	 */
-	public DependencyElement next() {
-		return next;
-	}
-	
-	/**
-	 * Sets the next element after this element.
-	 * @param next the next element
-	 */
-	public void setNext(DependencyElement next) {
-		this.next = next;
-	}
-	
 	/**
 	 * Gets the resource name.
 	 * @return the resource name
@@ -117,176 +94,48 @@ public class DependencyElement {
 	}
 	
 	/**
-	 * Shifts this element up in the dependency stack, making appropriate adjustments to adjacent
-	 * elements.
+	 * Removes a dependency from this element, as well as the reference to this element from the provided
+	 * dependency.
+	 * @param dep the dependency to remove
 	 */
-	public void shiftUp() {
-		if (next == null) {
-			throw new IllegalStateException("Cannot shift " + this + " up because it is already at the top");
-		}
-		DependencyElement n = next;
-		DependencyElement nn = next.next;
-		if (nn != null) {
-			nn.prev = this;
-			next = nn;
-		}
-		else {
-			next = null;
-		}
-		n.next = this;
-		n.prev = prev;
-		prev = n;
+	public void removeDependency(DependencyElement dep) {
+		dependencies.remove(dep);
+		dep.references.remove(this);
 	}
 	
 	/**
-	 * Shifts this element down in the dependency stack, making appropriate adjustments to adjacent
-	 * elements.
+	 * Gets the index of this element in the dependency graph.
+	 * @return the element index
 	 */
-	public void shiftDown() {
-		if (prev == null) {
-			throw new IllegalStateException("Cannot shift " + this + " down because it is already at the bottom");
-		}
-		DependencyElement p = prev;
-		DependencyElement pp = prev.prev;
-		if (pp != null) {
-			pp.next = this;
-			prev = pp;
-		}
-		else {
-			prev = null;
-		}
-		p.prev = this;
-		p.next = next;
-		next = p;
+	public int getIndex() {
+		return index;
 	}
 	
 	/**
-	 * Gets the startup rank for this element by computing its index in the linked list.
-	 * @return the startup rank
+	 * Gets the startup rank for this element, which is its position in the computed startup order.
+	 * @return the startup rank, or -1 if the startup order has not been computed
 	 */
 	public int getRank() {
-		DependencyElement p = prev;
-		int rank = 0;
-		while (p != null) {
-			rank++;
-			p = p.prev;
-		}
 		return rank;
 	}
 	
 	/**
-	 * Checks that all dependencies of this element are satisfied (lie up the dependency stack). 
-	 * @return true if satisfied, false otherwise
-	 */
-	public boolean isSatisfied() {
-		return satisfied().isSatisfied();
-	}
-	
-	/**
-	 * Checks that all dependencies of this element are satisfied (lie up the dependency stack).
-	 * @return the dependency satisfaction result
-	 */
-	public DependencySatisfaction satisfied() {
-		return satisfied(new HashSet<String>(), new HashSet<String>());
-	}
-	
-	/**
-	 * Checks if this dependency element is already satisfied. This is done by traversing the declared
-	 * dependencies and checking that they are also satisfied. If any element declares a dependency on
-	 * a previously declared element, then a cyclic dependency exists and 
-	 * @param declaredElements
-	 * @return the dependency satisfaction result
-	 */
-	private DependencySatisfaction satisfied(Set<String> declaringElements, Set<String> declaredElements) {
-		if (declaringElements.contains(name)) {
-			return new DependencySatisfaction(this, new DependencyException("Cyclic dependency on " + name));
-		}
-		declaredElements.add(name);
-		try {
-			declaringElements.add(name);
-			for (DependencyElement depEl : dependencies) {
-				if (depEl.after(this)) {
-					return new DependencySatisfaction(depEl, null);
-				}
-				if (declaredElements.contains(depEl.getName())) {
-					continue;
-				}
-				else if (declaringElements.contains(depEl.getName())) {
-					return new DependencySatisfaction(depEl, null);
-				}
-				
-				DependencySatisfaction ds = depEl.satisfied(declaringElements, declaredElements);
-				if (!ds.isSatisfied()) {
-					return ds;
-				}
-			}
-		} finally {
-			declaringElements.remove(name);
-		}
-		return new DependencySatisfaction();
-	}
-	
-	/**
-	 * Checks if all references to this element are still satisfied for this dependency.
-	 * @return true if references still start after this element, false otherwise
-	 */
-	public boolean satisfyingReferences() {
-		for (DependencyElement refEl : references) {
-			if (!refEl.after(this)) {
-				return false;
-			}
-		}
-		return true;
-	}
-	
-	/**
-	 * Checks if this DependencyElement comes before another one.
-	 * @param after the one that should come after
-	 * @return true if this element is already before the provided element
-	 */
-	public boolean before(DependencyElement after) {
-		DependencyElement n = next;
-		while (n != null) {
-			if (n == after) {
-				return true;
-			}
-			n = n.next;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if this DependencyElement comes after another one.
-	 * @param before the one that should come before
-	 * @return true if this element is already after the provided element
-	 */
-	public boolean after(DependencyElement before) {
-		DependencyElement p = prev;
-		while (p != null) {
-			if (p == before) {
-				return true;
-			}
-			p = p.prev;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if this element is the last in the linked list by checking if its next
-	 * pointer is <code>null</code>.
-	 * @return true if last, false otherwise
+	 * Gets the startup level for this element. Elements without dependencies are at level zero and every other element
+	 * is one level above its highest dependency, so all elements with the same level can be acted upon concurrently.
+	 * @return the startup level, or -1 if the startup order has not been computed
 	 */
-	public boolean isLast() {
-		return (next == null);
+	public int getLevel() {
+		return level;
 	}
 	
 	/**
-	 * Checks if this element is the first in the linked list by checking if its previous
-	 * pointer is <code>null</code>.
-	 * @return true if first, false otherwise
+	 * Sets the computed position of this element in the startup order.
+	 * @param rank the startup rank
+	 * @param level the startup level
 	 */
-	public boolean isFirst() {
-		return (prev == null);
+	public void setOrder(int rank, int level) {
+		this.rank = rank;
+		this.level = level;
 	}
 	
 	/**
@@ -0,0 +1,305 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.Dependency;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+import com.mprew.ec2.resources.startup.DependencyConditionException;
+import com.mprew.ec2.resources.startup.DependencyElement;
+
+public class AbstractResourceActionTests {
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	private ExecutorService actionThread;
+	private BlockerResource blocker;
+	
+	@Before
+	public void createResourceManager() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		blocker = new BlockerResource();
+		resmgr.registerResource("blocker", "blocker", blocker, false, true);
+		resmgr.registerResource("waiting", "waiting", new WaitingResource(), false, true);
+		resmgr.registerResource("transitive", "transitive", new TransitiveResource(), false, true);
+		actionThread = Executors.newSingleThreadExecutor();
+	}
+	
+	@After
+	public void destroyResourceManager() throws Exception {
+		actionThread.shutdownNow();
+		// The states were changed by hand, so there is nothing left to stop
+		for (String name : new String[] { "blocker", "waiting", "transitive" }) {
+			try {
+				setState(name, ResourceState.SHUTDOWN_GRACEFULLY);
+			} catch (ResourceNotFoundException rnfe) {
+				// Unregistered after failing
+			}
+		}
+		resmgr.destroy();
+		appContext.close();
+	}
+	
+	@Test
+	public void testSubmittedWhenLastBlockerIsReady() throws Exception {
+		TestAction action = new TestAction(resmgr, "waiting");
+		Future<Void> result = actionThread.submit(action);
+		awaitPending(action, "waiting");
+		
+		setState("blocker", ResourceState.STARTED);
+		// Submitted by the transitioning thread itself, without waiting for any re-check
+		Assert.assertTrue(action.getPendingBlockers(resmgr.getResource("waiting")).isEmpty());
+		Assert.assertFalse(action.moreToSubmit());
+		result.get(5, TimeUnit.SECONDS);
+		Assert.assertEquals("[waiting]", action.jobs.toString());
+		Assert.assertTrue(action.failed.isEmpty());
+	}
+	
+	@Test
+	public void testAbandonedWhenBlockerShutsDown() throws Exception {
+		TestAction action = new TestAction(resmgr, "waiting", "transitive");
+		Future<Void> result = actionThread.submit(action);
+		awaitPending(action, "waiting");
+		
+		setState("blocker", ResourceState.SHUTDOWN_FORCEFULLY);
+		result.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(action.jobs.isEmpty());
+		Assert.assertEquals(2, action.failed.size());
+		Assert.assertTrue(action.failed.contains("waiting"));
+		Assert.assertTrue(action.failed.contains("transitive"));
+	}
+	
+	@Test
+	public void testScheduledAfterBlockerAbandoned() throws Exception {
+		TestAction action = new TestAction(resmgr, "waiting", "transitive");
+		action.holdTransitive = new CountDownLatch(1);
+		Future<Void> result = actionThread.submit(action);
+		awaitPending(action, "waiting");
+		
+		// The waiting resource is abandoned before the resource that waits on it is scheduled
+		setState("blocker", ResourceState.SHUTDOWN_FORCEFULLY);
+		action.holdTransitive.countDown();
+		result.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(action.jobs.isEmpty());
+		Assert.assertEquals("[waiting, transitive]", action.failed.toString());
+	}
+	
+	@Test
+	public void testAbandonedWhenBlockerFails() throws Exception {
+		Assert.assertNull(resmgr.changeResourceState(resmgr.getResource("blocker"), ResourceState.INITIALIZING, ResourceState.INITIALIZED, false));
+		TestAction action = new TestAction(resmgr, "waiting");
+		Future<Void> result = actionThread.submit(action);
+		awaitPending(action, "waiting");
+		
+		blocker.failToStart = true;
+		Assert.assertNotNull(resmgr.changeResourceState(resmgr.getResource("blocker"), ResourceState.INITIALIZED, ResourceState.STARTED, false));
+		result.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(action.jobs.isEmpty());
+		Assert.assertEquals("[waiting]", action.failed.toString());
+	}
+	
+	@Test
+	public void testFailedConditionsRecheckedOnTimer() throws Exception {
+		// The condition clears without the blocker transitioning, so only the re-check timer can notice it
+		TestAction action = new TestAction(resmgr, "waiting");
+		action.conditionFailures = 3;
+		long start = System.currentTimeMillis();
+		actionThread.submit(action).get(5, TimeUnit.SECONDS);
+		long elapsed = System.currentTimeMillis() - start;
+		
+		Assert.assertEquals("[waiting]", action.jobs.toString());
+		Assert.assertEquals(4, action.conditionChecks.get());
+		// Three re-checks 250ms apart, well before the idle re-check
+		Assert.assertTrue("Finished after " + elapsed + "ms", elapsed >= 700);
+		Assert.assertTrue(action.failed.isEmpty());
+	}
+	
+	@Test
+	public void testFailedConditionsAbortAction() throws Exception {
+		TestAction action = new TestAction(resmgr, "waiting");
+		action.conditionFailures = Integer.MAX_VALUE;
+		try {
+			actionThread.submit(action).get(5, TimeUnit.SECONDS);
+			Assert.fail("The action did not give up on a condition that keeps failing");
+		} catch (ExecutionException ee) {
+			Assert.assertTrue(ee.getCause() instanceof ResourceException);
+			Assert.assertTrue(ee.getCause().getCause() instanceof DependencyConditionException);
+		}
+		Assert.assertTrue(action.jobs.isEmpty());
+	}
+	
+	@Test
+	public void testSupersededJobScheduledAgain() throws Exception {
+		setState("blocker", ResourceState.STARTED);
+		TestAction action = new TestAction(resmgr, "waiting");
+		action.supersede = 1;
+		actionThread.submit(action).get(5, TimeUnit.SECONDS);
+		
+		Assert.assertEquals("[waiting, waiting]", action.jobs.toString());
+		Assert.assertTrue(action.failed.isEmpty());
+	}
+	
+	@Test
+	public void testSupersededJobFailsOnceNotApplicable() throws Exception {
+		setState("blocker", ResourceState.STARTED);
+		TestAction action = new TestAction(resmgr, "waiting");
+		action.supersede = 1;
+		action.applicableAfterSuperseded = false;
+		actionThread.submit(action).get(5, TimeUnit.SECONDS);
+		
+		Assert.assertEquals("[waiting]", action.jobs.toString());
+		Assert.assertEquals("[waiting]", action.failed.toString());
+	}
+	
+	private void setState(String resourceName, ResourceState newState) throws ResourceNotFoundException {
+		ResourceMetadata resource = (ResourceMetadata)resmgr.getResource(resourceName);
+		resmgr.setResourceState(resource, resource.getState(), newState, false);
+	}
+	
+	private void awaitPending(TestAction action, String resourceName) throws ResourceNotFoundException, InterruptedException {
+		ResourceInfo resource = resmgr.getResource(resourceName);
+		if (!action.scheduled.await(5, TimeUnit.SECONDS)) {
+			Assert.fail("The action did not schedule its resources");
+		}
+		Assert.assertEquals(Collections.singleton(resmgr.getResource("blocker")), action.getPendingBlockers(resource));
+	}
+	
+	/**
+	 * Action that submits a job for the named resources once each of their blockers has started.
+	 */
+	private static class TestAction extends AbstractResourceAction {
+		final List<String> jobs = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger conditionChecks = new AtomicInteger();
+		final CountDownLatch scheduled = new CountDownLatch(1);
+		private final List<String> names;
+		volatile int conditionFailures = 0;
+		volatile int supersede = 0;
+		volatile boolean applicableAfterSuperseded = true;
+		private volatile boolean superseded = false;
+		/** Holds back the scheduling of the transitive resource until it is released, if set */
+		volatile CountDownLatch holdTransitive;
+		
+		TestAction(ResourceManager manager, String ... names) throws ResourceNotFoundException {
+			super(manager, Arrays.asList(manager.getResource("blocker"), manager.getResource("waiting"), manager.getResource("transitive")), false);
+			this.names = Arrays.asList(names);
+		}
+		
+		@Override
+		public String getActionName(boolean isNoun) {
+			return "test";
+		}
+		
+		@Override
+		protected boolean isApplicable(ResourceInfo resource) {
+			return names.contains(resource.getResourceName()) && (!superseded || applicableAfterSuperseded);
+		}
+		
+		@Override
+		protected Collection<DependencyElement> getBlockingElements(ResourceInfo resource) {
+			if (holdTransitive != null && resource.getResourceName().equals("transitive")) {
+				try {
+					holdTransitive.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.getBlockingElements(resource);
+		}
+		
+		@Override
+		protected boolean isSatisfied(ResourceInfo resource, ResourceInfo blocker) throws DependencyConditionException {
+			scheduled.countDown();
+			if (conditionChecks.incrementAndGet() <= conditionFailures) {
+				throw new DependencyConditionException(blocker, null, blocker + " is not ready");
+			}
+			return (conditionFailures > 0 || isInState(blocker, ResourceState.STARTED));
+		}
+		
+		@Override
+		protected void failedResource(ResourceInfo resource) {
+			failed.add(resource.getResourceName());
+		}
+		
+		@Override
+		protected Callable<Boolean> createJob(final ResourceInfo resource) {
+			return new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws ResourceException {
+					jobs.add(resource.getResourceName());
+					if (supersede > 0) {
+						supersede--;
+						superseded = true;
+						throw new ResourceSupersededException(resource, ResourceState.STARTED, resource + " changed state");
+					}
+					return Boolean.TRUE;
+				}
+			};
+		}
+	}
+	
+	@ResourceType(name = "blocker")
+	public static class BlockerResource {
+		volatile boolean failToStart = false;
+		
+		@Start
+		public void start() {
+			if (failToStart) {
+				throw new IllegalStateException("Unable to start");
+			}
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "waiting")
+	@Dependency("blocker")
+	public static class WaitingResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "transitive")
+	@Dependency("waiting")
+	public static class TransitiveResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+}
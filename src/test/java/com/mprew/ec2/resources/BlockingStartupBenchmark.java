@@ -0,0 +1,88 @@
+package com.mprew.ec2.resources;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+
+/**
+ * Compares the time it takes to start 1,000 independent resources whose start methods block, using the fixed job pool and using
+ * virtual threads. Virtual threads are only used when running on Java 21 or later.
+ *
+ * @author dgarson
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockingStartupBenchmark {
+	
+	private static final int RESOURCE_COUNT = 1000;
+	private static final long BLOCK_MILLIS = 20;
+	
+	@Param({ "false", "true" })
+	public boolean virtualThreads;
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resourceManager;
+	
+	@Setup(Level.Invocation)
+	public void createResources() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resourceManager = new ResourceManager();
+		resourceManager.setApplicationContext(appContext);
+		resourceManager.setVirtualThreads(virtualThreads);
+		resourceManager.setStartupTimingsFile(null);
+		resourceManager.afterPropertiesSet();
+		for (int i = 0; i < RESOURCE_COUNT; i++) {
+			resourceManager.registerResource("blocking" + i, "blocking" + i, new BlockingResource(), "start", "stop", false, true);
+		}
+		resourceManager.initialize();
+	}
+	
+	@Benchmark
+	public void startBlockingResources() throws Exception {
+		resourceManager.start();
+	}
+	
+	@TearDown(Level.Invocation)
+	public void destroyResources() throws Exception {
+		resourceManager.destroy();
+		appContext.close();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(BlockingStartupBenchmark.class.getSimpleName()).build()).run();
+	}
+	
+	/**
+	 * Resource that blocks while starting, as if waiting on a socket.
+	 */
+	public static class BlockingResource {
+		public void start() throws InterruptedException {
+			Thread.sleep(BLOCK_MILLIS);
+		}
+		
+		public void stop() {
+			// No-op
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.startup.DependencyElement;
+import com.mprew.ec2.resources.startup.DependencyException;
+
+public class DependencyCalculatorTests {
+	
+	@Test
+	public void testStartupOrder() throws Exception {
+		DependencyCalculator calculator = new DependencyCalculator();
+		calculator.addDependency("resC", Arrays.asList("resB"));
+		calculator.addDependency("resB", Arrays.asList("resA"));
+		calculator.addDependency("resA", Collections.<String>emptyList());
+		calculator.addDependency("resD", Arrays.asList("resA", "resC"));
+		calculator.addDependency("resE", Collections.<String>emptyList());
+		
+		Map<String, DependencyElement> elements = new HashMap<String, DependencyElement>();
+		List<String> order = new ArrayList<String>();
+		for (DependencyElement el : calculator) {
+			elements.put(el.getName(), el);
+			order.add(el.getName());
+		}
+		Assert.assertEquals(5, order.size());
+		for (DependencyElement el : elements.values()) {
+			for (DependencyElement dep : el.getDependencies()) {
+				Assert.assertTrue(dep + " must start before " + el, dep.getRank() < el.getRank());
+			}
+		}
+		Assert.assertEquals(0, elements.get("resA").getLevel());
+		Assert.assertEquals(0, elements.get("resE").getLevel());
+		Assert.assertEquals(1, elements.get("resB").getLevel());
+		Assert.assertEquals(2, elements.get("resC").getLevel());
+		Assert.assertEquals(3, elements.get("resD").getLevel());
+	}
+	
+	@Test(expected = DependencyException.class)
+	public void testCyclicDependency() throws Exception {
+		DependencyCalculator calculator = new DependencyCalculator();
+		calculator.addDependency("resA", Arrays.asList("resC"));
+		calculator.addDependency("resB", Arrays.asList("resA"));
+		calculator.addDependency("resC", Arrays.asList("resB"));
+	}
+	
+	@Test
+	public void testLargeGraph() throws Exception {
+		DependencyCalculator calculator = new DependencyCalculator();
+		for (int i = 0; i < 3000; i++) {
+			List<String> deps = new ArrayList<String>();
+			if (i > 0) {
+				deps.add("res" + (i - 1));
+			}
+			if (i > 10) {
+				deps.add("res" + (i / 2));
+			}
+			calculator.addDependency("res" + i, deps);
+		}
+		calculator.computeStartup();
+		int rank = 0;
+		for (DependencyElement el : calculator) {
+			Assert.assertEquals("res" + rank, el.getName());
+			Assert.assertEquals(rank, el.getLevel());
+			rank++;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.Field;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FieldInjectorTests {
+	
+	@Test
+	public void testGetAndSet() throws Exception {
+		Target target = new Target();
+		FieldInjector injector = compile("name");
+		Assert.assertEquals("name", injector.getName());
+		Assert.assertEquals(String.class, injector.getType());
+		Assert.assertNull(injector.get(target));
+		
+		injector.set(target, "injected");
+		Assert.assertEquals("injected", target.name);
+		Assert.assertEquals("injected", injector.get(target));
+		
+		FieldInjector count = compile("count");
+		count.set(target, Integer.valueOf(5));
+		Assert.assertEquals(5, target.count);
+		Assert.assertEquals(Integer.valueOf(5), count.get(target));
+	}
+	
+	@Test
+	public void testFinalFieldSetReflectively() throws Exception {
+		Target target = new Target();
+		FieldInjector injector = compile("fixed");
+		Assert.assertNull(injector.get(target));
+		
+		// A VarHandle for a final field is read-only, so this only succeeds through reflection
+		injector.set(target, "injected");
+		Assert.assertEquals("injected", injector.get(target));
+		
+		try {
+			injector.set(target, Integer.valueOf(5));
+			Assert.fail("A final field was set to a value of the wrong type");
+		} catch (IllegalArgumentException iae) {
+			// Expected
+		}
+		try {
+			compile("fixedCount").set(target, null);
+			Assert.fail("A final primitive field was set to null");
+		} catch (IllegalArgumentException iae) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void testWrongTypeIsIllegalArgument() throws Exception {
+		Target target = new Target();
+		try {
+			compile("name").set(target, Integer.valueOf(5));
+			Assert.fail("A field was set to a value of the wrong type");
+		} catch (IllegalArgumentException iae) {
+			Assert.assertTrue(iae.getCause() instanceof ClassCastException);
+		}
+		Assert.assertNull(target.name);
+		
+		try {
+			compile("count").set(target, "five");
+			Assert.fail("A primitive field was set to a value of the wrong type");
+		} catch (IllegalArgumentException iae) {
+			Assert.assertTrue(iae.getCause() instanceof ClassCastException);
+		}
+		Assert.assertEquals(0, target.count);
+	}
+	
+	@Test
+	public void testNullPrimitiveIsIllegalArgument() throws Exception {
+		Target target = new Target();
+		target.count = 3;
+		try {
+			compile("count").set(target, null);
+			Assert.fail("A primitive field was set to null");
+		} catch (IllegalArgumentException iae) {
+			Assert.assertTrue(iae.getCause() instanceof NullPointerException);
+		}
+		Assert.assertEquals(3, target.count);
+	}
+	
+	private static FieldInjector compile(String name) throws NoSuchFieldException {
+		Field field = Target.class.getDeclaredField(name);
+		field.setAccessible(true);
+		FieldInjector injector = FieldInjector.compile(field);
+		Assert.assertSame(field, injector.getField());
+		return injector;
+	}
+	
+	private static class Target {
+		private String name;
+		private int count;
+		private final String fixed;
+		private final int fixedCount;
+		
+		Target() {
+			fixed = null;
+			fixedCount = 0;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.mprew.ec2.resources;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares resolving deferred resource injections during bulk registration by checking every pending type against each registered
+ * bean, as registerResource used to, with looking up the types of the bean in PendingInjections. Each invocation defers an injection
+ * for every one of thousands of distinct types, then registers a bean of each type in a random order until all of them are resolved.
+ * The types are classes of the JDK, since a benchmark can not declare thousands of resource classes of its own.
+ *
+ * @author dgarson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PendingInjectionsBenchmark {
+	
+	@Param({ "1000", "5000" })
+	public int pendingTypes;
+	
+	/** The types that injections wait for */
+	private Class<?>[] types;
+	/** The order that beans of each type are registered in */
+	private Class<?>[] registrations;
+	private ResourceMetadata referer;
+	private Field field;
+	
+	private Map<Class<?>, PendingInjections.Injections> scanned;
+	private PendingInjections indexed;
+	
+	@Setup(Level.Trial)
+	public void loadTypes() throws Exception {
+		List<Class<?>> loaded = new ArrayList<Class<?>>(pendingTypes);
+		FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		Path base = jrt.getPath("/modules/java.base");
+		Stream<Path> paths = Files.walk(base);
+		try {
+			for (Iterator<Path> iter = paths.iterator(); iter.hasNext() && loaded.size() < pendingTypes;) {
+				String path = base.relativize(iter.next()).toString();
+				if (!path.endsWith(".class") || path.endsWith("module-info.class") || path.endsWith("package-info.class")) {
+					continue;
+				}
+				try {
+					loaded.add(Class.forName(path.substring(0, path.length() - ".class".length()).replace('/', '.'), false, null));
+				} catch (ClassNotFoundException cnfe) {
+					// skip classes that the boot loader does not define
+				} catch (LinkageError le) {
+					// skip classes that can not be loaded
+				}
+			}
+		} finally {
+			paths.close();
+		}
+		if (loaded.size() < pendingTypes) {
+			throw new IOException("Only found " + loaded.size() + " JDK classes");
+		}
+		types = loaded.toArray(new Class<?>[loaded.size()]);
+		Collections.shuffle(loaded, new Random(42));
+		registrations = loaded.toArray(new Class<?>[loaded.size()]);
+		referer = new ResourceMetadata("referer", "referer", new Referer());
+		field = Referer.class.getDeclaredField("reference");
+	}
+	
+	@Setup(Level.Invocation)
+	public void deferInjections() {
+		scanned = new HashMap<Class<?>, PendingInjections.Injections>();
+		indexed = new PendingInjections();
+		for (Class<?> type : types) {
+			PendingInjections.Injections injs = new PendingInjections.Injections(type);
+			injs.addInjection(referer, field);
+			scanned.put(type, injs);
+			indexed.add(type, referer, field);
+		}
+	}
+	
+	@Benchmark
+	public int scanPendingTypes() {
+		int resolved = 0;
+		for (Class<?> beanClass : registrations) {
+			for (Iterator<Map.Entry<Class<?>, PendingInjections.Injections>> iter = scanned.entrySet().iterator(); iter.hasNext();) {
+				if (iter.next().getKey().isAssignableFrom(beanClass)) {
+					iter.remove();
+					resolved++;
+				}
+			}
+		}
+		return resolved;
+	}
+	
+	@Benchmark
+	public int resolveAssignableTypes() {
+		int resolved = 0;
+		for (Class<?> beanClass : registrations) {
+			resolved += indexed.resolve(beanClass).size();
+		}
+		return resolved;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(PendingInjectionsBenchmark.class.getSimpleName()).build()).run();
+	}
+	
+	private static class Referer {
+		@SuppressWarnings("unused")
+		private Object reference;
+	}
+}
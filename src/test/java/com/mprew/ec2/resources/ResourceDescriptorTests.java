@@ -0,0 +1,350 @@
+package com.mprew.ec2.resources;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.ContextProperty;
+import com.mprew.ec2.resources.annotation.ContextResource;
+import com.mprew.ec2.resources.annotation.Dependencies;
+import com.mprew.ec2.resources.annotation.Dependency;
+import com.mprew.ec2.resources.annotation.Initialize;
+import com.mprew.ec2.resources.annotation.Kill;
+import com.mprew.ec2.resources.annotation.Pause;
+import com.mprew.ec2.resources.annotation.Publish;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Resume;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.processor.GeneratedResourceDescriptor;
+
+public class ResourceDescriptorTests {
+	
+	/** Resource classes that the ResourceTypeProcessor generates descriptors for when the tests are compiled */
+	private static final Class<?>[] GENERATED = { ManagedA.class, ManagedB.class, ManagedC.class, ManagedPausable.class, ManagedResPvt.class,
+		ManagedResShit.class, EverythingThrows.class, DerivedResource.class };
+	
+	@Test
+	public void testDescriptorsGenerated() throws Exception {
+		for (Class<?> type : GENERATED) {
+			GeneratedResourceDescriptor generated = GeneratedResourceDescriptor.forClass(type);
+			Assert.assertNotNull("No descriptor was generated for " + type, generated);
+			Assert.assertSame(type, generated.getResourceClass());
+		}
+		// Generated code can not refer to a private class
+		Assert.assertNull(GeneratedResourceDescriptor.forClass(PrivateResource.class));
+	}
+	
+	@Test
+	public void testGeneratedAgreesWithScanning() throws Exception {
+		for (Class<?> type : GENERATED) {
+			GeneratedResourceDescriptor generated = GeneratedResourceDescriptor.forClass(type);
+			ResourceDescriptor descriptor = ResourceDescriptor.forClass(type);
+			assertMethod(type, Initialize.class, generated, descriptor.initMethod);
+			assertMethod(type, Start.class, generated, descriptor.startMethod);
+			assertMethod(type, Kill.class, generated, descriptor.killMethod);
+			Method stop = scanMethod(type, Stop.class);
+			Assert.assertEquals(type.toString(), stop, generated.getLifecycleMethod(Stop.class));
+			// A @Kill method stands in for a missing @Stop method
+			Assert.assertEquals(type.toString(), (stop != null ? stop : scanMethod(type, Kill.class)), descriptor.stopMethod);
+			assertMethod(type, Publish.class, generated, descriptor.publishMethod);
+			assertMethod(type, Pause.class, generated, descriptor.pauseMethod);
+			assertMethod(type, Resume.class, generated, descriptor.resumeMethod);
+			Assert.assertEquals(type.toString(), scanFields(type, ContextProperty.class), new HashSet<Field>(Arrays.asList(generated.getPropertyFields())));
+			Assert.assertEquals(type.toString(), scanFields(type, ContextResource.class), new HashSet<Field>(Arrays.asList(generated.getResourceFields())));
+			Assert.assertEquals(type.toString(), descriptor.declaredDependencies, Arrays.asList(generated.getDependencyNames()));
+		}
+		Assert.assertEquals(Arrays.asList("managedResA"), ResourceDescriptor.forClass(ManagedB.class).declaredDependencies);
+		Assert.assertEquals(Arrays.asList("managedResA"), ResourceDescriptor.forClass(ManagedC.class).declaredDependencies);
+		Assert.assertEquals(ManagedB.class.getDeclaredMethod("stop"), ResourceDescriptor.forClass(ManagedB.class).stopMethod);
+	}
+	
+	@Test
+	public void testInheritedMembersOfNestedClass() throws Exception {
+		GeneratedResourceDescriptor generated = GeneratedResourceDescriptor.forClass(DerivedResource.class);
+		Assert.assertEquals(DerivedResource.class, generated.getLifecycleMethod(Initialize.class).getDeclaringClass());
+		Assert.assertEquals(BaseResource.class, generated.getLifecycleMethod(Start.class).getDeclaringClass());
+		// The overriding method is found before the one it overrides
+		Assert.assertEquals(DerivedResource.class, generated.getLifecycleMethod(Stop.class).getDeclaringClass());
+		Assert.assertEquals(BaseResource.class, generated.getLifecycleMethod(Kill.class).getDeclaringClass());
+		Assert.assertNull(generated.getLifecycleMethod(Publish.class));
+		Assert.assertEquals(BaseResource.class.getDeclaredField("baseProperty"), generated.getPropertyFields()[0]);
+		
+		ResourceDescriptor descriptor = ResourceDescriptor.forClass(DerivedResource.class);
+		Assert.assertEquals(BaseResource.class.getDeclaredMethod("start"), descriptor.startMethod);
+		Assert.assertEquals(DerivedResource.class.getDeclaredMethod("stop"), descriptor.stopMethod);
+		Assert.assertEquals(1, descriptor.getPropertyInjections(ResourceState.STARTING).length);
+	}
+	
+	@Test
+	public void testDependencies() throws Exception {
+		Assert.assertEquals(Arrays.asList("resA", "resB", "resC"), Arrays.asList(GeneratedResourceDescriptor.forClass(DerivedResource.class).getDependencyNames()));
+		Assert.assertEquals(Arrays.asList("resA", "resB", "resC"), ResourceDescriptor.forClass(DerivedResource.class).declaredDependencies);
+	}
+	
+	@Test
+	public void testDescriptorPreferredOverScanning() throws Exception {
+		ResourceDescriptor descriptor = ResourceDescriptor.forClass(DescribedResource.class);
+		Assert.assertEquals("begin", descriptor.startMethod.getName());
+		Assert.assertEquals(Arrays.asList("described"), descriptor.declaredDependencies);
+	}
+	
+	@Test
+	public void testStaleDescriptorFallsBackToScanning() throws Exception {
+		try {
+			GeneratedResourceDescriptor.forClass(StaleResource.class).getLifecycleMethod(Start.class);
+			Assert.fail("The stale descriptor found a method that was removed");
+		} catch (NoSuchMethodException nsme) {
+			// Expected
+		}
+		ResourceDescriptor descriptor = ResourceDescriptor.forClass(StaleResource.class);
+		Assert.assertEquals("begin", descriptor.startMethod.getName());
+		Assert.assertEquals("end", descriptor.stopMethod.getName());
+		// Nothing read from the stale descriptor is kept
+		Assert.assertTrue(descriptor.declaredDependencies.isEmpty());
+	}
+	
+	@Test
+	public void testPropertiesInjectedInTheirState() throws Exception {
+		ResourceDescriptor descriptor = ResourceDescriptor.forClass(InjectedResource.class);
+		Map<ResourceState, Set<String>> expected = new EnumMap<ResourceState, Set<String>>(ResourceState.class);
+		for (ResourceState state : ResourceState.values()) {
+			expected.put(state, new HashSet<String>());
+		}
+		// Each property is due in its own state and in the states that stabilize to it
+		for (ResourceState state : EnumSet.of(ResourceState.NONE, ResourceState.INITIALIZING, ResourceState.INITIALIZED)) {
+			expected.get(state).add("initialized");
+		}
+		for (ResourceState state : EnumSet.of(ResourceState.STARTING, ResourceState.STARTED)) {
+			expected.get(state).add("started");
+		}
+		for (ResourceState state : EnumSet.of(ResourceState.PUBLISHING, ResourceState.RESUMING, ResourceState.RUNNING)) {
+			expected.get(state).add("running");
+		}
+		
+		Field started = InjectedResource.class.getDeclaredField("started");
+		for (ResourceState state : ResourceState.values()) {
+			Set<String> injected = new HashSet<String>();
+			for (ResourceDescriptor.PropertyInjection injection : descriptor.getPropertyInjections(state)) {
+				injected.add(injection.spec.name());
+				Assert.assertEquals(injection.spec.name(), injection.field.getName());
+				if (injection.field.getField().equals(started)) {
+					Assert.assertSame(started.getAnnotation(ContextProperty.class), injection.spec);
+				}
+			}
+			Assert.assertEquals(state.toString(), expected.get(state), injected);
+		}
+		// The same field is injected through the same injector in every state it is due
+		Assert.assertSame(descriptor.getPropertyInjections(ResourceState.STARTING)[0].field, descriptor.getPropertyInjections(ResourceState.STARTED)[0].field);
+	}
+	
+	private static void assertMethod(Class<?> type, Class<? extends Annotation> annotation, GeneratedResourceDescriptor generated, Method described)
+		throws NoSuchMethodException
+	{
+		Method scanned = scanMethod(type, annotation);
+		Assert.assertEquals(type + " @" + annotation.getSimpleName(), scanned, generated.getLifecycleMethod(annotation));
+		Assert.assertEquals(type + " @" + annotation.getSimpleName(), scanned, described);
+	}
+	
+	/**
+	 * Finds the first method with an annotation, searching a class before its superclasses.
+	 */
+	private static Method scanMethod(Class<?> type, Class<? extends Annotation> annotation) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			for (Method method : current.getDeclaredMethods()) {
+				if (method.isAnnotationPresent(annotation)) {
+					return method;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private static Set<Field> scanFields(Class<?> type, Class<? extends Annotation> annotation) {
+		Set<Field> fields = new HashSet<Field>();
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				if (field.isAnnotationPresent(annotation)) {
+					fields.add(field);
+				}
+			}
+		}
+		return fields;
+	}
+	
+	public static class BaseResource {
+		@ContextProperty(name = "baseProperty", state = ResourceState.STARTING)
+		protected String baseProperty;
+		
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+		
+		@Kill
+		void kill() {
+		}
+	}
+	
+	@ResourceType(name = "derived")
+	@Dependencies({ "resA", "resB" })
+	@Dependency("resC")
+	public static class DerivedResource extends BaseResource {
+		@Initialize
+		public void initialize() {
+		}
+		
+		@Override
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	public static class InjectedResource {
+		@ContextProperty(name = "initialized")
+		private String initialized;
+		
+		@ContextProperty(name = "started", state = ResourceState.STARTED)
+		private String started;
+		
+		@ContextProperty(name = "running", state = ResourceState.RUNNING, required = false)
+		private String running;
+		
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "private")
+	private static class PrivateResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	/**
+	 * Resource whose hand-written descriptor names a different start method than its annotations, showing which one is used.
+	 */
+	public static class DescribedResource {
+		@Start
+		public void start() {
+		}
+		
+		public void begin() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	public static final class DescribedResource_ResourceDescriptor extends GeneratedResourceDescriptor {
+		
+		public DescribedResource_ResourceDescriptor() {
+			super(DescribedResource.class);
+		}
+		
+		@Override
+		public Method getLifecycleMethod(Class<? extends Annotation> annotation) throws NoSuchMethodException {
+			if (annotation == Start.class) {
+				return method(0, "begin");
+			}
+			if (annotation == Stop.class) {
+				return method(0, "stop");
+			}
+			return null;
+		}
+		
+		@Override
+		public Method getResourceContextMethod() {
+			return null;
+		}
+		
+		@Override
+		public Field[] getPropertyFields() {
+			return new Field[0];
+		}
+		
+		@Override
+		public Field[] getResourceFields() {
+			return new Field[0];
+		}
+		
+		@Override
+		public String[] getDependencyNames() {
+			return new String[] { "described" };
+		}
+	}
+	
+	/**
+	 * Resource whose start method was renamed after its descriptor was generated.
+	 */
+	public static class StaleResource {
+		@Start
+		public void begin() {
+		}
+		
+		@Stop
+		public void end() {
+		}
+	}
+	
+	public static final class StaleResource_ResourceDescriptor extends GeneratedResourceDescriptor {
+		
+		public StaleResource_ResourceDescriptor() {
+			super(StaleResource.class);
+		}
+		
+		@Override
+		public Method getLifecycleMethod(Class<? extends Annotation> annotation) throws NoSuchMethodException {
+			if (annotation == Start.class) {
+				return method(0, "start");
+			}
+			if (annotation == Stop.class) {
+				return method(0, "end");
+			}
+			return null;
+		}
+		
+		@Override
+		public Method getResourceContextMethod() {
+			return null;
+		}
+		
+		@Override
+		public Field[] getPropertyFields() {
+			return new Field[0];
+		}
+		
+		@Override
+		public Field[] getResourceFields() {
+			return new Field[0];
+		}
+		
+		@Override
+		public String[] getDependencyNames() {
+			return new String[] { "stale" };
+		}
+	}
+}
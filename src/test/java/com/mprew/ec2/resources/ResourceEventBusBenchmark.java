@@ -0,0 +1,138 @@
+package com.mprew.ec2.resources;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceEventHandler;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+/**
+ * Compares delivering resource events to asynchronous listeners through the ResourceListenerRegistry, as fireResourceEvent does, with
+ * publishing them on the event ring to the same number of ResourceEventHandlers. Each invocation fires a batch of events for a set of
+ * resources and waits until every listener has received all of them, so the throughput includes the delivery. Run with the GC profiler
+ * (as main does) to compare the allocation rate per event as well.
+ *
+ * @author dgarson
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceEventBusBenchmark {
+	
+	private static final int BATCH = 1024;
+	private static final int RESOURCES = 64;
+	private static final EventType[] TYPES = { EventType.STARTING, EventType.STARTED, EventType.RUNNING };
+	
+	@Param({ "1", "4" })
+	public int listenerCount;
+	
+	private ResourceMetadata[] resources;
+	private ExecutorService executor;
+	private ResourceListenerRegistry registry;
+	private ResourceEventRing ring;
+	private final AtomicLong delivered = new AtomicLong();
+	private long expected;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		resources = new ResourceMetadata[RESOURCES];
+		for (int i = 0; i < RESOURCES; i++) {
+			resources[i] = new ResourceMetadata("res" + i, "bean" + i, new Object());
+		}
+		executor = Executors.newFixedThreadPool(6);
+		registry = new ResourceListenerRegistry();
+		ring = new ResourceEventRing(4096, Executors.defaultThreadFactory());
+		for (int i = 0; i < listenerCount; i++) {
+			registry.add(ResourceFilter.ACCEPT_EVERYTHING, new CountingListener());
+			ring.addHandler(new CountingHandler());
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ring.shutdown();
+		executor.shutdownNow();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void listenerRegistry() {
+		for (int i = 0; i < BATCH; i++) {
+			registry.fireResourceEvent(new ResourceEvent(resources[i & (RESOURCES - 1)], TYPES[i % TYPES.length]), executor);
+		}
+		awaitDelivery();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void eventRing() {
+		for (int i = 0; i < BATCH; i++) {
+			ring.publishEvent(resources[i & (RESOURCES - 1)], TYPES[i % TYPES.length]);
+		}
+		awaitDelivery();
+	}
+	
+	private void awaitDelivery() {
+		expected += (long)BATCH * listenerCount;
+		while (delivered.get() < expected) {
+			Thread.yield();
+		}
+	}
+	
+	private class CountingListener implements ResourceListener {
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			delivered.incrementAndGet();
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			delivered.incrementAndGet();
+		}
+	}
+	
+	private class CountingHandler implements ResourceEventHandler {
+		@Override
+		public void onResourceEvent(ResourceInfo resource, EventType type, long sequence) {
+			delivered.incrementAndGet();
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceInfo resource, EventType attemptedType, Throwable cause, long sequence) {
+			delivered.incrementAndGet();
+		}
+		
+		@Override
+		public void onPhaseChange(ResourceState oldState, ResourceState newState, long sequence) {
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(ResourceEventBusBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+	}
+}
@@ -0,0 +1,176 @@
+package com.mprew.ec2.resources;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.Publish;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+public class ResourceEventJournalTests {
+	
+	@Test
+	public void testRollAndReplay() throws Exception {
+		File dir = File.createTempFile("event-journal", "");
+		dir.delete();
+		try {
+			ResourceMetadata resA = new ResourceMetadata("resA", "beanA", new Object());
+			ResourceMetadata resB = new ResourceMetadata("resB", "beanB", new Object());
+			// Four records per segment, keeping the three most recent segments
+			ResourceEventJournal journal = new ResourceEventJournal(dir, 4, 4096, 3);
+			journal.appendPhaseChange(ResourceState.INITIALIZING, ResourceState.STARTING);
+			for (int i = 0; i < 8; i++) {
+				journal.appendEvent((i % 2 == 0 ? resA : resB), ResourceState.STARTING, ResourceState.STARTED, EventType.STARTED);
+			}
+			journal.appendFailure(resB, EventType.STOPPING, new RuntimeException("boom"));
+			journal.close();
+			Assert.assertEquals(10, ResourceEventJournal.read(dir).size());
+			
+			// A new journal starts a segment of its own and deletes the oldest one beyond the three to keep
+			journal = new ResourceEventJournal(dir, 4, 4096, 3);
+			journal.appendPhaseChange(ResourceState.STARTING, ResourceState.STARTED);
+			journal.close();
+			
+			List<ResourceJournalEntry> timeline = ResourceEventJournal.read(dir);
+			Assert.assertEquals(7, timeline.size());
+			ResourceJournalEntry first = timeline.get(0);
+			Assert.assertEquals(4, first.getSequence());
+			Assert.assertEquals(ResourceJournalEntry.Kind.EVENT, first.getKind());
+			Assert.assertEquals("resB", first.getResourceName());
+			Assert.assertEquals(EventType.STARTED, first.getType());
+			Assert.assertEquals(ResourceState.STARTING, first.getOldState());
+			Assert.assertEquals(ResourceState.STARTED, first.getNewState());
+			ResourceJournalEntry failure = timeline.get(5);
+			Assert.assertEquals(ResourceJournalEntry.Kind.FAILURE, failure.getKind());
+			Assert.assertEquals(EventType.STOPPING, failure.getType());
+			Assert.assertEquals("java.lang.RuntimeException: boom", failure.getCause());
+			ResourceJournalEntry last = timeline.get(6);
+			Assert.assertEquals(ResourceJournalEntry.Kind.PHASE_CHANGE, last.getKind());
+			Assert.assertEquals(0, last.getSequence());
+			Assert.assertNull(last.getResourceName());
+			Assert.assertEquals(ResourceState.STARTED, last.getNewState());
+			
+			final List<String> replayed = new ArrayList<String>();
+			ResourceEventJournal.replay(dir, new ResourceListener(){
+				@Override
+				public void onResourceEvent(ResourceEvent event) {
+					replayed.add(event.getResourceName() + ":" + event.getType());
+				}
+				
+				@Override
+				public void onResourceFailure(ResourceFailedEvent event) {
+					replayed.add(event.getResourceName() + ":" + event.getAttemptedEventType() + ":" + event.getMessage());
+				}
+			});
+			Assert.assertEquals("[resB:STARTED, resA:STARTED, resB:STARTED, resA:STARTED, resB:STARTED, "
+					+ "resB:STOPPING:java.lang.RuntimeException: boom]", replayed.toString());
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	@Test
+	public void testTextCutOffToFitSegment() throws Exception {
+		File dir = File.createTempFile("event-journal", "");
+		dir.delete();
+		try {
+			try {
+				new ResourceEventJournal(dir, 4, ResourceEventJournal.MIN_TEXT_BYTES_PER_SEGMENT - 1, 3);
+				Assert.fail("Created a journal with a side file that is too small");
+			} catch (IllegalArgumentException iae) {
+				// Expected
+			}
+			
+			StringBuilder longName = new StringBuilder();
+			StringBuilder longCause = new StringBuilder();
+			for (int i = 0; i < 1000; i++) {
+				longName.append("name");
+				longCause.append("\u00e9");
+			}
+			ResourceEventJournal journal = new ResourceEventJournal(dir, 4, ResourceEventJournal.MIN_TEXT_BYTES_PER_SEGMENT, 3);
+			journal.appendFailure(new ResourceMetadata(longName.toString(), "bean", new Object()), EventType.STARTING,
+					new RuntimeException(longCause.toString()));
+			journal.appendPhaseChange(ResourceState.STARTING, ResourceState.STARTED);
+			journal.close();
+			
+			List<ResourceJournalEntry> timeline = ResourceEventJournal.read(dir);
+			Assert.assertEquals(2, timeline.size());
+			ResourceJournalEntry failure = timeline.get(0);
+			Assert.assertTrue(longName.toString().startsWith(failure.getResourceName()));
+			Assert.assertTrue(failure.getResourceName().length() > 0);
+			// Cut off between two-byte characters rather than in the middle of one
+			Assert.assertTrue(("java.lang.RuntimeException: " + longCause).startsWith(failure.getCause()));
+			Assert.assertEquals(ResourceJournalEntry.Kind.PHASE_CHANGE, timeline.get(1).getKind());
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	@Test
+	public void testEachStepJournaledWithItsOwnStates() throws Exception {
+		File dir = File.createTempFile("event-journal", "");
+		dir.delete();
+		try {
+			MutableXmlApplicationContext appContext = new MutableXmlApplicationContext();
+			appContext.refresh();
+			ResourceManager resmgr = new ResourceManager();
+			resmgr.setApplicationContext(appContext);
+			resmgr.setStartupTimingsFile(null);
+			resmgr.setEventJournalDirectory(dir);
+			resmgr.afterPropertiesSet();
+			resmgr.registerResource("resA", "resA", new PublishedResource(), false, true);
+			resmgr.launch();
+			resmgr.destroy();
+			appContext.close();
+			
+			// The launch goes from INITIALIZING to RUNNING in one transition, but each step records where it actually came from
+			List<String> steps = new ArrayList<String>();
+			for (ResourceJournalEntry entry : ResourceEventJournal.read(dir)) {
+				if (entry.getKind() == ResourceJournalEntry.Kind.EVENT) {
+					steps.add(entry.getType() + ":" + entry.getOldState() + "->" + entry.getNewState());
+				}
+			}
+			Assert.assertEquals("[REGISTERED:INITIALIZING->INITIALIZING, INITIALIZED:INITIALIZING->INITIALIZED, STARTING:INITIALIZED->STARTING, "
+					+ "STARTED:STARTING->STARTED, PUBLISHING:STARTED->PUBLISHING, RUNNING:PUBLISHING->RUNNING]",
+					steps.subList(0, 6).toString());
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	@ResourceType(name = "published")
+	public static class PublishedResource {
+		@Start
+		public void start() {
+		}
+		
+		@Publish
+		public void publish() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	private static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,236 @@
+package com.mprew.ec2.resources;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceEventHandler;
+
+public class ResourceEventRingTests {
+	
+	private static final int PRODUCERS = 2;
+	private static final int EVENTS_PER_PRODUCER = 50000;
+	
+	@Test
+	public void testEveryHandlerSeesEverySequenceInOrder() throws InterruptedException {
+		// A small ring, so that publishers keep wrapping around and waiting for the handlers
+		final ResourceEventRing ring = new ResourceEventRing(16, Executors.defaultThreadFactory());
+		final ResourceMetadata resource = new ResourceMetadata("res", "bean", new Object());
+		SequenceHandler fast = new SequenceHandler(PRODUCERS * EVENTS_PER_PRODUCER + 1, false);
+		SequenceHandler slow = new SequenceHandler(PRODUCERS * EVENTS_PER_PRODUCER + 1, true);
+		ring.addHandler(fast);
+		ring.addHandler(slow);
+		
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			producers[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+						ring.publishEvent(resource, EventType.STARTED);
+					}
+				}
+			};
+			producers[p].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		ring.publishPhaseChange(ResourceState.STARTING, ResourceState.STARTED);
+		
+		Assert.assertTrue(fast.done.await(30, TimeUnit.SECONDS));
+		Assert.assertTrue(slow.done.await(30, TimeUnit.SECONDS));
+		Assert.assertEquals(0, fast.errors.get());
+		Assert.assertEquals(0, slow.errors.get());
+		ring.shutdown();
+	}
+	
+	@Test
+	public void testStuckHandlerDoesNotHoldUpPublishers() throws InterruptedException {
+		final ResourceEventRing ring = new ResourceEventRing(16, Executors.defaultThreadFactory(), TimeUnit.MILLISECONDS.toNanos(50));
+		final ResourceMetadata resource = new ResourceMetadata("res", "bean", new Object());
+		final CountDownLatch stuck = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch phase = new CountDownLatch(1);
+		final AtomicLong phaseSequence = new AtomicLong(-1);
+		final AtomicInteger handled = new AtomicInteger();
+		ring.addHandler(new ResourceEventHandler() {
+			@Override
+			public void onResourceEvent(ResourceInfo resource, EventType type, long sequence) {
+				handled.incrementAndGet();
+				if (sequence == 0) {
+					stuck.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			
+			@Override
+			public void onResourceFailure(ResourceInfo resource, EventType attemptedType, Throwable cause, long sequence) {
+			}
+			
+			@Override
+			public void onPhaseChange(ResourceState oldState, ResourceState newState, long sequence) {
+				phaseSequence.set(sequence);
+				phase.countDown();
+			}
+		});
+		
+		ring.publishEvent(resource, EventType.STARTED);
+		Assert.assertTrue(stuck.await(10, TimeUnit.SECONDS));
+		// Several times the size of the ring, which only returns because the handler is no longer waited for
+		for (int i = 0; i < 100; i++) {
+			ring.publishEvent(resource, EventType.STARTED);
+		}
+		release.countDown();
+		ring.publishPhaseChange(ResourceState.STARTING, ResourceState.STARTED);
+		
+		Assert.assertTrue(phase.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(101, phaseSequence.get());
+		Assert.assertTrue("Handled " + handled.get() + " events", handled.get() < 101);
+		ring.shutdown();
+	}
+	
+	@Test
+	public void testLaggingHandlerNeverSeesTornEvents() throws InterruptedException {
+		// Publishers stop waiting for the handler at once, so they keep overwriting the slots it is reading
+		final ResourceEventRing ring = new ResourceEventRing(2, Executors.defaultThreadFactory(), 0);
+		final EventType[] types = EventType.values();
+		final ResourceMetadata[] resources = new ResourceMetadata[types.length];
+		final Throwable[] causes = new Throwable[types.length];
+		for (int i = 0; i < types.length; i++) {
+			resources[i] = new ResourceMetadata("res" + i, "bean" + i, new Object());
+			causes[i] = new IllegalStateException("cause" + i);
+		}
+		final int events = EVENTS_PER_PRODUCER;
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch phase = new CountDownLatch(1);
+		final AtomicInteger handled = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		// With a single publisher, the event at each sequence number is known, so any event that does not match it is torn
+		ring.addHandler(new ResourceEventHandler() {
+			long last = -1;
+			
+			@Override
+			public void onResourceEvent(ResourceInfo resource, EventType type, long sequence) {
+				int k = (int)(sequence % types.length);
+				check(sequence, (sequence & 1) == 0 && resource == resources[k] && type == types[k]);
+			}
+			
+			@Override
+			public void onResourceFailure(ResourceInfo resource, EventType attemptedType, Throwable cause, long sequence) {
+				int k = (int)(sequence % types.length);
+				check(sequence, (sequence & 1) == 1 && resource == resources[k] && attemptedType == types[k] && cause == causes[k]);
+			}
+			
+			@Override
+			public void onPhaseChange(ResourceState oldState, ResourceState newState, long sequence) {
+				check(sequence, sequence == events && oldState == ResourceState.STARTING && newState == ResourceState.STARTED);
+				phase.countDown();
+			}
+			
+			private void check(long sequence, boolean valid) {
+				if (sequence <= last || !valid) {
+					errors.incrementAndGet();
+				}
+				last = sequence;
+				if (handled.getAndIncrement() == 0) {
+					// Still reading the first event while the publisher laps the ring
+					reading.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				else {
+					Thread.yield();
+				}
+			}
+		});
+		
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < events; i++) {
+					int k = i % types.length;
+					if ((i & 1) == 0) {
+						ring.publishEvent(resources[k], types[k]);
+					}
+					else {
+						ring.publishFailure(resources[k], types[k], causes[k]);
+					}
+					if (i == 0) {
+						try {
+							reading.await();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					else if (i == 100) {
+						release.countDown();
+					}
+				}
+				ring.publishPhaseChange(ResourceState.STARTING, ResourceState.STARTED);
+			}
+		};
+		producer.start();
+		producer.join();
+		
+		Assert.assertTrue(phase.await(30, TimeUnit.SECONDS));
+		Assert.assertEquals(0, errors.get());
+		Assert.assertTrue("Handled " + handled.get() + " events", handled.get() < events);
+		ring.shutdown();
+	}
+	
+	/**
+	 * Handler that checks that it receives consecutive sequence numbers, ending with a phase change.
+	 */
+	private static class SequenceHandler implements ResourceEventHandler {
+		final CountDownLatch done;
+		final AtomicInteger errors = new AtomicInteger();
+		final boolean slow;
+		long next = 0;
+		
+		SequenceHandler(int events, boolean slow) {
+			this.done = new CountDownLatch(events);
+			this.slow = slow;
+		}
+		
+		@Override
+		public void onResourceEvent(ResourceInfo resource, EventType type, long sequence) {
+			check(sequence, type == EventType.STARTED && resource.getResourceName().equals("res"));
+			if (slow && (sequence % 1000) == 0) {
+				Thread.yield();
+			}
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceInfo resource, EventType attemptedType, Throwable cause, long sequence) {
+			check(sequence, false);
+		}
+		
+		@Override
+		public void onPhaseChange(ResourceState oldState, ResourceState newState, long sequence) {
+			check(sequence, oldState == ResourceState.STARTING && newState == ResourceState.STARTED && done.getCount() == 1);
+		}
+		
+		private void check(long sequence, boolean valid) {
+			if (sequence != next++ || !valid) {
+				errors.incrementAndGet();
+			}
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.mprew.ec2.resources;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ResourceHealthCountsTests {
+	
+	@Test
+	public void testWorstHealth() {
+		ResourceHealthCounts counts = new ResourceHealthCounts();
+		counts.added("resA", ResourceHealth.okHealth);
+		counts.added("resB", ResourceHealth.okHealth);
+		Assert.assertEquals(ResourceHealth.Level.OK, counts.getWorstHealth().getLevel());
+		
+		ResourceHealth warning = new ResourceHealth(ResourceHealth.Level.WARNING, "slow");
+		ResourceHealth error = new ResourceHealth(ResourceHealth.Level.ERROR, "down");
+		counts.changed("resA", ResourceHealth.okHealth, warning);
+		Assert.assertSame(warning, counts.getWorstHealth());
+		counts.changed("resB", ResourceHealth.okHealth, error);
+		Assert.assertSame(error, counts.getWorstHealth());
+		Assert.assertEquals(1, counts.getCount(ResourceHealth.Level.WARNING));
+		Assert.assertEquals(1, counts.getCount(ResourceHealth.Level.ERROR));
+		Assert.assertEquals(0, counts.getCount(ResourceHealth.Level.OK));
+		Assert.assertEquals("[resB, resA]", counts.getOffenders().keySet().toString());
+		
+		counts.removed("resB", error);
+		Assert.assertSame(warning, counts.getWorstHealth());
+		counts.changed("resA", warning, ResourceHealth.okHealth);
+		Assert.assertSame(ResourceHealth.okHealth, counts.getWorstHealth());
+		Assert.assertTrue(counts.getOffenders().isEmpty());
+	}
+}
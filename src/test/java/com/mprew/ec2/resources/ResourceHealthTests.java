@@ -0,0 +1,127 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+import com.mprew.ec2.resources.event.HealthChangeEvent;
+import com.mprew.ec2.resources.event.HealthChangeListener;
+
+public class ResourceHealthTests {
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	
+	@Before
+	public void createResourceManager() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		resmgr.registerResource("resA", "resA", new HealthResource(), false, true);
+		resmgr.registerResource("resB", "resB", new HealthResource(), false, true);
+	}
+	
+	@After
+	public void destroyResourceManager() throws Exception {
+		resmgr.destroy();
+		appContext.close();
+	}
+	
+	@Test
+	public void testListenersNotifiedOnLevelChange() throws Exception {
+		HealthRecorder listener = new HealthRecorder();
+		resmgr.addHealthListener(listener);
+		
+		resmgr.reportResourceHealth("resA", new ResourceHealth(ResourceHealth.Level.WARNING, "slow"));
+		resmgr.reportResourceHealth("resA", new ResourceHealth(ResourceHealth.Level.WARNING, "still slow"));
+		resmgr.reportResourceHealth("resB", new ResourceHealth(ResourceHealth.Level.ERROR, "down"));
+		resmgr.reportResourceHealth("resB", ResourceHealth.okHealth);
+		resmgr.reportResourceHealth("resA", ResourceHealth.okHealth);
+		
+		Assert.assertEquals("[OK->WARNING, WARNING->ERROR, ERROR->WARNING, WARNING->OK]", listener.changes.toString());
+		Assert.assertTrue(resmgr.getSystemHealth().isOk());
+		
+		resmgr.removeHealthListener(listener);
+		resmgr.reportResourceHealth("resA", new ResourceHealth(ResourceHealth.Level.ERROR, "down"));
+		Assert.assertEquals(4, listener.changes.size());
+	}
+	
+	@Test
+	public void testListenerNotifiedOutsideOfLock() throws Exception {
+		ReportingListener listener = new ReportingListener();
+		resmgr.addHealthListener(listener);
+		
+		resmgr.reportResourceHealth("resA", new ResourceHealth(ResourceHealth.Level.WARNING, "slow"));
+		Assert.assertEquals("[true]", listener.reported.toString());
+		Assert.assertEquals("[OK->WARNING, WARNING->ERROR]", listener.changes.toString());
+	}
+	
+	/**
+	 * Listener that has another thread report the health of a resource on the first change, and waits for it to finish.
+	 */
+	@SynchronousInvocation
+	private class ReportingListener extends HealthRecorder {
+		final List<Boolean> reported = Collections.synchronizedList(new ArrayList<Boolean>());
+		
+		@Override
+		public void healthChanged(HealthChangeEvent event) {
+			super.healthChanged(event);
+			if (changes.size() > 1) {
+				return;
+			}
+			// The other thread must not have to wait for this listener to return
+			Thread reporter = new Thread(){
+				@Override
+				public void run() {
+					try {
+						resmgr.reportResourceHealth("resB", new ResourceHealth(ResourceHealth.Level.ERROR, "down"));
+						reported.add(Boolean.TRUE);
+					} catch (ResourceNotFoundException rnfe) {
+						reported.add(Boolean.FALSE);
+					}
+				}
+			};
+			reporter.start();
+			try {
+				reporter.join(5000);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	@SynchronousInvocation
+	private static class HealthRecorder implements HealthChangeListener {
+		final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+		
+		@Override
+		public void healthChanged(HealthChangeEvent event) {
+			changes.add(event.getOldHealth().getLevel() + "->" + event.getNewHealth().getLevel());
+		}
+	}
+	
+	@ResourceType(name = "health")
+	public static class HealthResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mprew.ec2.resources.context.ResourceContext;
+
+/**
+ * Compares invoking a pause and resume method pair reflectively, the way ResourceMetadata used to with a new parameter array for
+ * every call, with invoking them through compiled ResourceMethodInvokers.
+ *
+ * @author dgarson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ResourceInvokerBenchmark {
+	
+	private PausableResource bean;
+	private ResourceContext ctx;
+	private ResourceInfo info;
+	private Method pauseMethod;
+	private Method resumeMethod;
+	private ResourceMethodInvoker pauseInvoker;
+	private ResourceMethodInvoker resumeInvoker;
+	
+	@Setup
+	public void compileMethods() throws Exception {
+		bean = new PausableResource();
+		ctx = new ResourceManager();
+		info = new ManagedResourceInfo("pausable", "pausable", null);
+		pauseMethod = PausableResource.class.getDeclaredMethod("pause", ResourceContext.class);
+		resumeMethod = PausableResource.class.getDeclaredMethod("resume", ResourceContext.class, ResourceInfo.class);
+		pauseMethod.setAccessible(true);
+		resumeMethod.setAccessible(true);
+		pauseInvoker = ResourceMethodInvoker.compile(pauseMethod);
+		resumeInvoker = ResourceMethodInvoker.compile(resumeMethod);
+	}
+	
+	@Benchmark
+	public void reflective(Blackhole blackhole) throws Exception {
+		pauseMethod.invoke(bean, getParameters(pauseMethod));
+		resumeMethod.invoke(bean, getParameters(resumeMethod));
+		blackhole.consume(bean.transitions);
+	}
+	
+	@Benchmark
+	public void compiled(Blackhole blackhole) throws Exception {
+		pauseInvoker.invoke(bean, ctx, info);
+		resumeInvoker.invoke(bean, ctx, info);
+		blackhole.consume(bean.transitions);
+	}
+	
+	/**
+	 * Builds the parameters the same way ResourceMetadata did before the invokers were compiled.
+	 */
+	private Object[] getParameters(Method method) {
+		Object[] params = new Object[method.getParameterTypes().length];
+		int i = 0;
+		for (Class<?> paramType : method.getParameterTypes()) {
+			if (ResourceContext.class.isAssignableFrom(paramType)) {
+				params[i++] = ctx;
+			}
+			else if (ResourceInfo.class.isAssignableFrom(paramType)) {
+				params[i++] = info;
+			}
+			else {
+				throw new IllegalArgumentException("Invalid parameter type: " + paramType + " for method [" + method.getName() + "]");
+			}
+		}
+		return params;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(ResourceInvokerBenchmark.class.getSimpleName()).build()).run();
+	}
+	
+	/**
+	 * Resource that is paused and resumed at high frequency.
+	 */
+	public static class PausableResource {
+		long transitions;
+		
+		void pause(ResourceContext ctx) {
+			transitions++;
+		}
+		
+		void resume(ResourceContext ctx, ResourceInfo info) {
+			transitions++;
+		}
+	}
+}
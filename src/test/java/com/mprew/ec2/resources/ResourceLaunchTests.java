@@ -0,0 +1,169 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.Dependency;
+import com.mprew.ec2.resources.annotation.Initialize;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+import com.mprew.ec2.resources.event.PhaseChangeEvent;
+import com.mprew.ec2.resources.event.PhaseChangeListener;
+
+public class ResourceLaunchTests {
+	
+	/** Everything the resources did, in order */
+	private static final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	private PhaseRecorder phases;
+	
+	@Before
+	public void createResourceManager() throws Exception {
+		calls.clear();
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		phases = new PhaseRecorder();
+		resmgr.addPhaseListener(phases);
+	}
+	
+	@After
+	public void destroyResourceManager() throws Exception {
+		resmgr.destroy();
+		appContext.close();
+	}
+	
+	@Test
+	public void testSlowInitializeOnlyHoldsBackDependents() throws Exception {
+		resmgr.registerResource("slow", "slow", new SlowResource(), false, true);
+		resmgr.registerResource("dependent", "dependent", new DependentResource(), false, true);
+		resmgr.registerResource("unrelated", "unrelated", new UnrelatedResource(), false, true);
+		
+		resmgr.launch();
+		
+		Assert.assertEquals(ResourceState.RUNNING, resmgr.getSystemState());
+		for (String name : new String[] { "slow", "dependent", "unrelated" }) {
+			Assert.assertEquals(ResourceState.RUNNING, resmgr.getResource(name).getState());
+		}
+		// The unrelated resource started while the slow resource was still initializing
+		Assert.assertTrue(calls.toString(), calls.indexOf("unrelated:start") < calls.indexOf("slow:initialized"));
+		Assert.assertTrue(calls.toString(), calls.indexOf("slow:start") < calls.indexOf("dependent:start"));
+		Assert.assertEquals(Arrays.asList(ResourceState.INITIALIZED, ResourceState.STARTING, ResourceState.STARTED, ResourceState.PUBLISHING,
+				ResourceState.RUNNING), phases.phases);
+	}
+	
+	@Test
+	public void testFailedResourceDoesNotForceRunning() throws Exception {
+		resmgr.registerResource("slow", "slow", new SlowResource(), false, true);
+		resmgr.registerResource("broken", "broken", new BrokenResource(), false, true);
+		resmgr.registerResource("orphan", "orphan", new OrphanResource(), false, true);
+		
+		resmgr.launch();
+		
+		// Every phase is still reached once the failed resources are accounted for, but the graph never became RUNNING
+		Assert.assertEquals(ResourceState.RUNNING, resmgr.getResource("slow").getState());
+		Assert.assertEquals(ResourceState.INITIALIZED, resmgr.getResource("orphan").getState());
+		Assert.assertEquals(ResourceState.PUBLISHING, resmgr.getSystemState());
+		Assert.assertEquals(Arrays.asList(ResourceState.INITIALIZED, ResourceState.STARTING, ResourceState.STARTED, ResourceState.PUBLISHING),
+				phases.phases);
+		Assert.assertFalse(calls.contains("orphan:start"));
+	}
+	
+	@SynchronousInvocation
+	private static class PhaseRecorder implements PhaseChangeListener {
+		final List<ResourceState> phases = Collections.synchronizedList(new ArrayList<ResourceState>());
+		
+		@Override
+		public void phaseChanged(PhaseChangeEvent event) {
+			phases.add(event.getNewState());
+		}
+	}
+	
+	@ResourceType(name = "slow")
+	public static class SlowResource {
+		@Initialize
+		public void initialize() {
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			calls.add("slow:initialized");
+		}
+		
+		@Start
+		public void start() {
+			calls.add("slow:start");
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "dependent")
+	@Dependency("slow")
+	public static class DependentResource {
+		@Start
+		public void start() {
+			calls.add("dependent:start");
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "unrelated")
+	public static class UnrelatedResource {
+		@Start
+		public void start() {
+			calls.add("unrelated:start");
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "broken")
+	public static class BrokenResource {
+		@Start
+		public void start() {
+			throw new IllegalStateException("Unable to start");
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+	
+	@ResourceType(name = "orphan")
+	@Dependency("broken")
+	public static class OrphanResource {
+		@Start
+		public void start() {
+			calls.add("orphan:start");
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.EventQueue;
+import com.mprew.ec2.resources.annotation.EventQueue.OverflowPolicy;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+import com.mprew.ec2.resources.event.ResourceRegisteredEvent;
+
+public class ResourceListenerQueueTests {
+	
+	private static final int PRODUCERS = 4;
+	private static final int RESOURCES_PER_PRODUCER = 16;
+	private static final int EVENTS_PER_PRODUCER = 100000;
+	/** Events offered per second by each producer, which together must exceed the offered rate that is asserted */
+	private static final int RATE_PER_PRODUCER = 20000;
+	private static final int MIN_OFFERED_RATE = 50000;
+	private static final EventType[] TYPES = { EventType.STARTING, EventType.STARTED, EventType.RUNNING };
+	
+	@Test
+	public void testOrderedPerResourceUnderLoad() throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(6);
+		try {
+			final ResourceListenerRegistry registry = new ResourceListenerRegistry();
+			final int resourceCount = PRODUCERS * RESOURCES_PER_PRODUCER;
+			final ResourceMetadata[] resources = new ResourceMetadata[resourceCount];
+			for (int i = 0; i < resourceCount; i++) {
+				resources[i] = new ResourceMetadata("res" + i, "bean" + i, new Object());
+			}
+			OrderCheckingListener listener = new OrderCheckingListener(resourceCount, PRODUCERS * EVENTS_PER_PRODUCER);
+			registry.add(ResourceFilter.ACCEPT_EVERYTHING, listener);
+			
+			final CountDownLatch go = new CountDownLatch(1);
+			final long[] finishedAt = new long[PRODUCERS];
+			Thread[] producers = new Thread[PRODUCERS];
+			for (int p = 0; p < PRODUCERS; p++) {
+				final int producer = p;
+				final int first = p * RESOURCES_PER_PRODUCER;
+				producers[p] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							go.await();
+						} catch (InterruptedException ie) {
+							return;
+						}
+						// Each resource is fired from a single thread, as the ResourceManager does during a transition
+						long[] sequences = new long[RESOURCES_PER_PRODUCER];
+						long begin = System.nanoTime();
+						int i = 0;
+						while (i < EVENTS_PER_PRODUCER) {
+							// Paced so the offered rate is known, firing whatever is due in a burst to catch up after being descheduled
+							long due = Math.min(EVENTS_PER_PRODUCER, (System.nanoTime() - begin) * RATE_PER_PRODUCER / 1000000000L + 1);
+							if (i >= due) {
+								LockSupport.parkNanos(100000);
+								continue;
+							}
+							for (; i < due; i++) {
+								int r = i % RESOURCES_PER_PRODUCER;
+								long seq = sequences[r]++;
+								registry.fireResourceEvent(new SequencedEvent(resources[first + r], first + r, seq), executor);
+							}
+						}
+						finishedAt[producer] = System.nanoTime();
+					}
+				};
+				producers[p].start();
+			}
+			
+			long start = System.nanoTime();
+			go.countDown();
+			Assert.assertTrue("Timed out waiting for delivery", listener.delivered.await(60, TimeUnit.SECONDS));
+			long finished = start;
+			for (int p = 0; p < PRODUCERS; p++) {
+				producers[p].join();
+				finished = Math.max(finished, finishedAt[p]);
+			}
+			
+			long offeredRate = PRODUCERS * (long)EVENTS_PER_PRODUCER * 1000000000L / Math.max(1, finished - start);
+			Assert.assertTrue("Offered only " + offeredRate + " events/sec", offeredRate >= MIN_OFFERED_RATE);
+			Assert.assertEquals(0, listener.outOfOrder.get());
+			for (int i = 0; i < resourceCount; i++) {
+				Assert.assertEquals(EVENTS_PER_PRODUCER / RESOURCES_PER_PRODUCER, listener.next.get(i));
+			}
+			// The delivery throughput is measured by ResourceEventBusBenchmark.listenerRegistry rather than asserted here
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testCoalesceWhenFull() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		RecordingListener listener = new CoalescingListener();
+		ResourceListenerQueue queue = new ResourceListenerQueue(listener);
+		ResourceMetadata resA = new ResourceMetadata("resA", "beanA", new Object());
+		ResourceMetadata resB = new ResourceMetadata("resB", "beanB", new Object());
+		
+		queue.add(new ResourceEvent(resA, EventType.STARTING), recorder(tasks));
+		queue.add(new ResourceEvent(resB, EventType.STARTING), recorder(tasks));
+		queue.add(new ResourceEvent(resA, EventType.STARTED), recorder(tasks));
+		// Replaces resB:STARTING, then drops the oldest state change since nothing else is queued for resC
+		queue.add(new ResourceEvent(resB, EventType.STARTED), recorder(tasks));
+		queue.add(new ResourceEvent(new ResourceMetadata("resC", "beanC", new Object()), EventType.STARTING), recorder(tasks));
+		
+		ResourceListenerStats stats = queue.getStats();
+		Assert.assertEquals(3, stats.getDepth());
+		Assert.assertEquals(2, stats.getDropped());
+		// One drain for the stripe of each resource
+		Assert.assertEquals(3, tasks.size());
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+		Assert.assertEquals("[resA:STARTED, resB:STARTED, resC:STARTING]", listener.received.toString());
+		Assert.assertEquals(3, queue.getStats().getDelivered());
+		Assert.assertEquals(0, queue.getStats().getDepth());
+	}
+	
+	@Test
+	public void testDropNewestWhenFull() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		RecordingListener listener = new DroppingListener();
+		ResourceListenerQueue queue = new ResourceListenerQueue(listener);
+		ResourceMetadata resA = new ResourceMetadata("resA", "beanA", new Object());
+		for (EventType type : TYPES) {
+			queue.add(new ResourceEvent(resA, type), recorder(tasks));
+		}
+		
+		Assert.assertEquals(1, queue.getStats().getDropped());
+		tasks.remove(0).run();
+		Assert.assertEquals("[resA:STARTING, resA:STARTED]", listener.received.toString());
+	}
+	
+	@Test
+	public void testDefaultDoesNotBlockWhenFull() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		RecordingListener listener = new RecordingListener();
+		ResourceListenerQueue queue = new ResourceListenerQueue(listener);
+		ResourceMetadata resA = new ResourceMetadata("resA", "beanA", new Object());
+		// Nothing is drained, so the last event overflows the queue on this thread
+		for (int i = 0; i <= EventQueue.DEFAULT_CAPACITY; i++) {
+			queue.add(new ResourceEvent(resA, TYPES[i % TYPES.length]), recorder(tasks));
+		}
+		
+		ResourceListenerStats stats = queue.getStats();
+		Assert.assertEquals(OverflowPolicy.COALESCE, stats.getOverflow());
+		Assert.assertEquals(EventQueue.DEFAULT_CAPACITY, stats.getDepth());
+		Assert.assertEquals(1, stats.getDropped());
+	}
+	
+	@Test
+	public void testFailuresAndRegistrationsNeverDropped() throws InterruptedException {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		RecordingListener listener = new DroppingOldestListener();
+		final ResourceListenerQueue queue = new ResourceListenerQueue(listener);
+		queue.add(new ResourceEvent(new ResourceMetadata("resA", "beanA", new Object()), EventType.STARTING), recorder(tasks));
+		queue.add(new ResourceFailedEvent(new ResourceMetadata("resB", "beanB", new Object()), EventType.STARTING, "failed"), recorder(tasks));
+		queue.add(new ResourceRegisteredEvent(new ResourceMetadata("resC", "beanC", new Object())), recorder(tasks));
+		// Drops the state change of resA to make room for the failure
+		queue.add(new ResourceFailedEvent(new ResourceMetadata("resD", "beanD", new Object()), EventType.STARTING, "failed"), recorder(tasks));
+		// Nothing left to drop but the fired state change itself
+		queue.add(new ResourceEvent(new ResourceMetadata("resE", "beanE", new Object()), EventType.STARTED), recorder(tasks));
+		Assert.assertEquals(2, queue.getStats().getDropped());
+		Assert.assertEquals(3, queue.getStats().getDepth());
+		
+		// Another failure waits for room instead
+		Thread failure = new Thread() {
+			@Override
+			public void run() {
+				queue.add(new ResourceFailedEvent(new ResourceMetadata("resF", "beanF", new Object()), EventType.STARTING, "failed"),
+						recorder(tasks));
+			}
+		};
+		failure.start();
+		failure.join(200);
+		Assert.assertTrue(failure.isAlive());
+		List<Runnable> drains;
+		synchronized (tasks) {
+			drains = new ArrayList<Runnable>(tasks);
+			tasks.clear();
+		}
+		for (Runnable drain : drains) {
+			drain.run();
+		}
+		failure.join(10000);
+		Assert.assertFalse(failure.isAlive());
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+		
+		Assert.assertEquals(2, queue.getStats().getDropped());
+		Assert.assertEquals(4, listener.received.size());
+		Assert.assertTrue(listener.received.toString(),
+				listener.received.containsAll(Arrays.asList("resB:FAILED", "resC:REGISTERED", "resD:FAILED", "resF:FAILED")));
+	}
+	
+	@Test
+	public void testDistinctResourcesDeliveredInParallel() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch otherDelivered = new CountDownLatch(1);
+			ResourceListener listener = new ResourceListener() {
+				@Override
+				public void onResourceEvent(ResourceEvent event) {
+					if (event.getResourceName().equals("resA")) {
+						blocked.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					else {
+						otherDelivered.countDown();
+					}
+				}
+				
+				@Override
+				public void onResourceFailure(ResourceFailedEvent event) {
+				}
+			};
+			ResourceListenerQueue queue = new ResourceListenerQueue(listener);
+			queue.add(new ResourceEvent(new ResourceMetadata("resA", "beanA", new Object()), EventType.STARTING), executor);
+			Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			queue.add(new ResourceEvent(new ResourceMetadata("resB", "beanB", new Object()), EventType.STARTING), executor);
+			
+			// resB is delivered while the listener is still handling resA
+			Assert.assertTrue(otherDelivered.await(10, TimeUnit.SECONDS));
+			release.countDown();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static Executor recorder(final List<Runnable> tasks) {
+		return new Executor(){
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		};
+	}
+	
+	private static class RecordingListener implements ResourceListener {
+		final List<String> received = new ArrayList<String>();
+		
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			received.add(event.getResourceName() + ":" + event.getType());
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			received.add(event.getResourceName() + ":" + event.getType());
+		}
+	}
+	
+	@EventQueue(capacity = 3, overflow = OverflowPolicy.COALESCE)
+	private static class CoalescingListener extends RecordingListener {
+	}
+	
+	@EventQueue(capacity = 3, overflow = OverflowPolicy.DROP_OLDEST)
+	private static class DroppingOldestListener extends RecordingListener {
+	}
+	
+	@EventQueue(capacity = 2, overflow = OverflowPolicy.DROP_NEWEST)
+	private static class DroppingListener extends RecordingListener {
+	}
+	
+	private static class SequencedEvent extends ResourceEvent {
+		private static final long serialVersionUID = 1L;
+		
+		final int index;
+		final long sequence;
+		
+		SequencedEvent(ResourceInfo resource, int index, long sequence) {
+			super(resource, TYPES[(int)(sequence % TYPES.length)]);
+			this.index = index;
+			this.sequence = sequence;
+		}
+	}
+	
+	/**
+	 * Asynchronous listener that counts the events of each resource that arrive out of sequence. It holds up the producers when it
+	 * falls behind, so that every event is delivered.
+	 */
+	@EventQueue(overflow = OverflowPolicy.BLOCK)
+	private static class OrderCheckingListener implements ResourceListener {
+		final AtomicLongArray next;
+		final AtomicInteger outOfOrder = new AtomicInteger();
+		final CountDownLatch delivered;
+		
+		OrderCheckingListener(int resources, int events) {
+			next = new AtomicLongArray(resources);
+			delivered = new CountDownLatch(events);
+		}
+		
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			SequencedEvent evt = (SequencedEvent)event;
+			if (next.getAndIncrement(evt.index) != evt.sequence || evt.getType() != TYPES[(int)(evt.sequence % TYPES.length)]) {
+				outOfOrder.incrementAndGet();
+			}
+			delivered.countDown();
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mprew.ec2.resources.action.ResourceAction;
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
+import com.mprew.ec2.resources.event.BatchResourceListener;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+import com.mprew.ec2.resources.startup.DependencyElement;
+
+public class ResourceListenerRegistryTests {
+	
+	@Test
+	public void testRouteByNameAndType() {
+		ResourceListenerRegistry registry = new ResourceListenerRegistry();
+		RecordingListener started = new RecordingListener();
+		RecordingListener anyName = new RecordingListener();
+		registry.add("resA", EnumSet.of(EventType.STARTED), started);
+		registry.add(null, EnumSet.of(EventType.STOPPED), anyName);
+		
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STARTED), null);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STOPPED), null);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resB"), EventType.STARTED), null);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resB"), EventType.STOPPED), null);
+		registry.fireResourceFailure(new ResourceFailedEvent(new NamedResource("resA"), EventType.STOPPED, "failed"), null);
+		
+		Assert.assertEquals(2, started.received.size());
+		Assert.assertEquals("resA:STARTED", started.received.get(0));
+		Assert.assertEquals("resA:FAILED", started.received.get(1));
+		Assert.assertEquals(3, anyName.received.size());
+		
+		registry.remove((ResourceFilter)null, started);
+		registry.remove(null, EnumSet.of(EventType.STOPPED), anyName);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STARTED), null);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STOPPED), null);
+		Assert.assertEquals(2, started.received.size());
+		Assert.assertEquals(3, anyName.received.size());
+	}
+	
+	@Test
+	public void testManyRoutesOnOneResource() {
+		ResourceListenerRegistry registry = new ResourceListenerRegistry();
+		List<RecordingListener> listeners = new ArrayList<RecordingListener>();
+		for (int i = 0; i < 100; i++) {
+			RecordingListener listener = new RecordingListener();
+			listeners.add(listener);
+			registry.add("resA", (i % 2 == 0 ? EnumSet.of(EventType.STARTED) : null), listener);
+			if (i % 10 == 9) {
+				registry.remove("resA", null, listeners.get(i));
+			}
+		}
+		
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STARTED), null);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STOPPED), null);
+		for (int i = 0; i < listeners.size(); i++) {
+			int expected = (i % 10 == 9 ? 0 : i % 2 == 0 ? 1 : 2);
+			Assert.assertEquals("listener " + i, expected, listeners.get(i).received.size());
+		}
+	}
+	
+	@Test
+	public void testSharedListenerInvokedOnce() {
+		ResourceListenerRegistry registry = new ResourceListenerRegistry();
+		RecordingListener listener = new RecordingListener();
+		registry.add(ResourceFilter.ACCEPT_EVERYTHING, listener);
+		registry.add("resA", null, listener);
+		
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resA"), EventType.STARTED), null);
+		Assert.assertEquals(1, listener.received.size());
+	}
+	
+	@Test
+	public void testBatchListenerCoalesces() {
+		ResourceListenerRegistry registry = new ResourceListenerRegistry();
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor executor = new Executor(){
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		};
+		BatchRecordingListener listener = new BatchRecordingListener();
+		registry.add(ResourceFilter.ACCEPT_EVERYTHING, listener);
+		
+		NamedResource resA = new NamedResource("resA");
+		registry.fireResourceEvent(new ResourceEvent(resA, EventType.STARTING), executor);
+		registry.fireResourceEvent(new ResourceEvent(resA, EventType.STARTED), executor);
+		registry.fireResourceEvent(new ResourceEvent(new NamedResource("resB"), EventType.STARTING), executor);
+		registry.fireResourceFailure(new ResourceFailedEvent(resA, EventType.PUBLISHING, "failed"), executor);
+		registry.fireResourceEvent(new ResourceEvent(resA, EventType.STOPPED), executor);
+		
+		// Only one drain is scheduled for the whole batch
+		Assert.assertEquals(1, tasks.size());
+		tasks.remove(0).run();
+		Assert.assertEquals(1, listener.batches.size());
+		Assert.assertEquals("[resB:STARTING, resA:FAILED, resA:STOPPED]", listener.batches.get(0).toString());
+		Assert.assertTrue(tasks.isEmpty());
+	}
+	
+	private static class BatchRecordingListener implements BatchResourceListener {
+		final List<List<String>> batches = new ArrayList<List<String>>();
+		
+		@Override
+		public void onResourceEvents(List<ResourceEvent> events) {
+			List<String> batch = new ArrayList<String>();
+			for (ResourceEvent event : events) {
+				batch.add(event.getResourceName() + ":" + event.getType());
+			}
+			batches.add(batch);
+		}
+		
+		@Override
+		public boolean isCoalescing() {
+			return true;
+		}
+		
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			throw new IllegalStateException("Batch listener received a single event");
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			throw new IllegalStateException("Batch listener received a single failure");
+		}
+	}
+	
+	@SynchronousInvocation
+	private static class RecordingListener implements ResourceListener {
+		final List<String> received = new ArrayList<String>();
+		
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			received.add(event.getResourceName() + ":" + event.getType());
+		}
+		
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			received.add(event.getResourceName() + ":" + event.getType());
+		}
+	}
+	
+	private static class NamedResource implements ResourceInfo {
+		private final String name;
+		
+		NamedResource(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String getResourceName() {
+			return name;
+		}
+		
+		@Override
+		public String getBeanName() {
+			return name;
+		}
+		
+		@Override
+		public Object getInstance() {
+			return null;
+		}
+		
+		@Override
+		public ResourceState getState() {
+			return ResourceState.INITIALIZING;
+		}
+		
+		@Override
+		public DependencyElement getElement() {
+			return null;
+		}
+		
+		@Override
+		public Collection<String> getDependencyNames() {
+			return Collections.emptyList();
+		}
+		
+		@Override
+		public boolean waitForState(ResourceState state) {
+			return false;
+		}
+		
+		@Override
+		public boolean waitForState(ResourceState state, long timeout, TimeUnit unit) {
+			return false;
+		}
+		
+		@Override
+		public Method getResourceMethod(ResourceAction action) {
+			return null;
+		}
+	}
+}
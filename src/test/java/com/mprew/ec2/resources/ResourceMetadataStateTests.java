@@ -0,0 +1,64 @@
+package com.mprew.ec2.resources;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ResourceMetadataStateTests {
+	
+	@Test
+	public void testCompareAndSetState() {
+		ResourceMetadata resource = new ResourceMetadata("res", "bean", new Object());
+		long stamp = resource.getStateStamp();
+		Assert.assertEquals(ResourceState.INITIALIZING, ResourceMetadata.stateOf(stamp));
+		Assert.assertEquals(0, resource.getStateVersion());
+		
+		long started = resource.compareAndSetState(stamp, ResourceState.STARTING);
+		Assert.assertEquals(ResourceState.STARTING, ResourceMetadata.stateOf(started));
+		Assert.assertEquals(1, ResourceMetadata.versionOf(started));
+		Assert.assertEquals(-1, resource.compareAndSetState(stamp, ResourceState.STARTED));
+		Assert.assertEquals(ResourceState.STARTING, resource.getState());
+		
+		// Leaving and coming back to the same state is still detected by the version
+		Assert.assertEquals(started, resource.setState(ResourceState.STARTED));
+		Assert.assertTrue(resource.setState(ResourceState.STARTING) != -1);
+		Assert.assertEquals(ResourceState.STARTING, resource.getState());
+		Assert.assertEquals(3, resource.getStateVersion());
+		Assert.assertEquals(-1, resource.compareAndSetState(started, ResourceState.STARTED));
+		Assert.assertEquals(-1, resource.setState(ResourceState.STARTING));
+	}
+	
+	@Test
+	public void testConcurrentTransitions() throws InterruptedException {
+		final ResourceMetadata resource = new ResourceMetadata("res", "bean", new Object());
+		final long stamp = resource.getStateStamp();
+		final AtomicInteger winners = new AtomicInteger();
+		final CountDownLatch ready = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						ready.await();
+					} catch (InterruptedException ie) {
+						return;
+					}
+					if (resource.compareAndSetState(stamp, ResourceState.INITIALIZED) != -1) {
+						winners.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		ready.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(1, winners.get());
+		Assert.assertEquals(1, resource.getStateVersion());
+	}
+}
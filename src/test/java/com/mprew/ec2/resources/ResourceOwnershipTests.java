@@ -0,0 +1,230 @@
+package com.mprew.ec2.resources;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+
+public class ResourceOwnershipTests {
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	private final List<OwnerThread> owners = new ArrayList<OwnerThread>();
+	
+	@Before
+	public void createResourceManager() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		resmgr.registerResource("resA", "resA", new OwnedResource(), false, true);
+		resmgr.registerResource("resB", "resB", new OwnedResource(), false, true);
+	}
+	
+	@After
+	public void destroyResourceManager() throws Exception {
+		for (OwnerThread owner : owners) {
+			owner.finish();
+		}
+		resmgr.destroy();
+		appContext.close();
+	}
+	
+	@Test
+	public void testAcquireAndReleaseBySameThread() throws Exception {
+		ResourceOwnership ownership = new ResourceOwnership();
+		Assert.assertFalse(ownership.release());
+		Assert.assertTrue(ownership.acquire(null));
+		// A thread owns a resource at most once
+		Assert.assertFalse(ownership.acquire(null));
+		Assert.assertEquals(1, ownership.getOwners().length);
+		Assert.assertSame(Thread.currentThread(), ownership.getOwners()[0].thread);
+		Assert.assertFalse(ownership.isOwnedByOtherThread());
+		
+		Assert.assertTrue(ownership.release());
+		Assert.assertFalse(ownership.release());
+		Assert.assertEquals(0, ownership.getOwners().length);
+	}
+	
+	@Test
+	public void testOwnedByOtherThread() throws Exception {
+		ResourceOwnership ownership = new ResourceOwnership();
+		OwnerThread other = own(ownership, null, "other-owner");
+		Assert.assertTrue(ownership.isOwnedByOtherThread());
+		
+		// Still owned by the other thread while the current thread also owns it
+		Assert.assertTrue(ownership.acquire(null));
+		Assert.assertTrue(ownership.isOwnedByOtherThread());
+		Assert.assertEquals(2, ownership.getOwners().length);
+		
+		other.finish();
+		Assert.assertFalse(ownership.isOwnedByOtherThread());
+		Assert.assertEquals(1, ownership.getOwners().length);
+		Assert.assertSame(Thread.currentThread(), ownership.getOwners()[0].thread);
+		Assert.assertTrue(ownership.release());
+		Assert.assertFalse(ownership.isOwnedByOtherThread());
+	}
+	
+	@Test
+	public void testClearedOnShutdown() throws Exception {
+		ResourceMetadata resource = (ResourceMetadata)resmgr.getResource("resA");
+		own(resource.getOwnership(), null, "other-owner");
+		Assert.assertTrue(resmgr.isWorkingOn(resource));
+		
+		resmgr.setResourceState(resource, resource.getState(), ResourceState.SHUTDOWN_GRACEFULLY, false);
+		Assert.assertFalse(resmgr.isWorkingOn(resource));
+		Assert.assertEquals(0, resource.getOwnership().getOwners().length);
+		
+		ResourceOwnership ownership = new ResourceOwnership();
+		ownership.acquire(null);
+		ownership.clear();
+		Assert.assertEquals(0, ownership.getOwners().length);
+		Assert.assertFalse(ownership.release());
+	}
+	
+	@Test
+	public void testWorkingOnSnapshot() throws Exception {
+		ResourceMetadata resA = (ResourceMetadata)resmgr.getResource("resA");
+		List<String> logged = new ArrayList<String>();
+		Logger log = recordingLogger(logged);
+		resmgr.logWorkingOn(log);
+		Assert.assertEquals("[Working on Resources: None]", logged.toString());
+		Assert.assertTrue(resmgr.getWorkingOn().isEmpty());
+		
+		OwnerThread owner = own(resA.getOwnership(), new NamedAction(resmgr), "resA-owner");
+		Map<ResourceMetadata, ResourceOwnership.Owner[]> workingOn = resmgr.getWorkingOn();
+		Assert.assertEquals(Collections.singleton(resA), workingOn.keySet());
+		Assert.assertEquals(1, workingOn.get(resA).length);
+		Assert.assertSame(owner, workingOn.get(resA)[0].thread);
+		
+		logged.clear();
+		resmgr.logWorkingOn(log);
+		Assert.assertEquals(1, logged.size());
+		String message = logged.get(0);
+		Assert.assertTrue(message, message.startsWith("Working on Resources:\n\tresA [" + resA.getState() + "] Bean [resA]:"));
+		Assert.assertTrue(message, message.contains("\n\t\tThread: resA-owner [" + owner.getId() + "] Action: named"));
+		Assert.assertFalse(message, message.contains("resB"));
+		
+		// The snapshot is not changed by the owner finishing
+		owner.finish();
+		Assert.assertEquals(1, workingOn.get(resA).length);
+		Assert.assertTrue(resmgr.getWorkingOn().isEmpty());
+	}
+	
+	private OwnerThread own(ResourceOwnership ownership, AbstractResourceAction action, String threadName) throws InterruptedException {
+		OwnerThread owner = new OwnerThread(ownership, action, threadName);
+		owners.add(owner);
+		owner.start();
+		if (!owner.acquired.await(5, TimeUnit.SECONDS)) {
+			Assert.fail("The owner thread did not acquire the resource");
+		}
+		return owner;
+	}
+	
+	private static Logger recordingLogger(final List<String> logged) {
+		return (Logger)Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("info") && args.length == 1) {
+					logged.add((String)args[0]);
+				}
+				return (method.getReturnType() == boolean.class ? Boolean.TRUE : null);
+			}
+		});
+	}
+	
+	/**
+	 * Thread that owns a resource until it is told to finish.
+	 */
+	private static class OwnerThread extends Thread {
+		final CountDownLatch acquired = new CountDownLatch(1);
+		private final CountDownLatch finish = new CountDownLatch(1);
+		private final ResourceOwnership ownership;
+		private final AbstractResourceAction action;
+		
+		OwnerThread(ResourceOwnership ownership, AbstractResourceAction action, String name) {
+			super(name);
+			this.ownership = ownership;
+			this.action = action;
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			ownership.acquire(action);
+			acquired.countDown();
+			try {
+				finish.await();
+			} catch (InterruptedException ie) {
+				// Release and exit
+			}
+			ownership.release();
+		}
+		
+		void finish() throws InterruptedException {
+			finish.countDown();
+			join(5000);
+		}
+	}
+	
+	/**
+	 * Action that only has a name, for the owners it is recorded with.
+	 */
+	private static class NamedAction extends AbstractResourceAction {
+		
+		NamedAction(ResourceManager manager) {
+			super(manager, Collections.<ResourceInfo>emptyList(), false);
+		}
+		
+		@Override
+		public String getActionName(boolean isNoun) {
+			return "named";
+		}
+		
+		@Override
+		protected boolean isApplicable(ResourceInfo resource) {
+			return false;
+		}
+		
+		@Override
+		protected boolean isSatisfied(ResourceInfo resource, ResourceInfo blocker) {
+			return true;
+		}
+		
+		@Override
+		protected Callable<Boolean> createJob(ResourceInfo resource) {
+			return null;
+		}
+	}
+	
+	@ResourceType(name = "owned")
+	public static class OwnedResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mprew.ec2.resources.action.ResourceAction;
+import com.mprew.ec2.resources.annotation.Kill;
+import com.mprew.ec2.resources.annotation.Publish;
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.annotation.SynchronousInvocation;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+import com.mprew.ec2.resources.event.ResourceEvent;
+import com.mprew.ec2.resources.event.ResourceEvent.EventType;
+import com.mprew.ec2.resources.event.ResourceFailedEvent;
+import com.mprew.ec2.resources.event.ResourceListener;
+
+public class ResourceTransitionTests {
+
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	private RecordingResource resource;
+	private EventRecorder events;
+
+	@Before
+	public void createResourceManager() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		events = new EventRecorder();
+		resmgr.addResourceListener("res", EnumSet.complementOf(EnumSet.of(EventType.REGISTERED, EventType.UNREGISTERED)), events);
+	}
+
+	@After
+	public void destroyResourceManager() throws Exception {
+		resmgr.destroy();
+		appContext.close();
+	}
+
+	@Test
+	public void testInitializedToRunningPublishes() throws Exception {
+		register(new PublishedResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+
+		Assert.assertEquals(ResourceState.RUNNING, getState());
+		Assert.assertEquals("[start, publish]", resource.calls.toString());
+		Assert.assertEquals("[STARTING, STARTED, PUBLISHING, RUNNING]", events.received.toString());
+	}
+
+	@Test
+	public void testInitializedToRunningWithoutPublish() throws Exception {
+		register(new RecordingResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+
+		Assert.assertEquals(ResourceState.RUNNING, getState());
+		Assert.assertEquals("[start]", resource.calls.toString());
+		Assert.assertEquals("[STARTING, STARTED, RUNNING]", events.received.toString());
+	}
+
+	@Test
+	public void testPauseWithoutPauseMethodIsNoop() throws Exception {
+		register(new RecordingResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+		events.received.clear();
+		change(ResourceState.RUNNING, ResourceState.PAUSED);
+
+		Assert.assertEquals(ResourceState.RUNNING, getState());
+		Assert.assertEquals("[start]", resource.calls.toString());
+		Assert.assertTrue(events.received.isEmpty());
+	}
+
+	@Test
+	public void testForcefulShutdownWithoutKillStopsGracefully() throws Exception {
+		register(new RecordingResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+		ResourceInfo info = resmgr.getResource("res");
+		events.received.clear();
+		change(ResourceState.RUNNING, ResourceState.SHUTDOWN_FORCEFULLY);
+
+		Assert.assertEquals(ResourceState.SHUTDOWN_GRACEFULLY, info.getState());
+		Assert.assertEquals("[start, stop]", resource.calls.toString());
+		Assert.assertEquals("[STOPPING, STOPPED]", events.received.toString());
+		try {
+			resmgr.getResource("res");
+			Assert.fail("The resource is still registered after shutting down");
+		} catch (ResourceNotFoundException rnfe) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testForcefulShutdownKills() throws Exception {
+		register(new KillableResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+		ResourceInfo info = resmgr.getResource("res");
+		change(ResourceState.RUNNING, ResourceState.SHUTDOWN_FORCEFULLY);
+
+		Assert.assertEquals(ResourceState.SHUTDOWN_FORCEFULLY, info.getState());
+		Assert.assertEquals("[start, kill]", resource.calls.toString());
+	}
+
+	@Test
+	public void testCustomRestartTransition() throws Exception {
+		register(new RecordingResource());
+		change(ResourceState.INITIALIZED, ResourceState.RUNNING);
+		events.received.clear();
+		resmgr.setResourceTransition(ResourceState.RUNNING, ResourceState.STARTED, new ResourceTransition(
+			ResourceTransition.enter(ResourceState.STARTING, EventType.STARTING),
+			ResourceTransition.invoke(ResourceAction.STOPPING, EventType.STARTING),
+			ResourceTransition.invoke(ResourceAction.STARTING, EventType.STARTING),
+			ResourceTransition.enter(ResourceState.STARTED, EventType.STARTED)));
+		change(ResourceState.RUNNING, ResourceState.STARTED);
+
+		Assert.assertEquals(ResourceState.STARTED, getState());
+		Assert.assertEquals("[start, stop, start]", resource.calls.toString());
+		Assert.assertEquals("[STARTING, STARTED]", events.received.toString());
+
+		// Removing the transition makes the same request do nothing
+		change(ResourceState.STARTED, ResourceState.RUNNING);
+		resmgr.setResourceTransition(ResourceState.RUNNING, ResourceState.STARTED, null);
+		change(ResourceState.RUNNING, ResourceState.STARTED);
+		Assert.assertEquals(ResourceState.RUNNING, getState());
+		Assert.assertEquals("[start, stop, start]", resource.calls.toString());
+	}
+
+	private void register(RecordingResource instance) throws Exception {
+		resource = instance;
+		resmgr.registerResource("res", "res", instance, false, true);
+		change(ResourceState.INITIALIZING, ResourceState.INITIALIZED);
+		events.received.clear();
+	}
+
+	private void change(ResourceState currentState, ResourceState newState) throws Exception {
+		ResourceException failure = resmgr.changeResourceState(resmgr.getResource("res"), currentState, newState, false);
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private ResourceState getState() throws ResourceNotFoundException {
+		return resmgr.getResource("res").getState();
+	}
+
+	@SynchronousInvocation
+	private static class EventRecorder implements ResourceListener {
+		final List<EventType> received = Collections.synchronizedList(new ArrayList<EventType>());
+
+		@Override
+		public void onResourceEvent(ResourceEvent event) {
+			received.add(event.getType());
+		}
+
+		@Override
+		public void onResourceFailure(ResourceFailedEvent event) {
+			received.add(EventType.FAILED);
+		}
+	}
+
+	@ResourceType(name = "res")
+	public static class RecordingResource {
+		final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+		@Start
+		public void start() {
+			calls.add("start");
+		}
+
+		@Stop
+		public void stop() {
+			calls.add("stop");
+		}
+	}
+
+	@ResourceType(name = "res")
+	public static class PublishedResource extends RecordingResource {
+		@Publish
+		public void publish() {
+			calls.add("publish");
+		}
+	}
+
+	@ResourceType(name = "res")
+	public static class KillableResource extends RecordingResource {
+		@Kill
+		public void kill() {
+			calls.add("kill");
+		}
+	}
+}
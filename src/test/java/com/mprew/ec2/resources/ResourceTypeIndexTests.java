@@ -0,0 +1,75 @@
+package com.mprew.ec2.resources;
+
+import java.io.Serializable;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ResourceTypeIndexTests {
+	
+	@Test
+	public void testLookupBySupertype() {
+		ResourceTypeIndex index = new ResourceTypeIndex();
+		ResourceMetadata a = new ResourceMetadata("resA", "beanA", new Service());
+		ResourceMetadata b = new ResourceMetadata("resB", "beanB", new OtherService());
+		index.added(a);
+		index.added(b);
+		
+		Assert.assertEquals(1, index.get(Service.class).size());
+		Assert.assertSame(a, index.get(Service.class).get(0));
+		Assert.assertSame(b, index.get(OtherService.class).get(0));
+		Assert.assertEquals(2, index.get(Runnable.class).size());
+		Assert.assertEquals(2, index.get(AbstractService.class).size());
+		Assert.assertEquals(1, index.get(Serializable.class).size());
+		Assert.assertEquals(0, index.get(String.class).size());
+		
+		index.removed(a);
+		Assert.assertEquals(0, index.get(Service.class).size());
+		Assert.assertEquals(1, index.get(Runnable.class).size());
+		Assert.assertSame(b, index.get(Runnable.class).get(0));
+		Assert.assertEquals(0, index.get(Serializable.class).size());
+	}
+	
+	@Test
+	public void testManyResourcesOfSharedType() {
+		ResourceTypeIndex index = new ResourceTypeIndex();
+		ResourceMetadata[] resources = new ResourceMetadata[100];
+		for (int i = 0; i < resources.length; i++) {
+			resources[i] = new ResourceMetadata("res" + i, "bean" + i, (i % 2 == 0 ? new Service() : new OtherService()));
+			index.added(resources[i]);
+		}
+		List<ResourceMetadata> before = index.get(Runnable.class);
+		Assert.assertEquals(100, before.size());
+		Assert.assertEquals(50, index.get(Service.class).size());
+		
+		index.removed(resources[10]);
+		index.added(new ResourceMetadata("resNew", "beanNew", new Service()));
+		List<ResourceMetadata> after = index.get(Runnable.class);
+		Assert.assertEquals(100, after.size());
+		Assert.assertFalse(after.contains(resources[10]));
+		Assert.assertEquals("resNew", after.get(99).getResourceName());
+		
+		// Earlier lookups are unaffected by later changes
+		Assert.assertEquals(100, before.size());
+		Assert.assertSame(resources[10], before.get(10));
+		Assert.assertSame(resources[99], before.get(99));
+	}
+		
+	private static interface Named extends Runnable {
+	}
+	
+	private static abstract class AbstractService implements Named {
+		@Override
+		public void run() {
+		}
+	}
+	
+	private static class Service extends AbstractService implements Serializable {
+		private static final long serialVersionUID = 1L;
+	}
+	
+	private static class OtherService extends AbstractService {
+	}
+}
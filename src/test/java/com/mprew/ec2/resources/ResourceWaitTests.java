@@ -0,0 +1,152 @@
+package com.mprew.ec2.resources;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mprew.ec2.resources.annotation.ResourceType;
+import com.mprew.ec2.resources.annotation.Start;
+import com.mprew.ec2.resources.annotation.Stop;
+import com.mprew.ec2.resources.context.MutableXmlApplicationContext;
+
+public class ResourceWaitTests {
+	
+	private MutableXmlApplicationContext appContext;
+	private ResourceManager resmgr;
+	private ExecutorService waitThread;
+	
+	@Before
+	public void createResourceManager() throws Exception {
+		appContext = new MutableXmlApplicationContext();
+		appContext.refresh();
+		resmgr = new ResourceManager();
+		resmgr.setApplicationContext(appContext);
+		resmgr.setStartupTimingsFile(null);
+		resmgr.afterPropertiesSet();
+		resmgr.registerResource("resA", "resA", new WaitedResource(), false, true);
+		waitThread = Executors.newSingleThreadExecutor();
+	}
+	
+	@After
+	public void destroyResourceManager() throws Exception {
+		waitThread.shutdownNow();
+		// The state was changed by hand, so there is nothing left to stop
+		setState(ResourceState.SHUTDOWN_GRACEFULLY);
+		resmgr.destroy();
+		appContext.close();
+	}
+	
+	@Test
+	public void testTimedWaitReturnsFalseOnTimeout() throws Exception {
+		long start = System.nanoTime();
+		Assert.assertFalse(resmgr.waitForResourceState("resA", ResourceState.STARTED, 200, TimeUnit.MILLISECONDS));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Assert.assertTrue("Gave up after " + elapsed + "ms", elapsed >= 150);
+		
+		// A zero timeout only checks the current state
+		Assert.assertFalse(resmgr.getResource("resA").waitForState(ResourceState.STARTED, 0, TimeUnit.MILLISECONDS));
+		setState(ResourceState.STARTED);
+		Assert.assertTrue(resmgr.getResource("resA").waitForState(ResourceState.STARTED, 0, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void testTimedWaitWokenByState() throws Exception {
+		Future<Boolean> waited = waitThread.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return resmgr.waitForResourceState("resA", ResourceState.STARTED, 10, TimeUnit.SECONDS);
+			}
+		});
+		// Give the waiter a chance to park before the state changes
+		Thread.sleep(100);
+		long start = System.nanoTime();
+		setState(ResourceState.STARTED);
+		Assert.assertTrue(waited.get(5, TimeUnit.SECONDS));
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+	}
+	
+	@Test
+	public void testCancelledFutureRemoved() throws Exception {
+		CompletableFuture<WaitedResource> future = resmgr.futureForResource("resA", ResourceState.STARTED);
+		Assert.assertFalse(future.isDone());
+		Assert.assertEquals(1, resmgr.getPendingFutureCount());
+		
+		Assert.assertTrue(future.cancel(false));
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+		setState(ResourceState.STARTED);
+		Assert.assertTrue(future.isCancelled());
+	}
+	
+	@Test
+	public void testTimedOutFutureRemoved() throws Exception {
+		CompletableFuture<WaitedResource> future = resmgr.futureForResource("resA", ResourceState.STARTED, 100, TimeUnit.MILLISECONDS);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail("The future did not time out");
+		} catch (ExecutionException ee) {
+			Assert.assertTrue(ee.getCause() instanceof TimeoutException);
+		}
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+	}
+	
+	@Test
+	public void testFutureCompletedByState() throws Exception {
+		WaitedResource instance = (WaitedResource)resmgr.getResource("resA").getInstance();
+		CompletableFuture<WaitedResource> future = resmgr.futureForResource("resA", ResourceState.STARTED);
+		setState(ResourceState.STARTED);
+		Assert.assertSame(instance, future.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+		
+		// Completed right away once the resource is already in the state
+		Assert.assertSame(instance, resmgr.<WaitedResource>futureForResource("resA", ResourceState.STARTED).getNow(null));
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+	}
+	
+	@Test
+	public void testFutureFailsOnSystemShutdown() throws Exception {
+		CompletableFuture<WaitedResource> future = resmgr.futureForResource("resA", ResourceState.STARTED);
+		resmgr.changeSystemState(ResourceState.SHUTDOWN_GRACEFULLY);
+		assertFailed(future);
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+		
+		// A future for a resource that can no longer start fails as soon as it is created
+		assertFailed(resmgr.<WaitedResource>futureForResource("resA", ResourceState.RUNNING));
+		Assert.assertEquals(0, resmgr.getPendingFutureCount());
+	}
+	
+	private static void assertFailed(Future<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail("The future did not fail");
+		} catch (ExecutionException ee) {
+			Assert.assertTrue(ee.getCause() instanceof ResourceNotFoundException);
+		}
+	}
+	
+	private void setState(ResourceState newState) throws ResourceNotFoundException {
+		ResourceMetadata resource = (ResourceMetadata)resmgr.getResource("resA");
+		resmgr.setResourceState(resource, resource.getState(), newState, false);
+	}
+	
+	@ResourceType(name = "waited")
+	public static class WaitedResource {
+		@Start
+		public void start() {
+		}
+		
+		@Stop
+		public void stop() {
+		}
+	}
+}
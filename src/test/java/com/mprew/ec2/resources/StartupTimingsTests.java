@@ -0,0 +1,35 @@
+package com.mprew.ec2.resources;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class StartupTimingsTests {
+	
+	@Test
+	public void testPersistTimings() throws Exception {
+		File file = File.createTempFile("startup-timings", ".properties");
+		file.delete();
+		try {
+			StartupTimings timings = new StartupTimings(file);
+			timings.load();
+			Assert.assertEquals(-1, timings.getDuration("resA"));
+			timings.record("resA", 100);
+			timings.record("resA", 200);
+			timings.record("resB", 40);
+			Assert.assertEquals(150, timings.getDuration("resA"));
+			timings.save();
+			Assert.assertTrue(file.isFile());
+			
+			StartupTimings loaded = new StartupTimings(file);
+			loaded.load();
+			Assert.assertEquals(150, loaded.getDuration("resA"));
+			Assert.assertEquals(40, loaded.getDuration("resB"));
+			Assert.assertEquals(-1, loaded.getDuration("resC"));
+		} finally {
+			file.delete();
+		}
+	}
+}
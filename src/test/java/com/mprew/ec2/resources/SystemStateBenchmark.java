@@ -0,0 +1,111 @@
+package com.mprew.ec2.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares deciding the system state during a phase by scanning every resource after each transition, as checkForNewSystemState used
+ * to, with the per-state counts. Each invocation moves every resource from STARTING to STARTED and checks whether the system has
+ * stabilized after each transition. Resources either finish in a random order, or in the order they are scanned in, which is the worst
+ * case for the scan since it has to get past every resource that already finished.
+ *
+ * @author dgarson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SystemStateBenchmark {
+	
+	@Param({ "10000" })
+	public int resourceCount;
+	
+	@Param({ "random", "scanOrder" })
+	public String finishOrder;
+	
+	/** The order that resources finish in */
+	private int[] order;
+	private ResourceState[] states;
+	private ResourceStateCounts counts;
+	
+	@Setup(Level.Trial)
+	public void createOrder() {
+		List<Integer> indexes = new ArrayList<Integer>(resourceCount);
+		for (int i = 0; i < resourceCount; i++) {
+			indexes.add(Integer.valueOf(i));
+		}
+		if (finishOrder.equals("random")) {
+			Collections.shuffle(indexes, new Random(42));
+		}
+		order = new int[resourceCount];
+		for (int i = 0; i < resourceCount; i++) {
+			order[i] = indexes.get(i).intValue();
+		}
+	}
+	
+	@Setup(Level.Invocation)
+	public void resetStates() {
+		states = new ResourceState[resourceCount];
+		counts = new ResourceStateCounts();
+		for (int i = 0; i < resourceCount; i++) {
+			states[i] = ResourceState.STARTING;
+			counts.added(ResourceState.STARTING);
+		}
+	}
+	
+	@Benchmark
+	public int scanResources() {
+		int stabilized = 0;
+		for (int i = 0; i < order.length; i++) {
+			states[order[i]] = ResourceState.STARTED;
+			boolean allStarted = true;
+			for (int j = 0; j < states.length; j++) {
+				if (!states[j].isEquivalent(ResourceState.STARTED)) {
+					allStarted = false;
+					break;
+				}
+			}
+			if (allStarted) {
+				stabilized++;
+			}
+		}
+		return stabilized;
+	}
+	
+	@Benchmark
+	public int countStates() {
+		int stabilized = 0;
+		for (int i = 0; i < order.length; i++) {
+			states[order[i]] = ResourceState.STARTED;
+			counts.changed(ResourceState.STARTING, ResourceState.STARTED);
+			if (counts.isAllEquivalent(ResourceState.STARTED)) {
+				stabilized++;
+			}
+		}
+		return stabilized;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(SystemStateBenchmark.class.getSimpleName()).build()).run();
+	}
+}